@@ -0,0 +1,110 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.Configuration;
+import org.ttt.salt.TBXFile;
+import org.ttt.salt.dom.tbx.TBXDocument;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Benchmarks the check of a TBX v2 file that keeps its termEntries as the
+ * full DOM and as a {@link org.ttt.salt.dom.tbx.TBXTree}, with and without
+ * whitespace elision. Run it with <code>-prof gc</code> to see the bytes
+ * allocated. The heap held by the document afterwards is not measured
+ * here.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactTreeBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Number of termEntries in the termbase. */
+    @Param({"1000"})
+    private int entries;
+
+    /** Keep the termEntries in a compact tree. */
+    @Param({"false", "true"})
+    private boolean compact;
+
+    /** Elide whitespace in element only content. */
+    @Param({"false", "true"})
+    private boolean elide;
+
+    /** The termbase. */
+    private URL url;
+
+    /** Check configuration. */
+    private Configuration config;
+
+    /**
+     * Write the termbase.
+     *
+     * @throws IOException Any failure writing the termbase.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        LogManager.getLogManager().reset();
+        url = Termbases.v2(entries, Termbases.Shape.TYPICAL).toURI().toURL();
+        config = new Configuration();
+        config.setCompactTree(compact);
+        config.setElideWhitespace(elide);
+    }
+
+    /**
+     * @return The document of the checked file.
+     * @throws IOException Any failure reading the termbase.
+     * @throws SAXException The XML parser could not be set up.
+     */
+    @Benchmark
+    public TBXDocument check() throws IOException, SAXException
+    {
+        TBXFile tbx = new TBXFile(url, config);
+        tbx.parseAndValidate();
+        if (!tbx.isValid())
+            throw new IllegalStateException("Termbase is not valid: " + url);
+        return tbx.getTBXDocument();
+    }
+}
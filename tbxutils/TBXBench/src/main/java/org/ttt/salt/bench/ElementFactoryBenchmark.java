@@ -0,0 +1,127 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.dom.tbx.TBXDocument;
+import org.ttt.salt.dom.tbx.TBXElement;
+import org.xml.sax.Locator;
+
+
+/**
+ * Benchmarks creating TBX elements through the tag factory registry of
+ * {@link TBXDocument} against the per-element <code>Class.forName</code>
+ * lookup it replaced. The tags follow the mix found in one typical
+ * termEntry, where most elements have no element class of their own. The
+ * score is per element.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ElementFactoryBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Tags in the proportions they appear in one typical termEntry. */
+    private static final String[] TAG_MIX = {
+        "termEntry", "descrip", "descripGrp", "admin", "transacGrp", "transac", "date",
+        "langSet", "tig", "term", "termNote", "termNote", "descrip", "note",
+        "langSet", "tig", "term", "termNote", "termNote", "descrip", "note",
+        "langSet", "ntig", "termGrp", "term", "termNote", "admin", "hi",
+    };
+
+    /** Look up each element class by reflection instead of the registry. */
+    @Param({"false", "true"})
+    private boolean reflect;
+
+    /** Owner of the created elements. */
+    private TBXDocument doc;
+
+    /**
+     * Create the owner document.
+     */
+    @Setup
+    public void setUp()
+    {
+        LogManager.getLogManager().reset();
+        doc = new TBXDocument(true);
+    }
+
+    /**
+     * @return The last element created.
+     * @throws Exception Any failure creating the elements.
+     */
+    @Benchmark
+    //CHECKSTYLE: MagicNumber OFF
+    @OperationsPerInvocation(28)
+    //CHECKSTYLE: MagicNumber ON
+    public TBXElement create() throws Exception
+    {
+        TBXElement ret = null;
+        for (String tag : TAG_MIX)
+            ret = reflect ? reflectElement(tag, null) : doc.createTBXElement(tag, null);
+        return ret;
+    }
+
+    /**
+     * Create an element the way it was done before the registry.
+     *
+     * @param tag The element tag name.
+     * @param loc The element location.
+     * @return The new element.
+     * @throws Exception Any failure creating the element.
+     */
+    @SuppressWarnings("unchecked")
+    private TBXElement reflectElement(String tag, Locator loc) throws Exception
+    {
+        try
+        {
+            Class<TBXElement> clazz = (Class<TBXElement>) Class.forName(TBXDocument.PREFIX + tag,
+                    true, TBXDocument.class.getClassLoader());
+            Constructor<TBXElement> cstrct = clazz.getConstructor(TBXDocument.class,
+                    String.class, Locator.class);
+            return cstrct.newInstance(doc, tag, loc);
+        }
+        catch (ClassNotFoundException err)
+        {
+            return new TBXElement(doc, tag, loc);
+        }
+    }
+}
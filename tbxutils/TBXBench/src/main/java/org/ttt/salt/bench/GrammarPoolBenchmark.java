@@ -0,0 +1,100 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.Configuration;
+import org.ttt.salt.TBXFile;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Benchmarks the check of a whole TBX v2 file with and without the shared
+ * {@link org.ttt.salt.DTDGrammarPool}. The saving is per file, so it is
+ * largest for small files.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrammarPoolBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Number of termEntries in the termbase. */
+    @Param({"1", "100"})
+    private int entries;
+
+    /** The compiled DTD grammar is shared between files. */
+    @Param({"false", "true"})
+    private boolean pool;
+
+    /** The termbase. */
+    private URL url;
+
+    /** Check configuration. */
+    private Configuration config;
+
+    /**
+     * Write the termbase.
+     *
+     * @throws IOException Any failure writing the termbase.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        url = Termbases.v2(entries, Termbases.Shape.TYPICAL).toURI().toURL();
+        config = new Configuration();
+        config.setGrammarCaching(pool);
+    }
+
+    /**
+     * @return The checked file.
+     * @throws IOException Any failure reading the termbase.
+     * @throws SAXException The XML parser could not be set up.
+     */
+    @Benchmark
+    public TBXFile check() throws IOException, SAXException
+    {
+        TBXFile ret = new TBXFile(url, config);
+        ret.parseAndValidate();
+        if (!ret.isValid())
+            throw new IllegalStateException("Termbase is not valid: " + url);
+        return ret;
+    }
+}
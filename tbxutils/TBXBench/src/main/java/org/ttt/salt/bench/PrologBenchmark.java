@@ -0,0 +1,119 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.Prolog;
+import org.ttt.salt.TBXResolver;
+
+
+/**
+ * Benchmarks the work done on a TBX file before it is parsed: finding the
+ * encoding of an external entity with {@link TBXResolver#getEncoding} and
+ * the {@link Prolog} sniff that {@link org.ttt.salt.TBXFile} and
+ * {@link org.ttt.salt.TBX3File} do to find the encoding, XML declaration,
+ * DOCTYPE and document element. Both only read the start of the file so the
+ * termbase size is not a parameter, the encoding of the file is.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrologBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Bytes of the start of the file that are kept. */
+    private static final int PROLOG_SIZE = 4096;
+
+    /** The encoding the termbase is written in, BOM means UTF-8 with a BOM. */
+    @Param({"UTF-8", "BOM", "UTF-16BE"})
+    private String encoding;
+
+    /** The encoded start of the termbase. */
+    private byte[] prolog;
+
+    /**
+     * Encode the start of a termbase.
+     *
+     * @throws IOException Any failure writing the termbase.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        File file = Termbases.v2(1, Termbases.Shape.TYPICAL);
+        String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        if (text.length() > PROLOG_SIZE)
+            text = text.substring(0, PROLOG_SIZE);
+        if (encoding.equals("BOM"))
+            prolog = ("\uFEFF" + text).getBytes("UTF-8");
+        else if (encoding.equals("UTF-16BE"))
+            prolog = ("\uFEFF" + text).getBytes("UTF-16BE");
+        else
+            prolog = text.getBytes(encoding);
+    }
+
+    /**
+     * @return The detected encoding.
+     * @throws IOException Encoding not recognized.
+     */
+    @Benchmark
+    public String getEncoding() throws IOException
+    {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(prolog));
+        return TBXResolver.getEncoding(in);
+    }
+
+    /**
+     * Sniff the encoding and prolog up to the end of the document element
+     * start tag.
+     *
+     * @return The document element name.
+     * @throws IOException Encoding not recognized.
+     */
+    @Benchmark
+    public String preParse() throws IOException
+    {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(prolog));
+        return Prolog.sniff(in).getRootName();
+    }
+}
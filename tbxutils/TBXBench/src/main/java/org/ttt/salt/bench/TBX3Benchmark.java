@@ -0,0 +1,97 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.DialectRegistry;
+import org.ttt.salt.TBX3File;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Benchmarks the TBX v3 pass that the GUI open action runs: one parse that
+ * validates against the dialect RNG while building the document, then the
+ * Schematron check of the document. The dialect is compiled during setup,
+ * as it is once per process in the application.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TBX3Benchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Number of conceptEntries in the termbase. */
+    @Param({"100", "10000"})
+    private int entries;
+
+    /** Layout of each conceptEntry. */
+    @Param({"MINIMAL", "TYPICAL", "DEEP"})
+    private Termbases.Shape shape;
+
+    /** The termbase. */
+    private URL url;
+
+    /**
+     * Write the termbase and compile its dialect.
+     *
+     * @throws IOException Any failure writing the termbase.
+     * @throws SAXException The dialect schemas could not be compiled.
+     */
+    @Setup
+    public void setUp() throws IOException, SAXException
+    {
+        url = Termbases.v3(entries, shape).toURI().toURL();
+        DialectRegistry.getDefault().getDialect(DialectRegistry.TBX_CORE);
+    }
+
+    /**
+     * @return The validated file.
+     * @throws IOException Any failure reading the termbase.
+     * @throws SAXException Any failure parsing the termbase.
+     */
+    @Benchmark
+    public TBX3File parseAndValidate() throws IOException, SAXException
+    {
+        TBX3File ret = new TBX3File(url, DialectRegistry.getDefault());
+        ret.setElideWhitespace(true);
+        ret.parseAndValidate();
+        return ret;
+    }
+}
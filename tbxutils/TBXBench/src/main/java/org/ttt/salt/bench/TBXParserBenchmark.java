@@ -0,0 +1,105 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.Configuration;
+import org.ttt.salt.TBXResolver;
+import org.ttt.salt.dom.tbx.TBXDocument;
+import org.ttt.salt.dom.tbx.TBXParser;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Benchmarks the {@link TBXParser} build of a TBX v2 DOM with DTD
+ * validation. Each termEntry is not checked against the XCS, that is
+ * measured by {@link XCSValidationBenchmark}.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TBXParserBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Number of termEntries in the termbase. */
+    @Param({"100", "10000"})
+    private int entries;
+
+    /** Layout of each termEntry. */
+    @Param({"MINIMAL", "TYPICAL", "DEEP"})
+    private Termbases.Shape shape;
+
+    /** Whitespace in element only content is not kept. */
+    @Param({"false", "true"})
+    private boolean elide;
+
+    /** The termbase. */
+    private URL url;
+
+    /** Parser configuration. */
+    private Configuration config;
+
+    /**
+     * Write the termbase.
+     *
+     * @throws IOException Any failure writing the termbase.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        url = Termbases.v2(entries, shape).toURI().toURL();
+        config = new Configuration();
+        config.setCheckEachTerm(false);
+        config.setElideWhitespace(elide);
+    }
+
+    /**
+     * @return The parsed document.
+     * @throws IOException Any failure reading the termbase.
+     * @throws SAXException Any failure parsing the termbase.
+     */
+    @Benchmark
+    public TBXDocument parse() throws IOException, SAXException
+    {
+        TBXParser parser = new TBXParser(new TBXResolver(url), config);
+        return parser.parse(new InputSource(url.toExternalForm()));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.Configuration;
+import org.ttt.salt.TBXFile;
+import org.ttt.salt.TermIndex;
+import org.ttt.salt.dom.tbx.TBXParser;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Benchmarks {@link TermIndex} lookups of the English terms of a TBX v2
+ * termbase, and reading the saved index. Each lookup operation queries the
+ * next of a fixed set of terms, taken from every hundredth termEntry, so
+ * the results vary as they would for a user.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TermIndexBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Every this many termEntries a query term is taken. */
+    private static final int SAMPLE = 100;
+
+    /** Characters of a term in a prefix query. */
+    private static final int PREFIX = 3;
+
+    /** Number of termEntries in the termbase. */
+    @Param({"10000", "100000"})
+    private int entries;
+
+    /** The termbase. */
+    private File file;
+
+    /** The index of the termbase. */
+    private TermIndex index;
+
+    /** English terms to query. */
+    private final List<String> queries = new java.util.ArrayList<String>();
+
+    /** Next query. */
+    private int next;
+
+    /**
+     * Parse the termbase to build and save its index.
+     *
+     * @throws IOException Any failure reading the termbase.
+     * @throws SAXException Any failure creating the parser.
+     */
+    @Setup
+    public void setUp() throws IOException, SAXException
+    {
+        file = Termbases.v2(entries, Termbases.Shape.TYPICAL);
+        TermIndex.getIndexFile(file).deleteOnExit();
+        Configuration config = new Configuration();
+        config.setStreaming(true);
+        config.setTermIndex(true);
+        TBXFile tbx = new TBXFile(file.toURI().toURL(), config);
+        tbx.addObserver(new Observer()
+            {
+                private int count;
+
+                public void update(Observable o, Object arg)
+                {
+                    Element elem = ((TBXParser.Event) arg).getTBXElement();
+                    if (elem.getTagName().equals("termEntry") && count++ % SAMPLE == 0)
+                        queries.add(elem.getElementsByTagName("term").item(0).getTextContent());
+                }
+            });
+        tbx.parseAndValidate();
+        index = tbx.getTermIndex();
+    }
+
+    /**
+     * @return The next query term.
+     */
+    private String query()
+    {
+        next = (next + 1) % queries.size();
+        return queries.get(next);
+    }
+
+    /**
+     * @return The termEntries with the term.
+     */
+    @Benchmark
+    public int[] exact()
+    {
+        return index.find("en", query(), TermIndex.Match.EXACT);
+    }
+
+    /**
+     * @return The termEntries with the term in any case.
+     */
+    @Benchmark
+    public int[] folded()
+    {
+        return index.find("en", query().toUpperCase(), TermIndex.Match.FOLDED);
+    }
+
+    /**
+     * @return The termEntries with a term that starts as the term does.
+     */
+    @Benchmark
+    public int[] prefix()
+    {
+        String q = query();
+        return index.find("en", q.substring(0, Math.min(PREFIX, q.length())), TermIndex.Match.PREFIX);
+    }
+
+    /**
+     * @return The saved index.
+     * @throws IOException Any failure reading the index.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TermIndex load() throws IOException
+    {
+        return TermIndex.load(file);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import org.ttt.salt.TermbaseGenerator;
+
+
+/**
+ * Writes the termbases the benchmarks read with a {@link TermbaseGenerator}
+ * so every run of a benchmark reads the same termbase. Each entry has the
+ * layout of one {@link Shape}. TBX v2 termbases are valid and every
+ * termEntry is XCS checked. TBX v3 termbases are TBX-Core dca files. Files
+ * are written once per JVM to the temporary directory and are deleted when
+ * the JVM exits.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class Termbases
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** The termEntry, or conceptEntry, layouts the benchmarks are run with. */
+    public enum Shape
+    {
+        /** One term in one language and nothing else. */
+        MINIMAL,
+
+        /** Every data category and one term in each of two languages. */
+        TYPICAL,
+
+        /** As typical with three terms in each language. */
+        DEEP
+    }
+
+    /** Files already written, by version, shape and size. */
+    private static final Map<String, File> FILES = new java.util.HashMap<String, File>();
+
+    /** Not instantiable. */
+    private Termbases()
+    {
+    }
+
+    /**
+     * Get a TBX v2 termbase.
+     *
+     * @param entries Number of termEntries.
+     * @param shape Layout of each termEntry.
+     * @return The termbase file.
+     * @throws IOException Any failure writing the file.
+     */
+    public static synchronized File v2(int entries, Shape shape) throws IOException
+    {
+        String key = "v2-" + shape + "-" + entries;
+        File ret = FILES.get(key);
+        if (ret == null)
+        {
+            ret = write(key, TermbaseGenerator.Format.TBX_V2, entries, shape);
+            FILES.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Get a TBX v3 TBX-Core termbase.
+     *
+     * @param entries Number of conceptEntries.
+     * @param shape Layout of each conceptEntry.
+     * @return The termbase file.
+     * @throws IOException Any failure writing the file.
+     */
+    public static synchronized File v3(int entries, Shape shape) throws IOException
+    {
+        String key = "v3-" + shape + "-" + entries;
+        File ret = FILES.get(key);
+        if (ret == null)
+        {
+            ret = write(key, TermbaseGenerator.Format.TBX_CORE, entries, shape);
+            FILES.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @param key Name of the file.
+     * @param format Kind of termbase.
+     * @param entries Number of entries.
+     * @param shape Layout of each entry.
+     * @return The new file.
+     * @throws IOException Any failure writing the file.
+     */
+    private static File write(String key, TermbaseGenerator.Format format, int entries, Shape shape)
+        throws IOException
+    {
+        TermbaseGenerator gen = new TermbaseGenerator(format);
+        gen.setEntries(entries);
+        gen.setLanguages(shape == Shape.MINIMAL ? 1 : 2);
+        //CHECKSTYLE: MagicNumber OFF
+        gen.setTerms(shape == Shape.DEEP ? 3 : 1);
+        //CHECKSTYLE: MagicNumber ON
+        gen.setCategoryRate(shape == Shape.MINIMAL ? 0 : 1);
+        File ret = File.createTempFile("tbxbench-" + key + "-", ".tbx");
+        ret.deleteOnExit();
+        OutputStream out = new FileOutputStream(ret);
+        try
+        {
+            gen.write(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        return ret;
+    }
+}
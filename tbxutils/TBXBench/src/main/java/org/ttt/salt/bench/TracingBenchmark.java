@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.Configuration;
+import org.ttt.salt.TBXFile;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Benchmarks the check of a TBX v2 file with the parser loggers at the
+ * production SEVERE level and at FINER. The loggers have no handlers, so
+ * nothing is written, and the difference is the cost of the trace
+ * statements that are skipped unless FINER is enabled. Run it with
+ * <code>-prof gc</code> to see the difference in bytes allocated.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TracingBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** The parser loggers, held so the level set on them is kept. */
+    private static final Logger DOM_LOGGER = Logger.getLogger("org.ttt.salt.dom");
+
+    /** Number of termEntries in the termbase. */
+    @Param({"100"})
+    private int entries;
+
+    /** Level of the parser loggers. */
+    @Param({"SEVERE", "FINER"})
+    private String level;
+
+    /** The termbase. */
+    private URL url;
+
+    /** Check configuration. */
+    private Configuration config;
+
+    /**
+     * Write the termbase and set the logger level.
+     *
+     * @throws IOException Any failure writing the termbase.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        url = Termbases.v2(entries, Termbases.Shape.TYPICAL).toURI().toURL();
+        config = new Configuration();
+        LogManager.getLogManager().reset();
+        DOM_LOGGER.setLevel(Level.parse(level));
+    }
+
+    /**
+     * @return The checked file.
+     * @throws IOException Any failure reading the termbase.
+     * @throws SAXException The XML parser could not be set up.
+     */
+    @Benchmark
+    public TBXFile check() throws IOException, SAXException
+    {
+        TBXFile ret = new TBXFile(url, config);
+        ret.parseAndValidate();
+        if (!ret.isValid())
+            throw new IllegalStateException("Termbase is not valid: " + url);
+        return ret;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ttt.salt.Configuration;
+import org.ttt.salt.TBXFile;
+import org.ttt.salt.XCSDocument;
+import org.ttt.salt.XCSValidationException;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Benchmarks {@link XCSDocument#validateTermEntry} alone. The termbase is
+ * parsed once during setup and each invocation checks one termEntry, taking
+ * them in turn, so the score is the time to check one termEntry.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XCSValidationBenchmark
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Number of distinct termEntries checked in turn. */
+    private static final int ENTRIES = 1000;
+
+    /** Layout of each termEntry. */
+    @Param({"MINIMAL", "TYPICAL", "DEEP"})
+    private Termbases.Shape shape;
+
+    /** The XCS of the termbase. */
+    private XCSDocument xcs;
+
+    /** The termEntries of the termbase. */
+    private Element[] termEntries;
+
+    /** Index of the next termEntry to check. */
+    private int next;
+
+    /**
+     * Parse the termbase.
+     *
+     * @throws IOException Any failure writing or reading the termbase.
+     * @throws SAXException The termbase parser could not be created.
+     */
+    @Setup
+    public void setUp() throws IOException, SAXException
+    {
+        TBXFile tbx = new TBXFile(Termbases.v2(ENTRIES, shape).toURI().toURL(), new Configuration());
+        tbx.parseAndValidate();
+        if (!tbx.isValid())
+            throw new IllegalStateException("Termbase is not valid: " + tbx.getInvalidatingExceptions());
+        xcs = tbx.getXCSDocument();
+        termEntries = tbx.getTermEntryMap().values().toArray(new Element[0]);
+    }
+
+    /**
+     * @return The termEntry that was checked.
+     * @throws XCSValidationException The termEntry is not valid.
+     */
+    @Benchmark
+    public Element validateTermEntry() throws XCSValidationException
+    {
+        Element ret = termEntries[next];
+        next = (next + 1) % termEntries.length;
+        xcs.validateTermEntry(ret);
+        return ret;
+    }
+}
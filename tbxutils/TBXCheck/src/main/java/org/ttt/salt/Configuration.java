@@ -29,12 +29,57 @@ import org.xml.sax.EntityResolver;
  */
 public class Configuration implements Cloneable
 {
+    /** Default bytes read at a time. */
+    private static final int READ_BUFFER = 64 * 1024;
+
+    /** Smallest read buffer the parser accepts. */
+    private static final int MIN_READ_BUFFER = 64;
+
+    /** Default size of the smallest memory mapped file. */
+    private static final long MAP_THRESHOLD = 32L * 1024 * 1024;
+
     /** Should language code compliance check be performed. */
     private boolean checklang = true;
     
     /** Should each termEntry be checked as it is built. */
     private boolean checkeachterm = true;
-	
+
+    /** Should each termEntry be discarded after it is validated. */
+    private boolean streaming;
+
+    /** Number of threads validating termEntries in parallel with parsing. */
+    private int validationThreads;
+
+    /** Should DTD grammars be shared between parsers. */
+    private boolean grammarCaching = true;
+
+    /** Should whitespace between elements in element only content be dropped. */
+    private boolean elideWhitespace;
+
+    /** Should termEntries be kept in a compact tree instead of the DOM. */
+    private boolean compactTree;
+
+    /** Should a term index be built while parsing. */
+    private boolean termIndex;
+
+    /** Keep a manifest of the valid termEntries to skip them next time. */
+    private boolean termEntryManifest;
+
+    /** Record what each file cost in the {@link TBXStatistics}. */
+    private boolean statistics;
+
+    /** Bytes read from the file and scanned by the parser at a time. */
+    private int readBufferSize = READ_BUFFER;
+
+    /** Local files at least this large are memory mapped. */
+    private long mapThreshold = MAP_THRESHOLD;
+
+    /** Stop the parse after this many errors, 0 for no limit. */
+    private int errorLimit;
+
+    /** Stop the parse after this many errors of one kind, 0 for no limit. */
+    private int ruleErrorLimit;
+
 	/** Custom entity resolver for the XCS file, if required. */
 	private EntityResolver customEntityResolver = null;
     
@@ -84,7 +129,292 @@ public class Configuration implements Cloneable
     {
         return checkeachterm;
     }
-    
+
+    /**
+     * Set the streaming flag. When streaming each termEntry is validated as
+     * it is completed and then removed from the document so that memory use
+     * is bounded by the largest single termEntry instead of the whole file.
+     * Only the martifHeader and the empty text/body skeleton are kept.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setStreaming(boolean v)
+    {
+        streaming = v;
+    }
+
+    /**
+     * Test the streaming flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getStreaming()
+    {
+        return streaming;
+    }
+
+    /**
+     * Set the number of threads that validate termEntries against the XCS
+     * while the parser goes on building the following termEntries. Results
+     * are still reported in document order. Zero, the default, validates
+     * each termEntry on the parsing thread.
+     *
+     * @param v The new number of validation threads.
+     */
+    public void setValidationThreads(int v)
+    {
+        if (v < 0)
+            throw new IllegalArgumentException("Validation threads must not be negative: " + v);
+        validationThreads = v;
+    }
+
+    /**
+     * Get the number of termEntry validation threads.
+     *
+     * @return The current number of threads, zero for inline validation.
+     */
+    public int getValidationThreads()
+    {
+        return validationThreads;
+    }
+
+    /**
+     * Set the grammar caching flag. When set the TBX parser uses the
+     * process wide {@link DTDGrammarPool} so the DTD is not read and
+     * compiled again for every file.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setGrammarCaching(boolean v)
+    {
+        grammarCaching = v;
+    }
+
+    /**
+     * Test the grammar caching flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getGrammarCaching()
+    {
+        return grammarCaching;
+    }
+
+    /**
+     * Set the elide whitespace flag. When set the whitespace the DTD marks
+     * as ignorable, such as the indentation between elements that only
+     * contain other elements, is not added to the document as text nodes.
+     * Text in mixed content is always kept.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setElideWhitespace(boolean v)
+    {
+        elideWhitespace = v;
+    }
+
+    /**
+     * Test the elide whitespace flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getElideWhitespace()
+    {
+        return elideWhitespace;
+    }
+
+    /**
+     * Set the compact tree flag. When set each termEntry is copied to a
+     * read only {@link org.ttt.salt.dom.tbx.TBXTree} once it has been
+     * validated and is then removed from the document, as when streaming.
+     * The tree holds the same termbase in a fraction of the memory.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setCompactTree(boolean v)
+    {
+        compactTree = v;
+    }
+
+    /**
+     * Test the compact tree flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getCompactTree()
+    {
+        return compactTree;
+    }
+
+    /**
+     * Set the term index flag. When set a {@link TermIndex} of the terms of
+     * every termEntry is built while parsing, and for a local file it is
+     * saved next to the file so it can be read with
+     * {@link TermIndex#load} without parsing again.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setTermIndex(boolean v)
+    {
+        termIndex = v;
+    }
+
+    /**
+     * Test the term index flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getTermIndex()
+    {
+        return termIndex;
+    }
+
+    /**
+     * Set the termEntry manifest flag. When set the termEntries of a local
+     * file that passed XCS validation are recorded in a
+     * {@link TermEntryManifest} next to the file, and the next check of the
+     * file only validates the termEntries that changed. Changes are found
+     * by a hash, see {@link TermEntryManifest} for why this must not be
+     * used on untrusted files.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setTermEntryManifest(boolean v)
+    {
+        termEntryManifest = v;
+    }
+
+    /**
+     * Test the termEntry manifest flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getTermEntryManifest()
+    {
+        return termEntryManifest;
+    }
+
+    /**
+     * Set the statistics flag. When set each {@link TBXFile} adds the time
+     * of each phase and the counts of what it parsed to
+     * {@link TBXStatistics#getDefault}.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setStatistics(boolean v)
+    {
+        statistics = v;
+    }
+
+    /**
+     * Test the statistics flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * Set the read buffer size. The TBX file is read this many bytes at a
+     * time and the parser scans its entities in buffers of this size.
+     *
+     * @param v The new size in bytes.
+     */
+    public void setReadBufferSize(int v)
+    {
+        if (v < MIN_READ_BUFFER)
+            throw new IllegalArgumentException("Read buffer size must be at least "
+                    + MIN_READ_BUFFER + ": " + v);
+        readBufferSize = v;
+    }
+
+    /**
+     * Get the read buffer size.
+     *
+     * @return The current size in bytes.
+     */
+    public int getReadBufferSize()
+    {
+        return readBufferSize;
+    }
+
+    /**
+     * Set the map threshold. A local TBX file at least this large is
+     * memory mapped instead of read through a buffer, which saves copying
+     * the file through the Java heap. {@link Long#MAX_VALUE} turns mapping
+     * off.
+     *
+     * @param v The new threshold in bytes.
+     */
+    public void setMapThreshold(long v)
+    {
+        if (v < 0)
+            throw new IllegalArgumentException("Map threshold must not be negative: " + v);
+        mapThreshold = v;
+    }
+
+    /**
+     * Get the map threshold.
+     *
+     * @return The current threshold in bytes.
+     */
+    public long getMapThreshold()
+    {
+        return mapThreshold;
+    }
+
+    /**
+     * Set the error limit. The parse of a file stops as soon as it has this
+     * many errors and warnings, and the file is reported as invalid with
+     * only those. The rest of the file is not read. A limit of 1 stops at
+     * the first problem, which is enough to reject a file.
+     *
+     * @param v The new limit, 0 for no limit.
+     */
+    public void setErrorLimit(int v)
+    {
+        if (v < 0)
+            throw new IllegalArgumentException("Error limit must not be negative: " + v);
+        errorLimit = v;
+    }
+
+    /**
+     * Get the error limit.
+     *
+     * @return The current limit, 0 for no limit.
+     */
+    public int getErrorLimit()
+    {
+        return errorLimit;
+    }
+
+    /**
+     * Set the rule error limit. The parse of a file stops as soon as it
+     * has this many errors of one kind, such as the same XCS rule failing
+     * in many termEntries. Errors are of the same kind when they have the
+     * same {@link Diagnostic#getCode code}.
+     *
+     * @param v The new limit, 0 for no limit.
+     */
+    public void setRuleErrorLimit(int v)
+    {
+        if (v < 0)
+            throw new IllegalArgumentException("Rule error limit must not be negative: " + v);
+        ruleErrorLimit = v;
+    }
+
+    /**
+     * Get the rule error limit.
+     *
+     * @return The current limit, 0 for no limit.
+     */
+    public int getRuleErrorLimit()
+    {
+        return ruleErrorLimit;
+    }
+
 	/**
 	 * Set the custom EntityResolver.
 	 *
@@ -105,6 +435,27 @@ public class Configuration implements Cloneable
 		return customEntityResolver;
 	}
 	
+    /**
+     * Describe the settings that can change the result of a validation.
+     * Settings that only change how fast a file is validated, such as the
+     * number of threads or the read buffer size, are left out, so results
+     * from a {@link ValidationCache} are shared between them.
+     *
+     * @return The settings as a string for use in cache keys.
+     */
+    public String getResultKey()
+    {
+        return "checklang=" + checklang
+            + ";checkeachterm=" + checkeachterm
+            + ";streaming=" + streaming
+            + ";elide=" + elideWhitespace
+            + ";compact=" + compactTree
+            + ";errorlimit=" + errorLimit
+            + ";ruleerrorlimit=" + ruleErrorLimit
+            + ";resolver=" + (customEntityResolver == null
+                    ? "" : customEntityResolver.getClass().getName());
+    }
+
     /** {@inheritDoc} */
     public Object clone()
     {
@@ -0,0 +1,210 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLElementDecl;
+import org.apache.xerces.parsers.XMLGrammarPreparser;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLDTDDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * This is a Xerces grammar pool shared by all TBX and XCS parsers so that
+ * each DTD is read and compiled once per process instead of once per file.
+ * <p>
+ * The DTDs bundled with TBXCheck are compiled when the pool is first used
+ * and are matched by their PUBLIC identifier, since {@link TBXResolver}
+ * always maps those identifiers to the bundled DTD whatever the SYSTEM
+ * identifier is. Any other DTD is added the first time a document uses it
+ * and is matched by its expanded SYSTEM identifier.</p>
+ * <p>
+ * Xerces synchronizes the pool, but a DTD grammar builds the content model
+ * of each element the first time a document uses that element, and two
+ * threads doing so at once corrupt it. Every content model is built when
+ * the grammar is added to the pool so the parsers on several threads that
+ * share it only read it.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class DTDGrammarPool extends XMLGrammarPoolImpl
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Logger for this package. */
+    private static final Logger LOGGER = Logger.getLogger("org.ttt.salt");
+
+    /** The bundled DTDs by PUBLIC identifier. */
+    private static final Map<String, String> BUNDLED = new java.util.LinkedHashMap<String, String>();
+    static
+    {
+        BUNDLED.put("ISO 30042:2008A//DTD TBX core//EN", "/xml/TBXcoreStructV02.dtd");
+        BUNDLED.put("ISO 30042:2008A//DTD TBX XCS//EN", "/xml/tbxxcsdtd.dtd");
+    }
+
+    /** The process wide pool, created on first use. */
+    private static DTDGrammarPool defaultPool;
+
+    /**
+     * Get the process wide pool with the bundled DTDs already compiled.
+     *
+     * @return The shared pool.
+     */
+    public static synchronized DTDGrammarPool getDefault()
+    {
+        if (defaultPool == null)
+        {
+            defaultPool = new DTDGrammarPool();
+            defaultPool.preload();
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Create a new Xerces SAX parser. If caching is requested then the
+     * parser will use the default pool.
+     *
+     * @param cache Use the shared grammar pool.
+     * @return The new parser.
+     */
+    public static XMLReader createParser(boolean cache)
+    {
+        if (cache)
+            return new org.apache.xerces.parsers.SAXParser(new SymbolTable(), getDefault());
+        else
+            return new org.apache.xerces.parsers.SAXParser();
+    }
+
+    /**
+     * Create an empty pool. Use {@link #getDefault} for the shared pool.
+     */
+    DTDGrammarPool()
+    {
+    }
+
+    /**
+     * Compile the bundled DTDs into this pool. A DTD that fails to compile
+     * is logged and will be compiled by each parser as it was before.
+     */
+    void preload()
+    {
+        XMLGrammarPreparser preparser = new XMLGrammarPreparser(new SymbolTable());
+        preparser.registerPreparser(XMLGrammarDescription.XML_DTD, null);
+        for (Map.Entry<String, String> dtd : BUNDLED.entrySet())
+        {
+            InputStream input = getClass().getResourceAsStream(dtd.getValue());
+            if (input == null)
+            {
+                LOGGER.warning("Bundled DTD not found: " + dtd.getValue());
+                continue;
+            }
+            try
+            {
+                XMLInputSource source = new XMLInputSource(dtd.getKey(), dtd.getValue(),
+                        null, input, null);
+                Grammar grammar = preparser.preparseGrammar(XMLGrammarDescription.XML_DTD, source);
+                putGrammar(grammar);
+                LOGGER.fine("Preloaded DTD grammar: " + dtd.getValue());
+            }
+            catch (IOException err)
+            {
+                LOGGER.log(Level.WARNING, "Could not preload DTD: " + dtd.getValue(), err);
+            }
+            finally
+            {
+                try
+                {
+                    input.close();
+                }
+                catch (IOException err)
+                {
+                    LOGGER.log(Level.FINE, "Closing DTD: " + dtd.getValue(), err);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the content models of a DTD grammar before it is shared.
+     *
+     * @param grammar The grammar to add.
+     */
+    public void putGrammar(Grammar grammar)
+    {
+        if (grammar instanceof DTDGrammar)
+            buildContentModels((DTDGrammar) grammar);
+        super.putGrammar(grammar);
+    }
+
+    /**
+     * Build the content model of every element declared in a DTD grammar.
+     * Reading an element declaration builds its content model and keeps it
+     * in the grammar.
+     *
+     * @param grammar The DTD grammar.
+     */
+    static void buildContentModels(DTDGrammar grammar)
+    {
+        XMLElementDecl decl = new XMLElementDecl();
+        for (int i = grammar.getFirstElementDeclIndex(); i >= 0; i = grammar.getNextElementDeclIndex(i))
+            grammar.getElementDecl(i, decl);
+    }
+
+    /** {@inheritDoc} */
+    public boolean equals(XMLGrammarDescription desc1, XMLGrammarDescription desc2)
+    {
+        String pub1 = getBundledPublicId(desc1);
+        String pub2 = getBundledPublicId(desc2);
+        if (pub1 != null || pub2 != null)
+            return pub1 != null && pub1.equals(pub2);
+        return super.equals(desc1, desc2);
+    }
+
+    /** {@inheritDoc} */
+    public int hashCode(XMLGrammarDescription desc)
+    {
+        String pub = getBundledPublicId(desc);
+        if (pub != null)
+            return pub.hashCode();
+        return super.hashCode(desc);
+    }
+
+    /**
+     * @param desc The grammar description.
+     * @return The PUBLIC identifier if the description is for a bundled
+     *  DTD, otherwise null.
+     */
+    private static String getBundledPublicId(XMLGrammarDescription desc)
+    {
+        if (desc instanceof XMLDTDDescription && BUNDLED.containsKey(desc.getPublicId()))
+            return desc.getPublicId();
+        return null;
+    }
+}
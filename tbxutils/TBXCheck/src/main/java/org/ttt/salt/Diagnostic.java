@@ -0,0 +1,329 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.FileNotFoundException;
+import java.net.UnknownHostException;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * One problem found in a TBX file.
+ * <p>
+ * A diagnostic only holds what its message needs: the priority, a code
+ * naming the message, where it is, the termEntry it is in, and the
+ * arguments of the message. It has no stack trace and no reference to the
+ * document, so a file with millions of problems does not keep its
+ * termEntries or millions of stack traces in memory. The message is only
+ * looked up and formatted when it is asked for.</p>
+ * <p>
+ * Diagnostics are ordered by priority and then by the order they were
+ * added to their {@link DiagnosticSink}. A {@link TBXException} made from
+ * a diagnostic gives the same message as the exception it was made
+ * from.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class Diagnostic implements Comparable<Diagnostic>
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Code of an XML parse error, the arguments are line, column, message and embedded message. */
+    public static final String SAX_PARSE = "SAXParseException";
+
+    /** Code of an XML error without a location, the arguments are message and embedded message. */
+    public static final String SAX = "SAXException";
+
+    /** Code of a missing file, the argument is the message. */
+    public static final String FILE_NOT_FOUND = "FileNotFoundException";
+
+    /** Code of an unknown host, the argument is the message. */
+    public static final String UNKNOWN_HOST = "UnknownHostException";
+
+    /** Code of any other exception, the argument is the exception. */
+    public static final String UNKNOWN = "UnknownException";
+
+    /**
+     * Start of the codes of XCS validation errors. The rest of the code is
+     * the message key in the XCSValidationException bundle, and the
+     * arguments are the element, its location, and the details of the
+     * message.
+     */
+    public static final String XCS_PREFIX = "xcs.";
+
+    /** Code of a message that was already formatted, such as one read from a cache. */
+    static final String FORMATTED = "Formatted";
+
+    /** Replaces the language and term of a termEntry without an id. */
+    private static final String NO_CONTEXT = "TODO"; //NOTDONE
+
+    /** Priority of the problem. */
+    private final TBXException.Priority priority;
+
+    /** Names the message. */
+    private final String code;
+
+    /** Line of the problem, or -1 if unknown. */
+    private final int line;
+
+    /** Column of the problem, or -1 if unknown. */
+    private final int column;
+
+    /** Id of the termEntry of the problem, or null. */
+    private final String termEntryId;
+
+    /** Arguments of the message. */
+    private final Object[] args;
+
+    /** Order the diagnostic was added in. */
+    private final long sequence;
+
+    /** An exception of another kind, these are rare so it is kept as it is. */
+    private final Throwable other;
+
+    /**
+     * @param p Priority of the problem.
+     * @param c Names the message.
+     * @param l Line of the problem, or -1 if unknown.
+     * @param col Column of the problem, or -1 if unknown.
+     * @param id Id of the termEntry of the problem, or null.
+     * @param a Arguments of the message.
+     * @param seq Order the diagnostic was added in.
+     * @param o An exception of another kind, or null.
+     */
+    Diagnostic(TBXException.Priority p, String c, int l, int col, String id, Object[] a,
+            long seq, Throwable o)
+    {
+        priority = p;
+        code = c;
+        line = l;
+        column = col;
+        termEntryId = id;
+        args = a;
+        sequence = seq;
+        other = o;
+    }
+
+    /**
+     * Describe an exception.
+     *
+     * @param p Priority of the problem.
+     * @param cause The exception.
+     * @param seq Order the diagnostic is added in.
+     * @return The diagnostic of the exception.
+     */
+    static Diagnostic of(TBXException.Priority p, Throwable cause, long seq)
+    {
+        if (cause instanceof XCSValidationException)
+            return ((XCSValidationException) cause).toDiagnostic(p, seq);
+        if (cause instanceof SAXParseException)
+        {
+            SAXParseException err = (SAXParseException) cause;
+            Object[] a = {err.getLineNumber(), err.getColumnNumber(),
+                err.getLocalizedMessage(), embedded(err)};
+            return new Diagnostic(p, SAX_PARSE, err.getLineNumber(), err.getColumnNumber(),
+                    null, a, seq, null);
+        }
+        if (cause instanceof SAXException)
+        {
+            SAXException err = (SAXException) cause;
+            Object[] a = {err.getLocalizedMessage(), embedded(err)};
+            return new Diagnostic(p, SAX, -1, -1, null, a, seq, null);
+        }
+        if (cause instanceof FileNotFoundException)
+            return new Diagnostic(p, FILE_NOT_FOUND, -1, -1, null,
+                    new Object[] {cause.getLocalizedMessage()}, seq, null);
+        if (cause instanceof UnknownHostException)
+            return new Diagnostic(p, UNKNOWN_HOST, -1, -1, null,
+                    new Object[] {cause.getLocalizedMessage()}, seq, null);
+        return new Diagnostic(p, UNKNOWN, -1, -1, null, new Object[] {cause}, seq, cause);
+    }
+
+    /**
+     * @param err A SAX exception.
+     * @return The message of the exception it wraps, or an empty string.
+     */
+    private static String embedded(SAXException err)
+    {
+        return err.getException() == null ? "" : err.getException().getLocalizedMessage();
+    }
+
+    /**
+     * @param seq Order the diagnostic is added in.
+     * @return This diagnostic added in another order.
+     */
+    Diagnostic withSequence(long seq)
+    {
+        return new Diagnostic(priority, code, line, column, termEntryId, args, seq, other);
+    }
+
+    /**
+     * @return The priority of the problem.
+     */
+    public TBXException.Priority getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * @return The code naming the message, one of the codes of this class.
+     */
+    public String getCode()
+    {
+        return code;
+    }
+
+    /**
+     * @return Line of the problem, or -1 if unknown.
+     */
+    public int getLine()
+    {
+        return line;
+    }
+
+    /**
+     * @return Column of the problem, or -1 if unknown.
+     */
+    public int getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * @return Id of the termEntry of the problem, or null if unknown.
+     */
+    public String getTermEntryId()
+    {
+        return termEntryId;
+    }
+
+    /**
+     * @return The arguments of the message.
+     */
+    public Object[] getArguments()
+    {
+        return args.clone();
+    }
+
+    /**
+     * @return Order the diagnostic was added to its sink.
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @return The message in the default locale.
+     */
+    public String getMessage()
+    {
+        return getMessage(Locale.getDefault());
+    }
+
+    /**
+     * Format the message, this is the message of the {@link TBXException}
+     * of the problem.
+     *
+     * @param locale The locale of the message.
+     * @return The message.
+     */
+    public String getMessage(Locale locale)
+    {
+        if (code.equals(FORMATTED))
+            return (String) args[1];
+        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.TBXException", locale);
+        String ret = priority.getLabel(locale);
+        if (code.startsWith(XCS_PREFIX))
+            return ret + MessageFormat.format(bundle.getString("XCSValidationException"),
+                    getXCSMessage(locale));
+        return ret + MessageFormat.format(bundle.getString(code), args);
+    }
+
+    /**
+     * Format the message of an XCS validation error, this is the message
+     * of the {@link XCSValidationException}.
+     *
+     * @param locale The locale of the message.
+     * @return The message.
+     */
+    String getXCSMessage(Locale locale)
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.XCSValidationException", locale);
+        String context;
+        if (termEntryId == null)
+            context = MessageFormat.format(bundle.getString("NoTermEntry"),
+                    NO_CONTEXT, NO_CONTEXT, args[0], args[1]);
+        else
+            context = MessageFormat.format(bundle.getString("TermEntry"),
+                    termEntryId, null, args[0], args[1]);
+        Object[] detail = new Object[args.length - 1];
+        detail[0] = context;
+        System.arraycopy(args, 2, detail, 1, args.length - 2);
+        return MessageFormat.format(bundle.getString(code.substring(XCS_PREFIX.length())), detail);
+        //CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * Make an exception like the one this describes. Only the kind and the
+     * message of the exception are kept, so it has no stack trace of the
+     * problem and an XCS validation error has no element.
+     *
+     * @return The exception.
+     */
+    Throwable toCause()
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        if (other != null)
+            return other;
+        if (code.equals(SAX_PARSE))
+            return new SAXParseException((String) args[2], null, null, line, column);
+        if (code.equals(SAX))
+            return new SAXException((String) args[0]);
+        if (code.equals(FILE_NOT_FOUND))
+            return new FileNotFoundException((String) args[0]);
+        if (code.equals(UNKNOWN_HOST))
+            return new UnknownHostException((String) args[0]);
+        if (code.startsWith(XCS_PREFIX))
+            return XCSValidationException.restore(this);
+        return null;
+        //CHECKSTYLE: MagicNumber ON
+    }
+
+    /** {@inheritDoc} */
+    public int compareTo(Diagnostic o)
+    {
+        int ret = priority.compareTo(o.priority);
+        if (ret == 0)
+            ret = sequence < o.sequence ? -1 : sequence == o.sequence ? 0 : 1;
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    public String toString()
+    {
+        return getMessage();
+    }
+}
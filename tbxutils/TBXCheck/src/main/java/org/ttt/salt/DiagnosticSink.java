@@ -0,0 +1,162 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the {@link Diagnostic}s of a TBX file.
+ * <p>
+ * Any number of threads may add to a sink at the same time without
+ * locking. Each diagnostic is numbered as it is added, so the diagnostics
+ * are always read back in priority order and then in the order they were
+ * added, however many threads added them.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class DiagnosticSink
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** The diagnostics in the order they were added. */
+    private final ConcurrentLinkedQueue<Diagnostic> diagnostics = new ConcurrentLinkedQueue<Diagnostic>();
+
+    /** Number of the next diagnostic. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** Number of diagnostics of each priority. */
+    private final AtomicLongArray counts = new AtomicLongArray(TBXException.Priority.values().length);
+
+    /**
+     * Add a problem described by an exception. Only what its message needs
+     * is kept, not the exception.
+     *
+     * @param p The priority of the problem.
+     * @param cause The exception.
+     * @return The diagnostic added.
+     */
+    public Diagnostic add(TBXException.Priority p, Throwable cause)
+    {
+        return put(Diagnostic.of(p, cause, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Add the problem of an exception.
+     *
+     * @param err The exception.
+     * @return The diagnostic added.
+     */
+    public Diagnostic add(TBXException err)
+    {
+        return add(err.getDiagnostic());
+    }
+
+    /**
+     * Add a diagnostic after the ones already in this sink.
+     *
+     * @param d The diagnostic.
+     * @return The diagnostic as numbered in this sink.
+     */
+    public Diagnostic add(Diagnostic d)
+    {
+        return put(d.withSequence(sequence.getAndIncrement()));
+    }
+
+    /**
+     * Add the diagnostics of another sink, in their order, after the ones
+     * already in this sink.
+     *
+     * @param other The other sink.
+     */
+    public void addAll(DiagnosticSink other)
+    {
+        for (Diagnostic d : other.getDiagnostics())
+            add(d);
+    }
+
+    /**
+     * @param d A numbered diagnostic.
+     * @return The diagnostic.
+     */
+    private Diagnostic put(Diagnostic d)
+    {
+        diagnostics.add(d);
+        counts.incrementAndGet(d.getPriority().ordinal());
+        return d;
+    }
+
+    /**
+     * @return The diagnostics in priority order and then the order added.
+     */
+    public List<Diagnostic> getDiagnostics()
+    {
+        Diagnostic[] ret = diagnostics.toArray(new Diagnostic[0]);
+        Arrays.sort(ret);
+        return Arrays.asList(ret);
+    }
+
+    /**
+     * Get the diagnostics as exceptions. The exceptions have the same
+     * messages as the exceptions the diagnostics were made from.
+     *
+     * @return The exceptions in priority order and then the order added.
+     */
+    public List<TBXException> toExceptions()
+    {
+        List<Diagnostic> all = getDiagnostics();
+        List<TBXException> ret = new java.util.ArrayList<TBXException>(all.size());
+        for (Diagnostic d : all)
+            ret.add(new TBXException(d));
+        return ret;
+    }
+
+    /**
+     * @param p A priority.
+     * @return Number of diagnostics of the priority.
+     */
+    public long count(TBXException.Priority p)
+    {
+        return counts.get(p.ordinal());
+    }
+
+    /**
+     * @return Number of diagnostics.
+     */
+    public long size()
+    {
+        long ret = 0;
+        for (int i = 0; i < counts.length(); i++)
+            ret += counts.get(i);
+        return ret;
+    }
+
+    /**
+     * @return There are no diagnostics.
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+}
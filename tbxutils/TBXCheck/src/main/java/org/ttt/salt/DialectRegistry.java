@@ -0,0 +1,471 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Logger;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import com.helger.commons.error.IError;
+import com.helger.commons.io.resource.URLResource;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.pure.bound.IPSBoundSchema;
+import com.helger.schematron.pure.errorhandler.CollectingPSErrorHandler;
+import com.helger.schematron.pure.validation.SchematronValidationException;
+import com.thaiopensource.relaxng.jaxp.XMLSyntaxSchemaFactory;
+import org.oclc.purl.dsdl.svrl.SchematronOutputType;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * This holds the compiled RELAX NG and Schematron schemas for each TBX v3
+ * dialect so that they are compiled once and then shared by every file
+ * validated against that dialect.
+ * <p>
+ * The TBX-Core, TBX-Min, and TBX-Basic schemas are bundled. Any other
+ * dialect <em>name</em> is looked up as <code>name.rng</code> and
+ * <code>name.sch</code> in the external schema directory. The default
+ * registry uses the directory named by the <code>org.ttt.salt.schemas</code>
+ * system property, or else <code>External_Schemas</code> in the directory
+ * that holds the TBXCheck jar or classes.</p>
+ * <p>
+ * A {@link Dialect} may be used from any number of threads. The RELAX NG
+ * schema is immutable and each validation gets its own validator. The
+ * compiled Schematron rules hold XPath expressions that may not be shared,
+ * so each dialect keeps a pool of compiled rule sets and compiles another
+ * only when all of them are in use.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class DialectRegistry
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** TBX-Core dialect name. */
+    public static final String TBX_CORE = "TBX-Core";
+
+    /** TBX-Min dialect name. */
+    public static final String TBX_MIN = "TBX-Min";
+
+    /** TBX-Basic dialect name. */
+    public static final String TBX_BASIC = "TBX-Basic";
+
+    /** Name of the directory searched for custom dialects by default. */
+    public static final String EXTERNAL_SCHEMAS = "External_Schemas";
+
+    /** System property that names the directory searched for custom dialects. */
+    public static final String SCHEMAS_PROPERTY = "org.ttt.salt.schemas";
+
+    /** Logger for this package. */
+    private static final Logger LOGGER = Logger.getLogger("org.ttt.salt");
+
+    /** Bundled RELAX NG and Schematron resources for each dialect. */
+    private static final Map<String, String[]> BUNDLED = new java.util.HashMap<String, String[]>();
+    static
+    {
+        BUNDLED.put(TBX_CORE, new String[] {
+            "/xml/TBX-Core_dialect-master/Schemas/TBXcoreStructV03_TBX-Core_integrated.rng",
+            "/xml/TBX-Core_dialect-master/Schemas/TBX-Core.sch"});
+        BUNDLED.put(TBX_MIN, new String[] {
+            "/xml/TBX-Min_dialect-master/DCA/TBXcoreStructV03_TBX-Min_integrated.rng",
+            "/xml/TBX-Min_dialect-master/DCA/TBX-Min_DCA.sch"});
+        BUNDLED.put(TBX_BASIC, new String[] {
+            "/xml/TBX-Basic_dialect-master/DCA/TBXcoreStructV03_TBX-Basic_integrated.rng",
+            "/xml/TBX-Basic_dialect-master/DCA/TBX-Basic_DCA.sch"});
+    }
+
+    /** The process wide registry. */
+    private static volatile DialectRegistry defaultRegistry;
+
+    /**
+     * The compiled schemas for one TBX v3 dialect.
+     *
+     * @author Lance Finn Helsten
+     * @version $Id$
+     */
+    public static final class Dialect
+    {
+        /** The dialect name. */
+        private final String name;
+
+        /** Location of the RELAX NG schema. */
+        private final URL schemaURL;
+
+        /** Location of the Schematron rules. */
+        private final URL schematronURL;
+
+        /** The compiled RELAX NG schema. */
+        private final Schema schema;
+
+        /** Why the Schematron rules could not be compiled, null if they were. */
+        private final String schematronError;
+
+        /** Compiled Schematron rule sets that are not in use. */
+        private final Queue<IPSBoundSchema> schematrons
+                = new java.util.concurrent.ConcurrentLinkedQueue<IPSBoundSchema>();
+
+        /**
+         * @param n The dialect name.
+         * @param rng Location of the RELAX NG schema.
+         * @param sch Location of the Schematron rules.
+         * @throws SAXException The RELAX NG schema could not be compiled.
+         */
+        private Dialect(String n, URL rng, URL sch) throws SAXException
+        {
+            name = n;
+            schemaURL = rng;
+            schematronURL = sch;
+            schema = new XMLSyntaxSchemaFactory().newSchema(new StreamSource(rng.toExternalForm()));
+            String error = null;
+            try
+            {
+                schematrons.add(compileSchematron());
+            }
+            catch (IllegalArgumentException err)
+            {   //RELAX NG validation is still available
+                LOGGER.warning(err.getMessage());
+                error = err.getMessage();
+            }
+            schematronError = error;
+        }
+
+        /**
+         * @return The dialect name.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return Location of the RELAX NG schema.
+         */
+        public URL getSchemaURL()
+        {
+            return schemaURL;
+        }
+
+        /**
+         * @return Location of the Schematron rules.
+         */
+        public URL getSchematronURL()
+        {
+            return schematronURL;
+        }
+
+        /**
+         * @return The compiled RELAX NG schema.
+         */
+        public Schema getSchema()
+        {
+            return schema;
+        }
+
+        /**
+         * Create a validator for one RELAX NG validation. Validators must
+         * not be shared between threads.
+         *
+         * @return A new validator for the RELAX NG schema.
+         */
+        public Validator newValidator()
+        {
+            return schema.newValidator();
+        }
+
+        /**
+         * Apply the Schematron rules to a parsed TBX document.
+         *
+         * @param doc The parsed TBX document.
+         * @param baseURI The location of the document, may be null.
+         * @return The Schematron validation report.
+         * @throws SchematronValidationException The rules could not be applied.
+         * @throws IllegalArgumentException The rules could not be compiled.
+         */
+        public SchematronOutputType validateSchematron(Node doc, String baseURI)
+            throws SchematronValidationException
+        {
+            if (schematronError != null)
+                throw new IllegalArgumentException(schematronError);
+            IPSBoundSchema bound = schematrons.poll();
+            if (bound == null)
+                bound = compileSchematron();
+            try
+            {
+                return bound.validateComplete(doc, baseURI);
+            }
+            finally
+            {
+                schematrons.offer(bound);
+            }
+        }
+
+        /**
+         * @return A newly compiled Schematron rule set.
+         */
+        private IPSBoundSchema compileSchematron()
+        {
+            CollectingPSErrorHandler errors = new CollectingPSErrorHandler();
+            SchematronResourcePure res = new SchematronResourcePure(new URLResource(schematronURL));
+            res.setUseCache(false);
+            res.setErrorHandler(errors);
+            if (!res.isValidSchematron())
+            {
+                String msg = "Invalid Schematron: " + schematronURL;
+                if (!errors.getAllErrors().isEmpty())
+                {
+                    IError first = errors.getAllErrors().getFirst();
+                    msg += ": " + first.getErrorText(Locale.getDefault());
+                    if (first.hasLinkedException())
+                        msg += " " + first.getLinkedExceptionMessage();
+                }
+                throw new IllegalArgumentException(msg);
+            }
+            LOGGER.fine("Compiled Schematron: " + schematronURL);
+            return res.getOrCreateBoundSchema();
+        }
+    }
+
+    /** Directory searched for custom dialects. */
+    private final File externalSchemas;
+
+    /**
+     * The dialects requested so far. Each one is compiled by the first
+     * thread that asks for it while other threads asking for the same
+     * dialect wait for it, and a failed compile is tried again on the next
+     * request.
+     */
+    private final ConcurrentMap<String, FutureTask<Dialect>> dialects
+            = new java.util.concurrent.ConcurrentHashMap<String, FutureTask<Dialect>>();
+
+    /**
+     * Get the process wide registry.
+     *
+     * @return The shared registry.
+     */
+    public static DialectRegistry getDefault()
+    {
+        DialectRegistry ret = defaultRegistry;
+        if (ret == null)
+        {
+            synchronized (DialectRegistry.class)
+            {
+                if (defaultRegistry == null)
+                    defaultRegistry = new DialectRegistry(defaultExternalSchemas());
+                ret = defaultRegistry;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Replace the process wide registry, such as when the external schema
+     * directory is given on the command line. Dialects already compiled by
+     * the previous registry are not carried over.
+     *
+     * @param registry The new shared registry.
+     */
+    public static void setDefault(DialectRegistry registry)
+    {
+        if (registry == null)
+            throw new NullPointerException("registry");
+        defaultRegistry = registry;
+    }
+
+    /**
+     * Find the external schema directory of the default registry.
+     *
+     * @return The directory named by {@link #SCHEMAS_PROPERTY}, else
+     *  {@link #EXTERNAL_SCHEMAS} beside the jar or classes directory this
+     *  class was loaded from, else {@link #EXTERNAL_SCHEMAS} in the working
+     *  directory.
+     */
+    static File defaultExternalSchemas()
+    {
+        String prop = System.getProperty(SCHEMAS_PROPERTY);
+        if (prop != null && prop.length() > 0)
+            return new File(prop);
+        try
+        {
+            java.security.CodeSource src = DialectRegistry.class.getProtectionDomain().getCodeSource();
+            if (src != null && src.getLocation() != null
+                    && "file".equals(src.getLocation().getProtocol()))
+            {
+                File base = new File(src.getLocation().toURI());
+                return new File(base.isDirectory() ? base : base.getParentFile(), EXTERNAL_SCHEMAS);
+            }
+        }
+        catch (java.net.URISyntaxException err)
+        {
+            LOGGER.warning("Invalid code source: " + err.getMessage());
+        }
+        catch (SecurityException err)
+        {
+            LOGGER.warning("Code source not available: " + err.getMessage());
+        }
+        return new File(EXTERNAL_SCHEMAS);
+    }
+
+    /**
+     * @param external Directory searched for custom dialect schemas.
+     */
+    public DialectRegistry(File external)
+    {
+        externalSchemas = external;
+    }
+
+    /**
+     * @return Directory searched for custom dialect schemas.
+     */
+    public File getExternalSchemas()
+    {
+        return externalSchemas;
+    }
+
+    /**
+     * Is this dialect bundled with TBXCheck.
+     *
+     * @param name The dialect name.
+     * @return True if the schemas for the dialect are bundled.
+     */
+    public static boolean isBundled(String name)
+    {
+        return BUNDLED.containsKey(name);
+    }
+
+    /**
+     * Get the compiled schemas for a dialect, compiling them the first time
+     * the dialect is requested. A compile only blocks other requests for the
+     * same dialect.
+     *
+     * @param name The dialect name (e.g. TBX-Basic).
+     * @return The compiled dialect.
+     * @throws FileNotFoundException The schemas for the dialect could not be
+     *  found.
+     * @throws SAXException The RELAX NG schema could not be compiled.
+     */
+    public Dialect getDialect(final String name) throws FileNotFoundException, SAXException
+    {
+        FutureTask<Dialect> task = dialects.get(name);
+        if (task == null)
+        {
+            FutureTask<Dialect> created = new FutureTask<Dialect>(new Callable<Dialect>()
+                {
+                    public Dialect call() throws FileNotFoundException, SAXException
+                    {
+                        return compile(name);
+                    }
+                });
+            task = dialects.putIfAbsent(name, created);
+            if (task == null)
+            {
+                task = created;
+                task.run();
+            }
+        }
+        try
+        {
+            return task.get();
+        }
+        catch (ExecutionException err)
+        {
+            dialects.remove(name, task);
+            Throwable cause = err.getCause();
+            if (cause instanceof FileNotFoundException)
+                throw (FileNotFoundException) cause;
+            if (cause instanceof SAXException)
+                throw (SAXException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        catch (InterruptedException err)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted compiling dialect " + name, err);
+        }
+    }
+
+    /**
+     * Find and compile the schemas for a dialect.
+     *
+     * @param name The dialect name.
+     * @return The compiled dialect.
+     * @throws FileNotFoundException The schemas for the dialect could not be
+     *  found.
+     * @throws SAXException The RELAX NG schema could not be compiled.
+     */
+    private Dialect compile(String name) throws FileNotFoundException, SAXException
+    {
+        URL rng;
+        URL sch;
+        if (BUNDLED.containsKey(name))
+        {
+            rng = getClass().getResource(BUNDLED.get(name)[0]);
+            sch = getClass().getResource(BUNDLED.get(name)[1]);
+        }
+        else if (!name.matches("[\\w-]+"))
+        {
+            throw new FileNotFoundException("Invalid dialect name: " + name);
+        }
+        else
+        {
+            rng = findExternal(name + ".rng");
+            sch = findExternal(name + ".sch");
+        }
+        if (rng == null || sch == null)
+            throw new FileNotFoundException("Schemas for dialect not found: " + name);
+        LOGGER.info("Compiling dialect " + name + ": " + rng);
+        return new Dialect(name, rng, sch);
+    }
+
+    /**
+     * @param fname The schema file name.
+     * @return The location of the schema or null if it does not exist.
+     */
+    private URL findExternal(String fname)
+    {
+        File file = new File(externalSchemas, fname);
+        if (!file.isFile())
+            return null;
+        try
+        {
+            return file.toURI().toURL();
+        }
+        catch (IOException err)
+        {
+            LOGGER.warning("Invalid external schema path: " + file);
+            return null;
+        }
+    }
+}
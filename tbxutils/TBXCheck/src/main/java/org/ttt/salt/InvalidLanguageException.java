@@ -32,6 +32,9 @@ public class InvalidLanguageException extends XCSValidationException
     
     /** SCM information. */
     public static final String RCSID = "$Id$";
+
+    /** Key of the message in the XCSValidationException bundle. */
+    static final String CODE = "InvalidLanguage";
     
     /**
      * @param elem The XML element this exception occured on.
@@ -41,21 +44,30 @@ public class InvalidLanguageException extends XCSValidationException
         super(elem);
     }
     
+    /**
+     * Restore an exception from its diagnostic, it has no element.
+     *
+     * @param d The diagnostic of the exception.
+     */
+    InvalidLanguageException(Diagnostic d)
+    {
+        super(d);
+    }
+
+    /** {@inheritDoc} */
+    protected String getCode()
+    {
+        return CODE;
+    }
+
     /** {@inheritDoc} */
-    public String getMessage()
+    protected Object[] getDetails()
     {
         String lang = null;
         if (element().hasAttribute("xml:lang"))
             lang = element().getAttribute("xml:lang");
         else if (element().hasAttribute("lang"))
             lang = element().getAttribute("lang");
-        return "Invalid language for tag: " + lang + " at " + buildContext();
-    }
-
-    /** {@inheritDoc} */
-    public String getLocalizedMessage()
-    {
-        //TODO--localize the message
-        return getMessage();
+        return new Object[] {lang};
     }
 }
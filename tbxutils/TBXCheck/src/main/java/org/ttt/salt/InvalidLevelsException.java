@@ -32,6 +32,9 @@ public class InvalidLevelsException extends XCSValidationException
     
     /** SCM information. */
     public static final String RCSID = "$Id$";
+
+    /** Key of the message in the XCSValidationException bundle. */
+    static final String CODE = "InvalidLevels";
     
     /**
      * @param elem The XML element this exception occured on.
@@ -41,16 +44,19 @@ public class InvalidLevelsException extends XCSValidationException
         super(elem);
     }
     
-    /** {@inheritDoc} */
-    public String getMessage()
+    /**
+     * Restore an exception from its diagnostic, it has no element.
+     *
+     * @param d The diagnostic of the exception.
+     */
+    InvalidLevelsException(Diagnostic d)
     {
-        return "Invalid level error at " + buildContext();
+        super(d);
     }
 
     /** {@inheritDoc} */
-    public String getLocalizedMessage()
+    protected String getCode()
     {
-        //TODO--localize the message
-        return getMessage();
+        return CODE;
     }
 }
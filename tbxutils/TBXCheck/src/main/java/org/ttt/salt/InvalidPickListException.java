@@ -32,6 +32,9 @@ public class InvalidPickListException extends XCSValidationException
     
     /** SCM information. */
     public static final String RCSID = "$Id$";
+
+    /** Key of the message in the XCSValidationException bundle. */
+    static final String CODE = "InvalidPickList";
     
     /** */
     private final String pickvalue;
@@ -46,16 +49,26 @@ public class InvalidPickListException extends XCSValidationException
         pickvalue = pv;
     }
     
+    /**
+     * Restore an exception from its diagnostic, it has no element.
+     *
+     * @param d The diagnostic of the exception.
+     */
+    InvalidPickListException(Diagnostic d)
+    {
+        super(d);
+        pickvalue = null;
+    }
+
     /** {@inheritDoc} */
-    public String getMessage()
+    protected String getCode()
     {
-        return "Invalid picklist entry: Value=\"" + pickvalue + "\" in " + buildContext();
+        return CODE;
     }
 
     /** {@inheritDoc} */
-    public String getLocalizedMessage()
+    protected Object[] getDetails()
     {
-        //TODO--localize the message
-        return getMessage();
+        return new Object[] {pickvalue};
     }
 }
@@ -32,6 +32,9 @@ public class InvalidSpecificationException extends XCSValidationException
     
     /** SCM information. */
     public static final String RCSID = "$Id$";
+
+    /** Key of the message in the XCSValidationException bundle. */
+    static final String CODE = "InvalidSpecification";
     
     /**
      * @param elem The XML element this exception occured on.
@@ -41,16 +44,19 @@ public class InvalidSpecificationException extends XCSValidationException
         super(elem);
     }
     
-    /** {@inheritDoc} */
-    public String getMessage()
+    /**
+     * Restore an exception from its diagnostic, it has no element.
+     *
+     * @param d The diagnostic of the exception.
+     */
+    InvalidSpecificationException(Diagnostic d)
     {
-        return "Invalid specification at " + buildContext();
+        super(d);
     }
 
     /** {@inheritDoc} */
-    public String getLocalizedMessage()
+    protected String getCode()
     {
-        //TODO--localize the message
-        return getMessage();
+        return CODE;
     }
 }
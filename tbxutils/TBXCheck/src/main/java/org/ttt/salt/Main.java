@@ -20,8 +20,12 @@ package org.ttt.salt;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.text.MessageFormat;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.Iterator;
 import java.util.ListIterator;
@@ -29,6 +33,11 @@ import java.util.ResourceBundle;
 import java.util.Locale;
 import java.util.Calendar;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -57,11 +66,42 @@ public final class Main
 
     /** Long options. */
     private static final String[] LONG_OPTIONS = {
-            "nolang",
+            "nolang", "stream", "index", "incremental", "stats", "failfast", "elide",
             "help", "version", "environment",
-            "lang=", "country=", "variant=", "loglevel="
+            "lang=", "country=", "variant=", "loglevel=", "jobs=", "xcsjobs=",
+            "maxerrors=", "maxrule=",
+            "cache=", "cachesize=", "cacheage=", "schemas="
         };
 
+    /** First argument that selects TBX v3 batch validation. */
+    private static final String V3_COMMAND = "v3";
+
+    /** First argument that selects writing a synthetic termbase. */
+    private static final String GENERATE_COMMAND = "generate";
+
+    /** Long options of the generate command. */
+    private static final String[] GENERATE_OPTIONS = {
+            "format=", "entries=", "languages=", "terms=", "categories=", "errors=", "seed="
+        };
+
+    /** Exit status when every file is valid. */
+    private static final int EXIT_VALID = 0;
+
+    /** Exit status when at least one file is invalid. */
+    private static final int EXIT_INVALID = 1;
+
+    /** Exit status when at least one file could not be validated. */
+    private static final int EXIT_ERROR = 2;
+
+    /** Bytes in a megabyte for the --cachesize option. */
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /** Milliseconds in a day for the --cacheage option. */
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    /** Files found when a directory is given for TBX v3 validation. */
+    private static final Pattern TBX_FILE = Pattern.compile(".+\\.(tbx|TBX|xml|XML)");
+
     /** Main logger for this class. */
     private static final Logger LOGGER;
 
@@ -131,6 +171,46 @@ public final class Main
 
     /** Parsed options. */
     private final GetOpt options = new GetOpt();
+
+    /** Number of files named by the last {@link #checkFiles} call. */
+    private int countPaths;
+
+    /** Results of earlier runs, null unless --cache is given. */
+    private ValidationCache cache;
+
+    /**
+     * One kind of validation run over a batch of files.
+     *
+     * @param <T> The result of validating one file.
+     */
+    private interface BatchTask<T>
+    {
+        /**
+         * Validate a file, this is called on a worker thread.
+         *
+         * @param file The file to validate.
+         * @return The validation result.
+         * @throws Exception The file could not be validated.
+         */
+        T validate(File file) throws Exception;
+
+        /**
+         * Report the result of a validation in file order.
+         *
+         * @param file The file that was validated.
+         * @param result The validation result.
+         * @throws IOException Any I/O exceptions that occur.
+         */
+        void report(File file, T result) throws IOException;
+
+        /**
+         * Report a file that could not be validated in file order.
+         *
+         * @param file The file that failed.
+         * @param err Why validation failed.
+         */
+        void failed(File file, Throwable err);
+    }
     
     /**
      * Construct single instance of Main.
@@ -236,9 +316,44 @@ public final class Main
         
         checkSystem();
         initSystem();
+        if (options.containsOption("--cache"))
+            cache = new ValidationCache(new File(options.getParameter("--cache")));
+        if (options.containsOption("--schemas"))
+            DialectRegistry.setDefault(new DialectRegistry(new File(options.getParameter("--schemas"))));
         List<String> paths = java.util.Arrays.asList(options.getArgs());
-        List<File> files = checkFiles(paths);
+        if (!paths.isEmpty() && paths.get(0).equals(GENERATE_COMMAND))
+        {
+            generate(paths.subList(1, paths.size()));
+            return;
+        }
+        if (!paths.isEmpty() && paths.get(0).equals(V3_COMMAND))
+        {
+            List<File> files = checkFiles(paths.subList(1, paths.size()), true);
+            int status = processV3Files(files);
+            if (files.size() < countPaths)
+                status = EXIT_ERROR;
+            finishCache();
+            System.exit(status);
+        }
+        List<File> files = checkFiles(paths, false);
         processFiles(files);
+        finishCache();
+    }
+
+    /**
+     * Print how many results came from the cache to standard error and
+     * prune the cache to the --cachesize and --cacheage limits.
+     */
+    private void finishCache()
+    {
+        if (cache == null)
+            return;
+        long maxBytes = Long.parseLong(options.getParameter("--cachesize", "0")) * MEGABYTE;
+        long maxAge = Long.parseLong(options.getParameter("--cacheage", "0")) * DAY;
+        int pruned = maxBytes > 0 || maxAge > 0 ? cache.prune(maxBytes, maxAge) : 0;
+        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
+        Object[] args = {cache.getHits(), cache.getMisses(), pruned, cache.getDirectory()};
+        System.err.println(MessageFormat.format(bundle.getString("CacheSummary"), args));
     }
 
     /**
@@ -253,18 +368,77 @@ public final class Main
     {
     }
 
+    /**
+     * Write a synthetic termbase to the file given or to standard output,
+     * then print what was written to standard error.
+     *
+     * @param args The generate command options and optional file.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    private void generate(List<String> args) throws IOException
+    {
+        GetOpt opts = new GetOpt();
+        opts.parseArgs(args.toArray(new String[args.size()]), "", GENERATE_OPTIONS);
+        if (opts.getArgs().length > 1)
+            throw new IllegalArgumentException("Only one output file may be given.");
+        TermbaseGenerator gen = new TermbaseGenerator(
+                TermbaseGenerator.Format.forName(opts.getParameter("--format", "v2")));
+        if (opts.containsOption("--entries"))
+            gen.setEntries(Long.parseLong(opts.getParameter("--entries")));
+        if (opts.containsOption("--languages"))
+            gen.setLanguages(Integer.parseInt(opts.getParameter("--languages")));
+        if (opts.containsOption("--terms"))
+            gen.setTerms(Integer.parseInt(opts.getParameter("--terms")));
+        if (opts.containsOption("--categories"))
+            gen.setCategoryRate(Double.parseDouble(opts.getParameter("--categories")));
+        if (opts.containsOption("--errors"))
+            gen.setErrorRate(Double.parseDouble(opts.getParameter("--errors")));
+        if (opts.containsOption("--seed"))
+            gen.setSeed(Long.parseLong(opts.getParameter("--seed")));
+
+        if (opts.getArgs().length == 0)
+        {
+            gen.write(System.out);
+        }
+        else
+        {
+            OutputStream out = new FileOutputStream(opts.getArgs()[0]);
+            try
+            {
+                gen.write(out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
+        Object[] msgargs = {gen.getEntries(), gen.getViolations(),
+            gen.getViolations(TermbaseGenerator.Violation.XCS),
+            gen.getViolations(TermbaseGenerator.Violation.RNG),
+            gen.getViolations(TermbaseGenerator.Violation.SCHEMATRON)};
+        System.err.println(MessageFormat.format(bundle.getString("GenerateSummary"), msgargs));
+    }
+
     /**
      * Check the list of paths to ensure they are valid and then return a
      * list of {@link java.io.File} objects for further processing.
+     * <p>
+     * For TBX v3 batches each directory is replaced by the TBX and XML files
+     * under it, and problems are printed to standard error so that standard
+     * output only holds results.</p>
      *
      * @param files List of file paths to check for access and existence.
+     * @param v3 Expand directories and print problems to standard error.
      * @return List of {@link java.io.File} objects.
      * @exception IOException Any unhandled IO Exceptions.
      */
-    private List<File> checkFiles(List<String> files) throws IOException
+    private List<File> checkFiles(List<String> files, boolean v3) throws IOException
     {
         ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
+        java.io.PrintStream out = v3 ? System.err : System.out;
         List<File> ret = new java.util.ArrayList<File>();
+        countPaths = 0;
         ListIterator<String> paths = files.listIterator();
         while (paths.hasNext())
         {
@@ -280,20 +454,28 @@ public final class Main
             }
 
             Object[] args = {file};
+            if (v3 && file.isDirectory())
+            {
+                int before = ret.size();
+                collectFiles(file, ret);
+                countPaths += ret.size() - before;
+                continue;
+            }
+            countPaths++;
             if (!file.exists())
             {
                 String msg = MessageFormat.format(bundle.getString("PathMissing"), args);
-                System.out.println(msg);
+                out.println(msg);
             }
             else if (!file.isFile())
             {
                 String msg = MessageFormat.format(bundle.getString("PathNotNormalFile"), args);
-                System.out.println(msg);
+                out.println(msg);
             }
             else if (!file.canRead())
             {
                 String msg = MessageFormat.format(bundle.getString("PathSecurityViolation"), args);
-                System.out.println(msg);
+                out.println(msg);
             }
             else
             {
@@ -303,46 +485,412 @@ public final class Main
         return ret;
     }
 
+    /**
+     * Add every readable TBX or XML file under a directory in name order.
+     *
+     * @param dir The directory to search.
+     * @param ret The list the files are added to.
+     */
+    private void collectFiles(File dir, List<File> ret)
+    {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        java.util.Arrays.sort(children);
+        for (File child : children)
+        {
+            if (child.isDirectory())
+                collectFiles(child, ret);
+            else if (child.canRead() && TBX_FILE.matcher(child.getName()).matches())
+                ret.add(child);
+        }
+    }
+
     /**
      * Process each file in the TBX system for validity.
+     * <p>
+     * The files are validated on a pool of <code>--jobs</code> worker
+     * threads (one by default). Results are always printed in the order the
+     * files were given, and only a small window of files is allowed to run
+     * ahead of the one being printed so completed documents do not pile up
+     * in memory.</p>
      *
      * @param files List of {@link java.io.File} objects to process.
      * @throws IOException Any I/O exceptions that occur.
      */
     private void processFiles(List<File> files) throws IOException, SAXException
     {
-        Configuration config = new Configuration();
+        final Configuration config = new Configuration();
         config.setCheckLang(!options.containsOption("--nolang"));
+        config.setStreaming(options.containsOption("--stream"));
+        config.setTermIndex(options.containsOption("--index"));
+        config.setTermEntryManifest(options.containsOption("--incremental"));
+        config.setStatistics(options.containsOption("--stats"));
+        config.setValidationThreads(Integer.parseInt(options.getParameter("--xcsjobs", "0")));
+        config.setErrorLimit(options.containsOption("--failfast")
+                ? 1 : Integer.parseInt(options.getParameter("--maxerrors", "0")));
+        config.setRuleErrorLimit(Integer.parseInt(options.getParameter("--maxrule", "0")));
+        config.setElideWhitespace(options.containsOption("--elide"));
+        
+        int jobs = Integer.parseInt(options.getParameter("--jobs", "1"));
+        if (jobs < 1)
+            throw new IllegalArgumentException("--jobs must be at least 1");
+        
+        long start = System.nanoTime();
+        long bytes = 0;
+        for (File file : files)
+            bytes += file.length();
+        runBatch(files, jobs, new BatchTask<List<TBXException>>()
+            {
+                public List<TBXException> validate(File file) throws IOException, SAXException
+                {
+                    ValidationCache.Key key = null;
+                    if (cache != null)
+                    {
+                        key = cache.key(file, config);
+                        List<TBXException> ret = cache.getTBX(key);
+                        if (ret != null)
+                            return ret;
+                    }
+                    TBXFile dv = new TBXFile(file.toURI().toURL(),
+                            (Configuration) config.clone());
+                    dv.parseAndValidate();
+                    if (key != null)
+                        cache.putTBX(key, dv);
+                    return dv.getInvalidatingExceptions();
+                }
+
+                public void report(File file, List<TBXException> errs) throws IOException
+                {
+                    reportTBX(file, errs);
+                }
+
+                public void failed(File file, Throwable err)
+                {
+                    ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
+                    Object[] args = {file, err};
+                    System.err.println(MessageFormat.format(bundle.getString("FileError"), args));
+                    LOGGER.log(Level.FINER, "", err);
+                }
+            });
+        
+        if (options.containsOption("--jobs"))
+        {
+            //CHECKSTYLE: MagicNumber OFF
+            double secs = Math.max(System.nanoTime() - start, 1) / 1e9;
+            ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
+            Object[] args = {files.size(), bytes, secs, files.size() / secs,
+                bytes / (1024.0 * 1024.0) / secs};
+            System.out.println(MessageFormat.format(bundle.getString("BatchSummary"), args));
+            //CHECKSTYLE: MagicNumber ON
+        }
+        if (config.getStatistics())
+            printStatistics(TBXStatistics.getDefault());
+    }
+
+    /**
+     * Print what the files cost to standard error.
+     *
+     * @param stats The statistics of the files.
+     */
+    private void printStatistics(TBXStatistics stats)
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
+        Object[] args = {stats.getFiles(), stats.getBytesRead(), stats.getTermEntries(),
+            stats.getTextCharacters(), stats.getXCSLookups(), stats.getXCSCacheHits(),
+            stats.getXCSCacheMisses()};
+        System.err.println(MessageFormat.format(bundle.getString("StatsSummary"), args));
+        Map<String, Long> cpu = stats.getCpuNanos();
+        Map<String, Long> alloc = stats.getAllocatedBytes();
+        for (Map.Entry<String, Long> e : stats.getWallNanos().entrySet())
+        {
+            Object[] phase = {e.getKey(), e.getValue() / 1e9, cpu.get(e.getKey()) / 1e9,
+                alloc.get(e.getKey()) / (1024.0 * 1024.0)};
+            System.err.println(MessageFormat.format(bundle.getString("StatsPhase"), phase));
+        }
+        for (Map.Entry<String, Long> e : stats.getDiagnosticCounts().entrySet())
+        {
+            if (e.getValue() == 0)
+                continue;
+            Object[] diag = {e.getKey(), e.getValue()};
+            System.err.println(MessageFormat.format(bundle.getString("StatsDiagnostics"), diag));
+        }
+        for (Map.Entry<String, Long> e : stats.getElementCounts().entrySet())
+        {
+            Object[] elem = {e.getKey(), e.getValue()};
+            System.err.println(MessageFormat.format(bundle.getString("StatsElement"), elem));
+        }
+        //CHECKSTYLE: MagicNumber ON
+    }
     
-        Iterator<File> iter = files.iterator();
-        while (iter.hasNext())
+    /**
+     * Run a validation over each file on a pool of <code>jobs</code> worker
+     * threads. Results are reported on this thread in the order the files
+     * were given, and only a small window of files is allowed to run ahead
+     * of the one being reported.
+     *
+     * @param <T> The result of validating one file.
+     * @param files The files to validate.
+     * @param jobs Number of worker threads.
+     * @param task The validation to run and report.
+     * @throws IOException Any I/O exceptions that occur while reporting.
+     */
+    private <T> void runBatch(List<File> files, int jobs, final BatchTask<T> task) throws IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        Deque<Future<T>> pending = new java.util.ArrayDeque<Future<T>>();
+        Deque<File> pendingFiles = new java.util.ArrayDeque<File>();
+        try
         {
-            File file = iter.next();
-            TBXFile dv = new TBXFile(file.toURI().toURL(), (Configuration) config.clone());
-            dv.parseAndValidate();
-            if (dv.isValid())
+            Iterator<File> iter = files.iterator();
+            while (iter.hasNext())
             {
-                ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
-                Object[] args = {file};
-                String msg = MessageFormat.format(bundle.getString("FileValid"), args);
-                System.out.println(msg);
+                final File file = iter.next();
+                pending.add(pool.submit(new Callable<T>()
+                    {
+                        public T call() throws Exception
+                        {
+                            return task.validate(file);
+                        }
+                    }));
+                pendingFiles.add(file);
+                if (pending.size() >= 2 * jobs)
+                    report(pendingFiles.remove(), pending.remove(), task);
             }
-            else
+            while (!pending.isEmpty())
+                report(pendingFiles.remove(), pending.remove(), task);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Wait for a file to finish validation and report the results.
+     *
+     * @param <T> The result of validating one file.
+     * @param file The file that was validated.
+     * @param result The pending validation of the file.
+     * @param task The validation that reports the result.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    private <T> void report(File file, Future<T> result, BatchTask<T> task) throws IOException
+    {
+        T ret;
+        try
+        {
+            ret = result.get();
+        }
+        catch (InterruptedException err)
+        {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException(err.getLocalizedMessage());
+        }
+        catch (ExecutionException err)
+        {
+            task.failed(file, err.getCause());
+            return;
+        }
+        task.report(file, ret);
+    }
+    
+    /**
+     * Print the results of a TBX validation.
+     *
+     * @param file The file that was validated.
+     * @param errs The exceptions that make the file invalid, empty if it is
+     *  valid.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    private void reportTBX(File file, List<TBXException> errs) throws IOException
+    {
+        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
+        if (errs.isEmpty())
+        {
+            Object[] args = {file};
+            String msg = MessageFormat.format(bundle.getString("FileValid"), args);
+            System.out.println(msg);
+        }
+        else
+        {
+            Object[] args = {file.getCanonicalPath()};
+            String msg = MessageFormat.format(bundle.getString("FileInvalid"), args);
+            System.out.println(msg);
+            
+            for (TBXException err : errs)
+            {
+                System.err.println(err.getLocalizedMessage());
+                LOGGER.log(Level.FINER, "", err);
+            }
+        }
+    }
+
+    /**
+     * Validate each file as a TBX v3 document against the RELAX NG and
+     * Schematron rules of the dialect it names. One JSON object is printed
+     * on standard output for each file, in the order given, so the results
+     * can be consumed by other tools.
+     *
+     * @param files List of {@link java.io.File} objects to process.
+     * @return The process exit status for the batch.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    private int processV3Files(List<File> files) throws IOException
+    {
+        int jobs = Integer.parseInt(options.getParameter("--jobs", "1"));
+        if (jobs < 1)
+            throw new IllegalArgumentException("--jobs must be at least 1");
+        
+        final DialectRegistry registry = DialectRegistry.getDefault();
+        final boolean elide = options.containsOption("--elide");
+        final int[] status = {EXIT_VALID};
+        runBatch(files, jobs, new BatchTask<TBX3File>()
             {
-                ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.Main");
-                Object[] args = {file.getCanonicalPath()};
-                String msg = MessageFormat.format(bundle.getString("FileInvalid"), args);
-                System.out.println(msg);
-                
-                Iterator errs = dv.getInvalidatingExceptions().iterator();
-                while (errs.hasNext())
+                public TBX3File validate(File file) throws IOException, SAXException
                 {
-                    TBXException err = (TBXException) errs.next();
-                    System.err.println(err.getLocalizedMessage());
+                    ValidationCache.Key key = null;
+                    if (cache != null)
+                    {
+                        key = cache.key(file, registry);
+                        TBX3File ret = cache.getTBX3(key);
+                        if (ret != null)
+                            return ret;
+                    }
+                    TBX3File tbx = new TBX3File(file.toURI().toURL(), registry);
+                    tbx.setElideWhitespace(elide);
+                    tbx.parseAndValidate();
+                    if (key != null)
+                        cache.putTBX3(key, tbx);
+                    return tbx;
+                }
+
+                public void report(File file, TBX3File tbx)
+                {
+                    if (tbx.isWellFormed() && !tbx.isSchematronChecked())
+                        status[0] = EXIT_ERROR;
+                    else if (!tbx.isValid())
+                        status[0] = Math.max(status[0], EXIT_INVALID);
+                    System.out.println(reportV3(file, tbx));
+                }
+
+                public void failed(File file, Throwable err)
+                {
+                    status[0] = EXIT_ERROR;
+                    StringBuilder buf = new StringBuilder("{\"file\":");
+                    appendJSON(buf, file.getPath());
+                    buf.append(",\"error\":");
+                    appendJSON(buf, err.getLocalizedMessage() != null
+                            ? err.getLocalizedMessage() : err.toString());
+                    buf.append('}');
+                    System.out.println(buf);
                     LOGGER.log(Level.FINER, "", err);
                 }
+            });
+        System.out.flush();
+        return status[0];
+    }
+
+    /**
+     * Format the results of a TBX v3 validation as a single line JSON object.
+     *
+     * @param file The file that was validated.
+     * @param tbx The validated file.
+     * @return The JSON object.
+     */
+    private static String reportV3(File file, TBX3File tbx)
+    {
+        StringBuilder buf = new StringBuilder("{\"file\":");
+        appendJSON(buf, file.getPath());
+        buf.append(",\"dialect\":");
+        appendJSON(buf, tbx.getDialectName());
+        buf.append(",\"valid\":").append(tbx.isValid());
+        buf.append(",\"schematron\":").append(tbx.isSchematronChecked());
+        if (tbx.getSchematronError() != null)
+        {
+            buf.append(",\"schematronError\":");
+            appendJSON(buf, tbx.getSchematronError());
+        }
+        buf.append(",\"errors\":[");
+        String sep = "";
+        org.xml.sax.SAXParseException wf = tbx.getWellFormedError();
+        if (wf != null)
+        {
+            buf.append("{\"source\":\"xml\",\"line\":").append(wf.getLineNumber());
+            buf.append(",\"column\":").append(wf.getColumnNumber());
+            buf.append(",\"message\":");
+            appendJSON(buf, wf.getMessage());
+            buf.append('}');
+            sep = ",";
+        }
+        for (org.xml.sax.SAXParseException err : tbx.getSchemaExceptions())
+        {
+            buf.append(sep).append("{\"source\":\"rng\",\"line\":").append(err.getLineNumber());
+            buf.append(",\"column\":").append(err.getColumnNumber());
+            buf.append(",\"message\":");
+            appendJSON(buf, err.getMessage());
+            buf.append('}');
+            sep = ",";
+        }
+        for (org.oclc.purl.dsdl.svrl.FailedAssert err : tbx.getFailedAsserts())
+        {
+            buf.append(sep).append("{\"source\":\"schematron\",\"location\":");
+            appendJSON(buf, err.getLocation());
+            buf.append(",\"test\":");
+            appendJSON(buf, err.getTest());
+            buf.append(",\"message\":");
+            appendJSON(buf, err.getText());
+            buf.append('}');
+            sep = ",";
+        }
+        buf.append("]}");
+        return buf.toString();
+    }
+
+    /**
+     * Append a value as a JSON string.
+     *
+     * @param buf The buffer to append to.
+     * @param value The string value, null is written as JSON null.
+     */
+    private static void appendJSON(StringBuilder buf, String value)
+    {
+        if (value == null)
+        {
+            buf.append("null");
+            return;
+        }
+        buf.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    //CHECKSTYLE: MagicNumber OFF
+                    if (c < 0x20)
+                        buf.append(String.format("\\u%04x", (int) c));
+                    else
+                        buf.append(c);
+                    //CHECKSTYLE: MagicNumber ON
             }
         }
+        buf.append('"');
     }
 }
-
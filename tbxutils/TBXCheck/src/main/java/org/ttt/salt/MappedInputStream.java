@@ -0,0 +1,178 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Reads a file through read only memory maps. The file is mapped one region
+ * at a time so files larger than a single buffer can be read, and the pages
+ * of a region are only kept while the region is being read.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+class MappedInputStream extends InputStream
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Largest number of bytes mapped at a time. */
+    private static final long REGION = 1L << 30;
+
+    /** The file. */
+    private final FileChannel channel;
+
+    /** Size of the file. */
+    private final long size;
+
+    /** The mapped region. */
+    private MappedByteBuffer region;
+
+    /** File offset of the start of the region. */
+    private long regionStart;
+
+    /** File offset of the mark. */
+    private long mark;
+
+    /**
+     * Map the first region of a file.
+     *
+     * @param ch The file, it is closed when this stream is closed.
+     * @throws IOException The file could not be mapped.
+     */
+    MappedInputStream(FileChannel ch) throws IOException
+    {
+        channel = ch;
+        size = ch.size();
+        map(0);
+    }
+
+    /**
+     * @param start File offset of the new region.
+     * @throws IOException The file could not be mapped.
+     */
+    private void map(long start) throws IOException
+    {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION, size - start));
+    }
+
+    /**
+     * @return File offset of the next byte.
+     */
+    private long position()
+    {
+        return regionStart + region.position();
+    }
+
+    /**
+     * Move to a file offset.
+     *
+     * @param offset The new file offset.
+     * @throws IOException The file could not be mapped.
+     */
+    private void seek(long offset) throws IOException
+    {
+        if (offset < regionStart || offset > regionStart + region.limit()
+                || offset == regionStart + region.limit() && offset < size)
+        {
+            map(offset);
+        }
+        region.position((int) (offset - regionStart));
+    }
+
+    /**
+     * @return True if there is a byte to read in the region, the next
+     *  region is mapped when this one is used up.
+     * @throws IOException The file could not be mapped.
+     */
+    private boolean fill() throws IOException
+    {
+        if (!region.hasRemaining())
+        {
+            long next = position();
+            if (next >= size)
+                return false;
+            map(next);
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public int read() throws IOException
+    {
+        return fill() ? region.get() & 0xFF : -1;
+    }
+
+    /** {@inheritDoc} */
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, region.remaining());
+        region.get(b, off, n);
+        return n;
+    }
+
+    /** {@inheritDoc} */
+    public long skip(long n) throws IOException
+    {
+        long ret = Math.max(0, Math.min(n, size - position()));
+        seek(position() + ret);
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    public int available()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, size - position());
+    }
+
+    /** {@inheritDoc} */
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public void mark(int readlimit)
+    {
+        mark = position();
+    }
+
+    /** {@inheritDoc} */
+    public void reset() throws IOException
+    {
+        seek(mark);
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException
+    {
+        region = null;
+        channel.close();
+    }
+}
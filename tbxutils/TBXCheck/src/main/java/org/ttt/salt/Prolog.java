@@ -0,0 +1,859 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+
+/**
+ * What the start of an XML file says about it, found by one pass over the
+ * raw bytes before any parser is created.
+ * <p>
+ * The encoding is found from the byte order mark, the first bytes of the
+ * XML declaration, and the declared encoding. Then the XML declaration,
+ * DOCTYPE, and root start tag are read straight from the bytes, so nothing
+ * is decoded except the names and values that are kept. Comments and
+ * processing instructions in the prolog are skipped.</p>
+ * <p>
+ * Only a bounded window at the start of the file is looked at. If the root
+ * start tag is not found in the window the problem is
+ * {@link Problem#OVERFLOW}.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class Prolog
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Largest number of bytes looked at by default. */
+    public static final int DEFAULT_LIMIT = 64 * 1024;
+
+    /** Bytes read from a stream by the first attempt. */
+    private static final int FIRST_WINDOW = 4 * 1024;
+
+    /** Characters of the bad construct kept for the problem text. */
+    private static final int PROBLEM_TEXT = 40;
+
+    /** Why the start of a file is not an acceptable prolog. */
+    public enum Problem
+    {
+        /** The file does not start with an XML declaration. */
+        NO_XMLDECL,
+
+        /** A declaration or the root start tag is malformed. */
+        ILLFORMED,
+
+        /** The file ends before the root start tag ends. */
+        EOF,
+
+        /** The root start tag does not end inside the window. */
+        OVERFLOW
+    }
+
+    /** Encoding used to read the file. */
+    private String encoding = "UTF-8";
+
+    /** Bytes in the byte order mark. */
+    private int bomLength;
+
+    /** Bytes in each code unit of the file encoding. */
+    private int unit = 1;
+
+    /** Multibyte code units are big endian. */
+    private boolean bigEndian = true;
+
+    /** The XML declaration was found. */
+    private boolean xmlDecl;
+
+    /** XML declaration version. */
+    private String version;
+
+    /** XML declaration encoding. */
+    private String declaredEncoding;
+
+    /** XML declaration standalone. */
+    private String standalone;
+
+    /** DOCTYPE name. */
+    private String doctypeName;
+
+    /** DOCTYPE public identifier. */
+    private String publicId;
+
+    /** DOCTYPE system identifier. */
+    private String systemId;
+
+    /** Root element qualified name. */
+    private String rootName;
+
+    /** Root element attributes, including namespace declarations, in order. */
+    private final Map<String, String> rootAttributes = new java.util.LinkedHashMap<String, String>();
+
+    /** Bytes from the start of the file to the end of the root start tag. */
+    private int rootEnd;
+
+    /** The first problem found or null. */
+    private Problem problem;
+
+    /** Start of the construct that has a problem. */
+    private String problemText = "";
+
+    /** The bytes being scanned. */
+    private ByteBuffer buf;
+
+    /** Offset of the next code unit. */
+    private int pos;
+
+    /** Offset after the last byte in the window. */
+    private int end;
+
+    /** The window holds all of the input. */
+    private boolean complete;
+
+    /** Offset of the construct being scanned. */
+    private int token;
+
+    /** Decoder for names and values, the charset of the code units. */
+    private Charset charset;
+
+    /**
+     * Stops the scan at a problem.
+     */
+    private static final class Stop extends Exception
+    {
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** The problem or null if the window ended. */
+        private final Problem problem;
+
+        /**
+         * @param p The problem or null if the window ended.
+         */
+        private Stop(Problem p)
+        {
+            super(null, null, false, false);
+            problem = p;
+        }
+    }
+
+    /** Results are made by the sniff methods. */
+    private Prolog()
+    {
+    }
+
+    /**
+     * Sniff the start of a stream with the default limit.
+     *
+     * @param in Stream positioned at the start of the file that supports
+     *  mark, it is reset before this returns.
+     * @return What was found.
+     * @throws UnsupportedEncodingException The file encoding is not available.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    public static Prolog sniff(InputStream in) throws IOException
+    {
+        return sniff(in, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Sniff the start of a stream. A small window is read first and it is
+     * only grown, up to the limit, while the root start tag is beyond it.
+     *
+     * @param in Stream positioned at the start of the file that supports
+     *  mark, it is reset before this returns.
+     * @param limit Most bytes that will be read.
+     * @return What was found.
+     * @throws UnsupportedEncodingException The file encoding is not available.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    public static Prolog sniff(InputStream in, int limit) throws IOException
+    {
+        if (!in.markSupported())
+            throw new IllegalArgumentException("Stream must support mark.");
+        in.mark(limit);
+        try
+        {
+            byte[] window = new byte[Math.min(FIRST_WINDOW, limit)];
+            int len = 0;
+            while (true)
+            {
+                int n = 0;
+                while (len < window.length && (n = in.read(window, len, window.length - len)) >= 0)
+                    len += n;
+                Prolog ret = sniff(ByteBuffer.wrap(window), 0, len, n < 0);
+                if (ret.problem != Problem.OVERFLOW || window.length >= limit)
+                    return ret;
+                window = java.util.Arrays.copyOf(window, (int) Math.min(2L * window.length, limit));
+            }
+        }
+        finally
+        {
+            in.reset();
+        }
+    }
+
+    /**
+     * Sniff the start of a buffer that holds a whole file, such as a mapped
+     * file. Bytes are read in place from the buffer position up to at most
+     * the default limit, and the position is not changed.
+     *
+     * @param in The file bytes from the position to the limit.
+     * @return What was found.
+     * @throws UnsupportedEncodingException The file encoding is not available.
+     */
+    public static Prolog sniff(ByteBuffer in) throws UnsupportedEncodingException
+    {
+        int start = in.position();
+        int len = Math.min(in.remaining(), DEFAULT_LIMIT);
+        return sniff(in, start, start + len, len == in.remaining());
+    }
+
+    /**
+     * @param in The bytes.
+     * @param start Offset of the first byte of the file.
+     * @param stop Offset after the last byte of the window.
+     * @param all The window holds all of the file.
+     * @return What was found.
+     * @throws UnsupportedEncodingException The file encoding is not available.
+     */
+    private static Prolog sniff(ByteBuffer in, int start, int stop, boolean all)
+        throws UnsupportedEncodingException
+    {
+        Prolog ret = new Prolog();
+        ret.buf = in;
+        ret.end = stop;
+        ret.complete = all;
+        ret.detectEncoding(start);
+        ret.scan(start + ret.bomLength);
+        if (ret.rootName != null)
+            ret.rootEnd -= start;
+        ret.buf = null;
+        return ret;
+    }
+
+    /**
+     * @return Name of the encoding to read the file with.
+     */
+    public String getEncoding()
+    {
+        return encoding;
+    }
+
+    /**
+     * @return Number of bytes in the byte order mark, these must be skipped
+     *  before reading the file with {@link #getEncoding}.
+     */
+    public int getBOMLength()
+    {
+        return bomLength;
+    }
+
+    /**
+     * @return True if the file starts with an XML declaration.
+     */
+    public boolean hasXMLDeclaration()
+    {
+        return xmlDecl;
+    }
+
+    /**
+     * @return The XML declaration version or null.
+     */
+    public String getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return The XML declaration encoding or null.
+     */
+    public String getDeclaredEncoding()
+    {
+        return declaredEncoding;
+    }
+
+    /**
+     * @return The XML declaration standalone value or null.
+     */
+    public String getStandalone()
+    {
+        return standalone;
+    }
+
+    /**
+     * @return The DOCTYPE name or null if there is no DOCTYPE.
+     */
+    public String getDoctypeName()
+    {
+        return doctypeName;
+    }
+
+    /**
+     * @return The DOCTYPE public identifier or null.
+     */
+    public String getPublicId()
+    {
+        return publicId;
+    }
+
+    /**
+     * @return The DOCTYPE system identifier or null.
+     */
+    public String getSystemId()
+    {
+        return systemId;
+    }
+
+    /**
+     * @return The root element qualified name or null if it was not found.
+     */
+    public String getRootName()
+    {
+        return rootName;
+    }
+
+    /**
+     * @param qname Qualified name of an attribute.
+     * @return The attribute value on the root element or null.
+     */
+    public String getRootAttribute(String qname)
+    {
+        return rootAttributes.get(qname);
+    }
+
+    /**
+     * @return The namespace of the root element, the empty string if it is
+     *  in no namespace.
+     */
+    public String getRootNamespace()
+    {
+        if (rootName == null)
+            return null;
+        int colon = rootName.indexOf(':');
+        String ret = rootAttributes.get(colon < 0 ? "xmlns" : "xmlns:" + rootName.substring(0, colon));
+        return ret == null ? "" : ret;
+    }
+
+    /**
+     * @return Bytes from the start of the file to the end of the root start
+     *  tag, zero if it was not found.
+     */
+    public int getRootEnd()
+    {
+        return rootEnd;
+    }
+
+    /**
+     * @return 2 for a <code>martif</code> root, 3 for a <code>tbx</code> root
+     *  in the TBX namespace, otherwise 0.
+     */
+    public int getTBXVersion()
+    {
+        if (rootName == null)
+            return 0;
+        String local = rootName.substring(rootName.indexOf(':') + 1);
+        if (local.equals("martif"))
+            return 2;
+        if (local.equals("tbx") && TBX3File.TBX_NS.equals(getRootNamespace()))
+            return 3;
+        return 0;
+    }
+
+    /**
+     * @return The dialect from the root <code>type</code> attribute or null.
+     */
+    public String getDialect()
+    {
+        return getTBXVersion() == 0 ? null : rootAttributes.get("type");
+    }
+
+    /**
+     * Get the TBX v3 style. When the root has no <code>style</code>
+     * attribute the style is DCT if the root declares a namespace for data
+     * categories, otherwise DCA.
+     *
+     * @return The style or null if this is not a TBX v3 file.
+     */
+    public String getStyle()
+    {
+        if (getTBXVersion() != 3)
+            return null;
+        String ret = rootAttributes.get("style");
+        if (ret == null)
+        {
+            ret = TBX3File.STYLE_DCA;
+            for (String name : rootAttributes.keySet())
+            {
+                if (name.startsWith("xmlns:"))
+                    ret = "dct";
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return The first problem found or null if the prolog is acceptable.
+     */
+    public Problem getProblem()
+    {
+        return problem;
+    }
+
+    /**
+     * @return The start of the construct with the problem.
+     */
+    public String getProblemText()
+    {
+        return problemText;
+    }
+
+    /**
+     * Find the encoding from the byte order mark or the first bytes.
+     *
+     * @param start Offset of the first byte.
+     * @throws UnsupportedEncodingException The encoding is not available.
+     */
+    private void detectEncoding(int start) throws UnsupportedEncodingException
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        int b0 = end > start ? buf.get(start) & 0xFF : -1;
+        int b1 = end > start + 1 ? buf.get(start + 1) & 0xFF : -1;
+        int b2 = end > start + 2 ? buf.get(start + 2) & 0xFF : -1;
+        int b3 = end > start + 3 ? buf.get(start + 3) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF)
+            setEncoding("UTF-8", 3, 1, true);
+        else if (b0 == 0x00 && b1 == 0x00 && b2 == 0xFE && b3 == 0xFF)
+            setEncoding("UTF-32BE", 4, 4, true);
+        else if (b0 == 0xFF && b1 == 0xFE && b2 == 0x00 && b3 == 0x00)
+            setEncoding("UTF-32LE", 4, 4, false);
+        else if (b0 == 0xFE && b1 == 0xFF)
+            setEncoding("UTF-16BE", 2, 2, true);
+        else if (b0 == 0xFF && b1 == 0xFE)
+            setEncoding("UTF-16LE", 2, 2, false);
+        else if (b0 == 0x00 && b1 == 0x00 && b2 == 0x00 && b3 == '<')
+            setEncoding("UTF-32BE", 0, 4, true);
+        else if (b0 == '<' && b1 == 0x00 && b2 == 0x00 && b3 == 0x00)
+            setEncoding("UTF-32LE", 0, 4, false);
+        else if (b0 == 0x00 && b1 == '<' && b2 == 0x00 && b3 == '?')
+            setEncoding("UTF-16BE", 0, 2, true);
+        else if (b0 == '<' && b1 == 0x00 && b2 == '?' && b3 == 0x00)
+            setEncoding("UTF-16LE", 0, 2, false);
+        else
+            setEncoding("UTF-8", 0, 1, true);
+        //CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * @param name The encoding.
+     * @param bom Bytes in the byte order mark.
+     * @param width Bytes in each code unit.
+     * @param big Code units are big endian.
+     * @throws UnsupportedEncodingException The encoding is not available.
+     */
+    private void setEncoding(String name, int bom, int width, boolean big)
+        throws UnsupportedEncodingException
+    {
+        if (!Charset.isSupported(name))
+            throw new UnsupportedEncodingException(name + " encoding is unsupported.");
+        encoding = name;
+        charset = Charset.forName(name);
+        bomLength = bom;
+        unit = width;
+        bigEndian = big;
+    }
+
+    /**
+     * A file in a single byte or UTF-8 family encoding without a byte order
+     * mark is read in the encoding its XML declaration names.
+     *
+     * @throws UnsupportedEncodingException The declared encoding is not
+     *  available.
+     */
+    private void useDeclaredEncoding() throws UnsupportedEncodingException
+    {
+        String upper = declaredEncoding.toUpperCase(java.util.Locale.ENGLISH);
+        if (upper.startsWith("UTF-16") || upper.startsWith("UTF-32") || upper.startsWith("UCS"))
+            return;     //Contradicted by the bytes, the parser reports it
+        try
+        {
+            if (!Charset.isSupported(declaredEncoding))
+                throw new UnsupportedEncodingException(declaredEncoding + " encoding is unsupported.");
+        }
+        catch (java.nio.charset.IllegalCharsetNameException err)
+        {
+            throw new UnsupportedEncodingException("Illegal encoding name: " + declaredEncoding);
+        }
+        charset = Charset.forName(declaredEncoding);
+        encoding = charset.name();
+    }
+
+    /**
+     * Read the XML declaration, skip comments and processing instructions,
+     * and read the DOCTYPE and the root start tag.
+     *
+     * @param start Offset of the first character.
+     * @throws UnsupportedEncodingException The declared encoding is not
+     *  available.
+     */
+    private void scan(int start) throws UnsupportedEncodingException
+    {
+        pos = start;
+        token = start;
+        try
+        {
+            if (lookingAt("<?xml") && isSpace(at(pos + 5 * unit)))
+            {
+                advance("<?xml");
+                xmlDeclaration();
+                if (unit == 1 && bomLength == 0 && declaredEncoding != null)
+                    useDeclaredEncoding();
+            }
+            else
+            {
+                problem = Problem.NO_XMLDECL;
+                problemText = excerpt(start);
+            }
+            while (rootName == null)
+            {
+                skipSpace();
+                token = pos;
+                if (lookingAt("<!--"))
+                {
+                    skipPast("-->");
+                }
+                else if (lookingAt("<?"))
+                {
+                    skipPast("?>");
+                }
+                else if (lookingAt("<!DOCTYPE"))
+                {
+                    advance("<!DOCTYPE");
+                    doctype();
+                }
+                else if (next() == '<')
+                {
+                    root();
+                }
+                else
+                {
+                    throw new Stop(Problem.ILLFORMED);
+                }
+            }
+        }
+        catch (Stop stop)
+        {
+            Problem found = stop.problem;
+            if (found == null)
+                found = complete ? Problem.EOF : Problem.OVERFLOW;
+            if (problem == null || found != Problem.EOF && found != Problem.OVERFLOW)
+            {
+                problem = found;
+                problemText = excerpt(token);
+            }
+        }
+    }
+
+    /**
+     * Read the pseudo attributes of the XML declaration up to the closing
+     * <code>?&gt;</code>.
+     *
+     * @throws Stop The declaration is malformed or the window ended.
+     */
+    private void xmlDeclaration() throws Stop
+    {
+        while (true)
+        {
+            skipSpace();
+            int c = at(pos);
+            if (c == '?')
+            {
+                pos += unit;
+                if (next() != '>')
+                    throw new Stop(Problem.ILLFORMED);
+                xmlDecl = true;
+                return;
+            }
+            String name = name();
+            String value = attributeValue();
+            if (name.equals("version"))
+                version = value;
+            else if (name.equals("encoding"))
+                declaredEncoding = value;
+            else if (name.equals("standalone"))
+                standalone = value;
+            else
+                throw new Stop(Problem.ILLFORMED);
+        }
+    }
+
+    /**
+     * Read the DOCTYPE name and external identifier and skip the rest of the
+     * DOCTYPE, including the internal subset. Anything else wrong inside the
+     * DOCTYPE is left for the parser to report.
+     *
+     * @throws Stop The DOCTYPE has no name or the window ended.
+     */
+    private void doctype() throws Stop
+    {
+        if (!isSpace(at(pos)))
+            throw new Stop(Problem.ILLFORMED);
+        skipSpace();
+        doctypeName = name();
+        skipSpace();
+        if (lookingAt("PUBLIC"))
+        {
+            advance("PUBLIC");
+            skipSpace();
+            if (at(pos) == '"' || at(pos) == '\'')
+                publicId = quoted();
+            skipSpace();
+            if (at(pos) == '"' || at(pos) == '\'')
+                systemId = quoted();
+        }
+        else if (lookingAt("SYSTEM"))
+        {
+            advance("SYSTEM");
+            skipSpace();
+            if (at(pos) == '"' || at(pos) == '\'')
+                systemId = quoted();
+        }
+        boolean subset = false;
+        int c = next();
+        while (subset || c != '>')
+        {
+            if (c == '"' || c == '\'')
+            {
+                while (next() != c)
+                    continue;
+            }
+            else if (c == '<' && lookingAt("!--"))
+            {
+                skipPast("-->");
+            }
+            else if (c == '[' || c == ']')
+            {
+                subset = c == '[';
+            }
+            c = next();
+        }
+    }
+
+    /**
+     * Read the root start tag after its <code>&lt;</code>.
+     *
+     * @throws Stop The tag is malformed or the window ended.
+     */
+    private void root() throws Stop
+    {
+        String name = name();
+        while (true)
+        {
+            int c = at(pos);
+            if (c == '>' || c == '/')
+            {
+                pos += unit;
+                if (c == '/' && next() != '>')
+                    throw new Stop(Problem.ILLFORMED);
+                rootName = name;
+                rootEnd = pos;
+                return;
+            }
+            if (!isSpace(c))
+                throw new Stop(Problem.ILLFORMED);
+            skipSpace();
+            if (at(pos) != '>' && at(pos) != '/')
+            {
+                String attr = name();
+                rootAttributes.put(attr, attributeValue());
+            }
+        }
+    }
+
+    /**
+     * Read <code>= "value"</code> with optional spaces around the equals.
+     *
+     * @return The value.
+     * @throws Stop There is no value or the window ended.
+     */
+    private String attributeValue() throws Stop
+    {
+        skipSpace();
+        if (next() != '=')
+            throw new Stop(Problem.ILLFORMED);
+        skipSpace();
+        return quoted();
+    }
+
+    /**
+     * @return The name at the current offset.
+     * @throws Stop There is no name or the window ended.
+     */
+    private String name() throws Stop
+    {
+        int start = pos;
+        int c = at(pos);
+        while (!isSpace(c) && c != '=' && c != '>' && c != '/' && c != '?' && c != '<'
+                && c != '[' && c != '"' && c != '\'')
+        {
+            pos += unit;
+            c = at(pos);
+        }
+        if (pos == start)
+            throw new Stop(Problem.ILLFORMED);
+        return decode(start, pos);
+    }
+
+    /**
+     * @return The text inside the quotes at the current offset.
+     * @throws Stop There is no quote or the window ended.
+     */
+    private String quoted() throws Stop
+    {
+        int quote = next();
+        if (quote != '"' && quote != '\'')
+            throw new Stop(Problem.ILLFORMED);
+        int start = pos;
+        while (next() != quote)
+            continue;
+        return decode(start, pos - unit);
+    }
+
+    /**
+     * Skip whitespace.
+     *
+     * @throws Stop The window ended.
+     */
+    private void skipSpace() throws Stop
+    {
+        while (isSpace(at(pos)))
+            pos += unit;
+    }
+
+    /**
+     * Skip past the next occurrence of some text.
+     *
+     * @param text ASCII text.
+     * @throws Stop The window ended.
+     */
+    private void skipPast(String text) throws Stop
+    {
+        while (!lookingAt(text))
+            pos += unit;
+        advance(text);
+    }
+
+    /**
+     * @param text ASCII text.
+     * @return True if the text is at the current offset.
+     * @throws Stop The window ended before a decision.
+     */
+    private boolean lookingAt(String text) throws Stop
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            if (at(pos + i * unit) != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param text ASCII text at the current offset to move past.
+     */
+    private void advance(String text)
+    {
+        pos += text.length() * unit;
+    }
+
+    /**
+     * @return The code unit at the current offset, which is moved past.
+     * @throws Stop The window ended.
+     */
+    private int next() throws Stop
+    {
+        int ret = at(pos);
+        pos += unit;
+        return ret;
+    }
+
+    /**
+     * @param offset Offset of a code unit.
+     * @return The code unit.
+     * @throws Stop The window ends before the code unit.
+     */
+    private int at(int offset) throws Stop
+    {
+        if (offset + unit > end)
+            throw new Stop(null);
+        //CHECKSTYLE: MagicNumber OFF
+        switch (unit)
+        {
+            case 1:
+                return buf.get(offset) & 0xFF;
+            case 2:
+                return bigEndian
+                    ? (buf.get(offset) & 0xFF) << 8 | buf.get(offset + 1) & 0xFF
+                    : (buf.get(offset + 1) & 0xFF) << 8 | buf.get(offset) & 0xFF;
+            default:
+                return bigEndian ? buf.getInt(offset) : Integer.reverseBytes(buf.getInt(offset));
+        }
+        //CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * @param c A code unit.
+     * @return True if it is XML whitespace.
+     */
+    private static boolean isSpace(int c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * @param from Offset of the first byte.
+     * @param to Offset after the last byte.
+     * @return The decoded text.
+     */
+    private String decode(int from, int to)
+    {
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return charset.decode(slice).toString();
+    }
+
+    /**
+     * @param from Offset of the construct.
+     * @return The start of the construct for a problem report.
+     */
+    private String excerpt(int from)
+    {
+        int to = Math.min(end, from + PROBLEM_TEXT * unit);
+        to -= (to - from) % unit;
+        return decode(from, Math.max(from, to));
+    }
+}
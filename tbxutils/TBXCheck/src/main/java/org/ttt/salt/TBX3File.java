@@ -0,0 +1,722 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.validation.ValidatorHandler;
+import com.helger.schematron.pure.validation.SchematronValidationException;
+import org.oclc.purl.dsdl.svrl.FailedAssert;
+import org.oclc.purl.dsdl.svrl.SchematronOutputType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This validates a TBX v3 file against the RELAX NG schema and Schematron
+ * rules of its dialect.
+ * <p>
+ * The file is read once. The dialect is taken from the <code>type</code>
+ * attribute on the root element, found by a {@link Prolog} sniff before the
+ * parse starts, and every SAX event is sent both to the RELAX NG validator
+ * and to a DOM builder. The Schematron
+ * rules are then applied to that DOM. The compiled schemas come from a
+ * {@link DialectRegistry} so they are shared with every other file of the
+ * same dialect.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public class TBX3File
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Style of the bundled TBX-Min and TBX-Basic schemas. */
+    public static final String STYLE_DCA = "dca";
+
+    /** Logger for this package. */
+    private static final Logger LOGGER = Logger.getLogger("org.ttt.salt");
+
+    /** Namespace of the TBX v3 elements. */
+    public static final String TBX_NS = "urn:iso:std:iso:30042:ed-2";
+
+    /**
+     * TBX v3 core structure elements whose content model holds only
+     * elements, so whitespace directly inside them is never data.
+     */
+    private static final Set<String> ELEMENT_ONLY = new java.util.HashSet<String>(
+            java.util.Arrays.asList(
+                "tbx", "tbxHeader", "fileDesc", "titleStmt", "publicationStmt",
+                "sourceDesc", "encodingDesc", "revisionDesc", "change",
+                "text", "body", "back", "conceptEntry", "langSec", "termSec",
+                "adminGrp", "descripGrp", "termNoteGrp", "transacGrp",
+                "refObjectSec", "refObject", "itemGrp", "itemSet"
+            ));
+
+    /** Builds the empty DOM for each file. */
+    private static final DocumentBuilderFactory FACTORY;
+    static
+    {
+        FACTORY = DocumentBuilderFactory.newInstance();
+        FACTORY.setNamespaceAware(true);
+    }
+
+    /** URL for the input file. */
+    private URL url;
+
+    /** Source of the compiled dialect schemas. */
+    private DialectRegistry registry;
+
+    /** The dialect name from the root element. */
+    private String dialectName;
+
+    /** The compiled dialect schemas. */
+    private DialectRegistry.Dialect dialect;
+
+    /** The document built while validating. */
+    private Document document;
+
+    /** Indicates that the document has been parsed. */
+    private boolean parsed;
+
+    /** The whole file was read without a well formedness error. */
+    private boolean wellFormed;
+
+    /** Why the file is not well formed, null if it is. */
+    private SAXParseException wellFormedError;
+
+    /** Problems with the RELAX NG validation. */
+    private List<SAXParseException> schemaExceptions = new java.util.ArrayList<SAXParseException>();
+
+    /** Schematron assertions that failed. */
+    private List<FailedAssert> failedAsserts = new java.util.ArrayList<FailedAssert>();
+
+    /** Why the Schematron rules were not applied, null if they were. */
+    private String schematronError;
+
+    /** Drop whitespace in element only content from the document. */
+    private boolean elideWhitespace;
+
+    /** Set by {@link #cancel}, this is read by the parsing thread. */
+    private volatile boolean cancelled;
+
+    /** Size of the file in bytes, -1 until it is opened or if unknown. */
+    private volatile long length = -1;
+
+    /** Counts the bytes read and stops the parse when cancelled. */
+    private volatile ProgressInputStream progress;
+
+    /**
+     * @param u The location of the TBX v3 file.
+     * @param r The registry with the compiled dialect schemas.
+     */
+    public TBX3File(URL u, DialectRegistry r)
+    {
+        if (u == null)
+            throw new IllegalArgumentException("URL argument cannot be null");
+        if (r == null)
+            throw new IllegalArgumentException("Registry argument cannot be null");
+        url = u;
+        registry = r;
+    }
+
+    /**
+     * Rebuild the results of an earlier validation read from a
+     * {@link ValidationCache}. There is no document or dialect.
+     *
+     * @param u The location of the TBX v3 file.
+     * @param name The dialect name from the root element.
+     * @param wfError Why the file is not well formed, or null.
+     * @param schema The RELAX NG problems in document order.
+     * @param asserts The Schematron assertions that failed.
+     * @param schError Why the Schematron rules were not applied, or null.
+     */
+    TBX3File(URL u, String name, SAXParseException wfError, List<SAXParseException> schema,
+            List<FailedAssert> asserts, String schError)
+    {
+        url = u;
+        dialectName = name;
+        schemaExceptions.addAll(schema);
+        failedAsserts.addAll(asserts);
+        schematronError = schError;
+        parsed = true;
+        wellFormedError = wfError;
+        wellFormed = wfError == null;
+    }
+
+    /**
+     * Set the elide whitespace flag. When set the whitespace inside the TBX
+     * core structure elements, such as the indentation between the
+     * conceptEntry, langSec, and termSec elements, is not added to the
+     * document as text nodes. The RELAX NG validator still sees all of it.
+     *
+     * @param v The new value for the flag.
+     */
+    public void setElideWhitespace(boolean v)
+    {
+        elideWhitespace = v;
+    }
+
+    /**
+     * Test the elide whitespace flag.
+     *
+     * @return The current value of the flag.
+     */
+    public boolean getElideWhitespace()
+    {
+        return elideWhitespace;
+    }
+
+    /**
+     * Parse and validate the file. A file that is not well formed stops the
+     * parse and is reported by {@link #getWellFormedError}.
+     *
+     * @throws FileNotFoundException The file or the schemas for its dialect
+     *  could not be found.
+     * @throws InterruptedIOException The parse was stopped by {@link #cancel}.
+     * @throws IOException Any I/O exceptions reading the file.
+     * @throws SAXException The dialect schemas could not be compiled.
+     */
+    public void parseAndValidate() throws IOException, SAXException
+    {
+        if (parsed)
+            return;
+        parsed = true;
+
+        Pipeline pipeline;
+        try
+        {
+            pipeline = new Pipeline(FACTORY.newDocumentBuilder().newDocument());
+        }
+        catch (ParserConfigurationException err)
+        {
+            throw new SAXException("Could not create the document builder.", err);
+        }
+        XMLReader reader = new org.apache.xerces.parsers.SAXParser();
+        reader.setFeature("http://xml.org/sax/features/namespaces", true);
+        reader.setFeature("http://xml.org/sax/features/namespace-prefixes", false);
+        reader.setContentHandler(pipeline);
+        reader.setErrorHandler(pipeline);
+
+        URLConnection conn = url.openConnection();
+        progress = new ProgressInputStream(conn.getInputStream());
+        length = conn.getContentLengthLong();
+        InputStream input = new BufferedInputStream(progress);
+        try
+        {
+            Prolog prolog = Prolog.sniff(input);
+            if (prolog.getRootName() != null)
+            {   //Unavailable dialects are found without starting the parse
+                dialectName = prolog.getRootAttribute("type");
+                dialect = findDialect(dialectName, prolog.getRootAttribute("style"));
+            }
+            InputSource source = new InputSource(input);
+            source.setSystemId(url.toExternalForm());
+            reader.parse(source);
+        }
+        catch (SAXParseException err)
+        {   //Normally already recorded by the pipeline
+            if (cancelled)
+                throw cancelledException();
+            LOGGER.info("TBX file is not well formed: " + err.getMessage());
+            if (wellFormedError == null)
+                wellFormedError = err;
+            return;
+        }
+        catch (SAXException err)
+        {
+            if (err.getException() instanceof FileNotFoundException)
+                throw (FileNotFoundException) err.getException();
+            throw err;
+        }
+        finally
+        {
+            input.close();
+        }
+        if (cancelled)
+            throw cancelledException();
+
+        document = pipeline.document;
+        wellFormed = true;
+        try
+        {
+            SchematronOutputType svrl = dialect.validateSchematron(document, url.toExternalForm());
+            for (Object o : svrl.getActivePatternAndFiredRuleAndFailedAssert())
+            {
+                if (o instanceof FailedAssert)
+                    failedAsserts.add((FailedAssert) o);
+            }
+        }
+        catch (IllegalArgumentException err)
+        {
+            schematronError = err.getMessage();
+        }
+        catch (SchematronValidationException err)
+        {
+            schematronError = err.getMessage();
+        }
+    }
+
+    /**
+     * Stop {@link #parseAndValidate}, which may be running on another
+     * thread. The parse stops at the next read of the file, or before the
+     * Schematron rules are applied, and {@link #parseAndValidate} throws
+     * {@link InterruptedIOException}.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * @return True if {@link #cancel} has been called.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Get the size of the file to show progress against
+     * {@link #getBytesRead}.
+     *
+     * @return Number of bytes in the file, or -1 if it is unknown.
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Get the number of bytes read so far, this may be called from any
+     * thread while the file is parsed.
+     *
+     * @return Number of bytes of the file read.
+     */
+    public long getBytesRead()
+    {
+        ProgressInputStream p = progress;
+        return p == null ? 0 : p.count;
+    }
+
+    /**
+     * @return The exception thrown when the parse is cancelled.
+     */
+    private static InterruptedIOException cancelledException()
+    {
+        return new InterruptedIOException("The parse was cancelled.");
+    }
+
+    /**
+     * @return The location of the file.
+     */
+    public URL getURL()
+    {
+        return url;
+    }
+
+    /**
+     * @return The dialect name from the root element, null if the root
+     *  element has not been read.
+     */
+    public String getDialectName()
+    {
+        return dialectName;
+    }
+
+    /**
+     * @return The compiled dialect schemas, null if the dialect is unknown.
+     */
+    public DialectRegistry.Dialect getDialect()
+    {
+        return dialect;
+    }
+
+    /**
+     * @return The document, null if the file was not well formed.
+     */
+    public Document getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * @return True if the whole file was read without a well formedness
+     *  error.
+     */
+    public boolean isWellFormed()
+    {
+        return wellFormed;
+    }
+
+    /**
+     * @return Why the file is not well formed, or null if it is or it has
+     *  not been read.
+     */
+    public SAXParseException getWellFormedError()
+    {
+        return wellFormedError;
+    }
+
+    /**
+     * @return The RELAX NG problems in document order.
+     */
+    public List<SAXParseException> getSchemaExceptions()
+    {
+        return Collections.unmodifiableList(schemaExceptions);
+    }
+
+    /**
+     * @return The Schematron assertions that failed.
+     */
+    public List<FailedAssert> getFailedAsserts()
+    {
+        return Collections.unmodifiableList(failedAsserts);
+    }
+
+    /**
+     * @return True if the Schematron rules were applied to the document.
+     */
+    public boolean isSchematronChecked()
+    {
+        return wellFormed && schematronError == null;
+    }
+
+    /**
+     * @return Why the Schematron rules were not applied, or null.
+     */
+    public String getSchematronError()
+    {
+        return schematronError;
+    }
+
+    /**
+     * Is the file valid. A file whose Schematron rules could not be applied
+     * is not valid, even if it passes RELAX NG validation, since only part
+     * of its rules were checked; see {@link #isSchematronChecked}.
+     *
+     * @return True if all the rules were checked and no problems were found.
+     */
+    public boolean isValid()
+    {
+        return isSchematronChecked() && schemaExceptions.isEmpty() && failedAsserts.isEmpty();
+    }
+
+    /**
+     * Look up the dialect named on the root element.
+     *
+     * @param type The root <code>type</code> attribute.
+     * @param style The root <code>style</code> attribute.
+     * @return The compiled dialect.
+     * @throws FileNotFoundException There are no schemas for the dialect.
+     * @throws SAXException The dialect schemas could not be compiled.
+     */
+    private DialectRegistry.Dialect findDialect(String type, String style)
+        throws FileNotFoundException, SAXException
+    {
+        if (type == null || type.length() == 0)
+            throw new FileNotFoundException("TBX dialect not specified on root element.");
+        if (DialectRegistry.isBundled(type) && !type.equals(DialectRegistry.TBX_CORE)
+                && !STYLE_DCA.equals(style))
+        {   //Only the DCA style of the bundled dialects is available
+            throw new FileNotFoundException("Schemas for dialect not found: " + type + " " + style);
+        }
+        return registry.getDialect(type);
+    }
+
+    /**
+     * Sends each SAX event to the RELAX NG validator and the DOM builder.
+     */
+    private final class Pipeline extends DefaultHandler
+    {
+        /** The document being built. */
+        private final Document document;
+
+        /** The node that new nodes are appended to. */
+        private Node current;
+
+        /** RELAX NG validator, created when the root element is read. */
+        private ValidatorHandler validator;
+
+        /** Parser location. */
+        private Locator locator;
+
+        /** Prefix mappings for the next element as prefix, URI pairs. */
+        private List<String> mappings = new java.util.ArrayList<String>();
+
+        /** Character data collected since the last markup. */
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * @param doc The empty document to build.
+         */
+        private Pipeline(Document doc)
+        {
+            document = doc;
+            current = doc;
+        }
+
+        /** {@inheritDoc} */
+        public void setDocumentLocator(Locator loc)
+        {
+            locator = loc;
+        }
+
+        /** {@inheritDoc} */
+        public void startPrefixMapping(String prefix, String uri) throws SAXException
+        {
+            mappings.add(prefix);
+            mappings.add(uri);
+            if (validator != null)
+                validator.startPrefixMapping(prefix, uri);
+        }
+
+        /** {@inheritDoc} */
+        public void endPrefixMapping(String prefix) throws SAXException
+        {
+            validator.endPrefixMapping(prefix);
+        }
+
+        /** {@inheritDoc} */
+        public void startElement(String uri, String localName, String qName, Attributes atts)
+            throws SAXException
+        {
+            if (validator == null)
+            {
+                if (dialect == null)
+                {   //Root start tag was beyond the prolog window
+                    dialectName = atts.getValue("", "type");
+                    try
+                    {
+                        dialect = findDialect(dialectName, atts.getValue("", "style"));
+                    }
+                    catch (FileNotFoundException err)
+                    {
+                        throw new SAXException(err);
+                    }
+                }
+                validator = dialect.getSchema().newValidatorHandler();
+                validator.setErrorHandler(this);
+                if (locator != null)
+                    validator.setDocumentLocator(locator);
+                validator.startDocument();
+                for (int i = 0; i < mappings.size(); i += 2)
+                    validator.startPrefixMapping(mappings.get(i), mappings.get(i + 1));
+            }
+            validator.startElement(uri, localName, qName, atts);
+
+            Element elem = document.createElementNS(uri.length() == 0 ? null : uri, qName);
+            for (int i = 0; i < mappings.size(); i += 2)
+            {
+                String prefix = mappings.get(i);
+                elem.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix, mappings.get(i + 1));
+            }
+            mappings.clear();
+            for (int i = 0; i < atts.getLength(); i++)
+            {
+                String auri = atts.getURI(i);
+                elem.setAttributeNS(auri.length() == 0 ? null : auri, atts.getQName(i), atts.getValue(i));
+            }
+            flushText();
+            current.appendChild(elem);
+            current = elem;
+        }
+
+        /** {@inheritDoc} */
+        public void endElement(String uri, String localName, String qName) throws SAXException
+        {
+            validator.endElement(uri, localName, qName);
+            flushText();
+            current = current.getParentNode();
+        }
+
+        /** {@inheritDoc} */
+        public void characters(char[] ch, int start, int length) throws SAXException
+        {
+            validator.characters(ch, start, length);
+            text.append(ch, start, length);
+        }
+
+        /** {@inheritDoc} */
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
+        {
+            validator.ignorableWhitespace(ch, start, length);
+            text.append(ch, start, length);
+        }
+
+        /** {@inheritDoc} */
+        public void processingInstruction(String target, String data) throws SAXException
+        {
+            if (validator != null)
+                validator.processingInstruction(target, data);
+            flushText();
+            current.appendChild(document.createProcessingInstruction(target, data));
+        }
+
+        /** {@inheritDoc} */
+        public void endDocument() throws SAXException
+        {
+            if (validator != null)
+                validator.endDocument();
+        }
+
+        /** {@inheritDoc} */
+        public void warning(SAXParseException err)
+        {
+            LOGGER.warning(err.getMessage());
+        }
+
+        /** {@inheritDoc} */
+        public void error(SAXParseException err)
+        {
+            schemaExceptions.add(err);
+        }
+
+        /** {@inheritDoc} */
+        public void fatalError(SAXParseException err) throws SAXException
+        {
+            wellFormedError = err;
+            throw err;
+        }
+
+        /**
+         * Add the character data collected since the last markup to the
+         * current element as one text node. SAX may deliver a single run of
+         * text in many pieces, so this is done at each tag instead of for
+         * each piece.
+         */
+        private void flushText()
+        {
+            if (text.length() == 0)
+                return;
+            if (current != document && !(elideWhitespace && isElementOnly(current) && isWhitespace(text)))
+                current.appendChild(document.createTextNode(text.toString()));
+            text.setLength(0);
+        }
+    }
+
+    /**
+     * @param node The node text is being added to.
+     * @return True if the node is a TBX element that only holds elements.
+     */
+    private static boolean isElementOnly(Node node)
+    {
+        return TBX_NS.equals(node.getNamespaceURI()) && ELEMENT_ONLY.contains(node.getLocalName());
+    }
+
+    /**
+     * @param text The character data.
+     * @return True if all of the characters are XML whitespace.
+     */
+    private static boolean isWhitespace(CharSequence text)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This counts the bytes read from the file, and stops the parse once the
+     * file is cancelled. The sniff marks and resets the stream above this,
+     * so every byte is only counted once.
+     */
+    private final class ProgressInputStream extends FilterInputStream
+    {
+        /** Bytes read, this is read by other threads. */
+        private volatile long count;
+
+        /**
+         * @param in The file.
+         */
+        ProgressInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        /**
+         * @throws InterruptedIOException The file has been cancelled.
+         */
+        private void check() throws InterruptedIOException
+        {
+            if (cancelled)
+                throw cancelledException();
+        }
+
+        /** {@inheritDoc} */
+        public int read() throws IOException
+        {
+            check();
+            int ret = in.read();
+            if (ret >= 0)
+                count++;
+            return ret;
+        }
+
+        /** {@inheritDoc} */
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            check();
+            int ret = in.read(b, off, len);
+            if (ret > 0)
+                count += ret;
+            return ret;
+        }
+
+        /** {@inheritDoc} */
+        public long skip(long n) throws IOException
+        {
+            check();
+            long ret = in.skip(n);
+            count += ret;
+            return ret;
+        }
+
+        /** {@inheritDoc} */
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+}
@@ -19,15 +19,19 @@ package org.ttt.salt;
 
 import java.io.PrintWriter;
 import java.io.PrintStream;
-import java.io.FileNotFoundException;
-import java.net.UnknownHostException;
-import java.text.MessageFormat;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * A problem found in a TBX file.
+ * <p>
+ * An exception either wraps the exception that found the problem or is
+ * made from a {@link Diagnostic}. One made from a diagnostic gives the
+ * same message, and its {@link #getCause} is a copy of the original
+ * exception with its kind and message. These exceptions never fill in
+ * their own stack trace, the one of the cause is the useful one.</p>
+ *
  * @author Lance Finn Helsten
  * @version $Id$
  * @license Licensed under the Apache License, Version 2.0.
@@ -70,7 +74,16 @@ public class TBXException extends Exception implements Comparable
         /** {@inheritDoc} */
         public String toString()
         {
-            ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.TBXException");
+            return getLabel(Locale.getDefault());
+        }
+
+        /**
+         * @param locale The locale of the name.
+         * @return Printable name for the enumeration.
+         */
+        public String getLabel(Locale locale)
+        {
+            ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.TBXException", locale);
             return bundle.getString(type);
         }
     }
@@ -78,14 +91,30 @@ public class TBXException extends Exception implements Comparable
     /** SCM information. */
     private static final String RCSID = "$Id$";
 
-    /** */
-    private static int sequenceNext;
+    /**
+     * Next {@link #sequence}. Exceptions of one priority sort in the order
+     * they were created, and the files of a <code>--jobs</code> batch
+     * create them on several threads.
+     */
+    private static final AtomicInteger SEQUENCE_NEXT = new AtomicInteger();
     
     /** */
     private final Priority priority;
     
     /** */
-    private final int sequence = sequenceNext++;
+    private final int sequence = SEQUENCE_NEXT.getAndIncrement();
+
+    /** Message of an exception read from a {@link ValidationCache}. */
+    private final String cachedMessage;
+
+    /** Localized message of an exception read from a cache. */
+    private final String cachedLocalizedMessage;
+
+    /** The problem, made when first needed if this wraps a cause. */
+    private Diagnostic diagnostic;
+
+    /** Copy of the original exception of a diagnostic, made when first needed. */
+    private Throwable restored;
         
     /**
      * @param p The priority of this exception.
@@ -96,6 +125,82 @@ public class TBXException extends Exception implements Comparable
     {
         super(c);
         priority = p;
+        cachedMessage = null;
+        cachedLocalizedMessage = null;
+    }
+
+    /**
+     * Rebuild an exception read from a {@link ValidationCache}. It has no
+     * cause, only the messages of the original.
+     *
+     * @param p The priority of the original exception.
+     * @param msg The message of the original exception.
+     * @param localized The localized message of the original exception.
+     */
+    TBXException(Priority p, String msg, String localized)
+    {
+        super();
+        priority = p;
+        cachedMessage = msg;
+        cachedLocalizedMessage = localized;
+    }
+
+    /**
+     * @param d The problem.
+     */
+    public TBXException(Diagnostic d)
+    {
+        super();
+        priority = d.getPriority();
+        cachedMessage = null;
+        cachedLocalizedMessage = null;
+        diagnostic = d;
+    }
+
+    /**
+     * Get the problem of this exception. Only what the message needs is
+     * kept, not the cause.
+     *
+     * @return The problem.
+     */
+    public synchronized Diagnostic getDiagnostic()
+    {
+        if (diagnostic == null)
+        {
+            if (cachedMessage != null)
+                diagnostic = new Diagnostic(priority, Diagnostic.FORMATTED, -1, -1, null,
+                        new Object[] {cachedMessage, cachedLocalizedMessage}, sequence, null);
+            else
+                diagnostic = Diagnostic.of(priority, super.getCause(), sequence);
+        }
+        return diagnostic;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Throwable getCause()
+    {
+        Throwable ret = super.getCause();
+        if (ret == null && diagnostic != null && cachedMessage == null)
+        {
+            if (restored == null)
+                restored = diagnostic.toCause();
+            ret = restored;
+        }
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Throwable fillInStackTrace()
+    {
+        return this;
+    }
+
+    /**
+     * @return The priority of this exception.
+     */
+    public Priority getPriority()
+    {
+        return priority;
     }
 
     /** {@inheritDoc} */
@@ -124,77 +229,27 @@ public class TBXException extends Exception implements Comparable
      */
     private String buildMessage(boolean localize)
     {
-        //CHECKSTYLE: MagicNumber OFF
-        String ret = priority.toString();
-        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.TBXException");
-        Object[] args = new Object[5];
-        if (getCause() instanceof SAXParseException)
-        {
-            SAXParseException serr = (SAXParseException) getCause();
-            args[0] = new Integer(serr.getLineNumber());
-            args[1] = new Integer(serr.getColumnNumber());
-            args[2] = localize ? serr.getLocalizedMessage() : serr.getMessage();
-            args[3] = (serr.getException() == null)
-                    ? ""
-                    : localize
-                        ? serr.getException().getLocalizedMessage()
-                        : serr.getException().getMessage();
-            ret += MessageFormat.format(bundle.getString("SAXParseException"), args);
-        }
-        else if (getCause() instanceof SAXException)
-        {
-            SAXException serr = (SAXException) getCause();
-            args[0] = serr.getLocalizedMessage();
-            args[1] = (serr.getException() == null)
-                    ? ""
-                    : localize
-                        ? serr.getException().getLocalizedMessage()
-                        : serr.getException().getMessage();
-            ret += MessageFormat.format(bundle.getString("SAXException"), args);
-        }
-        else if (getCause() instanceof XCSValidationException)
-        {
-            args[0] = localize
-                    ? getCause().getLocalizedMessage()
-                    : getCause().getMessage();
-            ret += MessageFormat.format(bundle.getString("XCSValidationException"), args);
-        }
-        else if (getCause() instanceof FileNotFoundException)
-        {
-            FileNotFoundException serr = (FileNotFoundException) getCause();
-            args[0] = localize
-                    ? getCause().getLocalizedMessage()
-                    : getCause().getMessage();
-            ret += MessageFormat.format(bundle.getString("FileNotFoundException"), args);
-        }
-        else if (getCause() instanceof UnknownHostException)
-        {
-            UnknownHostException serr = (UnknownHostException) getCause();
-            args[0] = localize
-                    ? getCause().getLocalizedMessage()
-                    : getCause().getMessage();
-            ret += MessageFormat.format(bundle.getString("UnknownHostException"), args);
-        }
-        else
-        {
-            args[0] = getCause();
-            ret += MessageFormat.format(bundle.getString("UnknownException"), args);
-            printStackTrace();
-        }
-        return ret.toString();
-        //CHECKSTYLE: MagicNumber ON
+        if (cachedMessage != null)
+            return localize ? cachedLocalizedMessage : cachedMessage;
+        return getDiagnostic().getMessage();
     }
 
     /** {@inheritDoc} */
     public void printStackTrace(PrintStream out)
     {
-        getCause().printStackTrace(out);
+        if (getCause() == null)
+            super.printStackTrace(out);
+        else
+            getCause().printStackTrace(out);
     }
     
     /** {@inheritDoc} */
     public void printStackTrace(PrintWriter out)
     {
-        getCause().printStackTrace(out);
+        if (getCause() == null)
+            super.printStackTrace(out);
+        else
+            getCause().printStackTrace(out);
     }
 
     /** {@inheritDoc} */
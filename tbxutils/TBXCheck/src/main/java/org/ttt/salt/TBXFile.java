@@ -19,20 +19,28 @@ package org.ttt.salt;
 
 import java.io.Reader;
 import java.io.FilterReader;
-import java.io.BufferedReader;
 import java.io.PrintWriter;
 import java.io.InputStream;
+import java.io.FilterInputStream;
+import java.io.InterruptedIOException;
 import java.io.BufferedInputStream;
 import java.io.InputStreamReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.StreamCorruptedException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
 import java.util.List;
-import java.util.SortedSet;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Observable;
+import java.util.Observer;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -48,7 +56,7 @@ import org.xml.sax.SAXNotSupportedException;
 import org.ttt.salt.dom.tbx.TBXParser;
 import org.ttt.salt.dom.tbx.TBXDocument;
 import org.ttt.salt.dom.tbx.TBXElement;
-import org.flyingtitans.xml.ElementalParser;
+import org.ttt.salt.dom.tbx.TBXTree;
 
 /**
  * This will perform XCS validation on an XML file.
@@ -57,6 +65,26 @@ import org.flyingtitans.xml.ElementalParser;
  * validating each termEntry as it is completed. The exceptions for XCS
  * validation are only reported if the TBX file passes a basic pre-parse
  * check, and then a full XML parse and validation phase.</p>
+ * <p>
+ * If the {@link Configuration} is streaming then each termEntry is validated
+ * and discarded as soon as it is complete, so only the martifHeader is kept
+ * in memory. Observers added with {@link #addObserver} receive a
+ * {@link org.ttt.salt.dom.tbx.TBXParser.Event} for every element while it
+ * is still available.</p>
+ * <p>
+ * If the {@link Configuration} asks for a compact tree then the termEntries
+ * are moved out of the document into a read only
+ * {@link org.ttt.salt.dom.tbx.TBXTree}, see {@link #getTermTree}.</p>
+ * <p>
+ * If the {@link Configuration} asks for a term index then the terms of each
+ * termEntry are indexed as it completes, see {@link #getTermIndex}.</p>
+ * <p>
+ * If the {@link Configuration} asks for a termEntry manifest then the
+ * termEntries of a local file that were valid the last time it was checked
+ * are not validated again, see {@link TermEntryManifest}.</p>
+ * <p>
+ * If the {@link Configuration} asks for statistics then what each phase of
+ * {@link #parseAndValidate} cost is added to {@link TBXStatistics}.</p>
  *
  * @author Lance Finn Helsten
  * @version $Id$
@@ -117,12 +145,18 @@ public class TBXFile
     /** URI for the input file. */
     private URL url;
         
-    /** */
+    /** The TBX file decoded with the encoding found in the prolog. */
     private Reader reader;
     
+    /** What the start of the file says about it. */
+    private Prolog prolog;
+    
     /** */
     private XCSDocument xcsDocument;
 
+    /** The URI from the TBX header that {@link #xcsDocument} was built from. */
+    private String xcsURI;
+
     /** The entity resolver that I use. */
     private EntityResolver resolver;
         
@@ -145,10 +179,40 @@ public class TBXFile
     private Map<String, Element> termEntries = new java.util.HashMap<String, Element>();
         
     /** The exceptions that invalidated the file. */
-    private SortedSet<TBXException> exceptions = new java.util.TreeSet<TBXException>();
+    private final DiagnosticSink exceptions = new DiagnosticSink();
     
     /** The exceptions that are warnings and do not invaidate the file. */
-    private SortedSet<TBXException> warnings = new java.util.TreeSet<TBXException>();
+    private final DiagnosticSink warnings = new DiagnosticSink();
+    
+    /** Counts the bytes read and stops the parse when cancelled. */
+    private ProgressInputStream progress;
+    
+    /** Number of bytes in the file, or -1 if unknown. */
+    private long length = -1;
+    
+    /** Number of termEntries parsed and validated. */
+    private volatile long termEntriesDone;
+    
+    /** Set by another thread to stop {@link #parseAndValidate}. */
+    private volatile boolean cancelled;
+    
+    /** The parse was stopped by the error limits of the configuration. */
+    private boolean stopped;
+    
+    /** The TBX file if it is a local file. */
+    private File localFile;
+    
+    /** Builds the term index while parsing, or null. */
+    private TermIndex.Builder termIndexer;
+    
+    /** Index of the terms, or null. */
+    private TermIndex termIndex;
+
+    /** The termEntries that were valid the last time, or null. */
+    private TermEntryManifest manifest;
+
+    /** What this file cost, or null if not recorded. */
+    private TBXStatistics.Recorder stats;
     
     /**
      *
@@ -172,11 +236,109 @@ public class TBXFile
 			resolver = new TBXResolver(u);
 		
         tbxParser = new TBXParser(resolver, c);
-        InputStream input = url.openStream();
-        if (!input.markSupported())
-            input = new BufferedInputStream(input);
-        InputStreamReader inread = new InputStreamReader(input, TBXResolver.getEncoding(input));
-        reader = new BufferedReader(inread);
+        if (c.getStatistics())
+        {
+            stats = new TBXStatistics.Recorder();
+            tbxParser.setStatistics(stats);
+            TBXStatistics.register();
+        }
+        if (c.getTermIndex())
+            termIndexer = new TermIndex.Builder();
+        //TBXParser has always been an Observable, see addObserver
+        @SuppressWarnings("deprecation")
+        Observer counter = new Observer()
+        {
+            public void update(Observable o, Object arg)
+            {
+                TBXParser.Event evt = (TBXParser.Event) arg;
+                if (evt.getTBXElement().getTagName().equals("termEntry"))
+                {
+                    termEntriesDone++;
+                    if (termIndexer != null)
+                        termIndexer.add(evt.getTBXElement());
+                }
+            }
+        };
+        tbxParser.addObserver(counter);
+        progress = new ProgressInputStream(openInput());
+        boolean opened = false;
+        try
+        {
+            if (c.getTermEntryManifest() && localFile != null)
+            {
+                try
+                {
+                    manifest = TermEntryManifest.load(localFile);
+                }
+                catch (IOException err)
+                {
+                    LOGGER.log(Level.WARNING, "Could not read the termEntry manifest of " + localFile, err);
+                    manifest = new TermEntryManifest();
+                }
+                tbxParser.setManifest(manifest);
+            }
+            InputStream input = progress;
+            prolog = Prolog.sniff(input);
+            for (int i = 0; i < prolog.getBOMLength(); i++)
+                input.read();
+            reader = new InputStreamReader(input, prolog.getEncoding());
+            opened = true;
+        }
+        finally
+        {
+            if (!opened)
+                progress.close();
+        }
+    }
+
+    /**
+     * Open the TBX file as bytes. Local files are read through a file
+     * channel, and mapped when they are at least the configured map
+     * threshold.
+     *
+     * @return The file positioned at the start, it supports mark.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    private InputStream openInput() throws IOException
+    {
+        File file = null;
+        if (url.getProtocol().equals("file"))
+        {
+            try
+            {
+                file = new File(url.toURI());
+            }
+            catch (URISyntaxException err)
+            {   //Not a plain path so read it as a URL
+                file = null;
+            }
+            catch (IllegalArgumentException err)
+            {   //Not a plain path so read it as a URL
+                file = null;
+            }
+        }
+        if (file == null || !file.isFile())
+        {
+            URLConnection conn = url.openConnection();
+            length = conn.getContentLengthLong();
+            return new BufferedInputStream(conn.getInputStream(), config.getReadBufferSize());
+        }
+
+        localFile = file;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        length = channel.size();
+        if (channel.size() >= config.getMapThreshold())
+        {
+            try
+            {
+                return new MappedInputStream(channel);
+            }
+            catch (IOException err)
+            {
+                LOGGER.log(Level.INFO, "Could not map " + file + ", reading it instead.", err);
+            }
+        }
+        return new BufferedInputStream(Channels.newInputStream(channel), config.getReadBufferSize());
     }
     
     /**
@@ -191,16 +353,221 @@ public class TBXFile
     {
         if (!parsed)
         {
-            boolean ok = preParseCheck();
-            if (ok)
-                ok = parseDocument();
-            if (ok)
-                valid = validate();
-            if (valid)
-                buildTermEntriesMap();
+            try
+            {
+                check();
+            }
+            finally
+            {
+                closeInput();
+            }
+        }
+    }
+
+    /**
+     * Run each phase of {@link #parseAndValidate} in turn.
+     *
+     * @throws IOException Any failure reading the document.
+     */
+    private void check() throws IOException
+    {
+        if (stats != null)
+            stats.begin(TBXStatistics.Phase.PRE_PARSE);
+        boolean ok = preParseCheck();
+        if (stats != null)
+        {
+            stats.end(TBXStatistics.Phase.PRE_PARSE);
+            stats.begin(TBXStatistics.Phase.PARSE);
+        }
+        if (ok)
+            ok = parseDocument();
+        if (stats != null)
+            stats.end(TBXStatistics.Phase.PARSE);
+        if (cancelled)
+            throw new InterruptedIOException(getResourceBundle().getString("Parse_Cancelled"));
+        if (stopped)
+            LOGGER.info(MessageFormat.format(getResourceBundle().getString("Parse_Stopped"),
+                    url, progress.count, exceptions.size()));
+        if (ok && !stopped && termIndexer != null)
+            buildTermIndex();
+        if (ok && !stopped && manifest != null)
+            saveManifest();
+        if (stats != null)
+            stats.begin(TBXStatistics.Phase.VALIDATE);
+        if (ok)
+            valid = validate();
+        if (stats != null)
+        {
+            stats.end(TBXStatistics.Phase.VALIDATE);
+            stats.begin(TBXStatistics.Phase.TERM_ENTRIES_MAP);
+        }
+        if (valid && !config.getStreaming() && !config.getCompactTree())
+            buildTermEntriesMap();
+        if (stats != null)
+        {
+            stats.end(TBXStatistics.Phase.TERM_ENTRIES_MAP);
+            stats.setTotals(progress.count, termEntriesDone);
+            stats.diagnostics(exceptions);
+            stats.diagnostics(warnings);
+            TBXStatistics.getDefault().add(stats);
         }
     }
         
+    /**
+     * Close the file once it has been read, or when it will not be read
+     * because the pre-parse check failed or the parse was cancelled.
+     *
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    private void closeInput() throws IOException
+    {
+        if (reader != null)
+        {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    /**
+     * Build the term index and save it next to a local file.
+     */
+    private void buildTermIndex()
+    {
+        termIndex = termIndexer.build(localFile);
+        termIndexer = null;
+        if (localFile != null)
+        {
+            try
+            {
+                termIndex.save(localFile);
+            }
+            catch (IOException err)
+            {
+                LOGGER.log(Level.WARNING, "Could not save the term index of " + localFile, err);
+            }
+        }
+    }
+    
+    /**
+     * Save the termEntries that passed XCS validation next to the file.
+     */
+    private void saveManifest()
+    {
+        LOGGER.info(String.format("Validated %d termEntries, %d unchanged since the last check",
+                termEntriesDone - manifest.getReused(), manifest.getReused()));
+        try
+        {
+            manifest.save(localFile);
+        }
+        catch (IOException err)
+        {
+            LOGGER.log(Level.WARNING, "Could not save the termEntry manifest of " + localFile, err);
+        }
+    }
+
+    /**
+     * Get the manifest of the termEntries that passed XCS validation.
+     *
+     * @return The manifest, or null if the {@link Configuration} did not
+     *  ask for one or the file is not a local file.
+     */
+    public TermEntryManifest getTermEntryManifest()
+    {
+        return manifest;
+    }
+    
+    /**
+     * Get the index of the terms built while parsing.
+     *
+     * @return The index, or null if the {@link Configuration} did not ask
+     *  for one or the file has not been parsed.
+     */
+    public TermIndex getTermIndex()
+    {
+        return termIndex;
+    }
+    
+    /**
+     * Stop {@link #parseAndValidate}, which may be running on another
+     * thread. The parse stops at the next read of the file and
+     * {@link #parseAndValidate} throws
+     * {@link java.io.InterruptedIOException}.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+    
+    /**
+     * @return True if {@link #cancel} has been called.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+    
+    /**
+     * Find out if the parse stopped early because the file reached the
+     * {@link Configuration#getErrorLimit error limit} or the
+     * {@link Configuration#getRuleErrorLimit rule error limit}. A stopped
+     * file is invalid, but only has the errors found before it stopped,
+     * and has no term index or manifest.
+     *
+     * @return true => The rest of the file was not read.
+     */
+    public boolean isStopped()
+    {
+        return stopped;
+    }
+    
+    /**
+     * Get the size of the file to show progress against
+     * {@link #getBytesRead}.
+     *
+     * @return Number of bytes in the file, or -1 if it is unknown.
+     */
+    public long getLength()
+    {
+        return length;
+    }
+    
+    /**
+     * Get the number of bytes read so far, this may be called from any
+     * thread while the file is parsed.
+     *
+     * @return Number of bytes of the file read.
+     */
+    public long getBytesRead()
+    {
+        return progress.count;
+    }
+    
+    /**
+     * Get the number of termEntries parsed so far, this may be called from
+     * any thread while the file is parsed.
+     *
+     * @return Number of termEntries parsed and validated.
+     */
+    public long getTermEntriesDone()
+    {
+        return termEntriesDone;
+    }
+    
+    /**
+     * Add an observer that will be notified as each element completes
+     * parsing and validation. This must be done before
+     * {@link #parseAndValidate} and is the only way to see the termEntry
+     * elements of a streamed document.
+     *
+     * @param o The observer that will be sent
+     *  {@link org.ttt.salt.dom.tbx.TBXParser.Event} objects.
+     */
+    @SuppressWarnings("deprecation")    //TBXParser is an Observable
+    public void addObserver(Observer o)
+    {
+        tbxParser.addObserver(o);
+    }
+    
     /**
      * Get the TBXDocument that was built.
      *
@@ -246,7 +613,18 @@ public class TBXFile
     {
         return fileType;
     }
-    
+
+    /**
+     * Get what the start of the file says about it, this is known as soon
+     * as the file is opened.
+     *
+     * @return The encoding, declarations, and root element of the file.
+     */
+    public Prolog getProlog()
+    {
+        return prolog;
+    }
+
     /**
      * This will return an map of all termEntry elements in the TBX file. This
      * is meant to be a quick index into the termEntry elements in the file.
@@ -254,6 +632,9 @@ public class TBXFile
      * <strong>WARNING:</strong> Changing this map without a corresponding
      * change made to the contained TBXDocument results in undefined
      * behavior.</p>
+     * <p>
+     * If the file was streamed or kept in a compact tree this map is always
+     * empty.</p>
      *
      * @return Map of term entry id to termEntry elements in the file.
      */
@@ -261,15 +642,40 @@ public class TBXFile
     {
         return termEntries;
     }
+
+    /**
+     * Get the compact tree holding the termEntries of the file. Use
+     * {@link org.ttt.salt.dom.tbx.TBXTree#findTermEntry} in place of
+     * {@link #getTermEntryMap} to look up termEntries by id.
+     *
+     * @return The termEntry tree or null if the configuration did not ask
+     *  for one or the file could not be parsed.
+     */
+    public TBXTree getTermTree()
+    {
+        return tbxDocument == null ? null : tbxDocument.getTermTree();
+    }
         
     /**
      * Get the XCS Document that this is validated against.
      *
-     * @return The XCS document being validated.
+     * @return The XCS document being validated. When each termEntry is
+     *  checked as it is built this is the one the parser used.
      */
     public XCSDocument getXCSDocument()
     {
-        return xcsDocument;
+        return xcsDocument != null ? xcsDocument : tbxParser.getXCSDocument();
+    }
+
+    /**
+     * Get the XCS URI string from the TBX header that
+     * {@link #getXCSDocument} was built from.
+     *
+     * @return The XCS URI, or null if no XCS document was built.
+     */
+    public String getXCSURI()
+    {
+        return xcsDocument != null ? xcsURI : tbxParser.getXCSURI();
     }
     
     /**
@@ -292,10 +698,19 @@ public class TBXFile
      */
     public List<TBXException> getInvalidatingExceptions()
     {
-        //Throwable[] ret = (Throwable[]) exceptions.toArray();
-        //Arrays.sort(ret);
-        //return Arrays.asList(ret);
-        return new java.util.ArrayList<TBXException>(exceptions);
+        return exceptions.toExceptions();
+    }
+
+    /**
+     * Return the problems that caused the file to be invalid. These are
+     * the same as {@link #getInvalidatingExceptions} without making an
+     * exception for each one.
+     *
+     * @return The problems in priority order and then the order found.
+     */
+    public List<Diagnostic> getDiagnostics()
+    {
+        return exceptions.getDiagnostics();
     }
     
     /**
@@ -305,10 +720,7 @@ public class TBXFile
      */
     public List<TBXException> getWarningExceptions()
     {
-        //Throwable[] ret = (Throwable[]) exceptions.toArray();
-        //Arrays.sort(ret);
-        //return Arrays.asList(ret);
-        return new java.util.ArrayList<TBXException>(warnings);
+        return warnings.toExceptions();
     }
     
     /**
@@ -324,88 +736,43 @@ public class TBXFile
         
     /**
      * This will do some pre-wellformedness checks and determine what
-     * type of file this is.
+     * type of file this is from the {@link Prolog} found when the file was
+     * opened.
      *
      * @return true => The file passed the tests.
-     * @throw IllegalStateException The document has already been built. This
-     *  must be executed on a raw file or stream before parsing.
-     * @throws IOException Any unhandled I/O exceptions.
      */
-    private boolean preParseCheck() throws IOException
+    private boolean preParseCheck()
     {
-        final int stageXMLDECL = 0;
-        final int stageDOCTYPE = 1;
-        final int stageMARTIF = 2;
-        final int stageDONE = 3;
-        final int minMarkSize = 1024;
-
         ResourceBundle bundle = getResourceBundle();
-        ElementalParser parse = new ElementalParser(reader);
-        reader.mark(minMarkSize);
-        int stage = stageXMLDECL;
-        ElementalParser.Token type = parse.next();
-        while (stage != stageDONE)
+        Prolog.Problem problem = prolog.getProblem();
+        if (problem != null)
         {
-            if (type == ElementalParser.Token.EOF)
-            {
-                Exception cause = new StreamCorruptedException(bundle.getString("PreParse_EOF"));
-                TBXException err = new TBXException(TBXException.Priority.PRE_PARSE, cause);
-                exceptions.add(err);
-                fileType = Type.CORRUPT;
-                stage = stageDONE;
-            }
-            else if (type == ElementalParser.Token.ILLFORMED)
-            {
-                exceptions.add(new TBXException(TBXException.Priority.PRE_PARSE,
-                    new StreamCorruptedException(bundle.getString("PreParse_Illformed")
-                        + parse.sval)));
-                fileType = Type.CORRUPT;
-                stage = stageDONE;
-            }
-            else if (stage == stageXMLDECL
-                    && type != ElementalParser.Token.XMLDECL)
-            {
-                exceptions.add(new TBXException(TBXException.Priority.PRE_PARSE,
-                    new StreamCorruptedException(bundle.getString("PreParse_NoXMLDecl")
-                        + parse.sval)));
-                fileType = Type.CORRUPT;
-            }
-            else if (stage == stageXMLDECL
-                    && type == ElementalParser.Token.XMLDECL)
-            {
-                stage = stageDOCTYPE;
-            }
-            else if (stage == stageDOCTYPE
-                    && type == ElementalParser.Token.DOCTYPEDECL)
-            {
-                fileType = Type.DTD;
-                //TODO--check the DOCTYPE name and URL
-                stage = stageMARTIF;
-            }
-            else if (stage == stageMARTIF
-                    && type == ElementalParser.Token.START)
+            String msg;
+            switch (problem)
             {
-                if (fileType == Type.UNKNOWN)
-                    fileType = Type.SCHEMA;
-                stage = stageDONE;
+                case NO_XMLDECL:
+                    msg = bundle.getString("PreParse_NoXMLDecl") + prolog.getProblemText();
+                    break;
+                case ILLFORMED:
+                    msg = bundle.getString("PreParse_Illformed") + prolog.getProblemText();
+                    break;
+                case OVERFLOW:
+                    msg = MessageFormat.format(bundle.getString("PreParse_Overflow"), Prolog.DEFAULT_LIMIT);
+                    break;
+                default:
+                    msg = bundle.getString("PreParse_EOF");
+                    break;
             }
-            type = parse.next();
+            exceptions.add(TBXException.Priority.PRE_PARSE, new StreamCorruptedException(msg));
+            fileType = Type.CORRUPT;
         }
-        try
+        else if (prolog.getDoctypeName() != null)
         {
-            reader.reset();
+            fileType = Type.DTD;
         }
-        catch (IOException err)
+        else
         {
-            if (err.getMessage().equals("Mark invalid"))
-            {
-                exceptions.add(new TBXException(TBXException.Priority.PRE_PARSE,
-                    new StreamCorruptedException(bundle.getString("PreParse_Overflow"))));
-            }
-            else
-            {
-                throw err;
-            }
+            fileType = Type.SCHEMA;
         }
         return exceptions.isEmpty();
     }
@@ -442,18 +809,19 @@ public class TBXFile
             parsed = true;
         }
         catch (IOException err)
-        {
-            exceptions.add(new TBXException(TBXException.Priority.XMLVALID_MAJOR, err));
+        {   //A cancelled parse is reported by parseAndValidate
+            if (!cancelled)
+                exceptions.add(TBXException.Priority.XMLVALID_MAJOR, err);
             ret = false;
         }
         catch (SAXException err)
         {
-            exceptions.add(new TBXException(TBXException.Priority.WELLFORMED, err));
+            exceptions.add(TBXException.Priority.WELLFORMED, err);
             ret = false;
         }
         catch (ParserConfigurationException err)
         {
-            exceptions.add(new TBXException(TBXException.Priority.WELLFORMED, err));
+            exceptions.add(TBXException.Priority.WELLFORMED, err);
             ret = false;
         }
         return ret;
@@ -472,7 +840,8 @@ public class TBXFile
         InputSource insource = new InputSource(reader);
         insource.setSystemId(url.toString());
         tbxDocument = tbxParser.parse(insource);
-        exceptions.addAll(tbxDocument.getParseExceptions());
+        stopped = tbxParser.isStopped();
+        exceptions.addAll(tbxDocument.getDiagnostics());
     }
     
     /**
@@ -488,7 +857,8 @@ public class TBXFile
         InputSource insource = new InputSource(reader);
         insource.setSystemId(url.toString());
         tbxDocument = tbxParser.parse(insource);
-        exceptions.addAll(tbxDocument.getParseExceptions());
+        stopped = tbxParser.isStopped();
+        exceptions.addAll(tbxDocument.getDiagnostics());
     }
 
     /**
@@ -507,11 +877,8 @@ public class TBXFile
             throw new IllegalArgumentException(bundle.getString("Validate_NoXMLParse"));
         try
         {
-            if (tbxParser != null)
-            {
-                exceptions.addAll(tbxDocument.getParseExceptions());
-            }
-            else
+            //A parser added its exceptions when it built the document
+            if (tbxParser == null)
             {
                 buildXCSDocument();
                 validateAgainstXCS((TBXElement) getTBXDocument().getDocumentElement());
@@ -519,7 +886,7 @@ public class TBXFile
         }
         catch (SAXException err)
         {
-            exceptions.add(new TBXException(TBXException.Priority.XMLVALID_MAJOR, err));
+            exceptions.add(TBXException.Priority.XMLVALID_MAJOR, err);
         }
         catch (ParserConfigurationException err)
         {
@@ -527,11 +894,7 @@ public class TBXFile
         }
         finally
         {
-            if (reader != null)
-            {
-                reader.close();
-                reader = null;
-            }
+            closeInput();
         }
         return exceptions.isEmpty();
     }
@@ -585,10 +948,16 @@ public class TBXFile
                 throw new FileNotFoundException(
                     String.format("XCS unspecified for TBX file: %s.", url));
 
+            if (stats != null)
+            {
+                stats.xcsLookup();
+                stats.begin(TBXStatistics.Phase.XCS);
+            }
             try
             {
                 LOGGER.info("Using XCS file: " + xcsUriStr);
-                xcsDocument = new XCSDocument(xcsUriStr, resolver, config);
+                xcsDocument = XCSDocumentCache.getDefault().get(xcsUriStr, resolver, config);
+                xcsURI = xcsUriStr;
             }
             catch (FileNotFoundException err)
             {
@@ -599,6 +968,11 @@ public class TBXFile
             {
                 LOGGER.log(Level.WARNING, "Exception building XCS", err);
             }
+            finally
+            {
+                if (stats != null)
+                    stats.end(TBXStatistics.Phase.XCS);
+            }
         }
     }
     
@@ -616,7 +990,7 @@ public class TBXFile
             }
             catch (XCSValidationException err)
             {
-                exceptions.add(new TBXException(TBXException.Priority.XCS, err));
+                exceptions.add(TBXException.Priority.XCS, err);
             }
         }
         else
@@ -664,6 +1038,79 @@ public class TBXFile
         }
     }
     
+    /**
+     * Counts the bytes read from the file and stops the parse once the
+     * file is cancelled.
+     */
+    private final class ProgressInputStream extends FilterInputStream
+    {
+        /** Bytes read, this is read by other threads. */
+        private volatile long count;
+        
+        /** Count at the mark. */
+        private long markCount;
+        
+        /**
+         * @param in The file.
+         */
+        ProgressInputStream(InputStream in)
+        {
+            super(in);
+        }
+        
+        /**
+         * @throws InterruptedIOException The file has been cancelled.
+         */
+        private void check() throws InterruptedIOException
+        {
+            if (cancelled)
+                throw new InterruptedIOException(getResourceBundle().getString("Parse_Cancelled"));
+        }
+        
+        /** {@inheritDoc} */
+        public int read() throws IOException
+        {
+            check();
+            int ret = in.read();
+            if (ret >= 0)
+                count++;
+            return ret;
+        }
+        
+        /** {@inheritDoc} */
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            check();
+            int ret = in.read(b, off, len);
+            if (ret > 0)
+                count += ret;
+            return ret;
+        }
+        
+        /** {@inheritDoc} */
+        public long skip(long n) throws IOException
+        {
+            check();
+            long ret = in.skip(n);
+            count += ret;
+            return ret;
+        }
+        
+        /** {@inheritDoc} */
+        public void mark(int readlimit)
+        {
+            in.mark(readlimit);
+            markCount = count;
+        }
+        
+        /** {@inheritDoc} */
+        public void reset() throws IOException
+        {
+            in.reset();
+            count = markCount;
+        }
+    }
+    
     /**
      * This reader will allow all characters through unless the mark
      * limit will be exceeded. If there is no mark limit then all
@@ -0,0 +1,434 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * What the {@link TBXFile}s of this process cost, added up over all files.
+ * <p>
+ * A file whose {@link Configuration#getStatistics} flag is set records the
+ * elapsed time, CPU time and allocated bytes of each {@link Phase}, and
+ * counts the elements by tag, the termEntries, the text, and the errors
+ * and warnings by priority. The counts are added to
+ * {@link #getDefault} when the file is done, so a file costs one
+ * synchronized update however large it is.</p>
+ * <p>
+ * CPU time and allocated bytes are measured on the thread running the
+ * phase. TermEntries validated on the worker threads of
+ * {@link Configuration#getValidationThreads} are not included, and when
+ * each termEntry is checked while parsing the validation is part of the
+ * {@link Phase#PARSE} phase. Allocated bytes are only known on virtual
+ * machines that support <code>com.sun.management.ThreadMXBean</code>.</p>
+ * <p>
+ * The default statistics are published as an MXBean named
+ * {@link #OBJECT_NAME} by {@link #register}.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class TBXStatistics implements TBXStatisticsMXBean
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Name of the default statistics in the platform MBean server. */
+    public static final String OBJECT_NAME = "org.ttt.salt:type=TBXStatistics";
+
+    /** Main logger for this class. */
+    private static final Logger LOGGER = Logger.getLogger("org.ttt.salt");
+
+    /** Measures the CPU time and allocations of the current thread. */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** Number of phases. */
+    private static final int PHASES = Phase.values().length;
+
+    /** The statistics of this process. */
+    private static final TBXStatistics DEFAULT = new TBXStatistics();
+
+    /**
+     * The steps of {@link TBXFile#parseAndValidate}.
+     */
+    public static enum Phase
+    {
+        /** Reading the prolog and checking the start of the file. */
+        PRE_PARSE,
+        /** Parsing the XML, and validating each termEntry if it is checked while parsing. */
+        PARSE,
+        /** Looking up or building the XCS document, this is part of PARSE if done while parsing. */
+        XCS,
+        /** Validating the parsed document. */
+        VALIDATE,
+        /** Building the map of termEntry IDs. */
+        TERM_ENTRIES_MAP
+    }
+
+    /** Files added. */
+    private long files;
+
+    /** Bytes read from the files. */
+    private long bytesRead;
+
+    /** TermEntries parsed. */
+    private long termEntries;
+
+    /** Characters of text. */
+    private long textChars;
+
+    /** XCS lookups. */
+    private long xcsLookups;
+
+    /** Elapsed time of each phase. */
+    private final long[] wall = new long[PHASES];
+
+    /** CPU time of each phase. */
+    private final long[] cpu = new long[PHASES];
+
+    /** Allocated bytes of each phase. */
+    private final long[] alloc = new long[PHASES];
+
+    /** Elements by tag name. */
+    private final Map<String, long[]> elements = new java.util.TreeMap<String, long[]>();
+
+    /** Errors and warnings by priority. */
+    private final long[] diagnostics = new long[TBXException.Priority.values().length];
+
+    /** XCS cache hits when last reset. */
+    private long xcsHitsBase;
+
+    /** XCS cache misses when last reset. */
+    private long xcsMissesBase;
+
+    /**
+     * Get the statistics of this process.
+     *
+     * @return The shared statistics.
+     */
+    public static TBXStatistics getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Publish the default statistics in the platform MBean server as
+     * {@link #OBJECT_NAME}. This may be called more than once.
+     */
+    public static synchronized void register()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(DEFAULT, name);
+        }
+        catch (JMException err)
+        {
+            LOGGER.log(Level.WARNING, "Could not register " + OBJECT_NAME, err);
+        }
+    }
+
+    /**
+     * Add the counts of a file.
+     *
+     * @param r The counts of the file.
+     */
+    public synchronized void add(Recorder r)
+    {
+        files++;
+        bytesRead += r.bytesRead;
+        termEntries += r.termEntries;
+        textChars += r.textChars;
+        xcsLookups += r.xcsLookups;
+        for (int i = 0; i < PHASES; i++)
+        {
+            wall[i] += r.wall[i];
+            cpu[i] += r.cpu[i];
+            alloc[i] += r.alloc[i];
+        }
+        for (int i = 0; i < diagnostics.length; i++)
+            diagnostics[i] += r.diagnostics[i];
+        for (Map.Entry<String, long[]> e : r.elements.entrySet())
+        {
+            long[] count = elements.get(e.getKey());
+            if (count == null)
+                elements.put(e.getKey(), new long[] {e.getValue()[0]});
+            else
+                count[0] += e.getValue()[0];
+        }
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getFiles()
+    {
+        return files;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getTermEntries()
+    {
+        return termEntries;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getTextCharacters()
+    {
+        return textChars;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Map<String, Long> getElementCounts()
+    {
+        Map<String, Long> ret = new java.util.TreeMap<String, Long>();
+        for (Map.Entry<String, long[]> e : elements.entrySet())
+            ret.put(e.getKey(), e.getValue()[0]);
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Map<String, Long> getDiagnosticCounts()
+    {
+        Map<String, Long> ret = new java.util.LinkedHashMap<String, Long>();
+        for (TBXException.Priority p : TBXException.Priority.values())
+            ret.put(p.name(), diagnostics[p.ordinal()]);
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Map<String, Long> getWallNanos()
+    {
+        return byPhase(wall);
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Map<String, Long> getCpuNanos()
+    {
+        return byPhase(cpu);
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Map<String, Long> getAllocatedBytes()
+    {
+        return byPhase(alloc);
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getXCSLookups()
+    {
+        return xcsLookups;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getXCSCacheHits()
+    {
+        return XCSDocumentCache.getDefault().getHits() - xcsHitsBase;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getXCSCacheMisses()
+    {
+        return XCSDocumentCache.getDefault().getMisses() - xcsMissesBase;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void reset()
+    {
+        files = 0;
+        bytesRead = 0;
+        termEntries = 0;
+        textChars = 0;
+        xcsLookups = 0;
+        java.util.Arrays.fill(wall, 0);
+        java.util.Arrays.fill(cpu, 0);
+        java.util.Arrays.fill(alloc, 0);
+        java.util.Arrays.fill(diagnostics, 0);
+        elements.clear();
+        xcsHitsBase = XCSDocumentCache.getDefault().getHits();
+        xcsMissesBase = XCSDocumentCache.getDefault().getMisses();
+    }
+
+    /**
+     * @param values A value for each phase.
+     * @return The values keyed by phase name in phase order.
+     */
+    private static Map<String, Long> byPhase(long[] values)
+    {
+        Map<String, Long> ret = new java.util.LinkedHashMap<String, Long>();
+        for (Phase p : Phase.values())
+            ret.put(p.name(), values[p.ordinal()]);
+        return ret;
+    }
+
+    /**
+     * @return CPU nanoseconds used by the current thread, or 0 if unknown.
+     */
+    private static long threadCpuTime()
+    {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread, or 0 if unknown.
+     */
+    private static long threadAllocatedBytes()
+    {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) THREADS;
+        if (!t.isThreadAllocatedMemorySupported() || !t.isThreadAllocatedMemoryEnabled())
+            return 0;
+        return Math.max(0, t.getThreadAllocatedBytes(Thread.currentThread().getId()));
+    }
+
+    /**
+     * The counts of one file. A recorder is only used by the thread
+     * parsing the file.
+     */
+    public static final class Recorder
+    {
+        /** Elapsed time of each phase. */
+        private final long[] wall = new long[PHASES];
+
+        /** CPU time of each phase. */
+        private final long[] cpu = new long[PHASES];
+
+        /** Allocated bytes of each phase. */
+        private final long[] alloc = new long[PHASES];
+
+        /** Clock at the start of each phase. */
+        private final long[] wallStart = new long[PHASES];
+
+        /** CPU time at the start of each phase. */
+        private final long[] cpuStart = new long[PHASES];
+
+        /** Allocated bytes at the start of each phase. */
+        private final long[] allocStart = new long[PHASES];
+
+        /** Elements by tag name. */
+        private final Map<String, long[]> elements = new java.util.HashMap<String, long[]>();
+
+        /** Errors and warnings by priority. */
+        private final long[] diagnostics = new long[TBXException.Priority.values().length];
+
+        /** Bytes read from the file. */
+        private long bytesRead;
+
+        /** TermEntries parsed. */
+        private long termEntries;
+
+        /** Characters of text. */
+        private long textChars;
+
+        /** XCS lookups. */
+        private long xcsLookups;
+
+        /**
+         * Start timing a phase.
+         *
+         * @param p The phase.
+         */
+        public void begin(Phase p)
+        {
+            int i = p.ordinal();
+            allocStart[i] = threadAllocatedBytes();
+            cpuStart[i] = threadCpuTime();
+            wallStart[i] = System.nanoTime();
+        }
+
+        /**
+         * Stop timing a phase begun with {@link #begin}.
+         *
+         * @param p The phase.
+         */
+        public void end(Phase p)
+        {
+            int i = p.ordinal();
+            wall[i] += System.nanoTime() - wallStart[i];
+            cpu[i] += threadCpuTime() - cpuStart[i];
+            alloc[i] += threadAllocatedBytes() - allocStart[i];
+        }
+
+        /**
+         * Count an element.
+         *
+         * @param name The tag name.
+         */
+        public void element(String name)
+        {
+            long[] count = elements.get(name);
+            if (count == null)
+                elements.put(name, new long[] {1});
+            else
+                count[0]++;
+        }
+
+        /**
+         * Count text.
+         *
+         * @param chars Number of characters.
+         */
+        public void text(int chars)
+        {
+            textChars += chars;
+        }
+
+        /**
+         * Count an XCS lookup.
+         */
+        public void xcsLookup()
+        {
+            xcsLookups++;
+        }
+
+        /**
+         * Count the errors or warnings of the file.
+         *
+         * @param errs The errors or warnings.
+         */
+        public void diagnostics(DiagnosticSink errs)
+        {
+            for (TBXException.Priority p : TBXException.Priority.values())
+                diagnostics[p.ordinal()] += errs.count(p);
+        }
+
+        /**
+         * @param bytes Bytes read from the file.
+         * @param entries TermEntries parsed.
+         */
+        public void setTotals(long bytes, long entries)
+        {
+            bytesRead = bytes;
+            termEntries = entries;
+        }
+    }
+}
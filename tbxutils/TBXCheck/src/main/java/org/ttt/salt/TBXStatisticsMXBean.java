@@ -0,0 +1,98 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link TBXStatistics}. Phases are keyed by
+ * the name of the {@link TBXStatistics.Phase} and diagnostics by the name
+ * of the {@link TBXException.Priority}.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public interface TBXStatisticsMXBean
+{
+    /**
+     * @return Number of files parsed and validated.
+     */
+    long getFiles();
+
+    /**
+     * @return Number of bytes read from the files.
+     */
+    long getBytesRead();
+
+    /**
+     * @return Number of termEntries parsed and validated.
+     */
+    long getTermEntries();
+
+    /**
+     * @return Number of characters of text in the files.
+     */
+    long getTextCharacters();
+
+    /**
+     * @return Number of elements parsed by tag name.
+     */
+    Map<String, Long> getElementCounts();
+
+    /**
+     * @return Number of errors and warnings reported by priority.
+     */
+    Map<String, Long> getDiagnosticCounts();
+
+    /**
+     * @return Elapsed nanoseconds of each phase.
+     */
+    Map<String, Long> getWallNanos();
+
+    /**
+     * @return CPU nanoseconds of each phase on the thread that ran it.
+     */
+    Map<String, Long> getCpuNanos();
+
+    /**
+     * @return Bytes allocated by each phase on the thread that ran it.
+     */
+    Map<String, Long> getAllocatedBytes();
+
+    /**
+     * @return Number of XCS documents looked up.
+     */
+    long getXCSLookups();
+
+    /**
+     * @return Number of XCS lookups answered by the
+     *  {@link XCSDocumentCache#getDefault default XCS cache}.
+     */
+    long getXCSCacheHits();
+
+    /**
+     * @return Number of XCS lookups that parsed the XCS.
+     */
+    long getXCSCacheMisses();
+
+    /**
+     * Set all counts back to zero.
+     */
+    void reset();
+}
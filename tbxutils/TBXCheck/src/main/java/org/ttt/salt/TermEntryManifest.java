@@ -0,0 +1,448 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import org.xml.sax.Attributes;
+
+
+/**
+ * The termEntries of a termbase that passed XCS validation, kept next to
+ * the termbase so that checking it again only validates the termEntries
+ * that changed.
+ * <p>
+ * Each termEntry is identified by a 64 bit digest of its canonical form: the
+ * element names, the attributes sorted by name, and the text, so moving a
+ * termEntry or changing the order of its attributes does not change its
+ * digest, but changing whitespace in it does. The digest is the MurmurHash3
+ * 64 bit mix over the characters, not a cryptographic hash: XCS validation
+ * of a typical termEntry only takes a few microseconds, so the digest has to
+ * be much cheaper than that, and it only has to tell an edited termEntry
+ * from the one it replaced. XCS validation of a termEntry only looks inside
+ * the termEntry, so a termEntry with the digest of one that was valid
+ * against the same XCS and settings is valid again.</p>
+ * <p>
+ * Reuse is therefore probabilistic. An edited termEntry whose digest
+ * happens to equal one of the n stored digests is not validated; for
+ * unrelated termEntries the chance is about n / 2<sup>64</sup>, which is
+ * negligible for any real termbase. MurmurHash3 is not collision resistant
+ * though, so someone who can edit the termbase can make an invalid
+ * termEntry match a valid one. Do not use a manifest to check termbases
+ * from untrusted sources.</p>
+ * <p>
+ * Only valid termEntries are kept. An invalid termEntry is always
+ * validated again so its errors are reported with where it is now.</p>
+ * <p>
+ * A manifest is read with {@link #load}; the parser then calls
+ * {@link #setContext} once the XCS is known, which forgets the old
+ * termEntries if the XCS or settings changed. The parser sends the SAX
+ * events of each termEntry so its digest is built while it is read
+ * instead of walking the termEntry again afterwards. Each termEntry is
+ * then checked with {@link #isValid} and recorded with {@link #add},
+ * and {@link #save} writes just the termEntries of this parse. All of this
+ * is done on the parser thread.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class TermEntryManifest
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** File name extension of a manifest. */
+    public static final String SUFFIX = ".entries";
+
+    /** First bytes of a manifest: "TBXM". */
+    private static final int MAGIC = 0x5442584D;
+
+    /** Version of the manifest layout. */
+    private static final int FORMAT = 1;
+
+    /** Starting number of digests of this parse. */
+    private static final int INITIAL = 1024;
+
+    /** Ends a name or value in the canonical form. */
+    private static final char SEPARATOR = 0;
+
+    /** Marks an element in the canonical form. */
+    private static final char ELEMENT = 1;
+
+    /** Marks an attribute in the canonical form. */
+    private static final char ATTRIBUTE = 2;
+
+    /** Marks text in the canonical form. */
+    private static final char TEXT = 3;
+
+    /** Marks the end of an element in the canonical form. */
+    private static final char END = 4;
+
+    //CHECKSTYLE: MagicNumber OFF
+    /** First MurmurHash3 block constant. */
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    /** Second MurmurHash3 block constant. */
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /** MurmurHash3 state constant. */
+    private static final long N1 = 0x52dce729L;
+    //CHECKSTYLE: MagicNumber ON
+
+    /** The XCS and settings the stored termEntries were validated with. */
+    private String storedContext;
+
+    /** Sorted digests of the valid termEntries of the last parse. */
+    private long[] stored;
+
+    /** The XCS and settings of this parse, null until it is known. */
+    private String context;
+
+    /** Digests of the valid termEntries of this parse. */
+    private long[] current = new long[INITIAL];
+
+    /** Number of digests in {@link #current}. */
+    private int count;
+
+    /** Number of termEntries found valid in the stored manifest. */
+    private long reused;
+
+    /** Digest of the canonical form so far. */
+    private long hash;
+
+    /** Up to four characters waiting to be mixed into the digest. */
+    private long block;
+
+    /** Number of characters in {@link #block}. */
+    private int filled;
+
+    /** Number of characters in the canonical form so far. */
+    private long length;
+
+    /**
+     * Make an empty manifest.
+     */
+    public TermEntryManifest()
+    {
+        this(null, new long[0]);
+    }
+
+    /**
+     * @param ctx The XCS and settings the termEntries were validated with.
+     * @param valid Sorted digests of the valid termEntries.
+     */
+    private TermEntryManifest(String ctx, long[] valid)
+    {
+        storedContext = ctx;
+        stored = valid;
+    }
+
+    /**
+     * Get the file a manifest of a termbase is kept in.
+     *
+     * @param tbx The termbase.
+     * @return The manifest file next to the termbase.
+     */
+    public static File getManifestFile(File tbx)
+    {
+        return new File(tbx.getPath() + SUFFIX);
+    }
+
+    /**
+     * Set the XCS and settings of this parse. The stored termEntries are
+     * only used if they were validated with the same ones.
+     *
+     * @param ctx Description of the XCS and settings, such as the XCS
+     *  digest and {@link Configuration#getResultKey}.
+     */
+    public void setContext(String ctx)
+    {
+        context = ctx;
+        if (!ctx.equals(storedContext))
+        {
+            stored = new long[0];
+            storedContext = null;
+        }
+    }
+
+    /**
+     * Is a termEntry valid without validating it again.
+     *
+     * @param digest The {@link #endEntry digest} of the termEntry.
+     * @return True if a termEntry with this digest was valid last time.
+     */
+    public boolean isValid(long digest)
+    {
+        boolean ret = context != null && Arrays.binarySearch(stored, digest) >= 0;
+        if (ret)
+            reused++;
+        return ret;
+    }
+
+    /**
+     * Record a termEntry of this parse.
+     *
+     * @param digest The {@link #endEntry digest} of the termEntry.
+     * @param valid The termEntry passed XCS validation.
+     */
+    public void add(long digest, boolean valid)
+    {
+        if (!valid)
+            return;
+        if (count == current.length)
+            current = Arrays.copyOf(current, count * 2);
+        current[count++] = digest;
+    }
+
+    /**
+     * @return Number of termEntries that were not validated again because
+     *  they were valid last time.
+     */
+    public long getReused()
+    {
+        return reused;
+    }
+
+    /**
+     * @return Number of valid termEntries recorded in this parse.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Start the digest of a termEntry. The parser then sends the events of
+     * the termEntry, starting with its own {@link #startElement}, and
+     * finishes with {@link #endEntry}.
+     */
+    public void startEntry()
+    {
+        hash = 0;
+        block = 0;
+        filled = 0;
+        length = 0;
+    }
+
+    /**
+     * Add the start of an element of the termEntry to the digest.
+     *
+     * @param name The element name.
+     * @param atts The attributes of the element.
+     */
+    public void startElement(String name, Attributes atts)
+    {
+        put(ELEMENT);
+        put(name);
+        int n = atts.getLength();
+        if (n == 1)
+        {
+            putAttribute(atts, 0);
+        }
+        else if (n > 1)
+        {   //Few attributes, so a plain insertion sort by name
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++)
+            {
+                int j = i;
+                for (; j > 0 && atts.getQName(order[j - 1]).compareTo(atts.getQName(i)) > 0; j--)
+                    order[j] = order[j - 1];
+                order[j] = i;
+            }
+            for (int i : order)
+                putAttribute(atts, i);
+        }
+    }
+
+    /**
+     * Add a text node of the termEntry to the digest.
+     *
+     * @param data The text as it is added to the element.
+     */
+    public void text(String data)
+    {
+        put(TEXT);
+        put(data);
+    }
+
+    /**
+     * Add the end of an element of the termEntry to the digest.
+     */
+    public void endElement()
+    {
+        put(END);
+    }
+
+    /**
+     * Finish the digest of a termEntry after its own {@link #endElement}.
+     *
+     * @return The 64 bit digest.
+     */
+    public long endEntry()
+    {
+        if (filled > 0)
+            mix(block);
+        //CHECKSTYLE: MagicNumber OFF
+        long ret = hash ^ length;
+        ret ^= ret >>> 33;
+        ret *= 0xff51afd7ed558ccdL;
+        ret ^= ret >>> 33;
+        ret *= 0xc4ceb9fe1a85ec53L;
+        ret ^= ret >>> 33;
+        //CHECKSTYLE: MagicNumber ON
+        return ret;
+    }
+
+    /**
+     * @param atts The attributes of an element.
+     * @param i Index of the attribute to add to the canonical form.
+     */
+    private void putAttribute(Attributes atts, int i)
+    {
+        put(ATTRIBUTE);
+        put(atts.getQName(i));
+        put(atts.getValue(i));
+    }
+
+    /**
+     * Add a string followed by a separator.
+     *
+     * @param s The string.
+     */
+    private void put(String s)
+    {
+        for (int i = 0; i < s.length(); i++)
+            put(s.charAt(i));
+        put(SEPARATOR);
+    }
+
+    /**
+     * @param c The next character of the canonical form.
+     */
+    private void put(char c)
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        block |= (long) c << (filled << 4);
+        length++;
+        if (++filled == 4)
+        {
+            mix(block);
+            block = 0;
+            filled = 0;
+        }
+        //CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * @param k Four characters to mix into the digest.
+     */
+    private void mix(long k)
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        hash ^= k;
+        hash = Long.rotateLeft(hash, 27) * 5 + N1;
+        //CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * Write the valid termEntries of this parse next to the termbase.
+     * Nothing is written if the XCS was never known.
+     *
+     * @param tbx The termbase.
+     * @throws IOException Any failure writing the manifest.
+     */
+    public void save(File tbx) throws IOException
+    {
+        if (context == null)
+            return;
+        long[] valid = Arrays.copyOf(current, count);
+        Arrays.sort(valid);
+        File dest = getManifestFile(tbx);
+        File tmp = File.createTempFile(tbx.getName(), SUFFIX, dest.getAbsoluteFile().getParentFile());
+        boolean saved = false;
+        try
+        {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(context);
+                out.writeInt(valid.length);
+                for (long d : valid)
+                    out.writeLong(d);
+            }
+            finally
+            {
+                out.close();
+            }
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        }
+        finally
+        {
+            if (!saved)
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Read the manifest kept next to a termbase.
+     *
+     * @param tbx The termbase.
+     * @return The manifest, or an empty one if there is none.
+     * @throws IOException Any failure reading the manifest.
+     */
+    public static TermEntryManifest load(File tbx) throws IOException
+    {
+        File src = getManifestFile(tbx);
+        if (!src.isFile())
+            return new TermEntryManifest();
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(src)));
+        try
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT)
+                throw new StreamCorruptedException("Not a termEntry manifest: " + src);
+            String ctx = in.readUTF();
+            long[] valid = new long[in.readInt()];
+            for (int i = 0; i < valid.length; i++)
+                valid[i] = in.readLong();
+            return new TermEntryManifest(ctx, valid);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,638 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+
+/**
+ * Index of the terms of a termbase to the termEntries that hold them. Each
+ * language has a table of its distinct terms sorted by their case folded
+ * form; each term has a run of termEntry numbers in one shared int array.
+ * So an exact or case folded lookup is a binary search, and a prefix lookup
+ * is a binary search followed by a scan of the terms with that prefix.
+ * <p>
+ * Terms are compared after Unicode NFC normalization with runs of white
+ * space collapsed to one space. Language codes are compared case
+ * insensitively. A termEntry is numbered in document order and
+ * {@link #getId} gives its id.</p>
+ * <p>
+ * {@link TBXFile} builds an index while it parses when the
+ * {@link Configuration} asks for one. An index may be saved next to its
+ * termbase with {@link #save} and read back with {@link #load}, which only
+ * returns it while the termbase is unchanged.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class TermIndex
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Appended to the termbase file name to name its saved index. */
+    public static final String SUFFIX = ".terms";
+
+    /** First int of a saved index. */
+    private static final int MAGIC = 0x54425849;
+
+    /** Format of a saved index, 2 has no limit on the length of a term. */
+    private static final int FORMAT = 2;
+
+    /** How a term is matched. */
+    public enum Match
+    {
+        /** The term is equal to the query. */
+        EXACT,
+
+        /** The term is equal to the query ignoring case. */
+        FOLDED,
+
+        /** The term starts with the query. */
+        PREFIX,
+
+        /** The term starts with the query ignoring case. */
+        FOLDED_PREFIX
+    }
+
+    /**
+     * The terms of one language.
+     */
+    private static final class Table
+    {
+        /** Distinct terms in order of their folded form then the term. */
+        private final String[] terms;
+
+        /** Folded form of each term. */
+        private final String[] folded;
+
+        /** Start of the postings of each term, with one extra end. */
+        private final int[] start;
+
+        /** termEntry numbers, ascending for each term. */
+        private final int[] postings;
+
+        /**
+         * @param t Terms.
+         * @param f Folded terms.
+         * @param s Start of the postings of each term.
+         * @param p Postings.
+         */
+        Table(String[] t, String[] f, int[] s, int[] p)
+        {
+            terms = t;
+            folded = f;
+            start = s;
+            postings = p;
+        }
+
+        /**
+         * @param key Folded key.
+         * @return The first row whose folded term is not less than the key.
+         */
+        int lowerBound(String key)
+        {
+            int lo = 0;
+            int hi = folded.length;
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (folded[mid].compareTo(key) < 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * Add the termEntries of the matching terms.
+         *
+         * @param text Normalized query.
+         * @param key Folded query.
+         * @param match How terms are matched.
+         * @param out Where the termEntry numbers are added.
+         */
+        void find(String text, String key, Match match, Postings out)
+        {
+            boolean prefix = match == Match.PREFIX || match == Match.FOLDED_PREFIX;
+            for (int row = lowerBound(key); row < terms.length; row++)
+            {
+                if (prefix ? !folded[row].startsWith(key) : !folded[row].equals(key))
+                    break;
+                if (match == Match.EXACT && !terms[row].equals(text))
+                    continue;
+                if (match == Match.PREFIX && !terms[row].startsWith(text))
+                    continue;
+                out.add(postings, start[row], start[row + 1]);
+            }
+        }
+    }
+
+    /**
+     * A growable array of termEntry numbers.
+     */
+    private static final class Postings
+    {
+        /** Initial capacity, most terms are in one or two termEntries. */
+        private static final int INITIAL = 2;
+
+        /** The numbers. */
+        private int[] values = new int[INITIAL];
+
+        /** Number of values used. */
+        private int size;
+
+        /**
+         * @param src Numbers to add.
+         * @param from First index in src.
+         * @param to End index in src.
+         */
+        void add(int[] src, int from, int to)
+        {
+            int n = to - from;
+            if (size + n > values.length)
+                values = Arrays.copyOf(values, Math.max(size + n, values.length * 2));
+            System.arraycopy(src, from, values, size, n);
+            size += n;
+        }
+
+        /**
+         * @param v Number to add.
+         */
+        void add(int v)
+        {
+            if (size == values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            values[size++] = v;
+        }
+
+        /**
+         * @return The last number added or -1.
+         */
+        int last()
+        {
+            return size == 0 ? -1 : values[size - 1];
+        }
+
+        /**
+         * @return Ascending distinct numbers.
+         */
+        int[] toSet()
+        {
+            int[] ret = Arrays.copyOf(values, size);
+            Arrays.sort(ret);
+            int n = 0;
+            for (int i = 0; i < ret.length; i++)
+            {
+                if (n == 0 || ret[n - 1] != ret[i])
+                    ret[n++] = ret[i];
+            }
+            return n == ret.length ? ret : Arrays.copyOf(ret, n);
+        }
+    }
+
+    /** termEntry ids by number. */
+    private final String[] ids;
+
+    /** Term tables by lower case language code. */
+    private final Map<String, Table> languages;
+
+    /** Length of the termbase the index was built from, or -1. */
+    private final long sourceLength;
+
+    /** Modification time of the termbase the index was built from, or -1. */
+    private final long sourceModified;
+
+    /**
+     * @param i termEntry ids.
+     * @param l Term tables.
+     * @param len Length of the termbase.
+     * @param mod Modification time of the termbase.
+     */
+    private TermIndex(String[] i, Map<String, Table> l, long len, long mod)
+    {
+        ids = i;
+        languages = l;
+        sourceLength = len;
+        sourceModified = mod;
+    }
+
+    /**
+     * Normalize a term as it is indexed: NFC, white space runs collapsed to
+     * one space, and trimmed.
+     *
+     * @param term The term.
+     * @return The normalized term.
+     */
+    public static String normalize(String term)
+    {
+        String text = Normalizer.normalize(term, Normalizer.Form.NFC);
+        StringBuilder buf = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch))
+            {
+                space = buf.length() > 0;
+            }
+            else
+            {
+                if (space)
+                    buf.append(' ');
+                space = false;
+                buf.append(ch);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @param term Normalized term.
+     * @return The case folded term.
+     */
+    private static String fold(String term)
+    {
+        return term.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the number of termEntries in the index.
+     *
+     * @return Number of termEntries.
+     */
+    public int size()
+    {
+        return ids.length;
+    }
+
+    /**
+     * Get the languages that have terms.
+     *
+     * @return Lower case language codes.
+     */
+    public Set<String> getLanguages()
+    {
+        return Collections.unmodifiableSet(languages.keySet());
+    }
+
+    /**
+     * Get the id of a termEntry.
+     *
+     * @param entry The termEntry number.
+     * @return The termEntry id, which is empty if it had none.
+     */
+    public String getId(int entry)
+    {
+        return ids[entry];
+    }
+
+    /**
+     * Find the termEntries that have a matching term.
+     *
+     * @param lang Language of the term, or null for any language.
+     * @param term The term, or the start of it for a prefix match.
+     * @param match How terms are matched.
+     * @return Ascending termEntry numbers.
+     */
+    public int[] find(String lang, String term, Match match)
+    {
+        String text = normalize(term);
+        String key = fold(text);
+        Postings out = new Postings();
+        if (lang == null)
+        {
+            for (Table table : languages.values())
+                table.find(text, key, match, out);
+            return out.toSet();
+        }
+        Table table = languages.get(lang.toLowerCase(Locale.ROOT));
+        if (table != null)
+            table.find(text, key, match, out);
+        return out.toSet();
+    }
+
+    /**
+     * Find the ids of the termEntries that have a matching term.
+     *
+     * @param lang Language of the term, or null for any language.
+     * @param term The term, or the start of it for a prefix match.
+     * @param match How terms are matched.
+     * @return termEntry ids in document order.
+     */
+    public List<String> findIds(String lang, String term, Match match)
+    {
+        int[] found = find(lang, term, match);
+        List<String> ret = new ArrayList<String>(found.length);
+        for (int entry : found)
+            ret.add(ids[entry]);
+        return ret;
+    }
+
+    /**
+     * Get the file an index of a termbase is saved in.
+     *
+     * @param tbx The termbase.
+     * @return The index file next to the termbase.
+     */
+    public static File getIndexFile(File tbx)
+    {
+        return new File(tbx.getPath() + SUFFIX);
+    }
+
+    /**
+     * Save this index next to its termbase. The index is written to a
+     * temporary file first so a reader never sees part of an index.
+     *
+     * @param tbx The termbase the index was built from.
+     * @throws IOException Any failure writing the index.
+     */
+    public void save(File tbx) throws IOException
+    {
+        File dest = getIndexFile(tbx);
+        File tmp = File.createTempFile(tbx.getName(), SUFFIX, dest.getAbsoluteFile().getParentFile());
+        boolean saved = false;
+        try
+        {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeLong(sourceLength);
+                out.writeLong(sourceModified);
+                out.writeInt(ids.length);
+                for (String id : ids)
+                    ValidationCache.writeString(out, id);
+                out.writeInt(languages.size());
+                for (Map.Entry<String, Table> ent : languages.entrySet())
+                {
+                    Table table = ent.getValue();
+                    ValidationCache.writeString(out, ent.getKey());
+                    out.writeInt(table.terms.length);
+                    for (int i = 0; i < table.terms.length; i++)
+                    {
+                        ValidationCache.writeString(out, table.terms[i]);
+                        out.writeInt(table.start[i]);
+                    }
+                    out.writeInt(table.postings.length);
+                    for (int p : table.postings)
+                        out.writeInt(p);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        }
+        finally
+        {
+            if (!saved)
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Read the saved index of a termbase.
+     *
+     * @param tbx The termbase.
+     * @return The index, or null if there is none, it was saved in another
+     *  format, or the termbase has changed since it was saved.
+     * @throws IOException Any failure reading the index.
+     */
+    public static TermIndex load(File tbx) throws IOException
+    {
+        File src = getIndexFile(tbx);
+        if (!src.isFile())
+            return null;
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(src)));
+        try
+        {
+            if (in.readInt() != MAGIC)
+                throw new StreamCorruptedException("Not a term index: " + src);
+            if (in.readInt() != FORMAT)
+                return null;
+            long len = in.readLong();
+            long mod = in.readLong();
+            if (len != tbx.length() || mod != tbx.lastModified())
+                return null;
+            String[] ids = new String[in.readInt()];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = readString(in);
+            int count = in.readInt();
+            Map<String, Table> langs = new java.util.TreeMap<String, Table>();
+            for (int l = 0; l < count; l++)
+            {
+                String lang = readString(in);
+                int n = in.readInt();
+                String[] terms = new String[n];
+                String[] folded = new String[n];
+                int[] start = new int[n + 1];
+                for (int i = 0; i < n; i++)
+                {
+                    terms[i] = readString(in);
+                    folded[i] = fold(terms[i]);
+                    start[i] = in.readInt();
+                }
+                int[] postings = new int[in.readInt()];
+                for (int i = 0; i < postings.length; i++)
+                    postings[i] = in.readInt();
+                start[n] = postings.length;
+                langs.put(lang, new Table(terms, folded, start, postings));
+            }
+            return new TermIndex(ids, langs, len, mod);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in The saved index.
+     * @return A string written by {@link ValidationCache#writeString}.
+     * @throws IOException Any failure reading the index, or a null string.
+     */
+    private static String readString(DataInputStream in) throws IOException
+    {
+        String ret = ValidationCache.readString(in);
+        if (ret == null)
+            throw new StreamCorruptedException("Null string in term index");
+        return ret;
+    }
+
+    /**
+     * Builds an index from termEntries in document order.
+     */
+    public static final class Builder
+    {
+        /** termEntry ids by number. */
+        private final List<String> ids = new ArrayList<String>();
+
+        /** Postings of each term by language. */
+        private final Map<String, Map<String, Postings>> languages
+                = new java.util.TreeMap<String, Map<String, Postings>>();
+
+        /**
+         * Index the terms of the next termEntry.
+         *
+         * @param entry The termEntry, or conceptEntry.
+         */
+        public void add(Element entry)
+        {
+            int number = ids.size();
+            ids.add(entry.getAttribute("id"));
+            addTerms(entry, null, number);
+        }
+
+        /**
+         * @param elem Element in the termEntry.
+         * @param lang Language of the element.
+         * @param number The termEntry number.
+         */
+        private void addTerms(Element elem, String lang, int number)
+        {
+            String l = elem.getAttribute("xml:lang");
+            if (!l.equals(""))
+                lang = l.toLowerCase(Locale.ROOT);
+            if (elem.getTagName().equals("term"))
+            {
+                if (lang != null)
+                    addTerm(lang, normalize(elem.getTextContent()), number);
+                return;
+            }
+            for (Node n = elem.getFirstChild(); n != null; n = n.getNextSibling())
+            {
+                if (n instanceof Element)
+                    addTerms((Element) n, lang, number);
+            }
+        }
+
+        /**
+         * @param lang Language of the term.
+         * @param term Normalized term.
+         * @param number The termEntry number.
+         */
+        private void addTerm(String lang, String term, int number)
+        {
+            if (term.equals(""))
+                return;
+            Map<String, Postings> terms = languages.get(lang);
+            if (terms == null)
+            {
+                terms = new java.util.HashMap<String, Postings>();
+                languages.put(lang, terms);
+            }
+            Postings p = terms.get(term);
+            if (p == null)
+            {
+                p = new Postings();
+                terms.put(term, p);
+            }
+            if (p.last() != number)
+                p.add(number);
+        }
+
+        /**
+         * Build the index.
+         *
+         * @param tbx The termbase, its length and modification time are
+         *  kept so a saved index is only used while it is unchanged, or null.
+         * @return The index.
+         */
+        public TermIndex build(File tbx)
+        {
+            Map<String, Table> langs = new java.util.TreeMap<String, Table>();
+            for (Map.Entry<String, Map<String, Postings>> ent : languages.entrySet())
+                langs.put(ent.getKey(), table(ent.getValue()));
+            return new TermIndex(ids.toArray(new String[ids.size()]), langs,
+                    tbx == null ? -1 : tbx.length(), tbx == null ? -1 : tbx.lastModified());
+        }
+
+        /**
+         * @param terms Postings by term of one language.
+         * @return The sorted table.
+         */
+        private static Table table(Map<String, Postings> terms)
+        {
+            int n = terms.size();
+            final String[] sorted = terms.keySet().toArray(new String[n]);
+            final String[] folded = new String[n];
+            for (int i = 0; i < n; i++)
+                folded[i] = fold(sorted[i]);
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                public int compare(Integer a, Integer b)
+                {
+                    int ret = folded[a].compareTo(folded[b]);
+                    return ret != 0 ? ret : sorted[a].compareTo(sorted[b]);
+                }
+            });
+            String[] t = new String[n];
+            String[] f = new String[n];
+            int[] start = new int[n + 1];
+            int total = 0;
+            for (Postings p : terms.values())
+                total += p.size;
+            int[] postings = new int[total];
+            int pos = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int k = order[i];
+                t[i] = sorted[k];
+                f[i] = folded[k];
+                start[i] = pos;
+                Postings p = terms.get(sorted[k]);
+                System.arraycopy(p.values, 0, postings, pos, p.size);
+                pos += p.size;
+            }
+            start[n] = pos;
+            return new Table(t, f, start, postings);
+        }
+    }
+}
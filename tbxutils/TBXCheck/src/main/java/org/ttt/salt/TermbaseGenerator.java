@@ -0,0 +1,561 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Writes synthetic termbases for scale, soak, and memory ceiling tests.
+ * <p>
+ * TBX v2 termbases use the bundled core structure DTD and the bundled demo
+ * XCS, TBXDCSv05.xml, and only use the languages and data categories that
+ * XCS declares. TBX v3 termbases are dca style TBX-Core, TBX-Min, or
+ * TBX-Basic files that only use the data categories of their dialect.</p>
+ * <p>
+ * Each entry is written as soon as it is made, so the size of the termbase
+ * is not bounded by the heap. The output only depends on the settings and
+ * the seed, so a termbase may be made again instead of being kept.</p>
+ * <p>
+ * A fraction of the entries may be made invalid on purpose, with one
+ * {@link Violation} each. TBX v2 entries get an XCS violation, TBX v3
+ * entries get either a RELAX NG or a Schematron violation.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class TermbaseGenerator
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** The kinds of termbase that may be written. */
+    public enum Format
+    {
+        /** TBX v2 with the core structure DTD and TBXDCSv05 XCS. */
+        TBX_V2("v2"),
+
+        /** TBX v3 TBX-Core dialect. */
+        TBX_CORE(DialectRegistry.TBX_CORE),
+
+        /** TBX v3 TBX-Min dialect. */
+        TBX_MIN(DialectRegistry.TBX_MIN),
+
+        /** TBX v3 TBX-Basic dialect. */
+        TBX_BASIC(DialectRegistry.TBX_BASIC);
+
+        /** Name used on the command line. */
+        private final String name;
+
+        /**
+         * @param n Name used on the command line.
+         */
+        Format(String n)
+        {
+            name = n;
+        }
+
+        /**
+         * @return Name used on the command line, the dialect name for v3.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @param n A format name.
+         * @return The format with that name.
+         */
+        public static Format forName(String n)
+        {
+            for (Format f : values())
+            {
+                if (f.name.equalsIgnoreCase(n))
+                    return f;
+            }
+            throw new IllegalArgumentException("Unknown termbase format: " + n);
+        }
+    }
+
+    /** The kinds of violation that may be injected. */
+    public enum Violation
+    {
+        /** An invalid picklist value found by XCS validation. */
+        XCS,
+
+        /** An element the dialect RELAX NG schema does not allow. */
+        RNG,
+
+        /** Content the schema allows but the dialect Schematron rejects. */
+        SCHEMATRON
+    }
+
+    /** Languages declared by TBXDCSv05.xml. */
+    private static final String[] V2_LANGUAGES = {"en", "hu"};
+
+    /** Languages used in TBX v3 termbases. */
+    private static final String[] V3_LANGUAGES = {
+        "en", "es", "de", "fr", "it", "pt", "nl", "sv", "pl", "hu", "fi", "ru", "ja", "zh", "ko", "ar",
+    };
+
+    /** Syllables that words are made from. */
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ne", "ta", "ri", "so", "vu", "pe", "da", "gi", "zo", "bra", "tel", "mon", "sar",
+    };
+
+    /** Subject field values. */
+    private static final String[] SUBJECTS = {
+        "manufacturing", "astronomy", "medicine", "finance", "law", "software", "chemistry",
+    };
+
+    /** Parts of speech every format accepts. */
+    private static final String[] PARTS_OF_SPEECH = {"noun", "verb", "adjective", "adverb"};
+
+    /** Administrative status values every format accepts. */
+    private static final String[] STATUS = {
+        "preferredTerm-admn-sts", "admittedTerm-admn-sts", "deprecatedTerm-admn-sts",
+    };
+
+    /** Term types TBXDCSv05 and TBX-Basic both accept. */
+    private static final String[] TERM_TYPES = {"fullForm", "variant"};
+
+    /** Administrative status that no format accepts. */
+    private static final String BAD_STATUS = "unknownTerm-admn-sts";
+
+    /** Text before the first entry of a TBX v2 termbase. */
+    private static final String V2_HEAD =
+        "<?xml version='1.0' encoding='UTF-8'?>\n"
+        + "<!DOCTYPE martif\n"
+        + "    PUBLIC\n"
+        + "        \"ISO 30042:2008A//DTD TBX core//EN\"\n"
+        + "        \"/xml/TBXcoreStructV02.dtd\">\n"
+        + "<martif type='TBX' xml:lang='en'>\n"
+        + "    <martifHeader>\n"
+        + "        <fileDesc>\n"
+        + "            <sourceDesc>\n"
+        + "                <p>{0}</p>\n"
+        + "            </sourceDesc>\n"
+        + "        </fileDesc>\n"
+        + "        <encodingDesc>\n"
+        + "            <p type='XCSURI'>/xml/TBXDCSv05.xml</p>\n"
+        + "        </encodingDesc>\n"
+        + "    </martifHeader>\n"
+        + "    <text>\n"
+        + "        <body>\n";
+
+    /** Text after the last entry of a TBX v2 termbase. */
+    private static final String V2_TAIL = "        </body>\n    </text>\n</martif>\n";
+
+    /** Text before the first entry of a TBX v3 termbase. */
+    private static final String V3_HEAD =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<tbx type=\"{1}\" style=\"dca\" xml:lang=\"en\" xmlns=\"urn:iso:std:iso:30042:ed-2\">\n"
+        + "    <tbxHeader>\n"
+        + "        <fileDesc>\n"
+        + "            <sourceDesc>\n"
+        + "                <p>{0}</p>\n"
+        + "            </sourceDesc>\n"
+        + "        </fileDesc>\n"
+        + "    </tbxHeader>\n"
+        + "    <text>\n"
+        + "        <body>\n";
+
+    /** Text after the last entry of a TBX v3 termbase. */
+    private static final String V3_TAIL = "        </body>\n    </text>\n</tbx>\n";
+
+    /** Indent of each entry. */
+    private static final String INDENT = "            ";
+
+    /** Indent of each nesting level in an entry. */
+    private static final String STEP = "    ";
+
+    /** Kind of termbase. */
+    private final Format format;
+
+    /** Number of entries. */
+    private long entries = 1;
+
+    /** Number of languages in each entry. */
+    private int languages = 2;
+
+    /** Number of terms in each language. */
+    private int terms = 1;
+
+    /** Chance that each optional data category is written. */
+    private double categoryRate = 0.5;
+
+    /** Chance that each entry has a violation. */
+    private double errorRate;
+
+    /** Random number seed. */
+    private long seed;
+
+    /** Violations injected by the last write. */
+    private final Map<Violation, Long> violations
+            = new java.util.EnumMap<Violation, Long>(Violation.class);
+
+    /** Source of all choices while writing. */
+    private Random random;
+
+    /**
+     * Create a generator with one entry, two languages, one term in each
+     * language, half of the optional data categories, no violations, and
+     * seed zero.
+     *
+     * @param f The kind of termbase to write.
+     */
+    public TermbaseGenerator(Format f)
+    {
+        format = f;
+    }
+
+    /**
+     * @return The kind of termbase written.
+     */
+    public Format getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * @param v Number of entries to write.
+     */
+    public void setEntries(long v)
+    {
+        if (v < 0)
+            throw new IllegalArgumentException("Entries must not be negative: " + v);
+        entries = v;
+    }
+
+    /**
+     * @return Number of entries to write.
+     */
+    public long getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Set the number of languages in each entry. TBX v2 termbases may have
+     * at most the two languages of the XCS.
+     *
+     * @param v Number of languages.
+     */
+    public void setLanguages(int v)
+    {
+        String[] pool = format == Format.TBX_V2 ? V2_LANGUAGES : V3_LANGUAGES;
+        if (v < 1 || v > pool.length)
+            throw new IllegalArgumentException(String.format(
+                "Languages must be from 1 to %d for %s: %d", pool.length, format.getName(), v));
+        languages = v;
+    }
+
+    /**
+     * @return Number of languages in each entry.
+     */
+    public int getLanguages()
+    {
+        return languages;
+    }
+
+    /**
+     * @param v Number of terms in each language.
+     */
+    public void setTerms(int v)
+    {
+        if (v < 1)
+            throw new IllegalArgumentException("Terms must be at least 1: " + v);
+        terms = v;
+    }
+
+    /**
+     * @return Number of terms in each language.
+     */
+    public int getTerms()
+    {
+        return terms;
+    }
+
+    /**
+     * Set the data category mix. Each optional data category the format
+     * allows on an entry or a term is written with this chance, so zero
+     * writes bare terms and one writes every data category.
+     *
+     * @param v Chance from zero to one.
+     */
+    public void setCategoryRate(double v)
+    {
+        categoryRate = checkRate(v);
+    }
+
+    /**
+     * @return Chance that each optional data category is written.
+     */
+    public double getCategoryRate()
+    {
+        return categoryRate;
+    }
+
+    /**
+     * @param v Chance from zero to one that an entry has a violation.
+     */
+    public void setErrorRate(double v)
+    {
+        errorRate = checkRate(v);
+    }
+
+    /**
+     * @return Chance that an entry has a violation.
+     */
+    public double getErrorRate()
+    {
+        return errorRate;
+    }
+
+    /**
+     * @param v Random number seed.
+     */
+    public void setSeed(long v)
+    {
+        seed = v;
+    }
+
+    /**
+     * @return Random number seed.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @param v The kind of violation.
+     * @return Number of violations of that kind injected by the last write.
+     */
+    public long getViolations(Violation v)
+    {
+        Long ret = violations.get(v);
+        return ret == null ? 0 : ret;
+    }
+
+    /**
+     * @return Number of violations of all kinds injected by the last write.
+     */
+    public long getViolations()
+    {
+        long ret = 0;
+        for (Long v : violations.values())
+            ret += v;
+        return ret;
+    }
+
+    /**
+     * Write the termbase as UTF-8. The stream is flushed but not closed.
+     *
+     * @param out Where the termbase is written.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        write(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+    }
+
+    /**
+     * Write the termbase. The writer is flushed but not closed.
+     *
+     * @param out Where the termbase is written.
+     * @throws IOException Any I/O exceptions that occur.
+     */
+    public void write(Writer out) throws IOException
+    {
+        random = new Random(seed);
+        violations.clear();
+        String desc = String.format("Synthetic termbase: entries=%d languages=%d terms=%d "
+                + "categories=%s errors=%s seed=%d", entries, languages, terms,
+                categoryRate, errorRate, seed);
+        boolean v2 = format == Format.TBX_V2;
+        out.write((v2 ? V2_HEAD : V3_HEAD).replace("{0}", desc).replace("{1}", format.getName()));
+        StringBuilder buf = new StringBuilder();
+        for (long i = 0; i < entries; i++)
+        {
+            buf.setLength(0);
+            entry(buf, i);
+            out.write(buf.toString());
+        }
+        out.write(v2 ? V2_TAIL : V3_TAIL);
+        out.flush();
+    }
+
+    /**
+     * @param buf Where the entry is written.
+     * @param n The entry number.
+     */
+    private void entry(StringBuilder buf, long n)
+    {
+        boolean v2 = format == Format.TBX_V2;
+        Violation violation = null;
+        if (errorRate > 0 && random.nextDouble() < errorRate)
+        {
+            if (v2)
+                violation = Violation.XCS;
+            else
+                violation = random.nextBoolean() ? Violation.RNG : Violation.SCHEMATRON;
+            Long count = violations.get(violation);
+            violations.put(violation, count == null ? 1 : count + 1);
+        }
+        String tag = v2 ? "termEntry" : "conceptEntry";
+        String pad = INDENT + STEP;
+        buf.append(INDENT).append('<').append(tag).append(" id=\"").append(v2 ? "ID" : "c").append(n)
+            .append("\">\n");
+        if (format != Format.TBX_CORE && chance())
+            category(buf, pad, "descrip", "subjectField", pick(SUBJECTS));
+        if ((v2 || format == Format.TBX_BASIC) && chance())
+            category(buf, pad, "descrip", "definition", sentence());
+        if (format == Format.TBX_CORE && chance())
+            category(buf, pad, "note", null, sentence());
+        if (violation == Violation.RNG)
+            buf.append(pad).append("<fubar/>\n");
+
+        String[] pool = v2 ? V2_LANGUAGES : V3_LANGUAGES;
+        int first = random.nextInt(pool.length);
+        for (int l = 0; l < languages; l++)
+        {
+            String lang = pool[(first + l) % pool.length];
+            buf.append(pad).append('<').append(v2 ? "langSet" : "langSec").append(" xml:lang=\"")
+                .append(lang).append("\">\n");
+            for (int t = 0; t < terms; t++)
+                term(buf, pad + STEP, l == 0 && t == 0 ? violation : null);
+            buf.append(pad).append("</").append(v2 ? "langSet" : "langSec").append(">\n");
+        }
+        buf.append(INDENT).append("</").append(tag).append(">\n");
+    }
+
+    /**
+     * @param buf Where the term is written.
+     * @param pad Indent of the term.
+     * @param violation The violation to add to the term or null.
+     */
+    private void term(StringBuilder buf, String pad, Violation violation)
+    {
+        boolean v2 = format == Format.TBX_V2;
+        String inner = pad + STEP;
+        String tag = v2 ? "tig" : "termSec";
+        buf.append(pad).append('<').append(tag).append(">\n");
+        buf.append(inner).append("<term>").append(words(1 + random.nextInt(3))).append("</term>\n");
+        if (format != Format.TBX_CORE)
+        {
+            if ((v2 || format == Format.TBX_BASIC) && chance())
+                category(buf, inner, "termNote", "termType", pick(TERM_TYPES));
+            if (violation == Violation.XCS || (violation == Violation.SCHEMATRON))
+                category(buf, inner, "termNote", "administrativeStatus", BAD_STATUS);
+            else if (chance())
+                category(buf, inner, "termNote", "administrativeStatus", pick(STATUS));
+            if (chance())
+                category(buf, inner, "termNote", "partOfSpeech", pick(PARTS_OF_SPEECH));
+        }
+        if ((v2 || format == Format.TBX_BASIC) && chance())
+            category(buf, inner, "descrip", "context", sentence());
+        if (!v2 && chance())
+            category(buf, inner, "note", null, sentence());
+        if (violation == Violation.SCHEMATRON && format == Format.TBX_CORE)
+        {   //An ec without a matching sc must have an id
+            buf.append(inner).append("<note>").append(words(2)).append("<ec/></note>\n");
+        }
+        buf.append(pad).append("</").append(tag).append(">\n");
+    }
+
+    /**
+     * @param buf Where the data category is written.
+     * @param pad Indent of the data category.
+     * @param tag The element name.
+     * @param type The data category or null for an untyped element.
+     * @param value The content.
+     */
+    private void category(StringBuilder buf, String pad, String tag, String type, String value)
+    {
+        buf.append(pad).append('<').append(tag);
+        if (type != null)
+            buf.append(" type=\"").append(type).append('"');
+        buf.append('>').append(value).append("</").append(tag).append(">\n");
+    }
+
+    /**
+     * @return True with the data category chance.
+     */
+    private boolean chance()
+    {
+        return categoryRate > 0 && random.nextDouble() < categoryRate;
+    }
+
+    /**
+     * @param values The values to choose from.
+     * @return One of the values.
+     */
+    private String pick(String[] values)
+    {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * @param count Number of words.
+     * @return Words separated by spaces.
+     */
+    private String words(int count)
+    {
+        StringBuilder ret = new StringBuilder();
+        for (int w = 0; w < count; w++)
+        {
+            if (w > 0)
+                ret.append(' ');
+            int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++)
+                ret.append(pick(SYLLABLES));
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @return A sentence of several words.
+     */
+    private String sentence()
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        String ret = words(6 + random.nextInt(10));
+        //CHECKSTYLE: MagicNumber ON
+        return Character.toUpperCase(ret.charAt(0)) + ret.substring(1) + ".";
+    }
+
+    /**
+     * @param v A chance.
+     * @return The chance if it is from zero to one.
+     */
+    private static double checkRate(double v)
+    {
+        if (!(v >= 0 && v <= 1))
+            throw new IllegalArgumentException("Rate must be from 0 to 1: " + v);
+        return v;
+    }
+}
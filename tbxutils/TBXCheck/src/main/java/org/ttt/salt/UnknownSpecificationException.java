@@ -32,6 +32,9 @@ public class UnknownSpecificationException extends XCSValidationException
     
     /** SCM information. */
     public static final String RCSID = "$Id$";
+
+    /** Key of the message in the XCSValidationException bundle. */
+    static final String CODE = "UnknownSpecification";
     
     /**
      * @param elem The XML element this exception occured on.
@@ -41,17 +44,26 @@ public class UnknownSpecificationException extends XCSValidationException
         super(elem);
     }
     
+    /**
+     * Restore an exception from its diagnostic, it has no element.
+     *
+     * @param d The diagnostic of the exception.
+     */
+    UnknownSpecificationException(Diagnostic d)
+    {
+        super(d);
+    }
+
+    /** {@inheritDoc} */
+    protected String getCode()
+    {
+        return CODE;
+    }
+
     /** {@inheritDoc} */
-    public String getMessage()
+    protected Object[] getDetails()
     {
-        StringBuffer buf = new StringBuffer();
-        buf.append("Unknown specification pair (");
-        buf.append(element().getTagName());
-        buf.append(", ");
-        buf.append(element().getAttribute("type"));
-        buf.append("): ");
-        buf.append(buildContext());
-        return buf.toString();
+        return new Object[] {element().getTagName(), element().getAttribute("type")};
     }
 }
 
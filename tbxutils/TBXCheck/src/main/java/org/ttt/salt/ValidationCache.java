@@ -0,0 +1,965 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.oclc.purl.dsdl.svrl.FailedAssert;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+
+/**
+ * Keeps the results of validating files on disk so a batch run can skip
+ * the files that have not changed since an earlier run.
+ * <p>
+ * A result is found by a {@link Key}: a digest of the file contents, the
+ * version of the validator, and the settings that change the result. A
+ * result also names the files it depends on, the XCS and DTD of a TBX file
+ * or the RELAX NG and Schematron schemas of a TBX v3 dialect, with a digest
+ * of each. A result is only used while those digests still match. Each
+ * dependency is read once per cache object, so make a new one for each
+ * batch run.</p>
+ * <p>
+ * Results are only kept when all they depend on is known. A file that
+ * could not find or parse its XCS, or the schemas for its dialect, or that
+ * stopped before its XCS was read, is validated again on the next run.</p>
+ * <p>
+ * Any number of threads and processes may share a cache directory. Each
+ * result is written to a temporary file and moved into place, so a reader
+ * sees either the whole old result or the whole new one. Use
+ * {@link #prune} to bound the size and age of the directory.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class ValidationCache
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** File name extension of a cached result. */
+    public static final String SUFFIX = ".result";
+
+    /** Logger for this package. */
+    private static final Logger LOGGER = Logger.getLogger("org.ttt.salt");
+
+    /** First bytes of a cached result: "TBXR". */
+    private static final int MAGIC = 0x54425852;
+
+    /** Version of the result layout. */
+    private static final int FORMAT = 2;
+
+    /** File name extension of a result that is still being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Milliseconds a temporary file is left alone by {@link #prune}, since
+     * another process may still be writing it.
+     */
+    private static final long TEMP_GRACE = 60L * 60 * 1000;
+
+    /** Bytes read at a time while digesting. */
+    private static final int DIGEST_BUFFER = 64 * 1024;
+
+    /** Character set of the key parts and the cached strings. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Results of the TBX validator. */
+    private static final String ENGINE_TBX = "tbx";
+
+    /** Results of the TBX v3 validator. */
+    private static final String ENGINE_TBX3 = "tbx3";
+
+    /** Dependency on an XCS found through the TBX file's resolver. */
+    private static final String DEPEND_XCS = "xcs";
+
+    /** Dependency on a DTD found through the TBX file's resolver. */
+    private static final String DEPEND_DTD = "dtd";
+
+    /** Dependency on a schema at a URL. */
+    private static final String DEPEND_URL = "url";
+
+    /** Version of the classes that produce the results. */
+    private static final String VERSION = findVersion();
+
+    /**
+     * Identifies the result of validating one file. Making a key reads the
+     * whole file once to digest it.
+     */
+    public static final class Key
+    {
+        /** The file that was validated. */
+        private final File file;
+
+        /** The validator the result is from. */
+        private final String engine;
+
+        /** Settings of a TBX validation, null for TBX v3. */
+        private final Configuration config;
+
+        /** Hexadecimal digest of everything the result depends on. */
+        private final String digest;
+
+        /**
+         * @param f The file that was validated.
+         * @param e The validator the result is from.
+         * @param c Settings of a TBX validation, null for TBX v3.
+         * @param d Hexadecimal digest of everything the result depends on.
+         */
+        private Key(File f, String e, Configuration c, String d)
+        {
+            file = f;
+            engine = e;
+            config = c;
+            digest = d;
+        }
+
+        /**
+         * @return The file that was validated.
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * @return Hexadecimal digest of the file contents, the validator
+         *  version, and the settings.
+         */
+        public String getDigest()
+        {
+            return digest;
+        }
+    }
+
+    /** Directory that holds the results. */
+    private final File directory;
+
+    /** Digests of the dependencies read so far. */
+    private final Map<String, String> dependencies
+            = new java.util.concurrent.ConcurrentHashMap<String, String>();
+
+    /** Number of lookups that found a current result. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of lookups that found nothing or an out of date result. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param dir Directory that holds the results, it is created when the
+     *  first result is saved.
+     */
+    public ValidationCache(File dir)
+    {
+        if (dir == null)
+            throw new IllegalArgumentException("Cache directory cannot be null");
+        directory = dir;
+    }
+
+    /**
+     * @return Directory that holds the results.
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return The number of lookups that found a current result.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that found nothing or an out of date
+     *  result.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Make the key of a TBX validation. The locale is part of the key since
+     * the cached messages are localized.
+     *
+     * @param file The TBX file.
+     * @param c The validation and compliance configuration.
+     * @return The key of the result.
+     * @throws IOException The file could not be read.
+     */
+    public Key key(File file, Configuration c) throws IOException
+    {
+        String context = c.getResultKey() + ";locale=" + Locale.getDefault();
+        return new Key(file, ENGINE_TBX, c, keyDigest(file, ENGINE_TBX, context));
+    }
+
+    /**
+     * Make the key of a TBX v3 validation.
+     *
+     * @param file The TBX v3 file.
+     * @param r The registry the dialect schemas come from.
+     * @return The key of the result.
+     * @throws IOException The file could not be read.
+     */
+    public Key key(File file, DialectRegistry r) throws IOException
+    {
+        String context = "external=" + r.getExternalSchemas();
+        return new Key(file, ENGINE_TBX3, null, keyDigest(file, ENGINE_TBX3, context));
+    }
+
+    /**
+     * Get the cached result of a TBX validation.
+     *
+     * @param key Key from {@link #key(File, Configuration)}.
+     * @return The exceptions that made the file invalid, empty if it was
+     *  valid, or null if there is no current result.
+     */
+    public List<TBXException> getTBX(Key key)
+    {
+        DataInputStream in = open(key, ENGINE_TBX);
+        if (in == null)
+            return null;
+        try
+        {
+            int count = in.readInt();
+            List<TBXException> ret = new ArrayList<TBXException>(count);
+            for (int i = 0; i < count; i++)
+            {
+                TBXException.Priority p = TBXException.Priority.valueOf(in.readUTF());
+                ret.add(new TBXException(p, readString(in), readString(in)));
+            }
+            return hit(key, ret);
+        }
+        catch (IOException err)
+        {
+            return corrupt(key, err);
+        }
+        catch (IllegalArgumentException err)
+        {   //Unknown priority
+            return corrupt(key, err);
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    /**
+     * Save the result of a TBX validation. Nothing is saved if the result
+     * depends on something that could not be read, such as a missing XCS,
+     * and a failure to save is only logged.
+     *
+     * @param key Key from {@link #key(File, Configuration)}.
+     * @param dv The validated file.
+     */
+    public void putTBX(Key key, TBXFile dv)
+    {
+        List<TBXException> errs = dv.getInvalidatingExceptions();
+        boolean preparse = false;
+        for (TBXException err : errs)
+        {
+            if (err.getCause() instanceof IOException)
+                return;
+            if (err.getPriority() == TBXException.Priority.PRE_PARSE)
+                preparse = true;
+        }
+        List<String[]> deps = new ArrayList<String[]>();
+        try
+        {
+            XCSDocument xcs = dv.getXCSDocument();
+            if (xcs != null && xcs.getDigest() != null && dv.getXCSURI() != null)
+            {
+                String id = entityId(dv.getXCSURI(), dv.getXCSURI());
+                deps.add(new String[] {DEPEND_XCS, id, xcs.getDigest()});
+            }
+            else if (!preparse)
+            {   //The XCS was not read, so the result may depend on it
+                return;
+            }
+            Prolog prolog = dv.getProlog();
+            if (prolog != null && prolog.getDoctypeName() != null)
+            {
+                String id = entityId(prolog.getPublicId(), prolog.getSystemId());
+                deps.add(new String[] {DEPEND_DTD, id, dependencyDigest(key, DEPEND_DTD, id)});
+            }
+        }
+        catch (IOException err)
+        {
+            LOGGER.log(Level.FINE, "Dependency of " + key.file + " could not be read", err);
+            return;
+        }
+        catch (SAXException err)
+        {
+            LOGGER.log(Level.FINE, "Dependency of " + key.file + " could not be read", err);
+            return;
+        }
+
+        DataOutputStream out = create(key, ENGINE_TBX, deps);
+        if (out == null)
+            return;
+        try
+        {
+            out.writeInt(errs.size());
+            for (TBXException err : errs)
+            {
+                out.writeUTF(err.getPriority().name());
+                writeString(out, err.getMessage());
+                writeString(out, err.getLocalizedMessage());
+            }
+            commit(key, out);
+        }
+        catch (IOException err)
+        {
+            abort(key, out, err);
+        }
+    }
+
+    /**
+     * Get the cached result of a TBX v3 validation. The file that is
+     * returned has the results but no document or dialect.
+     *
+     * @param key Key from {@link #key(File, DialectRegistry)}.
+     * @return The validated file, or null if there is no current result.
+     */
+    public TBX3File getTBX3(Key key)
+    {
+        DataInputStream in = open(key, ENGINE_TBX3);
+        if (in == null)
+            return null;
+        try
+        {
+            String name = readString(in);
+            String schError = readString(in);
+            SAXParseException wfError = null;
+            if (!in.readBoolean())
+            {
+                int line = in.readInt();
+                int column = in.readInt();
+                wfError = new SAXParseException(readString(in), null, null, line, column);
+            }
+            int count = in.readInt();
+            List<SAXParseException> schema = new ArrayList<SAXParseException>(count);
+            for (int i = 0; i < count; i++)
+            {
+                int line = in.readInt();
+                int column = in.readInt();
+                schema.add(new SAXParseException(readString(in), null, null, line, column));
+            }
+            count = in.readInt();
+            List<FailedAssert> asserts = new ArrayList<FailedAssert>(count);
+            for (int i = 0; i < count; i++)
+            {
+                FailedAssert fa = new FailedAssert();
+                fa.setLocation(readString(in));
+                fa.setTest(readString(in));
+                fa.setText(readString(in));
+                asserts.add(fa);
+            }
+            URL url = key.file.toURI().toURL();
+            return hit(key, new TBX3File(url, name, wfError, schema, asserts, schError));
+        }
+        catch (IOException err)
+        {
+            return corrupt(key, err);
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    /**
+     * Save the result of a TBX v3 validation. Nothing is saved if the
+     * dialect schemas were not found, or if the Schematron rules could not
+     * be applied to a well formed file, since that may depend on the
+     * environment rather than on the files. A failure to save is only
+     * logged.
+     *
+     * @param key Key from {@link #key(File, DialectRegistry)}.
+     * @param tbx The validated file.
+     */
+    public void putTBX3(Key key, TBX3File tbx)
+    {
+        DialectRegistry.Dialect dialect = tbx.getDialect();
+        if (dialect == null)
+            return;
+        if (tbx.isWellFormed() && !tbx.isSchematronChecked())
+        {   //Such as no XPath 2 engine, so the result may change without the files
+            LOGGER.fine("Schematron not applied, result of " + key.file + " not cached");
+            return;
+        }
+        List<String[]> deps = new ArrayList<String[]>();
+        try
+        {
+            for (URL url : new URL[] {dialect.getSchemaURL(), dialect.getSchematronURL()})
+            {
+                if (url == null)
+                    continue;
+                String id = url.toExternalForm();
+                deps.add(new String[] {DEPEND_URL, id, dependencyDigest(key, DEPEND_URL, id)});
+            }
+        }
+        catch (IOException err)
+        {
+            LOGGER.log(Level.FINE, "Dependency of " + key.file + " could not be read", err);
+            return;
+        }
+        catch (SAXException err)
+        {
+            LOGGER.log(Level.FINE, "Dependency of " + key.file + " could not be read", err);
+            return;
+        }
+
+        DataOutputStream out = create(key, ENGINE_TBX3, deps);
+        if (out == null)
+            return;
+        try
+        {
+            writeString(out, tbx.getDialectName());
+            writeString(out, tbx.getSchematronError());
+            out.writeBoolean(tbx.isWellFormed());
+            if (!tbx.isWellFormed())
+            {
+                SAXParseException err = tbx.getWellFormedError();
+                out.writeInt(err.getLineNumber());
+                out.writeInt(err.getColumnNumber());
+                writeString(out, err.getMessage());
+            }
+            out.writeInt(tbx.getSchemaExceptions().size());
+            for (SAXParseException err : tbx.getSchemaExceptions())
+            {
+                out.writeInt(err.getLineNumber());
+                out.writeInt(err.getColumnNumber());
+                writeString(out, err.getMessage());
+            }
+            out.writeInt(tbx.getFailedAsserts().size());
+            for (FailedAssert fa : tbx.getFailedAsserts())
+            {
+                writeString(out, fa.getLocation());
+                writeString(out, fa.getTest());
+                writeString(out, fa.getText());
+            }
+            commit(key, out);
+        }
+        catch (IOException err)
+        {
+            abort(key, out, err);
+        }
+    }
+
+    /**
+     * Remove results until the directory is within its limits. Results
+     * older than the age limit go first, then the least recently used until
+     * the total size fits. Results in use by another process are safe to
+     * remove; that process will just validate the file again. Temporary
+     * files are only removed once they are older than an hour, so results
+     * other processes are still writing are kept, and those left by a
+     * process that died are not.
+     *
+     * @param maxBytes Largest total size of the results, zero for no limit.
+     * @param maxAge Milliseconds since a result was last used before it is
+     *  removed, zero for no limit.
+     * @return The number of results removed.
+     */
+    public int prune(long maxBytes, long maxAge)
+    {
+        List<File> files = new ArrayList<File>();
+        File[] dirs = directory.listFiles();
+        if (dirs == null)
+            return 0;
+        long writing = System.currentTimeMillis() - TEMP_GRACE;
+        for (File dir : dirs)
+        {
+            File[] children = dir.listFiles();
+            if (children == null)
+                continue;
+            for (File f : children)
+            {
+                if (!f.getName().endsWith(TEMP_SUFFIX) || f.lastModified() < writing)
+                    files.add(f);
+            }
+        }
+
+        final Map<File, Long> used = new java.util.HashMap<File, Long>();
+        for (File f : files)
+            used.put(f, f.lastModified());
+        java.util.Collections.sort(files, new java.util.Comparator<File>()
+            {
+                public int compare(File a, File b)
+                {
+                    return used.get(a).compareTo(used.get(b));
+                }
+            });
+
+        long total = 0;
+        for (File f : files)
+            total += f.length();
+        long oldest = maxAge > 0 ? System.currentTimeMillis() - maxAge : Long.MIN_VALUE;
+        int ret = 0;
+        for (File f : files)
+        {
+            boolean over = maxBytes > 0 && total > maxBytes;
+            if (!over && used.get(f) >= oldest)
+                break;
+            long len = f.length();
+            if (f.delete())
+            {
+                total -= len;
+                ret++;
+            }
+        }
+        for (File dir : dirs)
+            dir.delete();   //Only empty directories are removed
+        LOGGER.info("Pruned " + ret + " cached results from " + directory);
+        return ret;
+    }
+
+    /**
+     * Stream a file through SHA-256.
+     *
+     * @param file The file to digest.
+     * @return Hexadecimal SHA-256 digest of the file contents.
+     * @throws IOException The file could not be read.
+     */
+    public static String digest(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return XCSDocumentCache.toHex(digest(XCSDocumentCache.newDigest(), in));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @param md The digest to update.
+     * @param in The bytes to add to the digest.
+     * @return The digest value.
+     * @throws IOException Any I/O exceptions reading the stream.
+     */
+    private static byte[] digest(MessageDigest md, InputStream in) throws IOException
+    {
+        byte[] buf = new byte[DIGEST_BUFFER];
+        int len;
+        while ((len = in.read(buf)) != -1)
+            md.update(buf, 0, len);
+        return md.digest();
+    }
+
+    /**
+     * @param file The file that is validated.
+     * @param engine The validator.
+     * @param context The settings that change the result.
+     * @return Hexadecimal digest of the file contents, validator version,
+     *  and the settings.
+     * @throws IOException The file could not be read.
+     */
+    private static String keyDigest(File file, String engine, String context) throws IOException
+    {
+        MessageDigest md = XCSDocumentCache.newDigest();
+        md.update((engine + '\n' + VERSION + '\n' + context + '\n').getBytes(UTF8));
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return XCSDocumentCache.toHex(digest(md, in));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Read the digest of a dependency, once for each resolved location.
+     *
+     * @param key The result that depends on it.
+     * @param kind How the dependency is found.
+     * @param id Where the dependency is found.
+     * @return Hexadecimal SHA-256 digest of the dependency.
+     * @throws IOException The dependency could not be read.
+     * @throws SAXException The dependency could not be resolved.
+     */
+    private String dependencyDigest(Key key, String kind, String id)
+        throws IOException, SAXException
+    {
+        //Relative locations are found next to the TBX file
+        String memo = kind.equals(DEPEND_URL)
+                ? kind + ' ' + id
+                : kind + ' ' + key.file.getAbsoluteFile().getParent() + ' ' + id;
+        String ret = dependencies.get(memo);
+        if (ret != null)
+            return ret;
+        if (kind.equals(DEPEND_URL))
+        {
+            InputStream in = new URL(id).openStream();
+            try
+            {
+                ret = XCSDocumentCache.toHex(digest(XCSDocumentCache.newDigest(), new BufferedInputStream(in)));
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        else
+        {
+            EntityResolver resolver = key.config.getCustomEntityResolver();
+            if (resolver == null)
+                resolver = new TBXResolver(key.file.toURI().toURL());
+            String publicId = id.substring(0, id.indexOf('\n'));
+            String systemId = id.substring(id.indexOf('\n') + 1);
+            ret = XCSDocumentCache.digest(resolver.resolveEntity(
+                    publicId.length() == 0 ? null : publicId, systemId));
+        }
+        dependencies.put(memo, ret);
+        return ret;
+    }
+
+    /**
+     * @param publicId The PUBLIC ID of a DTD, or null.
+     * @param systemId The SYSTEM ID of a DTD, or null.
+     * @return The two IDs as one dependency location.
+     */
+    private static String entityId(String publicId, String systemId)
+    {
+        return (publicId == null ? "" : publicId) + '\n' + (systemId == null ? "" : systemId);
+    }
+
+    /**
+     * @param key The result key.
+     * @return The file that holds the result, spread over subdirectories
+     *  so no one directory gets too large.
+     */
+    private File resultFile(Key key)
+    {
+        File dir = new File(directory, key.digest.substring(0, 2));
+        return new File(dir, key.digest + SUFFIX);
+    }
+
+    /**
+     * Open a result and check that its dependencies are unchanged.
+     *
+     * @param key The result key.
+     * @param engine The validator the result must come from.
+     * @return The stream positioned at the validator's results, or null if
+     *  there is no current result.
+     */
+    private DataInputStream open(Key key, String engine)
+    {
+        if (!key.engine.equals(engine))
+            throw new IllegalArgumentException("Key is for " + key.engine + " results");
+        File src = resultFile(key);
+        DataInputStream in;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(src)));
+        }
+        catch (IOException err)
+        {   //Not cached, or removed by another process
+            misses.incrementAndGet();
+            return null;
+        }
+        try
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !in.readUTF().equals(engine))
+                throw new StreamCorruptedException("Not a cached result: " + src);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String kind = in.readUTF();
+                String id = readString(in);
+                String digest = in.readUTF();
+                if (!digest.equals(dependencyDigest(key, kind, id)))
+                {
+                    LOGGER.fine("Cached result out of date: " + key.file);
+                    close(in);
+                    misses.incrementAndGet();
+                    return null;
+                }
+            }
+            return in;
+        }
+        catch (IOException err)
+        {
+            close(in);
+            return corrupt(key, err);
+        }
+        catch (SAXException err)
+        {
+            close(in);
+            return corrupt(key, err);
+        }
+    }
+
+    /**
+     * Count a hit and mark the result as recently used.
+     *
+     * @param <T> The type of result.
+     * @param key The result key.
+     * @param ret The result.
+     * @return The result.
+     */
+    private <T> T hit(Key key, T ret)
+    {
+        resultFile(key).setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        LOGGER.info("Using cached result: " + key.file);
+        return ret;
+    }
+
+    /**
+     * Count a miss for a result that could not be read.
+     *
+     * @param <T> The type of result.
+     * @param key The result key.
+     * @param err Why the result could not be read.
+     * @return Null.
+     */
+    private <T> T corrupt(Key key, Exception err)
+    {
+        LOGGER.log(Level.FINE, "Cached result of " + key.file + " could not be read", err);
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Start writing a result to a temporary file.
+     *
+     * @param key The result key.
+     * @param engine The validator the result is from.
+     * @param deps Kind, location, and digest of each dependency.
+     * @return The stream to write the validator's results to, or null if
+     *  the temporary file could not be made.
+     */
+    private DataOutputStream create(Key key, String engine, List<String[]> deps)
+    {
+        File dest = resultFile(key);
+        DataOutputStream out = null;
+        try
+        {
+            Files.createDirectories(dest.getParentFile().toPath());
+            File tmp = File.createTempFile(key.digest, TEMP_SUFFIX, dest.getParentFile());
+            out = new TempOutputStream(tmp);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeUTF(engine);
+            out.writeInt(deps.size());
+            for (String[] dep : deps)
+            {
+                out.writeUTF(dep[0]);
+                writeString(out, dep[1]);
+                out.writeUTF(dep[2]);
+            }
+            return out;
+        }
+        catch (IOException err)
+        {
+            abort(key, out, err);
+            return null;
+        }
+    }
+
+    /**
+     * Move a completely written result into place.
+     *
+     * @param key The result key.
+     * @param out The stream from {@link #create}.
+     * @throws IOException The result could not be moved.
+     */
+    private void commit(Key key, DataOutputStream out) throws IOException
+    {
+        out.close();
+        File tmp = ((TempOutputStream) out).file;
+        File dest = resultFile(key);
+        try
+        {
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException err)
+        {
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Drop a result that could not be written.
+     *
+     * @param key The result key.
+     * @param out The stream from {@link #create}, or null.
+     * @param err Why the result could not be written.
+     */
+    private void abort(Key key, DataOutputStream out, IOException err)
+    {
+        LOGGER.log(Level.WARNING, "Could not cache the result of " + key.file, err);
+        if (out != null)
+        {
+            close(out);
+            ((TempOutputStream) out).file.delete();
+        }
+    }
+
+    /**
+     * @param c The stream to close, errors are ignored.
+     */
+    private static void close(java.io.Closeable c)
+    {
+        try
+        {
+            c.close();
+        }
+        catch (IOException err)
+        {
+            LOGGER.log(Level.FINE, "Close failed", err);
+        }
+    }
+
+    /**
+     * Write a string that may be null or longer than
+     * {@link DataOutputStream#writeUTF} allows. This is also used by
+     * {@link TermIndex}.
+     *
+     * @param out The stream.
+     * @param s The string, or null.
+     * @throws IOException Any I/O exceptions writing the stream.
+     */
+    static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        if (s == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(UTF8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**
+     * @param in The stream.
+     * @return A string written by {@link #writeString}.
+     * @throws IOException Any I/O exceptions reading the stream.
+     */
+    static String readString(DataInputStream in) throws IOException
+    {
+        int len = in.readInt();
+        if (len < 0)
+            return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, UTF8);
+    }
+
+    /**
+     * Find the version of the validator classes. This is the implementation
+     * version from the jar manifest with the size and time of the jar, or
+     * the time of the newest class file when run from a class directory, so
+     * a rebuilt validator does not use results from the old one.
+     *
+     * @return The version.
+     */
+    private static String findVersion()
+    {
+        Package pkg = ValidationCache.class.getPackage();
+        String ret = pkg == null ? null : pkg.getImplementationVersion();
+        CodeSource src = ValidationCache.class.getProtectionDomain().getCodeSource();
+        if (src == null || src.getLocation() == null)
+            return String.valueOf(ret);
+        try
+        {
+            File loc = new File(src.getLocation().toURI());
+            if (loc.isFile())
+                return ret + "@" + loc.length() + "@" + loc.lastModified();
+            return ret + "@" + newest(loc);
+        }
+        catch (URISyntaxException err)
+        {
+            return ret + "@" + src.getLocation();
+        }
+        catch (IllegalArgumentException err)
+        {   //Not a file URL
+            return ret + "@" + src.getLocation();
+        }
+    }
+
+    /**
+     * @param dir A directory.
+     * @return The latest modification time of the files under it.
+     */
+    private static long newest(File dir)
+    {
+        long ret = dir.lastModified();
+        File[] children = dir.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+                ret = Math.max(ret, child.isDirectory() ? newest(child) : child.lastModified());
+        }
+        return ret;
+    }
+
+    /**
+     * Output to a temporary file that remembers the file.
+     */
+    private static final class TempOutputStream extends DataOutputStream
+    {
+        /** The temporary file. */
+        private final File file;
+
+        /**
+         * @param f The temporary file.
+         * @throws IOException The file could not be opened.
+         */
+        TempOutputStream(File f) throws IOException
+        {
+            super(new BufferedOutputStream(new FileOutputStream(f)));
+            file = f;
+        }
+    }
+}
@@ -18,7 +18,6 @@
 package org.ttt.salt;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Set;
@@ -49,6 +48,12 @@ import org.ttt.salt.dom.xcs.XCSElement;
 /**
  * This holds all the information in a XCS document that will allow
  * checking of DOM Element objects against the XCS.
+ * <p>
+ * Once constructed the rules are immutable, so a single XCSDocument may
+ * validate termEntries on several threads at the same time. Validation only
+ * walks the termEntry with {@link Node#getFirstChild} and
+ * {@link Node#getNextSibling} because the Xerces child node lists are
+ * cached per document and are not safe to share between threads.</p>
  *
  * @author Lance Finn Helsten
  * @version $Id$
@@ -135,6 +140,12 @@ public class XCSDocument extends DocumentImpl implements Document
             return ret;
         }
         
+        /** {@inheritDoc} */
+        public int hashCode()
+        {
+            return value.hashCode();
+        }
+        
         /** {@inheritDoc} */
         public int compareTo(Object obj)
         {
@@ -142,11 +153,347 @@ public class XCSDocument extends DocumentImpl implements Document
         }
     }
     
+    /**
+     * The XCS data types that a <em>contents</em> element may declare. Each
+     * type knows how to check the content of a TBX element against itself.
+     */
+    public enum DataType
+    {
+        /** */
+        BASIC_TEXT("basicText")
+        {
+            /** {@inheritDoc} */
+            void check(Element elem, Rule rule) throws XCSValidationException
+            {
+                Node node = elem.getFirstChild();
+                while (node != null)
+                {
+                    if (node.getNodeType() == Node.ELEMENT_NODE
+                            && !node.getNodeName().equals("hi"))
+                        throw new InvalidSpecificationException(elem);
+                    node = node.getNextSibling();
+                }
+            }
+        },
+        
+        /** */
+        NOTE_TEXT("noteText")
+        {
+            /** {@inheritDoc} */
+            void check(Element elem, Rule rule) throws XCSValidationException
+            {
+                Node node = elem.getFirstChild();
+                while (node != null)
+                {
+                    if (node.getNodeType() == Node.ELEMENT_NODE
+                            && !NOTE_TEXT_TAGS.contains(node.getNodeName()))
+                        throw new InvalidSpecificationException(elem);
+                    node = node.getNextSibling();
+                }
+            }
+        },
+        
+        /** */
+        PLAIN_TEXT("plainText")
+        {
+            /** {@inheritDoc} */
+            void check(Element elem, Rule rule) throws XCSValidationException
+            {
+                Node node = elem.getFirstChild();
+                while (node != null)
+                {
+                    if (node.getNodeType() != Node.TEXT_NODE)
+                        throw new InvalidSpecificationException(elem);
+                    node = node.getNextSibling();
+                }
+            }
+        },
+        
+        /** */
+        PICKLIST("picklist")
+        {
+            /** {@inheritDoc} */
+            void check(Element elem, Rule rule) throws XCSValidationException
+            {
+                String pick = elem.getTextContent();
+                if (!rule.getPicklist().contains(pick))
+                    throw new InvalidPickListException(elem, pick);
+            }
+        },
+        
+        /** */
+        GEO_LIST("geoList")
+        {
+            /** {@inheritDoc} */
+            void check(Element elem, Rule rule) throws XCSValidationException
+            {
+                throw new UnsupportedOperationException("geoList");
+            }
+        },
+        
+        /** */
+        ELEMENTS("elements")
+        {
+            /** {@inheritDoc} */
+            void check(Element elem, Rule rule) throws XCSValidationException
+            {
+                throw new UnsupportedOperationException("elements");
+            }
+        };
+        
+        /** Inline tags allowed in noteText content. */
+        private static final Set<String> NOTE_TEXT_TAGS = new java.util.HashSet<String>(
+                java.util.Arrays.asList("hi", "foreign", "bpt", "ept", "it", "ph", "ut"));
+        
+        /** The datatype attribute value in the XCS. */
+        private final String xcsName;
+        
+        /**
+         * @param n The datatype attribute value in the XCS.
+         */
+        private DataType(String n)
+        {
+            xcsName = n;
+        }
+        
+        /**
+         * Find the data type for a datatype attribute value.
+         *
+         * @param n The datatype attribute value in the XCS.
+         * @return The data type or null if the name is unknown.
+         */
+        public static DataType forName(String n)
+        {
+            for (DataType t : values())
+            {
+                if (t.xcsName.equals(n))
+                    return t;
+            }
+            return null;
+        }
+        
+        /** {@inheritDoc} */
+        public String toString()
+        {
+            return xcsName;
+        }
+        
+        /**
+         * Check the content of a TBX element against this data type.
+         *
+         * @param elem The TBX element to check.
+         * @param rule The compiled rule for the element.
+         * @throws XCSValidationException Exception that describes validation
+         *  problems.
+         */
+        abstract void check(Element elem, Rule rule) throws XCSValidationException;
+    }
+    
+    /**
+     * The compiled form of a single data category specification. These are
+     * built once for every specification in the XCS and are never modified
+     * afterwards so they may be shared freely.
+     */
+    public static final class Rule
+    {
+        /** The termEntry level bit. */
+        public static final int LEVEL_TERM_ENTRY = 1;
+        
+        /** The langSet level bit. */
+        public static final int LEVEL_LANG_SET = 2;
+        
+        /** The term (tig or ntig) level bit. */
+        public static final int LEVEL_TERM = 4;
+        
+        /** The spec element in the XCS. */
+        private final Element spec;
+        
+        /** The first contents element in the spec. */
+        private final Element contents;
+        
+        /** The raw datatype name. */
+        private final String dataTypeName;
+        
+        /** The data type or null if it is unknown. */
+        private final DataType dataType;
+        
+        /** The picklist values or an empty set if not a picklist. */
+        private final Set<String> picklist;
+        
+        /** The allowed levels as a bitmask. */
+        private final int levels;
+        
+        /**
+         * Compile a specification element.
+         *
+         * @param s The spec element in the XCS.
+         */
+        Rule(Element s)
+        {
+            spec = s;
+            contents = (Element) spec.getElementsByTagName("contents").item(0);
+            String dt = contents.getAttribute("datatype");
+            dataTypeName = "".equals(dt) ? "basicText" : dt;
+            dataType = DataType.forName(dataTypeName);
+            
+            Set<String> picks = new java.util.HashSet<String>();
+            if (dataType == DataType.PICKLIST)
+            {
+                StringTokenizer tok = new StringTokenizer(contents.getTextContent());
+                while (tok.hasMoreTokens())
+                    picks.add(tok.nextToken());
+            }
+            picklist = Collections.unmodifiableSet(picks);
+            
+            int lvls = 0;
+            NodeList nodes = spec.getElementsByTagName("levels");
+            if (nodes.getLength() > 0)
+            {
+                StringTokenizer tok = new StringTokenizer(nodes.item(0).getTextContent());
+                while (tok.hasMoreTokens())
+                {
+                    String lvl = tok.nextToken();
+                    if (lvl.equals("termEntry"))
+                        lvls |= LEVEL_TERM_ENTRY;
+                    else if (lvl.equals("langSet"))
+                        lvls |= LEVEL_LANG_SET;
+                    else if (lvl.equals("term"))
+                        lvls |= LEVEL_TERM;
+                }
+            }
+            if (lvls == 0)
+                lvls = LEVEL_TERM_ENTRY | LEVEL_LANG_SET | LEVEL_TERM;
+            levels = lvls;
+        }
+        
+        /** @return The spec element in the XCS. */
+        public Element getSpec()
+        {
+            return spec;
+        }
+        
+        /** @return The first contents element of the spec. */
+        public Element getContents()
+        {
+            return contents;
+        }
+        
+        /** @return The datatype name, basicText if none was given. */
+        public String getDataTypeName()
+        {
+            return dataTypeName;
+        }
+        
+        /** @return The data type or null if the datatype is unknown. */
+        public DataType getDataType()
+        {
+            return dataType;
+        }
+        
+        /** @return Unmodifiable set of picklist values. */
+        public Set<String> getPicklist()
+        {
+            return picklist;
+        }
+        
+        /** @return The allowed levels as a bitmask of the LEVEL constants. */
+        public int getLevels()
+        {
+            return levels;
+        }
+    }
+    
     /** Logger for this package. */
     private static final Logger LOGGER = Logger.getLogger("org.ttt.salt");
     
     /** The class prefix for element editors. */
     public static final String PREFIX = "org.ttt.salt.dom.xcs.Element_";
+
+    /**
+     * Creates the XCS element object for a tag. Factories are registered
+     * by tag name with {@link #registerElementFactory} so creating an
+     * element is a single lookup.
+     */
+    public interface ElementFactory
+    {
+        /**
+         * @param doc The document that owns the new element.
+         * @param tagName The element tag name.
+         * @param loc The {@link org.xml.sax.Locator} of the element, may be
+         *  null.
+         * @return The new element.
+         * @throws SAXParseException The element could not be created.
+         */
+        XCSElement createElement(XCSDocument doc, String tagName, Locator loc) throws SAXParseException;
+    }
+
+    /** Creates a plain XCSElement for tags without their own class. */
+    private static final ElementFactory DEFAULT_FACTORY = new ElementFactory()
+        {
+            public XCSElement createElement(XCSDocument doc, String tagName, Locator loc)
+            {
+                return new XCSElement(doc, tagName, loc);
+            }
+        };
+
+    /** Element factories by tag name. */
+    private static final java.util.concurrent.ConcurrentMap<String, ElementFactory> FACTORIES
+            = new java.util.concurrent.ConcurrentHashMap<String, ElementFactory>();
+
+    static
+    {
+        for (String tag : XCSParser.KNOWN_MISSING)
+            FACTORIES.put(tag, DEFAULT_FACTORY);
+        FACTORIES.put("TBXXCS", new ElementFactory()
+            {
+                public XCSElement createElement(XCSDocument doc, String tagName, Locator loc)
+                {
+                    return new org.ttt.salt.dom.xcs.Element_TBXXCS(doc, tagName, loc);
+                }
+            });
+    }
+
+    /**
+     * Creates elements through the constructor of an
+     * <code>Element_</code><em>tagName</em> class found by reflection.
+     */
+    private static final class ConstructorFactory implements ElementFactory
+    {
+        /** The element constructor. */
+        private final Constructor<XCSElement> cstrct;
+
+        /**
+         * @param c The element constructor.
+         */
+        ConstructorFactory(Constructor<XCSElement> c)
+        {
+            cstrct = c;
+        }
+
+        /** {@inheritDoc} */
+        public XCSElement createElement(XCSDocument doc, String tagName, Locator loc) throws SAXParseException
+        {
+            try
+            {
+                return cstrct.newInstance(doc, tagName, loc);
+            }
+            catch (InstantiationException err)
+            {
+                Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "XCS class not concrete: {0}", tagName);
+                throw new SAXParseException("XCS class not concrete", loc, err);
+            }
+            catch (IllegalAccessException err)
+            {
+                Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "XCS constructor not accessible on {0}", tagName);
+                throw new SAXParseException("XCS constructor not accessible", loc, err);
+            }
+            catch (InvocationTargetException err)
+            {
+                Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "XCS element {0} creation error", tagName);
+                throw new SAXParseException("XCS element creation error", loc, err);
+            }
+        }
+    }
     
     /** Set of valid XCS Meta tags. */
     private static final Set<String> XCS_TAGS = new java.util.HashSet<String>();
@@ -202,14 +549,14 @@ public class XCSDocument extends DocumentImpl implements Document
     /** */
     private SortedMap<String, String> languages;
     
-    /** */
-    private final Map<Key, Element> specNodes = new java.util.HashMap<Key, Element>();
-    
-    /** */
-    private final Map<Key, Set<String>> levels = new java.util.HashMap<Key, Set<String>>();
+    /** Compiled specifications, built once from the datCatSet. */
+    private volatile Map<Key, Rule> rules;
     
-    /** */
-    private final Map<String, SortedSet<String>> typeSets = new java.util.HashMap<String, SortedSet<String>>();
+    /** Specification types for each tag, built with the rules. */
+    private volatile Map<String, SortedSet<String>> typeSets;
+
+    /** Digest of the XCS contents, set by the {@link XCSDocumentCache}. */
+    private volatile String digest;
     
     /**
      * Create an empty XCS document.
@@ -233,17 +580,35 @@ public class XCSDocument extends DocumentImpl implements Document
      */
     public XCSDocument(String xcsURI, EntityResolver resolver, Configuration c) throws IOException,
         ParserConfigurationException, SAXException
-    {   //Open the input for the XCS file
-        //Parse the XCS file
+    {
+        this(xcsURI, resolver.resolveEntity(xcsURI, xcsURI), resolver, c);
+    }
+    
+    /**
+     * Create an XCS document for the third stage TBX XCS validation from
+     * an input source that has already been resolved.
+     *
+     * @param xcsURI The XCS's URI string used for reporting.
+     * @param source The XCS file contents.
+     * @param resolver The resolver this XCS document should use to find
+     *  the XCS DTD.
+     * @param c The validation and compliance configuration.
+     * @throws IOException Any I/O exceptions building this document.
+     * @throws ParserConfigurationException Problems with building the parser.
+     * @throws SAXException Any parse exceptions building this document.
+     */
+    public XCSDocument(String xcsURI, InputSource source, EntityResolver resolver, Configuration c)
+        throws IOException, ParserConfigurationException, SAXException
+    {   //Parse the XCS file
         //NOTDONE: should I switch to DOM2
         config = c;
         try
         {
             LOGGER.info("Parsing XCS file: " + xcsURI);
-            InputSource source = resolver.resolveEntity(xcsURI, xcsURI);
             XCSParser parser = new XCSParser(resolver);
             parser.parse(this, source);
             languages = buildLangMap();
+            compileRules();
             LOGGER.info("Success");
         }
         catch (SAXParseException err)
@@ -276,53 +641,69 @@ public class XCSDocument extends DocumentImpl implements Document
      * @return The newly created XCS element.
      * @see #createElement
      */
-    @SuppressWarnings("unchecked")
     public XCSElement createXCSElement(String tagName, Locator loc) throws SAXParseException
     {
         if (errorChecking && !isXMLName(tagName, true))
             super.createElement(tagName);   //let the superclass throw the error
-        XCSElement ret = null;
-        try
-        {
-            try
-            {
-                Class<XCSElement> clazz = (Class<XCSElement>) Class.forName(PREFIX + tagName,
-                                            true, getClass().getClassLoader());
-                Constructor<XCSElement> cstrct = clazz.getConstructor(XCSDocument.class,
-                    String.class, Locator.class);
-                ret = cstrct.newInstance(this, tagName, loc);
-            }
-            catch (ClassNotFoundException err)
-            {
-                if (!XCSParser.KNOWN_MISSING.contains(tagName))
-                    Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.INFO, "Unknown XCS Element: {0}", tagName);
-                ret = new XCSElement(this, tagName, loc);
-            }
+        ElementFactory factory = FACTORIES.get(tagName);
+        if (factory == null)
+            factory = findElementFactory(tagName, loc);
+        XCSElement ret = factory.createElement(this, tagName, loc);
+        if (tagName.equals("TBXXCS"))
+            docElement = ret;
+        return ret;
+    }
 
-            if (tagName.equals("TBXXCS"))
-                docElement = ret;
-        }
-        catch (NoSuchMethodException err)
+    /**
+     * Register the factory used to create every element with the given tag
+     * name, replacing any factory already registered for it.
+     *
+     * @param tagName The element tag name.
+     * @param factory The factory that creates the elements.
+     */
+    public static void registerElementFactory(String tagName, ElementFactory factory)
+    {
+        FACTORIES.put(tagName, factory);
+    }
+
+    /**
+     * Find the factory for a tag that has not been registered. If there is
+     * an <code>Element_</code><em>tagName</em> class it is found once by
+     * reflection and its constructor registered. Tags without a class get a
+     * plain XCSElement; unknown tags are not registered so that arbitrary
+     * tag names do not fill the registry.
+     *
+     * @param tagName The element tag name.
+     * @param loc The {@link org.xml.sax.Locator} of the element.
+     * @return The factory for the tag.
+     * @throws SAXParseException The element class has no usable constructor.
+     */
+    @SuppressWarnings("unchecked")
+    private ElementFactory findElementFactory(String tagName, Locator loc) throws SAXParseException
+    {
+        Class<XCSElement> clazz;
+        try
         {
-            Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "Invalid XCS Class: {0}", tagName);
-            throw new SAXParseException("Invalid XCS Class", loc, err);
+            clazz = (Class<XCSElement>) Class.forName(PREFIX + tagName,
+                                        true, getClass().getClassLoader());
         }
-        catch (InstantiationException err)
+        catch (ClassNotFoundException err)
         {
-            Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "XCS class not concrete: {0}", tagName);
-            throw new SAXParseException("XCS class not concrete", loc, err);
+            Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.INFO, "Unknown XCS Element: {0}", tagName);
+            return DEFAULT_FACTORY;
         }
-        catch (IllegalAccessException err)
+        try
         {
-            Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "XCS constructor not accessible on {0}", tagName);
-            throw new SAXParseException("XCS constructor not accessible", loc, err);
+            ElementFactory ret = new ConstructorFactory(clazz.getConstructor(XCSDocument.class,
+                    String.class, Locator.class));
+            ElementFactory prev = FACTORIES.putIfAbsent(tagName, ret);
+            return prev != null ? prev : ret;
         }
-        catch (InvocationTargetException err)
+        catch (NoSuchMethodException err)
         {
-            Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "XCS element {0} creation error", tagName);
-            throw new SAXParseException("XCS element creation error", loc, err);
+            Logger.getLogger("org.ttt.salt.dom.xcs").log(Level.SEVERE, "Invalid XCS Class: {0}", tagName);
+            throw new SAXParseException("Invalid XCS Class", loc, err);
         }
-        return ret;
     }
     
     /** {@inheritDoc} */
@@ -338,6 +719,23 @@ public class XCSDocument extends DocumentImpl implements Document
         }
     }
     
+    /**
+     * @return Hexadecimal SHA-256 digest of the XCS contents, or null if
+     *  the document was not built by an {@link XCSDocumentCache}.
+     */
+    public String getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * @param d Hexadecimal SHA-256 digest of the XCS contents.
+     */
+    void setDigest(String d)
+    {
+        digest = d;
+    }
+    
     /**
      * Get the name of the XCS file, this is for convienience in using this
      * document.
@@ -420,19 +818,10 @@ public class XCSDocument extends DocumentImpl implements Document
      */
     public SortedSet<String> getSpecTypes(String tag, String parenttag)
     {
+        compileRules();
         SortedSet<String> ret = typeSets.get(tag);
         if (ret == null)
-        {
-            ret = new java.util.TreeSet<String>();
-            Element datcat = getNamedElement(getDocumentElement(), "datCatSet", 0);
-            NodeList nl = datcat.getElementsByTagName(tag + "Spec");
-            for (int i = 0; i < nl.getLength(); i++)
-            {
-                Element elem = (Element) nl.item(i);
-                ret.add(elem.getAttribute("name"));
-            }
-            typeSets.put(tag, ret);
-        }
+            ret = Collections.unmodifiableSortedSet(new java.util.TreeSet<String>());
         return ret;
     }
     
@@ -455,8 +844,7 @@ public class XCSDocument extends DocumentImpl implements Document
      */
     public boolean hasSpec(Key key)
     {
-        return specNodes.containsKey(key)
-            || (getSpec(key) != null);
+        return getRule(key) != null;
     }
     
     /**
@@ -468,25 +856,21 @@ public class XCSDocument extends DocumentImpl implements Document
      */
     public Element getSpec(Key key)
     {
-        Element ret = specNodes.get(key);
-        if (ret == null)
-        {
-            Element datcat = getNamedElement(getDocumentElement(), "datCatSet", 0);
-            NodeList nl = datcat.getElementsByTagName(key.getSpecName());
-        FIND_NAME:
-            for (int i = 0; i < nl.getLength(); i++)
-            {
-                Element elem = (Element) nl.item(i);
-                String name = elem.getAttribute("name");
-                if (name.equals(key.getType()))
-                {
-                    specNodes.put(key, elem);
-                    ret = elem;
-                    break FIND_NAME;
-                }
-            }
-        }
-        return ret;
+        Rule rule = getRule(key);
+        return rule == null ? null : rule.getSpec();
+    }
+    
+    /**
+     * Get the compiled specification for the key or return null if the XCS
+     * document does not have a specification for the key.
+     *
+     * @param key The key to get the specifications for.
+     * @return The compiled rule for the given key.
+     */
+    public Rule getRule(Key key)
+    {
+        compileRules();
+        return rules.get(key);
     }
     
     /**
@@ -501,12 +885,12 @@ public class XCSDocument extends DocumentImpl implements Document
         String name = elem.getTagName();
         if (!isXcsTag(name))
             throw new IllegalArgumentException("Element is not a XCS element: " + name);
-        String parent = elem.getParentNode().getNodeName();
         Key key = new Key(name, elem.getAttribute("type"));
-        if (!hasSpec(key))
+        Rule rule = getRule(key);
+        if (rule == null)
             throw new UnknownSpecificationException(elem);
-        doesElementMatchSpec(elem, key);
-        isElementAtProperLevel(elem, key);
+        doesElementMatchSpec(elem, key, rule);
+        isElementAtProperLevel(elem, rule);
     }
     
     /**
@@ -571,43 +955,18 @@ public class XCSDocument extends DocumentImpl implements Document
      * @throws XCSValidationException The exception that describes any validation
      *  problems.
      */
-    private void doesElementMatchSpec(Element elem, Key key)
+    private void doesElementMatchSpec(Element elem, Key key, Rule rule)
             throws XCSValidationException
     {
-        try
+        if (!XCS_PARENTS.contains(elem.getNodeName()))
         {
-            if (!XCS_PARENTS.contains(elem.getNodeName()))
+            if (rule.getDataType() == null)
             {
-                String name = "check_" + getDataType(key);
-                Class[] parm = {Class.forName("org.w3c.dom.Element")};
-                Method meth = getClass().getDeclaredMethod(name, parm);
-                Object[] args = {elem};
-                meth.invoke(this, args);
+                throw new IllegalStateException(
+                        "Unknown data type: " + key.getType()
+                        + " in tag <" + key.getTag() + ">");
             }
-        }
-        catch (NoSuchMethodException err)
-        {
-            throw new IllegalStateException(
-                    "Unknown data type: " + key.getType()
-                    + " in tag <" + key.getTag() + ">");
-        }
-        catch (InvocationTargetException err)
-        {
-            Throwable t = err.getTargetException();
-            if (t instanceof XCSValidationException)
-                throw (XCSValidationException) t;
-            else if (t instanceof RuntimeException)
-                throw (RuntimeException) t;
-            else if (t instanceof Error)
-                throw (Error) t;
-            else if (t instanceof Exception)
-                throw new UnsupportedOperationException(
-                    "Unknown Exception: " + t.getClass().getName() + ").");
-        }
-        catch (Throwable err)
-        {
-            throw new UnsupportedOperationException(
-                "Caught " + err.getClass().getName());
+            rule.getDataType().check(elem, rule);
         }
     }
     
@@ -625,11 +984,7 @@ public class XCSDocument extends DocumentImpl implements Document
      */
     public String getDataType(Key key)
     {
-        Element contents = getContents(key);
-        String ret = contents.getAttribute("datatype");
-        if ("".equals(ret))
-            ret = "basicText";
-        return ret;
+        return getRule(key).getDataTypeName();
     }
     
     /**
@@ -652,15 +1007,10 @@ public class XCSDocument extends DocumentImpl implements Document
      */
     public Set<String> getPicklist(Key key)
     {
-        Set<String> ret = new java.util.HashSet<String>();
-        Element contents = getContents(key);
-        if (!contents.getAttribute("datatype").equals("picklist"))
+        Rule rule = getRule(key);
+        if (rule.getDataType() != DataType.PICKLIST)
             throw new IllegalStateException("datatype != picklist");
-        String val = contents.getTextContent();
-        StringTokenizer tok = new StringTokenizer(val);
-        while (tok.hasMoreElements())
-            ret.add(tok.nextToken());
-        return ret;
+        return rule.getPicklist();
     }
     
     /**
@@ -692,9 +1042,7 @@ public class XCSDocument extends DocumentImpl implements Document
      */
     public Element getContents(Key key)
     {
-        Element spec = getSpec(key);
-        NodeList nl = spec.getElementsByTagName("contents");
-        return (Element) nl.item(0);
+        return getRule(key).getContents();
     }
     
     /**
@@ -704,41 +1052,30 @@ public class XCSDocument extends DocumentImpl implements Document
      * @throws XCSValidationException Exception that describes validation
      *  problems.
      */
-    private void isElementAtProperLevel(Element elem, Key key)
+    private void isElementAtProperLevel(Element elem, Rule rule)
         throws XCSValidationException
     {
-        if (LEVELS_CHECK.contains(key.getTag()))
+        if (LEVELS_CHECK.contains(elem.getTagName()))
         {
-            Set<String> lvls = getLevels(key);
-            if (lvls == null)
-                throw new IllegalStateException("Invalid XCS key for levels");
+            int lvls = rule.getLevels();
             Element pp = elem;
         SEARCH_TO_BODY:
             while (!pp.getTagName().equals("body"))
             {
                 String tag = pp.getTagName();
+                int found = 0;
                 if (tag.equals("ntig") || tag.equals("tig"))
-                {
-                    if (lvls.contains("term"))
-                        break SEARCH_TO_BODY;
-                    else
-                        throw new InvalidLevelsException(elem);
-                }
+                    found = Rule.LEVEL_TERM;
                 else if (tag.equals("langSet"))
-                {
-                    if (lvls.contains("langSet"))
-                        break SEARCH_TO_BODY;
-                    else
-                        throw new InvalidLevelsException(elem);
-                }
+                    found = Rule.LEVEL_LANG_SET;
                 else if (tag.equals("termEntry"))
+                    found = Rule.LEVEL_TERM_ENTRY;
+                
+                if (found != 0)
                 {
-                    if (lvls.contains("termEntry"))
-                        break SEARCH_TO_BODY;
-                    else
-                    {
+                    if ((lvls & found) == 0)
                         throw new InvalidLevelsException(elem);
-                    }
+                    break SEARCH_TO_BODY;
                 }
                 pp = (Element) pp.getParentNode();
             }
@@ -746,35 +1083,51 @@ public class XCSDocument extends DocumentImpl implements Document
     }
     
     /**
-     * Get the set of allowable parent tags.
-     *
-     * @param key The primary key to look up levels set on.
-     * @return Set of all allowable parent tag names. If no levels tag
-     *  specified this returns null.
+     * Compile every data category specification in the datCatSet into the
+     * rule table. This is done once, the first caller builds the table and
+     * all later lookups are a single hash lookup.
      */
-    private Set<String> getLevels(Key key)
+    private void compileRules()
     {
-        String tag = key.getTag();
-        if (!levels.containsKey(key))
+        if (rules != null)
+            return;
+        synchronized (this)
         {
-            Element spec = getSpec(key);
-            StringBuffer buf = new StringBuffer();
-            NodeList nodes = spec.getElementsByTagName("levels");
-            Element lvlselem = (Element) nodes.item(0);
-            String levelstr = lvlselem.getTextContent();
-            String[] lvls = levelstr.split("\\s+");
-            Set<String> set = new java.util.HashSet<String>();
-            for (int i = 0; i < lvls.length; i++)
-                set.add(lvls[i]);
-            if (set.isEmpty())
+            if (rules != null)
+                return;
+            Map<Key, Rule> rls = new java.util.HashMap<Key, Rule>();
+            Map<String, SortedSet<String>> types = new java.util.HashMap<String, SortedSet<String>>();
+            Element datcat = getNamedElement(getDocumentElement(), "datCatSet", 0);
+            if (datcat != null)
             {
-                set.add("termEntry");
-                set.add("langSet");
-                set.add("term");
+                Node node = datcat.getFirstChild();
+                while (node != null)
+                {
+                    String specName = node.getNodeName();
+                    if (node instanceof Element && specName.endsWith("Spec"))
+                    {
+                        Element spec = (Element) node;
+                        String tag = specName.substring(0, specName.length() - "Spec".length());
+                        String type = spec.getAttribute("name");
+                        Key key = new Key(tag, type);
+                        if (!rls.containsKey(key))    //first specification wins
+                            rls.put(key, new Rule(spec));
+                        SortedSet<String> set = types.get(tag);
+                        if (set == null)
+                        {
+                            set = new java.util.TreeSet<String>();
+                            types.put(tag, set);
+                        }
+                        set.add(type);
+                    }
+                    node = node.getNextSibling();
+                }
             }
-            levels.put(key, Collections.unmodifiableSet(set));
+            for (Map.Entry<String, SortedSet<String>> entry : types.entrySet())
+                entry.setValue(Collections.unmodifiableSortedSet(entry.getValue()));
+            typeSets = Collections.unmodifiableMap(types);
+            rules = Collections.unmodifiableMap(rls);
         }
-        return levels.get(key);
     }
     
     /**
@@ -841,106 +1194,4 @@ public class XCSDocument extends DocumentImpl implements Document
         }
         return (Text) node;
     }
-    
-//CHECKSTYLE: MethodName OFF
-    /**
-     * @throws XCSValidationException Exception that describes validation
-     *  problems.
-     */
-    private void check_geoList(Element elem) throws XCSValidationException
-    {
-        throw new UnsupportedOperationException("geoList");
-    }
-    
-    /**
-     * @throws XCSValidationException Exception that describes validation
-     *  problems.
-     */
-    private void check_picklist(Element elem) throws XCSValidationException
-    {
-        Key key = new Key(elem.getTagName(), elem.getAttribute("type"));
-        Set<String> picklist = getPicklist(key);
-        String pick = elem.getTextContent();
-        if (!picklist.contains(pick))
-            throw new InvalidPickListException(elem, pick);
-    }
-
-    /**
-     * @throws XCSValidationException Exception that describes validation
-     *  problems.
-     */
-    private void check_plainText(Element elem) throws XCSValidationException
-    {
-        NodeList nodes = elem.getChildNodes();
-        for (int i = 0; i < nodes.getLength(); i++)
-        {
-            Node node = nodes.item(i);
-            if (node.getNodeType() != Node.TEXT_NODE)
-                throw new InvalidSpecificationException(elem);
-        }
-    }
-    
-    /**
-     * @throws XCSValidationException Exception that describes validation
-     *  problems.
-     */
-    private void check_basicText(Element elem) throws XCSValidationException
-    {
-        Node node = elem.getFirstChild();
-        while (node != null)
-        {
-            if (node.getNodeType() == Node.TEXT_NODE)
-            {
-                //no op
-            }
-            else if (node.getNodeType() == Node.ELEMENT_NODE)
-            {
-                String name = node.getNodeName();
-                if (!name.equals("hi"))
-                    throw new InvalidSpecificationException(elem);
-            }
-            node = node.getNextSibling();
-        }
-    }
-    
-    /**
-     * @throws XCSValidationException Exception that describes validation
-     *  problems.
-     */
-    private void check_noteText(Element elem) throws XCSValidationException
-    {
-        boolean ret = true;
-        Node node = elem.getFirstChild();
-        while (node != null)
-        {
-            if (node.getNodeType() == Node.TEXT_NODE)
-            {
-                //no op
-            }
-            else if (node.getNodeType() == Node.ELEMENT_NODE)
-            {
-                String name = node.getNodeName();
-                boolean valid = name.equals("hi")
-                        || name.equals("foreign")
-                        || name.equals("bpt")
-                        || name.equals("ept")
-                        || name.equals("it")
-                        || name.equals("ph")
-                        || name.equals("ut");
-                if (!valid)
-                    throw new InvalidSpecificationException(elem);
-            }
-            node = node.getNextSibling();
-        }
-    }
-    
-    /**
-     * @throws XCSValidationException Exception that describes validation
-     *  problems.
-     */
-    private void check_elements(Element elem) throws XCSValidationException
-    {
-        throw new UnsupportedOperationException("elements");
-    }
-//CHECKSTYLE: MethodName ON
 }
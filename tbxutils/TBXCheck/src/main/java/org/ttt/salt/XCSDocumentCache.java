@@ -0,0 +1,306 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * This holds the XCS documents that have already been parsed so that many
+ * TBX files using the same XCS only parse and compile it once.
+ * <p>
+ * Documents are keyed by the resolved system ID and a digest of the XCS
+ * contents, so a changed XCS file is parsed again. The XCS is still read
+ * on every lookup to compute the digest, but reading is much cheaper than
+ * DTD validating and compiling it. The least recently used document is
+ * dropped when the cache is full.</p>
+ * <p>
+ * This is safe to use from several threads. Two threads that miss on the
+ * same XCS at the same time may both parse it; only one result is kept.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class XCSDocumentCache
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Number of XCS documents held by the default cache. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /** Logger for this package. */
+    private static final Logger LOGGER = Logger.getLogger("org.ttt.salt");
+
+    /** Character set used to digest the XCS contents. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The process wide cache. */
+    private static final XCSDocumentCache DEFAULT = new XCSDocumentCache(DEFAULT_CAPACITY);
+
+    /** Maximum number of documents held. */
+    private final int capacity;
+
+    /** Cached documents in least recently used order. */
+    private final Map<String, XCSDocument> documents;
+
+    /** Number of lookups that found a parsed document. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of lookups that had to parse the XCS. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the process wide cache.
+     *
+     * @return The shared cache.
+     */
+    public static XCSDocumentCache getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * @param max The maximum number of documents to hold.
+     */
+    public XCSDocumentCache(int max)
+    {
+        if (max < 1)
+            throw new IllegalArgumentException("Cache capacity must be at least 1: " + max);
+        capacity = max;
+        documents = new java.util.LinkedHashMap<String, XCSDocument>(capacity, 0.75f, true)
+            {
+                /** Serialization version. */
+                private static final long serialVersionUID = 1L;
+
+                /** {@inheritDoc} */
+                protected boolean removeEldestEntry(Map.Entry<String, XCSDocument> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+    }
+
+    /**
+     * Get the XCS document for the given XCS URI, parsing it if it is not
+     * already in the cache. Parse failures are not cached.
+     *
+     * @param xcsURI The XCS's URI string. See
+     *  {@link XCSDocument#XCSDocument(String, EntityResolver, Configuration)}.
+     * @param resolver The resolver used to find the XCS and its DTD.
+     * @param c The validation and compliance configuration.
+     * @return The parsed and compiled XCS document.
+     * @throws IOException Any I/O exceptions reading the XCS.
+     * @throws ParserConfigurationException Problems with building the parser.
+     * @throws SAXException Any parse exceptions building the document.
+     */
+    public XCSDocument get(String xcsURI, EntityResolver resolver, Configuration c)
+        throws IOException, ParserConfigurationException, SAXException
+    {
+        InputSource source = resolver.resolveEntity(xcsURI, xcsURI);
+        String content = readFully(source);
+        String digest = digest(content);
+        //The document keeps the configuration language check setting
+        String key = source.getSystemId() + '#' + digest + '#' + c.getCheckLang();
+
+        XCSDocument ret;
+        synchronized (documents)
+        {
+            ret = documents.get(key);
+        }
+        if (ret != null)
+        {
+            hits.incrementAndGet();
+            LOGGER.info("Using cached XCS: " + xcsURI);
+            return ret;
+        }
+
+        misses.incrementAndGet();
+        InputSource copy = new InputSource(new StringReader(content));
+        copy.setPublicId(source.getPublicId());
+        copy.setSystemId(source.getSystemId());
+        ret = new XCSDocument(xcsURI, copy, resolver, c);
+        ret.setDigest(digest);
+        synchronized (documents)
+        {
+            documents.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Digest the contents of a resolved XCS the same way documents are
+     * keyed, so a caller can tell whether the XCS a document was built from
+     * has changed.
+     *
+     * @param source The resolved XCS, or any other resolved entity.
+     * @return Hexadecimal SHA-256 digest of the contents.
+     * @throws IOException Any I/O exceptions reading the source.
+     */
+    static String digest(InputSource source) throws IOException
+    {
+        return digest(readFully(source));
+    }
+
+    /**
+     * @return The number of lookups that found a parsed document.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that had to parse the XCS.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of documents currently held.
+     */
+    public int size()
+    {
+        synchronized (documents)
+        {
+            return documents.size();
+        }
+    }
+
+    /**
+     * Remove all documents and reset the counters.
+     */
+    public void clear()
+    {
+        synchronized (documents)
+        {
+            documents.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Read all characters from the input source.
+     *
+     * @param source The resolved XCS input.
+     * @return The XCS contents.
+     * @throws IOException Any I/O exceptions reading the XCS.
+     */
+    private static String readFully(InputSource source) throws IOException
+    {
+        Reader reader = source.getCharacterStream();
+        if (reader == null)
+        {
+            InputStream input = source.getByteStream();
+            if (input == null)
+            {
+                try
+                {
+                    input = new URI(source.getSystemId()).toURL().openStream();
+                }
+                catch (URISyntaxException err)
+                {
+                    throw new IOException("Invalid System ID format: " + source.getSystemId(), err);
+                }
+            }
+            if (source.getEncoding() != null)
+                reader = new InputStreamReader(input, source.getEncoding());
+            else
+                reader = new InputStreamReader(input, UTF8);
+        }
+        try
+        {
+            StringBuilder ret = new StringBuilder();
+            //CHECKSTYLE: MagicNumber OFF
+            char[] buf = new char[8192];
+            //CHECKSTYLE: MagicNumber ON
+            int len;
+            while ((len = reader.read(buf)) != -1)
+                ret.append(buf, 0, len);
+            return ret.toString();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param content The XCS contents.
+     * @return Hexadecimal SHA-256 digest of the contents.
+     */
+    private static String digest(String content)
+    {
+        return toHex(newDigest().digest(content.getBytes(UTF8)));
+    }
+
+    /**
+     * @return A new SHA-256 digest, this is shared with
+     *  {@link ValidationCache}.
+     */
+    static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException err)
+        {   //Every Java platform is required to support SHA-256
+            Error e = new InternalError();
+            e.initCause(err);
+            throw e;
+        }
+    }
+
+    /**
+     * @param hash The digest value.
+     * @return The value in lower case hexadecimal.
+     */
+    static String toHex(byte[] hash)
+    {
+        //CHECKSTYLE: MagicNumber OFF
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] ret = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++)
+        {
+            ret[2 * i] = digits[(hash[i] >> 4) & 0xF];
+            ret[2 * i + 1] = digits[hash[i] & 0xF];
+        }
+        return new String(ret);
+        //CHECKSTYLE: MagicNumber ON
+    }
+}
@@ -17,13 +17,20 @@
  */
 package org.ttt.salt;
 
-import java.text.MessageFormat;
-import java.util.ResourceBundle;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.w3c.dom.Element;
-import org.ttt.salt.dom.tbx.TBXElement;
+import org.w3c.dom.Node;
+import org.ttt.salt.dom.tbx.LocatedElement;
 
 /**
  * Gives details about XCS validation problems.
+ * <p>
+ * Subclasses name their message with {@link #getCode} and give its
+ * details with {@link #getDetails}; the message itself is looked up in the
+ * XCSValidationException bundle when it is asked for, see
+ * {@link Diagnostic}. These exceptions are thrown for every invalid
+ * termEntry, so they do not fill in a stack trace.</p>
  *
  * @author Lance Finn Helsten
  * @version $Id$
@@ -39,44 +46,133 @@ implements Comparable<XCSValidationException>
     /** SCM information. */
     public static final String RCSID = "$Id$";
     
-    /** */
-    private static int exceptionCount;
+    /** Next {@link #order}, taken by the <code>--xcsjobs</code> threads of every file. */
+    private static final AtomicInteger EXCEPTION_COUNT = new AtomicInteger();
     
     /** Orders the errors as they occur. */
     private final int order;
     
     /** */
     private final Element elem;
+
+    /** The problem this was restored from, or null. */
+    private final Diagnostic restoredFrom;
     
     /**
      * @param e The XML element this exception occured on.
      */
     public XCSValidationException(Element e)
     {
-        super();
-        order = exceptionCount++;
+        super(null, null, false, false);
+        order = EXCEPTION_COUNT.getAndIncrement();
         elem = e;
+        restoredFrom = null;
+    }
+
+    /**
+     * Restore an exception from its diagnostic, it has no element.
+     *
+     * @param d The diagnostic of the exception.
+     */
+    XCSValidationException(Diagnostic d)
+    {
+        super(null, null, false, false);
+        order = EXCEPTION_COUNT.getAndIncrement();
+        elem = null;
+        restoredFrom = d;
+    }
+
+    /**
+     * Make the exception of the kind a diagnostic describes.
+     *
+     * @param d The diagnostic of an XCS validation error.
+     * @return The exception, it has no element.
+     */
+    static XCSValidationException restore(Diagnostic d)
+    {
+        String code = d.getCode().substring(Diagnostic.XCS_PREFIX.length());
+        if (code.equals(InvalidLanguageException.CODE))
+            return new InvalidLanguageException(d);
+        if (code.equals(InvalidLevelsException.CODE))
+            return new InvalidLevelsException(d);
+        if (code.equals(InvalidPickListException.CODE))
+            return new InvalidPickListException(d);
+        if (code.equals(InvalidSpecificationException.CODE))
+            return new InvalidSpecificationException(d);
+        if (code.equals(UnknownSpecificationException.CODE))
+            return new UnknownSpecificationException(d);
+        return new XCSValidationException(d);
     }
     
     /**
      * Get the element that caused this exception.
-     * @return The XML element this exception occured on.
+     * @return The XML element this exception occured on, or null if this
+     *  was restored from a {@link Diagnostic}.
      */
     protected Element element()
     {
         return elem;
     }
 
+    /**
+     * @return The key of the message in the XCSValidationException bundle.
+     */
+    protected String getCode()
+    {
+        return "XCSValidation";
+    }
+
+    /**
+     * @return The details of the message that follow the termEntry
+     *  context, taken from the element.
+     */
+    protected Object[] getDetails()
+    {
+        return new Object[0];
+    }
+
+    /**
+     * Describe this exception. Everything the message needs is taken from
+     * the element so the diagnostic does not keep the element.
+     *
+     * @param p Priority of the problem.
+     * @param seq Order the diagnostic is added in.
+     * @return The diagnostic.
+     */
+    Diagnostic toDiagnostic(TBXException.Priority p, long seq)
+    {
+        if (restoredFrom != null)
+            return restoredFrom.withSequence(seq);
+        Node term = elem;
+        while (term instanceof Element && !((Element) term).getTagName().equals("termEntry"))
+            term = term.getParentNode();
+        String id = term instanceof Element ? ((Element) term).getAttribute("id") : "";
+        if (id.equals("") || id.startsWith(TBXFile.AUTO_TERMENTRY_ID_PREFIX))
+            id = null;
+        int line = -1;
+        int column = -1;
+        if (elem instanceof LocatedElement)
+        {
+            line = ((LocatedElement) elem).getLineStart();
+            column = ((LocatedElement) elem).getColumnStart();
+        }
+        Object[] details = getDetails();
+        Object[] args = new Object[details.length + 2];
+        args[0] = elem.toString();
+        args[1] = (elem instanceof LocatedElement) ? ((LocatedElement) elem).getLocationString() : "Line: ??";
+        System.arraycopy(details, 0, args, 2, details.length);
+        return new Diagnostic(p, Diagnostic.XCS_PREFIX + getCode(), line, column, id, args, seq, null);
+    }
+
     /** {@inheritDoc} */
     public String getMessage()
     {
-        return "XCSValidationException " + buildContext();
+        return toDiagnostic(TBXException.Priority.XCS, 0).getXCSMessage(Locale.getDefault());
     }
 
     /** {@inheritDoc} */
     public String getLocalizedMessage()
     {
-        //TODO--localize the message
         return getMessage();
     }
     
@@ -85,40 +181,4 @@ implements Comparable<XCSValidationException>
     {
         return order - o.order;
     }
-    
-    /**
-     * Build an error context string for use in producing a message.
-     * This will give information so users can find the location of
-     * the error in large files.
-     *
-     * @return A human readable context for this error.
-     */
-    protected String buildContext()
-    {
-        //CHECKSTYLE: MagicNumber OFF
-        String ret;
-        ResourceBundle bundle = ResourceBundle.getBundle("org.ttt.salt.XCSValidationException");
-        Element term = elem;
-        while (!term.getTagName().equals("termEntry"))
-            term = (Element) term.getParentNode();
-        Object[] args = new Object[4];
-        args[2] = elem;
-        args[3] = (elem instanceof TBXElement) ? ((TBXElement) elem).getLocationString() : "Line: ??";
-                
-        String id = term.getAttribute("id");
-        if (id.equals("") || id.startsWith(TBXFile.AUTO_TERMENTRY_ID_PREFIX))
-        {
-            args[0] = "TODO"; //NOTDONE
-            args[1] = "TODO"; //NOTDONE
-            args[2] = elem;
-            ret = MessageFormat.format(bundle.getString("NoTermEntry"), args);
-        }
-        else
-        {
-            args[0] = id;
-            ret = MessageFormat.format(bundle.getString("TermEntry"), args);
-        }
-        return ret;
-        //CHECKSTYLE: MagicNumber ON
-    }
 }
@@ -0,0 +1,49 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.dom.tbx;
+
+import org.w3c.dom.Element;
+
+/**
+ * An element that knows where in the TBX source it was parsed, so that
+ * validation errors can point the user at it.
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public interface LocatedElement extends Element
+{
+    /**
+     * Get a string that defines the location in the document this element
+     * is located at.
+     *
+     * @return The location identification string.
+     */
+    String getLocationString();
+
+    /**
+     * @return Line in the XML stream this element starts.
+     */
+    int getLineStart();
+
+    /**
+     * @return Column in the XML stream this element starts.
+     */
+    int getColumnStart();
+}
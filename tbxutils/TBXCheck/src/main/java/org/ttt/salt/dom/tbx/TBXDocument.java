@@ -28,6 +28,7 @@ import org.xml.sax.SAXParseException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.apache.xerces.dom.DocumentImpl;
+import org.ttt.salt.DiagnosticSink;
 import org.ttt.salt.TBXException;
 
 
@@ -51,6 +52,92 @@ public class TBXDocument extends DocumentImpl implements Document
     
     /** The class prefix for element editors. */
     public static final String PREFIX = "org.ttt.salt.dom.tbx.Element_";
+
+    /**
+     * Creates the TBX element object for a tag. Factories are registered
+     * by tag name with {@link #registerElementFactory} so creating an
+     * element is a single lookup.
+     */
+    public interface ElementFactory
+    {
+        /**
+         * @param doc The document that owns the new element.
+         * @param tagName The element tag name.
+         * @param loc The {@link org.xml.sax.Locator} of the element, may be
+         *  null.
+         * @return The new element.
+         * @throws SAXParseException The element could not be created.
+         */
+        TBXElement createElement(TBXDocument doc, String tagName, Locator loc) throws SAXParseException;
+    }
+
+    /** Creates a plain TBXElement for tags without their own class. */
+    private static final ElementFactory DEFAULT_FACTORY = new ElementFactory()
+        {
+            public TBXElement createElement(TBXDocument doc, String tagName, Locator loc)
+            {
+                return new TBXElement(doc, tagName, loc);
+            }
+        };
+
+    /** Element factories by tag name. */
+    private static final java.util.concurrent.ConcurrentMap<String, ElementFactory> FACTORIES
+            = new java.util.concurrent.ConcurrentHashMap<String, ElementFactory>();
+
+    static
+    {
+        for (String tag : TBXParser.KNOWN_MISSING)
+            FACTORIES.put(tag, DEFAULT_FACTORY);
+        FACTORIES.put("martif", new ElementFactory()
+            {
+                public TBXElement createElement(TBXDocument doc, String tagName, Locator loc)
+                {
+                    return new Element_martif(doc, tagName, loc);
+                }
+            });
+    }
+
+    /**
+     * Creates elements through the constructor of an
+     * <code>Element_</code><em>tagName</em> class found by reflection.
+     */
+    private static final class ConstructorFactory implements ElementFactory
+    {
+        /** The element constructor. */
+        private final Constructor<TBXElement> cstrct;
+
+        /**
+         * @param c The element constructor.
+         */
+        ConstructorFactory(Constructor<TBXElement> c)
+        {
+            cstrct = c;
+        }
+
+        /** {@inheritDoc} */
+        public TBXElement createElement(TBXDocument doc, String tagName, Locator loc) throws SAXParseException
+        {
+            try
+            {
+                return cstrct.newInstance(doc, tagName, loc);
+            }
+            catch (InstantiationException err)
+            {
+                Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "TBX class not concrete: {0}", tagName);
+                throw new SAXParseException("TBX class not concrete", loc, err);
+            }
+            catch (IllegalAccessException err)
+            {
+                Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "TBX constructor not accessible on {0}", tagName);
+                throw new SAXParseException("TBX constructor not accessible", loc, err);
+            }
+            catch (InvocationTargetException err)
+            {
+                Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "TBX element {0} creation error", tagName);
+                throw new SAXParseException("TBX element creation error", loc, err);
+            }
+        }
+    }
     
     /** Timestampt when document was created. */
     private final Date created = new Date();
@@ -61,16 +148,21 @@ public class TBXDocument extends DocumentImpl implements Document
     /** TBX document element. */
     private TBXElementDocument tbxDocElem;
 
+    /** Compact copy of the termEntries, null if one was not built. */
+    private TBXTree termTree;
+
     /** Error accumulation list. */
-    private SortedSet<TBXException> exceptions = new java.util.TreeSet<TBXException>();
+    private final DiagnosticSink diagnostics = new DiagnosticSink();
     
     /**
      * Create an empty TBX document.
      *
      * @param hardref If this is true then the normal hard reference system is
-     *  used for document top level elements. If this is false then these top
-     *  level elements are stored in a soft/weak reference to allow them to
-     *  to be garbage collected when working with large TBX documents.
+     *  used for document top level elements. If this is false then the
+     *  document is being streamed: termEntry elements are dropped as they
+     *  are validated to allow them to be garbage collected when working with
+     *  large TBX documents, and {@link #getDocumentElement} returns a read
+     *  only {@link TBXElementDocument} view of what remains.
      */
     public TBXDocument(boolean hardref)
     {
@@ -87,11 +179,12 @@ public class TBXDocument extends DocumentImpl implements Document
      * Get a list of all exceptions that occured while this document was being
      * parsed and validated.
      *
-     * @return The sorted set of all exceptions that occured.
+     * @return A sorted set of all exceptions that occured, made from
+     *  {@link #getDiagnostics} on each call.
      */
     public SortedSet<TBXException> getParseExceptions()
     {
-        return exceptions;
+        return new java.util.TreeSet<TBXException>(diagnostics.toExceptions());
     }
     
     /**
@@ -101,7 +194,40 @@ public class TBXDocument extends DocumentImpl implements Document
      */
     public void addParseException(TBXException err)
     {
-        exceptions.add(err);
+        diagnostics.add(err);
+    }
+
+    /**
+     * Get the problems found while this document was being parsed and
+     * validated. This may be added to from several threads.
+     *
+     * @return The problems of the document.
+     */
+    public DiagnosticSink getDiagnostics()
+    {
+        return diagnostics;
+    }
+
+    /**
+     * Get the compact tree of termEntries. This is only built when the
+     * configuration used to parse the document asked for it, and then the
+     * termEntries are no longer in the document itself.
+     *
+     * @return The termEntry tree or null if one was not built.
+     */
+    public TBXTree getTermTree()
+    {
+        return termTree;
+    }
+
+    /**
+     * Set the compact tree of termEntries.
+     *
+     * @param tree The termEntry tree.
+     */
+    public void setTermTree(TBXTree tree)
+    {
+        termTree = tree;
     }
     
     /**
@@ -118,57 +244,73 @@ public class TBXDocument extends DocumentImpl implements Document
      * @return The newly created TBX element.
      * @see #createElement
      */
-    @SuppressWarnings("unchecked")
     public TBXElement createTBXElement(String tagName, Locator loc) throws SAXParseException
     {
         if (errorChecking && !isXMLName(tagName, true))
             super.createElement(tagName);   //let the superclass throw the error
-        TBXElement ret = null;
-        try
+        ElementFactory factory = FACTORIES.get(tagName);
+        if (factory == null)
+            factory = findElementFactory(tagName, loc);
+        TBXElement ret = factory.createElement(this, tagName, loc);
+        if (tagName.equals("martif"))
         {
-            try
-            {
-                Class<TBXElement> clazz = (Class<TBXElement>) Class.forName(PREFIX + tagName,
-                                            true, getClass().getClassLoader());
-                Constructor<TBXElement> cstrct = clazz.getConstructor(TBXDocument.class,
-                    String.class, Locator.class);
-                ret = cstrct.newInstance(this, tagName, loc);
-            }
-            catch (ClassNotFoundException err)
-            {
-                if (!TBXParser.KNOWN_MISSING.contains(tagName))
-                    Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.INFO, "Unknown TBX Element: {0}", tagName);
-                ret = new TBXElement(this, tagName, loc);
-            }
-
-            if (tagName.equals("martif"))
-            {
-                docElement = ret;
-                if (!hardRef)
-                    tbxDocElem = new TBXElementDocument(this, tagName, loc, docElement);
-            }
+            docElement = ret;
+            if (!hardRef)
+                tbxDocElem = new TBXElementDocument(this, tagName, loc, docElement);
         }
-        catch (NoSuchMethodException err)
+        return ret;
+    }
+
+    /**
+     * Register the factory used to create every element with the given tag
+     * name, replacing any factory already registered for it.
+     *
+     * @param tagName The element tag name.
+     * @param factory The factory that creates the elements.
+     */
+    public static void registerElementFactory(String tagName, ElementFactory factory)
+    {
+        FACTORIES.put(tagName, factory);
+    }
+
+    /**
+     * Find the factory for a tag that has not been registered. If there is
+     * an <code>Element_</code><em>tagName</em> class it is found once by
+     * reflection and its constructor registered. Tags without a class get a
+     * plain TBXElement; unknown tags are not registered so that arbitrary
+     * tag names do not fill the registry.
+     *
+     * @param tagName The element tag name.
+     * @param loc The {@link org.xml.sax.Locator} of the element.
+     * @return The factory for the tag.
+     * @throws SAXParseException The element class has no usable constructor.
+     */
+    @SuppressWarnings("unchecked")
+    private ElementFactory findElementFactory(String tagName, Locator loc) throws SAXParseException
+    {
+        Class<TBXElement> clazz;
+        try
         {
-            Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "Invalid TBX Class: {0}", tagName);
-            throw new SAXParseException("Invalid TBX Class", loc, err);
+            clazz = (Class<TBXElement>) Class.forName(PREFIX + tagName,
+                                        true, getClass().getClassLoader());
         }
-        catch (InstantiationException err)
+        catch (ClassNotFoundException err)
         {
-            Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "TBX class not concrete: {0}", tagName);
-            throw new SAXParseException("TBX class not concrete", loc, err);
+            Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.INFO, "Unknown TBX Element: {0}", tagName);
+            return DEFAULT_FACTORY;
         }
-        catch (IllegalAccessException err)
+        try
         {
-            Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "TBX constructor not accessible on {0}", tagName);
-            throw new SAXParseException("TBX constructor not accessible", loc, err);
+            ElementFactory ret = new ConstructorFactory(clazz.getConstructor(TBXDocument.class,
+                    String.class, Locator.class));
+            ElementFactory prev = FACTORIES.putIfAbsent(tagName, ret);
+            return prev != null ? prev : ret;
         }
-        catch (InvocationTargetException err)
+        catch (NoSuchMethodException err)
         {
-            Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "TBX element {0} creation error", tagName);
-            throw new SAXParseException("TBX element creation error", loc, err);
+            Logger.getLogger("org.ttt.salt.dom.tbx").log(Level.SEVERE, "Invalid TBX Class: {0}", tagName);
+            throw new SAXParseException("Invalid TBX Class", loc, err);
         }
-        return ret;
     }
     
     /** {@inheritDoc} */
@@ -18,7 +18,6 @@
 package org.ttt.salt.dom.tbx;
 
 import org.xml.sax.Locator;
-import org.w3c.dom.Element;
 import org.apache.xerces.dom.ElementImpl;
 
 
@@ -33,7 +32,7 @@ import org.apache.xerces.dom.ElementImpl;
  * @version $Id$
  * @license Licensed under the Apache License, Version 2.0.
  */
-public class TBXElement extends ElementImpl implements Element
+public class TBXElement extends ElementImpl implements LocatedElement
 {
     /*
      */
@@ -84,6 +83,38 @@ public class TBXElement extends ElementImpl implements Element
         columnEnd = loc.getColumnNumber();
     }
     
+    /**
+     * @return Line in the XML stream this element starts.
+     */
+    public int getLineStart()
+    {
+        return lineStart;
+    }
+
+    /**
+     * @return Column in the XML stream this element starts.
+     */
+    public int getColumnStart()
+    {
+        return columnStart;
+    }
+
+    /**
+     * @return Line in the XML stream this element ends.
+     */
+    int getLineEnd()
+    {
+        return lineEnd;
+    }
+
+    /**
+     * @return Column in the XML stream this element ends.
+     */
+    int getColumnEnd()
+    {
+        return columnEnd;
+    }
+    
     /**
      * Get a string that defines the location in the document this element
      * is located at.
@@ -17,8 +17,6 @@
  */
 package org.ttt.salt.dom.tbx;
 
-import java.lang.ref.Reference;
-import java.util.List;
 import org.xml.sax.Locator;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -27,9 +25,11 @@ import org.w3c.dom.Element;
 
 /**
  * This is a specialized version of the document element that is returned by
- * {@link org.w3c.dom.Document#getDocumentElement}. This will store top level
- * elements as {@link java.lang.ref.Reference} to allow large document
- * parsing and validation to remove old elements if memory requires it.
+ * {@link org.w3c.dom.Document#getDocumentElement} when a document is
+ * streamed. The parser removes each termEntry from the body once it has been
+ * validated, so the backing document element only holds the martifHeader
+ * and an empty text skeleton; this element gives read only access to that
+ * remainder and refuses any modification.
  * <p>
  * This should not be used if normal hard references are used to store child
  * documents, the default implementation will work correctly for that.</p>
@@ -48,12 +48,6 @@ public class TBXElementDocument extends TBXElement
     
     /** {@link org.w3c.dom.Element} that backs this element. */
     private Element implDocElement;
-        
-    /**
-     * List of top level elements in this document, not used if
-     * asSoftReference is false.
-     */
-    private List<Reference<Element>> children = new java.util.ArrayList<Reference<Element>>();
     
     /**
      * Create an TBXElement and start building its contents.
@@ -102,46 +96,64 @@ public class TBXElementDocument extends TBXElement
         throw new UnsupportedOperationException();
     }
     
+    /** {@inheritDoc} */
+    public boolean hasChildNodes()
+    {
+        return implDocElement.hasChildNodes();
+    }
+
+    /** {@inheritDoc} */
+    public String getAttribute(String name)
+    {
+        return implDocElement.getAttribute(name);
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasAttribute(String name)
+    {
+        return implDocElement.hasAttribute(name);
+    }
+
     /** {@inheritDoc} */
     public NodeList getChildNodes()
     {
-        throw new UnsupportedOperationException();
+        return implDocElement.getChildNodes();
     }
     
     /** {@inheritDoc} */
     public Node getFirstChild()
     {
-        throw new UnsupportedOperationException();
+        return implDocElement.getFirstChild();
     }
 
     /** {@inheritDoc} */
     public Node getLastChild()
     {
-        throw new UnsupportedOperationException();
+        return implDocElement.getLastChild();
     }
     
     /** {@inheritDoc} */
     public Node getNextSibling()
     {
-        throw new UnsupportedOperationException();
+        return null;
     }
 
     /** {@inheritDoc} */
     public Node getPreviousSibling()
     {
-        throw new UnsupportedOperationException();
+        return null;
     }
     
     /** {@inheritDoc} */
     public NodeList getElementsByTagName(String name)
     {
-        throw new UnsupportedOperationException();
+        return implDocElement.getElementsByTagName(name);
     }
     
     /** {@inheritDoc} */
     public NodeList getElementsByTagNameNS(String namespaceURI, String localName)
     {
-        throw new UnsupportedOperationException();
+        return implDocElement.getElementsByTagNameNS(namespaceURI, localName);
     }
 }
 
@@ -22,11 +22,19 @@ import java.io.FileNotFoundException;
 import java.net.URL;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Deque;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Observable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import javax.xml.parsers.ParserConfigurationException;
@@ -45,11 +53,15 @@ import org.xml.sax.SAXNotSupportedException;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.Text;
 import org.w3c.dom.DOMException;
 import org.ttt.salt.Configuration;
+import org.ttt.salt.Diagnostic;
+import org.ttt.salt.DTDGrammarPool;
 import org.ttt.salt.XCSDocument;
+import org.ttt.salt.XCSDocumentCache;
 import org.ttt.salt.TBXException;
+import org.ttt.salt.TermEntryManifest;
+import org.ttt.salt.TBXStatistics;
 import org.ttt.salt.XCSValidationException;
 
 
@@ -85,17 +97,22 @@ public class TBXParser
     {
         /** TBXElement that just completed its build and validation. */
         private TBXElement element;
+
+        /** Parent of the element when it completed its build. */
+        private TBXElement parent;
         
         /** Indicates that the TBXElement is XCS valid. */
         private boolean valid;
                 
         /**
          * @param elem The element that finished building in parse.
+         * @param p The parent of the element.
          * @param v The element is a termEntry and it is XCS valid.
          */
-        private Event(TBXElement elem, boolean v)
+        private Event(TBXElement elem, TBXElement p, boolean v)
         {
             element = elem;
+            parent = p;
             valid = v;
         }
         
@@ -116,7 +133,7 @@ public class TBXParser
          */
         public TBXElement getParentTBXElement()
         {
-            return current;
+            return parent;
         }
         
         /**
@@ -169,9 +186,80 @@ public class TBXParser
         }
     }
 
+    /**
+     * A termEntry that has been submitted for validation on another thread.
+     */
+    private static final class PendingTermEntry
+    {
+        /** The termEntry being validated. */
+        private final TBXElement element;
+        
+        /** The parent of the termEntry when it completed its build. */
+        private final TBXElement parent;
+        
+        /** The validation failure, or null if the termEntry is valid. */
+        private final Future<XCSValidationException> result;
+
+        /** The manifest digest of the termEntry. */
+        private final long digest;
+        
+        /**
+         * @param e The termEntry being validated.
+         * @param p The parent of the termEntry.
+         * @param r The validation result.
+         * @param d The manifest digest of the termEntry.
+         */
+        private PendingTermEntry(TBXElement e, TBXElement p, Future<XCSValidationException> r, long d)
+        {
+            element = e;
+            parent = p;
+            result = r;
+            digest = d;
+        }
+    }
+
+    /**
+     * Thrown from a handler to stop the parse when the error limits of the
+     * configuration are reached. It has no stack trace since it is always
+     * caught by {@link #parse}.
+     */
+    private static final class ErrorLimitException extends SAXException
+    {
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param msg Which limit was reached.
+         */
+        private ErrorLimitException(String msg)
+        {
+            super(msg);
+        }
+
+        /** {@inheritDoc} */
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+
     /** SCM information. */
     public static final String RCSID = "$Id$";
 
+    /** Number of termEntries that may wait on each validation thread. */
+    private static final int PENDING_PER_THREAD = 4;
+    
+    /** Validation threads must not keep the application alive. */
+    private static final ThreadFactory VALIDATOR_FACTORY = new ThreadFactory()
+    {
+        public Thread newThread(Runnable r)
+        {
+            Thread ret = new Thread(r, "TBXParser-validator");
+            ret.setDaemon(true);
+            return ret;
+        }
+    };
+
     /**
      * Known missing element sub-classes of XCSElement. These elements are
      * in the XCS, but there is not special handling necessary other than
@@ -195,6 +283,9 @@ public class TBXParser
 
     /** Logger for this package. */
     private static final Logger LOGGER = Logger.getLogger("org.ttt.salt.dom.tbx");
+
+    /** Whitespace runs replaced by a single space when whitespace is collapsed. */
+    private static final java.util.regex.Pattern WHITESPACE = java.util.regex.Pattern.compile("\\s+");
     
     /** The validation and compliance checks. */
     private Configuration config;
@@ -210,6 +301,9 @@ public class TBXParser
     
     /** The XCSDocument built while parsing the TBXDocument. */
     private XCSDocument xcsDocument;
+
+    /** The URI the TBX header gave for {@link #xcsDocument}. */
+    private String xcsDocumentURI;
     
     /** The TBXElement that represents the entire document. */
     private TBXDocument document;
@@ -225,12 +319,48 @@ public class TBXParser
     
     /** Indicates that whitespace is not significant (xml:space="default"). */
     private boolean collapseWhitespace;
+
+    /**
+     * Trace each SAX event. This is fixed when a parse starts so the level
+     * is not checked, and no trace arguments are built, for every event.
+     */
+    private boolean tracing;
+
+    /** Character data collected since the last markup, see {@link #flushText}. */
+    private final StringBuilder text = new StringBuilder();
     
     /** Holds the current set of validation exceptions. This will be cleared
      * each time a new termEntry has completed parsing in preparation for XCS
      * validation.
      */
     private SortedSet<XCSValidationException> exceptions = new java.util.TreeSet<XCSValidationException>();
+
+    /** Validates termEntries while parsing continues, null for inline validation. */
+    private ExecutorService validators;
+
+    /** TermEntries submitted to the validators in document order. */
+    private Deque<PendingTermEntry> pending = new java.util.ArrayDeque<PendingTermEntry>();
+
+    /** Compact copy of the released termEntries, null if not compact. */
+    private TBXTree.Builder tree;
+
+    /** TermEntries that were valid the last time, or null. */
+    private TermEntryManifest manifest;
+
+    /** The events are being added to the manifest digest of a termEntry. */
+    private boolean digesting;
+
+    /** Counts the elements and text of the file, or null. */
+    private TBXStatistics.Recorder stats;
+
+    /** Number of errors and warnings reported. */
+    private int errors;
+
+    /** Number of errors and warnings reported by diagnostic code. */
+    private Map<String, int[]> ruleErrors = new java.util.HashMap<String, int[]>();
+
+    /** The parse was stopped by the error limits. */
+    private boolean stopped;
     
     /**
      * Create a new parser for TBX document parsing.
@@ -247,7 +377,7 @@ public class TBXParser
         config = c;
         try
         {
-            reader = new org.apache.xerces.parsers.SAXParser();
+            reader = DTDGrammarPool.createParser(config.getGrammarCaching());
             reader.setFeature("http://xml.org/sax/features/namespaces", true);
             reader.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
             reader.setFeature("http://xml.org/sax/features/validation", true);
@@ -255,6 +385,8 @@ public class TBXParser
             reader.setDTDHandler(this);
             reader.setEntityResolver(resolver);
             reader.setErrorHandler(this);
+            reader.setProperty("http://apache.org/xml/properties/input-buffer-size",
+                    Integer.valueOf(config.getReadBufferSize()));
         }
         catch (SAXNotRecognizedException err)
         {
@@ -274,6 +406,29 @@ public class TBXParser
      * If a TBXDocument has not been set when this is called then a default
      * TBXDocument will be created where all elements will be held as hard
      * references, and the full document will be built.</p>
+     * <p>
+     * If the configuration is streaming then each termEntry is removed from
+     * its body as soon as it has been validated and the observers notified,
+     * so the returned document only holds the martifHeader and the empty
+     * text skeleton.</p>
+     * <p>
+     * If the configuration asks for a compact tree then each termEntry is
+     * copied into a {@link TBXTree} before it is removed from its body, and
+     * the tree is set on the returned document.</p>
+     * <p>
+     * If the configuration has validation threads then each termEntry is
+     * validated on a worker thread while parsing continues. The termEntry
+     * events are still sent in document order, but they may be sent after
+     * the events for elements that follow the termEntry.</p>
+     * <p>
+     * If a {@link #setManifest manifest} is set then a termEntry it holds
+     * as valid against the same XCS is not validated again.</p>
+     * <p>
+     * If the configuration has an error limit or a rule error limit then
+     * the parse stops as soon as one is reached. The rest of the source is
+     * not read, termEntries still being validated are dropped without
+     * events, and the document only holds what was parsed, see
+     * {@link #isStopped}.</p>
      *
      * @param src The input source to read the TBX XML data.
      * @return The TBX document created from this parse pass.
@@ -284,13 +439,61 @@ public class TBXParser
     {
         if (document == null)
         {
-            TBXDocument ret = new TBXDocument(true);
+            TBXDocument ret = new TBXDocument(!config.getStreaming() && !config.getCompactTree());
             setTBXDocument(ret);
         }
-        reader.parse(src);
+        if (config.getCompactTree())
+            tree = new TBXTree.Builder();
+        int threads = config.getValidationThreads();
+        if (threads > 0 && config.getCheckEachTerm())
+            validators = Executors.newFixedThreadPool(threads, VALIDATOR_FACTORY);
+        tracing = LOGGER.isLoggable(Level.FINER);
+        try
+        {
+            reader.parse(src);
+        }
+        catch (ErrorLimitException err)
+        {
+            stopped = true;
+            LOGGER.info(err.getMessage());
+        }
+        finally
+        {
+            try
+            {   //Report everything that was parsed even if the parse failed
+                if (!stopped)
+                    drainTermEntries(true);
+            }
+            catch (ErrorLimitException err)
+            {
+                stopped = true;
+                LOGGER.info(err.getMessage());
+            }
+            finally
+            {
+                if (validators != null)
+                    validators.shutdownNow();
+                validators = null;
+                pending.clear();
+                if (tree != null)
+                    document.setTermTree(tree.build());
+                tree = null;
+            }
+        }
         return getTBXDocument();
     }
     
+    /**
+     * Find out if the parse was stopped by the error limits of the
+     * configuration before the end of the source.
+     *
+     * @return true => The document only holds part of the source.
+     */
+    public boolean isStopped()
+    {
+        return stopped;
+    }
+    
     /**
      * Set a custom TBXDocument to use when parsing the TBX XML input source.
      * If parsing has started then {@link java.lang.IllegalStateException}
@@ -319,6 +522,30 @@ public class TBXParser
         return document;
     }
     
+    /**
+     * Set the manifest of the termEntries that were valid the last time
+     * this file was checked. A termEntry found in it is not validated
+     * again, and every termEntry parsed is recorded in it. This must be set
+     * before the parse starts.
+     *
+     * @param m The manifest, or null to validate every termEntry.
+     */
+    public void setManifest(TermEntryManifest m)
+    {
+        manifest = m;
+    }
+
+    /**
+     * Set where the elements, text and XCS lookups of the parse are
+     * counted. This must be set before the parse starts.
+     *
+     * @param r The counts of the file, or null to not count.
+     */
+    public void setStatistics(TBXStatistics.Recorder r)
+    {
+        stats = r;
+    }
+
     /**
      * Get the XCSDocument that was successfully built while parsing the TBX
      * document.
@@ -330,6 +557,15 @@ public class TBXParser
     {
         return xcsDocument;
     }
+
+    /**
+     * @return The XCS URI string from the TBX header that
+     *  {@link #getXCSDocument} was built from, or null.
+     */
+    public String getXCSURI()
+    {
+        return xcsDocumentURI;
+    }
     
     /*********************************/
     /* org.xml.ContentHandler        */
@@ -337,31 +573,37 @@ public class TBXParser
     /** {@inheritDoc} */
     public void setDocumentLocator(Locator loc)
     {
-        LOGGER.entering("TBXParser", "setDocumentLocator",
-                String.format("Line=%d Col=%d", loc.getLineNumber(), loc.getColumnNumber()));
+        if (tracing)
+            LOGGER.entering("TBXParser", "setDocumentLocator",
+                    String.format("Line=%d Col=%d", loc.getLineNumber(), loc.getColumnNumber()));
         locator = loc;
     }
     
     /** {@inheritDoc} */
     public void startDocument() throws SAXException
     {
-        LOGGER.entering("TBXParser", "startDocument");
+        if (tracing)
+            LOGGER.entering("TBXParser", "startDocument");
+        text.setLength(0);
         assert stack.isEmpty() : "TBXParser stack is not empty.";
     }
     
     /** {@inheritDoc} */
     public void endDocument() throws SAXException
     {
-        LOGGER.entering("TBXParser", "endDocument");
+        if (tracing)
+            LOGGER.entering("TBXParser", "endDocument");
         assert stack.isEmpty() : "TBXParser stack is not empty.";
     }
     
     /** {@inheritDoc} */
     public void startPrefixMapping(String prefix, String uri) throws SAXException
     {
-        LOGGER.entering("TBXParser", "startPrefixMapping",
-                String.format("prefix='%s', uri='%s'", prefix, uri));
-        LOGGER.info(String.format("startPrefixMapping: prefix='%s' uri='%s'", prefix, uri));
+        if (tracing)
+            LOGGER.entering("TBXParser", "startPrefixMapping",
+                    String.format("prefix='%s', uri='%s'", prefix, uri));
+        if (LOGGER.isLoggable(Level.INFO))
+            LOGGER.info(String.format("startPrefixMapping: prefix='%s' uri='%s'", prefix, uri));
         try
         {
             namespace.put(prefix, new URI(uri));
@@ -375,23 +617,37 @@ public class TBXParser
     /** {@inheritDoc} */
     public void endPrefixMapping(String prefix) throws SAXException
     {
-        LOGGER.entering("TBXParser", "enPrefixMapping",
-                String.format("prefix='%s'", prefix));
+        if (tracing)
+            LOGGER.entering("TBXParser", "enPrefixMapping",
+                    String.format("prefix='%s'", prefix));
     }
     
     /** {@inheritDoc} */
     public void startElement(String uri, String localName, String qName,
             Attributes atts) throws SAXException
     {
-        LOGGER.entering("TBXParser", "startElement",
-                String.format("Element %d: uri='%s' local='%s' qName='%s'",
-                    locator.getLineNumber(), uri, localName, qName));
+        if (tracing)
+            LOGGER.entering("TBXParser", "startElement",
+                    String.format("Element %d: uri='%s' local='%s' qName='%s'",
+                        locator.getLineNumber(), uri, localName, qName));
+        flushText();
         stack.push(current);
         current = document.createTBXElement(localName, locator);
+        if (manifest != null && xcsDocument != null && config.getCheckEachTerm()
+                && localName.equals("termEntry"))
+        {
+            digesting = true;
+            manifest.startEntry();
+        }
+        if (digesting)
+            manifest.startElement(localName, atts);
+        if (stats != null)
+            stats.element(localName);
         for (int i = 0; i < atts.getLength(); i++)
         {
-            LOGGER.finer(String.format("Attribute: qname='%s' local='%s' type='%s' uri='%s' value='%s'",
-                    atts.getQName(i), atts.getLocalName(i), atts.getType(i), atts.getURI(i), atts.getValue(i)));
+            if (tracing)
+                LOGGER.finer(String.format("Attribute: qname='%s' local='%s' type='%s' uri='%s' value='%s'",
+                        atts.getQName(i), atts.getLocalName(i), atts.getType(i), atts.getURI(i), atts.getValue(i)));
             try
             {
                 current.setAttribute(atts.getQName(i), atts.getValue(i));
@@ -408,8 +664,12 @@ public class TBXParser
     /** {@inheritDoc} */
     public void endElement(String uri, String localName, String qName) throws SAXException
     {
-        LOGGER.entering("TBXParser", "endElement", String.format("Element %d: uri='%s' local='%s' qName='%s'",
-                    locator.getLineNumber(), uri, localName, qName));
+        if (tracing)
+            LOGGER.entering("TBXParser", "endElement", String.format("Element %d: uri='%s' local='%s' qName='%s'",
+                        locator.getLineNumber(), uri, localName, qName));
+        flushText();
+        if (digesting)
+            manifest.endElement();
         current.endElement(locator);
         TBXElement child = current;
         current = stack.pop();
@@ -450,15 +710,22 @@ public class TBXParser
                 {
                     LOGGER.warning("XCS not specified.");
                     IOException err = new FileNotFoundException("XCS not specified.");
-                    TBXException tbxerr = new TBXException(TBXException.Priority.XCS, err);
-                    document.addParseException(tbxerr);
+                    report(TBXException.Priority.XCS, err);
                 }
                 else
                 {
+                    if (stats != null)
+                    {
+                        stats.xcsLookup();
+                        stats.begin(TBXStatistics.Phase.XCS);
+                    }
                     try
                     {
                         LOGGER.info("Using XCS: " + xcsURI);
-                        xcsDocument = new XCSDocument(xcsURI, resolver, config);
+                        xcsDocument = XCSDocumentCache.getDefault().get(xcsURI, resolver, config);
+                        xcsDocumentURI = xcsURI;
+                        if (manifest != null)
+                            manifest.setContext(xcsDocument.getDigest() + '#' + config.getResultKey());
                         break GOT_XCS;
                     }
                     catch (FileNotFoundException err)
@@ -466,16 +733,14 @@ public class TBXParser
                         String msg = String.format("XCS file '%s' not found. Because of error: %s", xcsURI, err.getMessage());
                         LOGGER.info(msg);
                         LOGGER.log(Level.FINE, msg, err);
-                        TBXException tbxerr = new TBXException(TBXException.Priority.XCS, err);
-                        document.addParseException(tbxerr);
+                        report(TBXException.Priority.XCS, err);
                     }
                     catch (java.net.UnknownHostException err)
                     {
                         String msg = String.format("XCS file '%s' not found. Unknown host: %s", xcsURI, err.getMessage());
                         LOGGER.info(msg);
                         LOGGER.log(Level.FINE, msg, err);
-                        TBXException tbxerr = new TBXException(TBXException.Priority.XCS, err);
-                        document.addParseException(tbxerr);
+                        report(TBXException.Priority.XCS, err);
                     }
                     catch (IOException err)
                     {
@@ -486,6 +751,11 @@ public class TBXParser
                     {
                         LOGGER.log(Level.WARNING, "Exception building XCS", err);
                     }
+                    finally
+                    {
+                        if (stats != null)
+                            stats.end(TBXStatistics.Phase.XCS);
+                    }
                 }
             }
         }
@@ -494,26 +764,49 @@ public class TBXParser
             if (xcsDocument == null)
             {
                 IOException err = new FileNotFoundException("XCS not specified.");
-                TBXException tbxerr = new TBXException(TBXException.Priority.XCS, err);
-                document.addParseException(tbxerr);
+                report(TBXException.Priority.XCS, err);
             }
         }
         else if (config.getCheckEachTerm() && localName.equals("termEntry"))
-        {   //VALIDATE the term entry
-            try
+        {   //VALIDATE the term entry, the event is sent when it is done
+            long digest = 0;
+            boolean known = false;
+            if (digesting)
             {
-                if (xcsDocument != null)
-                {
-                    xcsDocument.validateTermEntry(child);
-                    valid = true;
-                }
+                digesting = false;
+                digest = manifest.endEntry();
+                known = manifest.isValid(digest);
             }
-            catch (XCSValidationException err)
+            if (validators != null && xcsDocument != null)
             {
-                exceptions.add(err);
-                TBXException tbxerr = new TBXException(TBXException.Priority.XCS, err);
-                document.addParseException(tbxerr);
+                submitTermEntry(child, known, digest);
+            }
+            else
+            {
+                XCSValidationException error = null;
+                try
+                {
+                    if (known)
+                    {
+                        valid = true;
+                    }
+                    else if (xcsDocument != null)
+                    {
+                        xcsDocument.validateTermEntry(child);
+                        valid = true;
+                    }
+                }
+                catch (XCSValidationException err)
+                {
+                    error = err;
+                }
+                termEntryDone(child, current, valid, error, digest);
             }
+            return;
+        }
+        else if (localName.equals("body"))
+        {   //All termEntry events must be sent before the body event
+            drainTermEntries(true);
         }
         else if (localName.equals("date"))
         {   //Do cursory date format checking
@@ -524,44 +817,247 @@ public class TBXParser
                         current.getTextContent().trim()));
             }
         }
-        Event evt = new Event(child, valid);
+        Event evt = new Event(child, current, valid);
         setChanged();
         notifyObservers(evt);
+
+        if (localName.equals("termEntry"))
+            releaseTermEntry(child);
+    }
+
+    /**
+     * Submit a completed termEntry to the validators. If too many termEntries
+     * are waiting then this will block until the oldest one is done so the
+     * parser cannot get arbitrarily far ahead of validation.
+     *
+     * @param entry The termEntry that just completed its build.
+     * @param known The manifest says the termEntry is valid, so its event
+     *  only waits for the termEntries before it.
+     * @param digest The manifest digest of the termEntry.
+     * @throws SAXException Validation was interrupted.
+     */
+    private void submitTermEntry(final TBXElement entry, boolean known, long digest)
+        throws SAXException
+    {
+        drainTermEntries(false);
+        if (pending.size() >= PENDING_PER_THREAD * config.getValidationThreads())
+            completeTermEntry(pending.removeFirst());
+        if (known)
+        {
+            if (pending.isEmpty())
+                termEntryDone(entry, current, true, null, digest);
+            else
+                pending.addLast(new PendingTermEntry(entry, current,
+                        CompletableFuture.completedFuture((XCSValidationException) null), digest));
+            return;
+        }
+        
+        final XCSDocument xcs = xcsDocument;
+        Future<XCSValidationException> result = validators.submit(
+            new Callable<XCSValidationException>()
+            {
+                public XCSValidationException call()
+                {
+                    try
+                    {
+                        xcs.validateTermEntry(entry);
+                        return null;
+                    }
+                    catch (XCSValidationException err)
+                    {
+                        return err;
+                    }
+                }
+            });
+        pending.addLast(new PendingTermEntry(entry, current, result, digest));
+    }
+    
+    /**
+     * Send the events for submitted termEntries in document order.
+     *
+     * @param all Wait for every submitted termEntry, otherwise stop at the
+     *  first one that is still being validated.
+     * @throws SAXException Validation was interrupted.
+     */
+    private void drainTermEntries(boolean all) throws SAXException
+    {
+        while (!pending.isEmpty() && (all || pending.peekFirst().result.isDone()))
+            completeTermEntry(pending.removeFirst());
+    }
+    
+    /**
+     * Wait for a submitted termEntry to finish validation and then send
+     * its event.
+     *
+     * @param entry The submitted termEntry.
+     * @throws SAXException Validation was interrupted.
+     */
+    private void completeTermEntry(PendingTermEntry entry) throws SAXException
+    {
+        XCSValidationException error;
+        try
+        {
+            error = entry.result.get();
+        }
+        catch (InterruptedException err)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAXException("Interrupted during termEntry validation.", err);
+        }
+        catch (ExecutionException err)
+        {   //Validation only throws unchecked exceptions besides XCSValidationException
+            if (err.getCause() instanceof Error)
+                throw (Error) err.getCause();
+            throw (RuntimeException) err.getCause();
+        }
+        termEntryDone(entry.element, entry.parent, error == null, error, entry.digest);
+    }
+    
+    /**
+     * Record the XCS validation of a termEntry and notify the observers.
+     *
+     * @param entry The termEntry that was validated.
+     * @param parent The parent of the termEntry.
+     * @param valid The termEntry is XCS valid.
+     * @param error The validation failure or null.
+     * @param digest The manifest digest of the termEntry.
+     * @throws SAXException The error limits were reached.
+     */
+    private void termEntryDone(TBXElement entry, TBXElement parent, boolean valid,
+            XCSValidationException error, long digest) throws SAXException
+    {
+        if (manifest != null && xcsDocument != null)
+            manifest.add(digest, valid);
+        exceptions.clear();
+        Diagnostic d = null;
+        if (error != null)
+        {
+            exceptions.add(error);
+            d = document.getDiagnostics().add(TBXException.Priority.XCS, error);
+        }
+        Event evt = new Event(entry, parent, valid);
+        setChanged();
+        notifyObservers(evt);
+        releaseTermEntry(entry);
+        if (d != null)
+            checkErrorLimits(d);
+    }
+
+    /**
+     * Add a problem to the document.
+     *
+     * @param p The priority of the problem.
+     * @param err The problem.
+     * @throws SAXException The error limits were reached.
+     */
+    private void report(TBXException.Priority p, Throwable err) throws SAXException
+    {
+        checkErrorLimits(document.getDiagnostics().add(p, err));
+    }
+
+    /**
+     * Count a problem added to the document and stop the parse if that
+     * reaches a limit of the configuration.
+     *
+     * @param d The problem.
+     * @throws ErrorLimitException The error limits were reached.
+     */
+    private void checkErrorLimits(Diagnostic d) throws ErrorLimitException
+    {
+        errors++;
+        int limit = config.getErrorLimit();
+        if (limit > 0 && errors >= limit)
+            throw new ErrorLimitException(String.format(
+                    "Stopped parsing after %d errors at line %d.", errors, d.getLine()));
+        limit = config.getRuleErrorLimit();
+        if (limit > 0)
+        {
+            int[] count = ruleErrors.get(d.getCode());
+            if (count == null)
+            {
+                count = new int[1];
+                ruleErrors.put(d.getCode(), count);
+            }
+            count[0]++;
+            if (count[0] >= limit)
+                throw new ErrorLimitException(String.format(
+                        "Stopped parsing after %d %s errors at line %d.", count[0], d.getCode(), d.getLine()));
+        }
+    }
+    
+    /**
+     * Observers have seen the termEntry so, if streaming or building the
+     * compact tree, release it and the whitespace before it. Later
+     * termEntries may still be waiting on validation so they are kept.
+     *
+     * @param entry The termEntry to remove from its parent.
+     */
+    private void releaseTermEntry(TBXElement entry)
+    {
+        if (tree != null)
+            tree.add(entry);
+        else if (!config.getStreaming())
+            return;
+        Node parent = entry.getParentNode();
+        if (parent != null)
+        {
+            while (parent.getFirstChild() != entry)
+                parent.removeChild(parent.getFirstChild());
+            parent.removeChild(entry);
+        }
     }
     
     /** {@inheritDoc} */
     public void characters(char[] ch, int start, int length) throws SAXException
     {
-        LOGGER.entering("TBXParser", "characters", String.format("'%s'", new String(ch, start, length)));
-        String data = new String(ch, start, length);
-        if (collapseWhitespace)
-            data = data.replaceAll("\\s+", " ");
-        Text text = document.createTextNode(data);
-        current.appendChild(text);
+        if (tracing)
+            LOGGER.entering("TBXParser", "characters", String.format("'%s'", new String(ch, start, length)));
+        text.append(ch, start, length);
     }
     
     /** {@inheritDoc} */
     public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
     {
-        LOGGER.entering("TBXParser", "ignorableWhitespace", String.format("'%s'", new String(ch, start, length)));
-        if (!collapseWhitespace)
-        {
-            String data = new String(ch, start, length);
-            Text text = document.createTextNode(data);
-            current.appendChild(text);
-        }
+        if (tracing)
+            LOGGER.entering("TBXParser", "ignorableWhitespace", String.format("'%s'", new String(ch, start, length)));
+        if (!collapseWhitespace && !config.getElideWhitespace())
+            text.append(ch, start, length);
+    }
+    
+    /**
+     * Add the character data collected since the last start or end tag to
+     * the current element as one text node. SAX may deliver a single run of
+     * text in many pieces, so this is done at each tag instead of for each
+     * piece.
+     */
+    private void flushText()
+    {
+        if (text.length() == 0)
+            return;
+        String data = text.toString();
+        text.setLength(0);
+        if (collapseWhitespace)
+            data = WHITESPACE.matcher(data).replaceAll(" ");
+        if (digesting)
+            manifest.text(data);
+        if (stats != null)
+            stats.text(data.length());
+        if (current != null)
+            current.appendChild(document.createTextNode(data));
     }
     
     /** {@inheritDoc} */
     public void processingInstruction(String target, String data) throws SAXException
     {
-        LOGGER.entering("TBXParser", "processingInstruction", String.format("target='%s' data='%s'", target, data));
+        if (tracing)
+            LOGGER.entering("TBXParser", "processingInstruction", String.format("target='%s' data='%s'", target, data));
     }
     
     /** {@inheritDoc} */
     public void skippedEntity(String name) throws SAXException
     {
-        LOGGER.entering("TBXParser", "skippedEntity", String.format("name='%s'", name));
+        if (tracing)
+            LOGGER.entering("TBXParser", "skippedEntity", String.format("name='%s'", name));
     }
     
     
@@ -571,17 +1067,19 @@ public class TBXParser
     /** {@inheritDoc} */
     public void notationDecl(String name, String publicId, String systemId) throws SAXException
     {
-        LOGGER.entering("TBXParser", "notationDecl",
-                String.format("name='%s' publicId='%s' systemId='%s'",
-                name, publicId, systemId));
+        if (tracing)
+            LOGGER.entering("TBXParser", "notationDecl",
+                    String.format("name='%s' publicId='%s' systemId='%s'",
+                    name, publicId, systemId));
     }
     
     /** {@inheritDoc} */
     public void unparsedEntityDecl(String name, String publicId, String systemId, String notationName) throws SAXException
     {
-        LOGGER.entering("TBXParser", "unparsedEntityDecl",
-                String.format("name='%s' publicId='%s' systemId='%s' notationName='%s'",
-                            name, publicId, systemId, notationName));
+        if (tracing)
+            LOGGER.entering("TBXParser", "unparsedEntityDecl",
+                    String.format("name='%s' publicId='%s' systemId='%s' notationName='%s'",
+                                name, publicId, systemId, notationName));
     }
     
     /*********************************/
@@ -590,8 +1088,9 @@ public class TBXParser
     /** {@inheritDoc} */
     public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException
     {   //NOTDONE: need to resolve the entity
-        LOGGER.entering("TBXParser", "resolvedEntity",
-                String.format("publicId='%s' systemId='%s'", publicId, systemId));
+        if (tracing)
+            LOGGER.entering("TBXParser", "resolvedEntity",
+                    String.format("publicId='%s' systemId='%s'", publicId, systemId));
         return resolver.resolveEntity(publicId, systemId);
     }
         
@@ -602,24 +1101,21 @@ public class TBXParser
     public void warning(SAXParseException exception) throws SAXException
     {
         LOGGER.log(Level.SEVERE, "TBXParser SAX Warning", exception);
-        document.addParseException(
-                new TBXException(TBXException.Priority.XMLVALID_MINOR, exception));
+        report(TBXException.Priority.XMLVALID_MINOR, exception);
     }
     
     /** {@inheritDoc} */
     public void error(SAXParseException exception) throws SAXException
     {
         LOGGER.log(Level.SEVERE, "TBXParser SAX Error", exception);
-        document.addParseException(
-                new TBXException(TBXException.Priority.XMLVALID_MAJOR, exception));
+        report(TBXException.Priority.XMLVALID_MAJOR, exception);
     }
     
     /** {@inheritDoc} */
     public void fatalError(SAXParseException exception) throws SAXException
     {
         LOGGER.log(Level.SEVERE, "TBXParser SAX Fatal", exception);
-        document.addParseException(
-                new TBXException(TBXException.Priority.WELLFORMED, exception));
+        report(TBXException.Priority.WELLFORMED, exception);
     }
 
     /**
@@ -0,0 +1,1440 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.dom.tbx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+
+/**
+ * This is a compact read only copy of the termEntry elements of a TBX
+ * document. It is used instead of keeping the termEntry DOM elements when
+ * the {@link org.ttt.salt.Configuration} asks for a compact tree.
+ * <p>
+ * Every node is an int id in document order and the tree is held as
+ * parallel int arrays (name, parent, next sibling), so the first child of a
+ * node is the node after it. Element and attribute names, and attribute
+ * values, which are mostly picklist values, are stored once in a symbol
+ * table. All text shares one arena that uses a byte a char when the text
+ * allows it. The root, node {@link #ROOT}, stands for the body element and
+ * every termEntry is one of its children.</p>
+ * <p>
+ * {@link #getElement} returns a light weight read only
+ * {@link org.w3c.dom.Element} view of a node, so code written against the
+ * DOM, such as {@link org.ttt.salt.XCSDocument#validateTermEntry}, may run
+ * against the tree. Views are made on demand and hold nothing but the node
+ * id. The tree is immutable once built and may be shared between threads.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ * @license Licensed under the Apache License, Version 2.0.
+ */
+public final class TBXTree
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** The node that stands for the body element. */
+    public static final int ROOT = 0;
+
+    /** Node id used for a missing parent, child, or sibling. */
+    public static final int NONE = -1;
+
+    /** Name symbol of text nodes. */
+    private static final int TEXT = -1;
+
+    /** Number of location values kept for each element. */
+    private static final int LOCATION_SIZE = 4;
+
+    /** Largest char that is kept in one byte of the arena. */
+    private static final int LATIN1_MAX = 0xFF;
+
+    /** Element and attribute names, and attribute values. */
+    private final String[] symbols;
+
+    /** Number of nodes. */
+    private final int size;
+
+    /** Name symbol of each node, {@link #TEXT} for text nodes. */
+    private final int[] name;
+
+    /** Parent of each node. */
+    private final int[] parent;
+
+    /** Next sibling of each node. */
+    private final int[] nextSibling;
+
+    /** Element: index in the element tables. Text: index in the text table. */
+    private final int[] data;
+
+    /** Index of the first attribute of each element, and one past the last. */
+    private final int[] elemAttr;
+
+    /** Start line, start column, end line, end column of each element. */
+    private final int[] elemLocation;
+
+    /** Name symbol of each attribute. */
+    private final int[] attrName;
+
+    /** Value symbol of each attribute. */
+    private final int[] attrValue;
+
+    /** Arena offset of each text, and one past the end of the last. */
+    private final int[] textStart;
+
+    /** All text, one byte a char, or null if some char is not ISO-8859-1. */
+    private final byte[] latin;
+
+    /** All text, or null if it is held in {@link #latin}. */
+    private final char[] wide;
+
+    /** Open addressing table of termEntry nodes by their id, NONE if empty. */
+    private final int[] termIndex;
+
+    /**
+     * Builds a {@link TBXTree} from DOM termEntry elements as the parser
+     * finishes with them. Nodes are added in document order, so the first
+     * child of a node is always the node that follows it.
+     */
+    public static final class Builder
+    {
+        /** Symbol ids by name or value. */
+        private final Map<String, Integer> symbolIds = new java.util.HashMap<String, Integer>();
+
+        /** Symbols in id order. */
+        private final List<String> symbols = new java.util.ArrayList<String>();
+
+        /** Number of nodes. */
+        private int size;
+
+        /** Number of elements. */
+        private int elems;
+
+        /** Number of attributes. */
+        private int attrs;
+
+        /** Number of text nodes. */
+        private int texts;
+
+        /** Number of chars in the arena. */
+        private int chars;
+
+        //CHECKSTYLE: MagicNumber OFF
+        /** See {@link TBXTree#name}. */
+        private int[] name = new int[64];
+
+        /** See {@link TBXTree#parent}. */
+        private int[] parent = new int[64];
+
+        /** Last child of each node, only needed while building. */
+        private int[] lastChild = new int[64];
+
+        /** See {@link TBXTree#nextSibling}. */
+        private int[] nextSibling = new int[64];
+
+        /** See {@link TBXTree#data}. */
+        private int[] data = new int[64];
+
+        /** See {@link TBXTree#elemAttr}. */
+        private int[] elemAttr = new int[64];
+
+        /** See {@link TBXTree#elemLocation}. */
+        private int[] elemLocation = new int[64 * LOCATION_SIZE];
+
+        /** See {@link TBXTree#attrName}. */
+        private int[] attrName = new int[64];
+
+        /** See {@link TBXTree#attrValue}. */
+        private int[] attrValue = new int[64];
+
+        /** See {@link TBXTree#textStart}. */
+        private int[] textStart = new int[64];
+
+        /** See {@link TBXTree#wide}. */
+        private char[] arena = new char[1024];
+        //CHECKSTYLE: MagicNumber ON
+
+        /**
+         * Create a builder with an empty body.
+         */
+        public Builder()
+        {
+            addElement("body", NONE);
+        }
+
+        /**
+         * Copy a termEntry, and everything in it, to the end of the body.
+         *
+         * @param entry The termEntry element.
+         */
+        public void add(Element entry)
+        {
+            copy(entry, ROOT);
+        }
+
+        /**
+         * @return The number of nodes added so far.
+         */
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * Finish the tree. The builder must not be used afterwards.
+         *
+         * @return The compact tree.
+         */
+        public TBXTree build()
+        {
+            return new TBXTree(this);
+        }
+
+        /**
+         * @param elem The element to copy.
+         * @param p The node the copy is added to.
+         */
+        private void copy(Element elem, int p)
+        {
+            int node = addElement(elem.getTagName(), p);
+            if (elem instanceof TBXElement)
+            {
+                TBXElement tbx = (TBXElement) elem;
+                int loc = data[node] * LOCATION_SIZE;
+                elemLocation[loc] = tbx.getLineStart();
+                elemLocation[loc + 1] = tbx.getColumnStart();
+                elemLocation[loc + 2] = tbx.getLineEnd();
+                elemLocation[loc + 3] = tbx.getColumnEnd();
+            }
+            NamedNodeMap atts = elem.getAttributes();
+            for (int i = 0; i < atts.getLength(); i++)
+            {
+                Node att = atts.item(i);
+                if (attrs == attrName.length)
+                {
+                    attrName = Arrays.copyOf(attrName, attrs * 2);
+                    attrValue = Arrays.copyOf(attrValue, attrs * 2);
+                }
+                attrName[attrs] = symbol(att.getNodeName());
+                attrValue[attrs] = symbol(att.getNodeValue());
+                attrs++;
+            }
+            for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling())
+            {
+                if (child.getNodeType() == Node.ELEMENT_NODE)
+                    copy((Element) child, node);
+                else if (child.getNodeType() == Node.TEXT_NODE
+                        || child.getNodeType() == Node.CDATA_SECTION_NODE)
+                    addText(child.getNodeValue(), node);
+            }
+        }
+
+        /**
+         * @param tag The element tag name.
+         * @param p The parent node.
+         * @return The new node.
+         */
+        private int addElement(String tag, int p)
+        {
+            if (elems + 1 >= elemAttr.length)
+            {
+                elemAttr = Arrays.copyOf(elemAttr, elemAttr.length * 2);
+                elemLocation = Arrays.copyOf(elemLocation, elemAttr.length * LOCATION_SIZE);
+            }
+            int node = addNode(symbol(tag), p);
+            data[node] = elems;
+            elemAttr[elems] = attrs;
+            elems++;
+            return node;
+        }
+
+        /**
+         * @param str The text.
+         * @param p The parent node.
+         */
+        private void addText(String str, int p)
+        {
+            if (texts + 1 >= textStart.length)
+                textStart = Arrays.copyOf(textStart, textStart.length * 2);
+            int node = addNode(TEXT, p);
+            data[node] = texts;
+            textStart[texts++] = chars;
+            if (chars + str.length() > arena.length)
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, chars + str.length()));
+            str.getChars(0, str.length(), arena, chars);
+            chars += str.length();
+        }
+
+        /**
+         * @param sym The name symbol of the node.
+         * @param p The parent node.
+         * @return The new node.
+         */
+        private int addNode(int sym, int p)
+        {
+            if (size == name.length)
+            {
+                int cap = size * 2;
+                name = Arrays.copyOf(name, cap);
+                parent = Arrays.copyOf(parent, cap);
+                lastChild = Arrays.copyOf(lastChild, cap);
+                nextSibling = Arrays.copyOf(nextSibling, cap);
+                data = Arrays.copyOf(data, cap);
+            }
+            int node = size++;
+            name[node] = sym;
+            parent[node] = p;
+            lastChild[node] = NONE;
+            nextSibling[node] = NONE;
+            if (p != NONE)
+            {
+                if (lastChild[p] != NONE)
+                    nextSibling[lastChild[p]] = node;
+                lastChild[p] = node;
+            }
+            return node;
+        }
+
+        /**
+         * @param str The name or value.
+         * @return The symbol id of the string.
+         */
+        private int symbol(String str)
+        {
+            Integer ret = symbolIds.get(str);
+            if (ret == null)
+            {
+                ret = symbols.size();
+                symbols.add(str);
+                symbolIds.put(str, ret);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * @param b The finished builder.
+     */
+    private TBXTree(Builder b)
+    {
+        symbols = b.symbols.toArray(new String[b.symbols.size()]);
+        size = b.size;
+        name = Arrays.copyOf(b.name, size);
+        parent = Arrays.copyOf(b.parent, size);
+        nextSibling = Arrays.copyOf(b.nextSibling, size);
+        data = Arrays.copyOf(b.data, size);
+        elemAttr = Arrays.copyOf(b.elemAttr, b.elems + 1);
+        elemAttr[b.elems] = b.attrs;
+        elemLocation = Arrays.copyOf(b.elemLocation, b.elems * LOCATION_SIZE);
+        attrName = Arrays.copyOf(b.attrName, b.attrs);
+        attrValue = Arrays.copyOf(b.attrValue, b.attrs);
+        textStart = Arrays.copyOf(b.textStart, b.texts + 1);
+        textStart[b.texts] = b.chars;
+        boolean narrow = true;
+        for (int i = 0; i < b.chars && narrow; i++)
+            narrow = b.arena[i] <= LATIN1_MAX;
+        if (narrow)
+        {
+            latin = new byte[b.chars];
+            for (int i = 0; i < b.chars; i++)
+                latin[i] = (byte) b.arena[i];
+            wide = null;
+        }
+        else
+        {
+            latin = null;
+            wide = Arrays.copyOf(b.arena, b.chars);
+        }
+        termIndex = buildTermIndex();
+    }
+
+    /**
+     * @return Number of nodes in the tree.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param node A node id.
+     * @return True if the node is a text node.
+     */
+    public boolean isText(int node)
+    {
+        return name[node] == TEXT;
+    }
+
+    /**
+     * @param node An element node id.
+     * @return The element tag name.
+     */
+    public String getName(int node)
+    {
+        return name[node] == TEXT ? "#text" : symbols[name[node]];
+    }
+
+    /**
+     * @param node A node id.
+     * @return The parent node, {@link #NONE} for the root.
+     */
+    public int getParent(int node)
+    {
+        return parent[node];
+    }
+
+    /**
+     * @param node A node id.
+     * @return The first child node, {@link #NONE} if there are no children.
+     */
+    public int getFirstChild(int node)
+    {
+        return node + 1 < size && parent[node + 1] == node ? node + 1 : NONE;
+    }
+
+    /**
+     * @param node A node id.
+     * @return The next sibling node, {@link #NONE} for the last child.
+     */
+    public int getNextSibling(int node)
+    {
+        return nextSibling[node];
+    }
+
+    /**
+     * @param node A text node id.
+     * @return The text.
+     */
+    public String getText(int node)
+    {
+        int start = textStart[data[node]];
+        int length = textStart[data[node] + 1] - start;
+        if (latin != null)
+            return new String(latin, start, length, StandardCharsets.ISO_8859_1);
+        return new String(wide, start, length);
+    }
+
+    /**
+     * @param node A text node id.
+     * @return Number of chars in the text.
+     */
+    private int getTextLength(int node)
+    {
+        return textStart[data[node] + 1] - textStart[data[node]];
+    }
+
+    /**
+     * @param node A node id.
+     * @return All the text in the node and its descendants.
+     */
+    public String getTextContent(int node)
+    {
+        if (name[node] == TEXT)
+            return getText(node);
+        StringBuilder buf = new StringBuilder();
+        appendText(node, buf);
+        return buf.toString();
+    }
+
+    /**
+     * @param node An element node id.
+     * @param attr The attribute name.
+     * @return The attribute index or -1 if the element does not have it.
+     */
+    private int findAttribute(int node, String attr)
+    {
+        if (name[node] != TEXT)
+        {
+            int end = elemAttr[data[node] + 1];
+            for (int i = elemAttr[data[node]]; i < end; i++)
+            {
+                if (symbols[attrName[i]].equals(attr))
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param node An element node id.
+     * @return Number of attributes on the element.
+     */
+    private int getAttributeCount(int node)
+    {
+        return name[node] == TEXT ? 0 : elemAttr[data[node] + 1] - elemAttr[data[node]];
+    }
+
+    /**
+     * @param node An element node id.
+     * @param attr The attribute name.
+     * @return True if the element has the attribute.
+     */
+    public boolean hasAttribute(int node, String attr)
+    {
+        return findAttribute(node, attr) >= 0;
+    }
+
+    /**
+     * @param node An element node id.
+     * @param attr The attribute name.
+     * @return The attribute value or an empty string if it is not present.
+     */
+    public String getAttribute(int node, String attr)
+    {
+        int i = findAttribute(node, attr);
+        return i < 0 ? "" : symbols[attrValue[i]];
+    }
+
+    /**
+     * @param node A node id, text nodes give the location of their parent.
+     * @return The location of the node in the TBX source.
+     */
+    public String getLocationString(int node)
+    {
+        int loc = locationIndex(node);
+        return String.format("Start %d:%d, End %d:%d", elemLocation[loc], elemLocation[loc + 1],
+            elemLocation[loc + 2], elemLocation[loc + 3]);
+    }
+
+    /**
+     * @param node A node id, text nodes give the line of their parent.
+     * @return Line in the TBX source the element starts.
+     */
+    public int getLineStart(int node)
+    {
+        return elemLocation[locationIndex(node)];
+    }
+
+    /**
+     * @param node A node id, text nodes give the column of their parent.
+     * @return Column in the TBX source the element starts.
+     */
+    public int getColumnStart(int node)
+    {
+        return elemLocation[locationIndex(node) + 1];
+    }
+
+    /**
+     * @param node A node id, text nodes give the location of their parent.
+     * @return Index of the element's start line in elemLocation.
+     */
+    private int locationIndex(int node)
+    {
+        if (name[node] == TEXT)
+            node = parent[node];
+        return data[node] * LOCATION_SIZE;
+    }
+
+    /**
+     * Find a termEntry by its id attribute.
+     *
+     * @param id The termEntry id.
+     * @return The termEntry node or {@link #NONE} if there is none.
+     */
+    public int findTermEntry(String id)
+    {
+        if (termIndex.length == 0)
+            return NONE;
+        int mask = termIndex.length - 1;
+        for (int slot = id.hashCode() & mask; termIndex[slot] != NONE; slot = (slot + 1) & mask)
+        {
+            if (getAttribute(termIndex[slot], "id").equals(id))
+                return termIndex[slot];
+        }
+        return NONE;
+    }
+
+    /**
+     * Get a read only DOM view of a node. The view only holds the node id,
+     * so views may be made freely and two views of one node are equal.
+     *
+     * @param node A node id.
+     * @return An {@link org.w3c.dom.Element} for element nodes and a
+     *  {@link org.w3c.dom.Text} for text nodes.
+     */
+    public Node getNode(int node)
+    {
+        if (node == NONE)
+            return null;
+        return name[node] == TEXT ? new TextView(node) : new ElementView(node);
+    }
+
+    /**
+     * Get a read only DOM view of an element node.
+     *
+     * @param node An element node id.
+     * @return The element view.
+     * @see #getNode
+     */
+    public LocatedElement getElement(int node)
+    {
+        if (name[node] == TEXT)
+            throw new IllegalArgumentException("Node is not an element: " + node);
+        return new ElementView(node);
+    }
+
+    /**
+     * @param node A node id.
+     * @param buf Where the text is added.
+     */
+    private void appendText(int node, StringBuilder buf)
+    {
+        for (int child = getFirstChild(node); child != NONE; child = nextSibling[child])
+        {
+            if (name[child] == TEXT)
+                buf.append(getText(child));
+            else
+                appendText(child, buf);
+        }
+    }
+
+    /**
+     * @return The termEntry lookup table.
+     */
+    private int[] buildTermIndex()
+    {
+        int count = 0;
+        for (int node = getFirstChild(ROOT); node != NONE; node = nextSibling[node])
+        {
+            if (hasAttribute(node, "id"))
+                count++;
+        }
+        if (count == 0)
+            return new int[0];
+        //CHECKSTYLE: MagicNumber OFF
+        int[] ret = new int[Integer.highestOneBit(count) * 4];
+        //CHECKSTYLE: MagicNumber ON
+        Arrays.fill(ret, NONE);
+        int mask = ret.length - 1;
+        for (int node = getFirstChild(ROOT); node != NONE; node = nextSibling[node])
+        {
+            if (hasAttribute(node, "id"))
+            {
+                int slot = getAttribute(node, "id").hashCode() & mask;
+                while (ret[slot] != NONE)
+                    slot = (slot + 1) & mask;
+                ret[slot] = node;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return Exception for changes to the read only tree.
+     */
+    private static DOMException readOnly()
+    {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "TBXTree is read only.");
+    }
+
+    /**
+     * @return Exception for DOM features the tree does not keep.
+     */
+    private static DOMException unsupported()
+    {
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR, "Not supported by TBXTree.");
+    }
+
+    /**
+     * Read only DOM view of one node.
+     */
+    private abstract class NodeView implements Node
+    {
+        /** The node id. */
+        protected final int node;
+
+        /**
+         * @param n The node id.
+         */
+        NodeView(int n)
+        {
+            node = n;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj)
+        {
+            return obj instanceof NodeView && ((NodeView) obj).node == node
+                    && ((NodeView) obj).tree() == TBXTree.this;
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode()
+        {
+            return node;
+        }
+
+        /** {@inheritDoc} */
+        public String toString()
+        {
+            return "[" + getNodeName() + ": " + getNodeValue() + "]";
+        }
+
+        /**
+         * @return The tree this node is in.
+         */
+        private TBXTree tree()
+        {
+            return TBXTree.this;
+        }
+
+        /** {@inheritDoc} */
+        public String getNodeName()
+        {
+            return getName(node);
+        }
+
+        /** {@inheritDoc} */
+        public void setNodeValue(String value)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Node getParentNode()
+        {
+            return TBXTree.this.getNode(parent[node]);
+        }
+
+        /** {@inheritDoc} */
+        public NodeList getChildNodes()
+        {
+            final List<Node> ret = new java.util.ArrayList<Node>();
+            for (int child = TBXTree.this.getFirstChild(node); child != NONE; child = nextSibling[child])
+                ret.add(TBXTree.this.getNode(child));
+            return new NodeList()
+                {
+                    public Node item(int index)
+                    {
+                        return index < ret.size() ? ret.get(index) : null;
+                    }
+
+                    public int getLength()
+                    {
+                        return ret.size();
+                    }
+                };
+        }
+
+        /** {@inheritDoc} */
+        public Node getFirstChild()
+        {
+            return TBXTree.this.getNode(TBXTree.this.getFirstChild(node));
+        }
+
+        /** {@inheritDoc} */
+        public Node getLastChild()
+        {
+            int last = NONE;
+            for (int child = TBXTree.this.getFirstChild(node); child != NONE; child = nextSibling[child])
+                last = child;
+            return TBXTree.this.getNode(last);
+        }
+
+        /** {@inheritDoc} */
+        public Node getPreviousSibling()
+        {
+            if (parent[node] == NONE)
+                return null;
+            int prev = NONE;
+            for (int child = TBXTree.this.getFirstChild(parent[node]); child != node; child = nextSibling[child])
+                prev = child;
+            return TBXTree.this.getNode(prev);
+        }
+
+        /** {@inheritDoc} */
+        public Node getNextSibling()
+        {
+            return TBXTree.this.getNode(nextSibling[node]);
+        }
+
+        /** {@inheritDoc} */
+        public NamedNodeMap getAttributes()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public Document getOwnerDocument()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public Node insertBefore(Node newChild, Node refChild)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Node replaceChild(Node newChild, Node oldChild)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Node removeChild(Node oldChild)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Node appendChild(Node newChild)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasChildNodes()
+        {
+            return TBXTree.this.getFirstChild(node) != NONE;
+        }
+
+        /** {@inheritDoc} */
+        public Node cloneNode(boolean deep)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public void normalize()
+        {
+        }
+
+        /** {@inheritDoc} */
+        public boolean isSupported(String feature, String version)
+        {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        public String getNamespaceURI()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public String getPrefix()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public void setPrefix(String prefix)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public String getLocalName()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasAttributes()
+        {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        public String getBaseURI()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public short compareDocumentPosition(Node other)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public String getTextContent()
+        {
+            return TBXTree.this.getTextContent(node);
+        }
+
+        /** {@inheritDoc} */
+        public void setTextContent(String textContent)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public boolean isSameNode(Node other)
+        {
+            return equals(other);
+        }
+
+        /** {@inheritDoc} */
+        public String lookupPrefix(String namespaceURI)
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public boolean isDefaultNamespace(String namespaceURI)
+        {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        public String lookupNamespaceURI(String prefix)
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public boolean isEqualNode(Node arg)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public Object getFeature(String feature, String version)
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public Object setUserData(String key, Object value, UserDataHandler handler)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public Object getUserData(String key)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Read only DOM view of an element node.
+     */
+    private final class ElementView extends NodeView implements LocatedElement
+    {
+        /**
+         * @param n The node id.
+         */
+        ElementView(int n)
+        {
+            super(n);
+        }
+
+        /** {@inheritDoc} */
+        public String getLocationString()
+        {
+            return TBXTree.this.getLocationString(node);
+        }
+
+        /** {@inheritDoc} */
+        public int getLineStart()
+        {
+            return TBXTree.this.getLineStart(node);
+        }
+
+        /** {@inheritDoc} */
+        public int getColumnStart()
+        {
+            return TBXTree.this.getColumnStart(node);
+        }
+
+        /** {@inheritDoc} */
+        public String getNodeValue()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public short getNodeType()
+        {
+            return Node.ELEMENT_NODE;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasAttributes()
+        {
+            return getAttributeCount(node) > 0;
+        }
+
+        /** {@inheritDoc} */
+        public NamedNodeMap getAttributes()
+        {
+            return new NamedNodeMap()
+                {
+                    public Node getNamedItem(String attr)
+                    {
+                        return getAttributeNode(attr);
+                    }
+
+                    public Node setNamedItem(Node arg)
+                    {
+                        throw readOnly();
+                    }
+
+                    public Node removeNamedItem(String attr)
+                    {
+                        throw readOnly();
+                    }
+
+                    public Node item(int index)
+                    {
+                        if (index < 0 || index >= getAttributeCount(node))
+                            return null;
+                        return new AttrView(node, elemAttr[data[node]] + index);
+                    }
+
+                    public int getLength()
+                    {
+                        return getAttributeCount(node);
+                    }
+
+                    public Node getNamedItemNS(String namespaceURI, String localName)
+                    {
+                        throw unsupported();
+                    }
+
+                    public Node setNamedItemNS(Node arg)
+                    {
+                        throw readOnly();
+                    }
+
+                    public Node removeNamedItemNS(String namespaceURI, String localName)
+                    {
+                        throw readOnly();
+                    }
+                };
+        }
+
+        /** {@inheritDoc} */
+        public String getTagName()
+        {
+            return getName(node);
+        }
+
+        /** {@inheritDoc} */
+        public String getAttribute(String attr)
+        {
+            return TBXTree.this.getAttribute(node, attr);
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasAttribute(String attr)
+        {
+            return TBXTree.this.hasAttribute(node, attr);
+        }
+
+        /** {@inheritDoc} */
+        public NodeList getElementsByTagName(String tag)
+        {
+            final List<Node> ret = new java.util.ArrayList<Node>();
+            collect(node, tag, ret);
+            return new NodeList()
+                {
+                    public Node item(int index)
+                    {
+                        return index < ret.size() ? ret.get(index) : null;
+                    }
+
+                    public int getLength()
+                    {
+                        return ret.size();
+                    }
+                };
+        }
+
+        /**
+         * @param n The node to search under.
+         * @param tag The tag name or "*" for all elements.
+         * @param ret Where the matching elements are added in document order.
+         */
+        private void collect(int n, String tag, List<Node> ret)
+        {
+            for (int child = TBXTree.this.getFirstChild(n); child != NONE; child = nextSibling[child])
+            {
+                if (name[child] != TEXT)
+                {
+                    if (tag.equals("*") || symbols[name[child]].equals(tag))
+                        ret.add(new ElementView(child));
+                    collect(child, tag, ret);
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void setAttribute(String attr, String value)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public void removeAttribute(String attr)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Attr getAttributeNode(String attr)
+        {
+            int i = findAttribute(node, attr);
+            return i < 0 ? null : new AttrView(node, i);
+        }
+
+        /** {@inheritDoc} */
+        public Attr setAttributeNode(Attr attr)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Attr removeAttributeNode(Attr attr)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public String getAttributeNS(String namespaceURI, String localName)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public void setAttributeNS(String namespaceURI, String qualifiedName, String value)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public void removeAttributeNS(String namespaceURI, String localName)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Attr getAttributeNodeNS(String namespaceURI, String localName)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public Attr setAttributeNodeNS(Attr attr)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public NodeList getElementsByTagNameNS(String namespaceURI, String localName)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasAttributeNS(String namespaceURI, String localName)
+        {
+            throw unsupported();
+        }
+
+        /** {@inheritDoc} */
+        public TypeInfo getSchemaTypeInfo()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public void setIdAttribute(String attr, boolean isId)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public void setIdAttributeNS(String namespaceURI, String localName, boolean isId)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public void setIdAttributeNode(Attr idAttr, boolean isId)
+        {
+            throw readOnly();
+        }
+    }
+
+    /**
+     * Read only DOM view of an attribute of an element node. Attributes are
+     * not nodes of the tree so the view has no parent, children, or
+     * siblings.
+     */
+    private final class AttrView extends NodeView implements Attr
+    {
+        /** The attribute index. */
+        private final int attr;
+
+        /**
+         * @param n The node id of the owner element.
+         * @param a The attribute index.
+         */
+        AttrView(int n, int a)
+        {
+            super(n);
+            attr = a;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj)
+        {
+            return obj instanceof AttrView && ((AttrView) obj).attr == attr && super.equals(obj);
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode()
+        {
+            return attr;
+        }
+
+        /** {@inheritDoc} */
+        public String getNodeName()
+        {
+            return symbols[attrName[attr]];
+        }
+
+        /** {@inheritDoc} */
+        public String getNodeValue()
+        {
+            return symbols[attrValue[attr]];
+        }
+
+        /** {@inheritDoc} */
+        public short getNodeType()
+        {
+            return Node.ATTRIBUTE_NODE;
+        }
+
+        /** {@inheritDoc} */
+        public Node getParentNode()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public NodeList getChildNodes()
+        {
+            return new NodeList()
+                {
+                    public Node item(int index)
+                    {
+                        return null;
+                    }
+
+                    public int getLength()
+                    {
+                        return 0;
+                    }
+                };
+        }
+
+        /** {@inheritDoc} */
+        public Node getFirstChild()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public Node getLastChild()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public Node getPreviousSibling()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public Node getNextSibling()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasChildNodes()
+        {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        public String getTextContent()
+        {
+            return getNodeValue();
+        }
+
+        /** {@inheritDoc} */
+        public String getName()
+        {
+            return getNodeName();
+        }
+
+        /** {@inheritDoc} */
+        public boolean getSpecified()
+        {
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        public String getValue()
+        {
+            return getNodeValue();
+        }
+
+        /** {@inheritDoc} */
+        public void setValue(String value)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Element getOwnerElement()
+        {
+            return new ElementView(node);
+        }
+
+        /** {@inheritDoc} */
+        public TypeInfo getSchemaTypeInfo()
+        {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public boolean isId()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Read only DOM view of a text node.
+     */
+    private final class TextView extends NodeView implements Text
+    {
+        /**
+         * @param n The node id.
+         */
+        TextView(int n)
+        {
+            super(n);
+        }
+
+        /** {@inheritDoc} */
+        public String getNodeValue()
+        {
+            return getText(node);
+        }
+
+        /** {@inheritDoc} */
+        public short getNodeType()
+        {
+            return Node.TEXT_NODE;
+        }
+
+        /** {@inheritDoc} */
+        public String getData()
+        {
+            return getText(node);
+        }
+
+        /** {@inheritDoc} */
+        public void setData(String value)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public int getLength()
+        {
+            return getTextLength(node);
+        }
+
+        /** {@inheritDoc} */
+        public String substringData(int offset, int count)
+        {
+            return getText(node).substring(offset, Math.min(offset + count, getTextLength(node)));
+        }
+
+        /** {@inheritDoc} */
+        public void appendData(String arg)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public void insertData(int offset, String arg)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public void deleteData(int offset, int count)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public void replaceData(int offset, int count, String arg)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public Text splitText(int offset)
+        {
+            throw readOnly();
+        }
+
+        /** {@inheritDoc} */
+        public boolean isElementContentWhitespace()
+        {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        public String getWholeText()
+        {
+            return getText(node);
+        }
+
+        /** {@inheritDoc} */
+        public Text replaceWholeText(String content)
+        {
+            throw readOnly();
+        }
+    }
+}
@@ -42,8 +42,8 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.SAXNotRecognizedException;
 import org.xml.sax.SAXNotSupportedException;
-import org.w3c.dom.Text;
 import org.w3c.dom.DOMException;
+import org.ttt.salt.DTDGrammarPool;
 import org.ttt.salt.XCSDocument;
 import org.ttt.salt.TBXResolver;
 
@@ -89,6 +89,9 @@ public class XCSParser
 
     /** Logger for this package. */
     private static final Logger LOGGER = Logger.getLogger("org.ttt.salt.dom.xcs");
+
+    /** Whitespace runs replaced by a single space when whitespace is collapsed. */
+    private static final java.util.regex.Pattern WHITESPACE = java.util.regex.Pattern.compile("\\s+");
         
     /** The {@link org.xml.sax.XMLReader} this parser works through. */
     private XMLReader reader;
@@ -113,6 +116,15 @@ public class XCSParser
     
     /** Indicates that whitespace is not significant (xml:space="default"). */
     private boolean collapseWhitespace;
+
+    /**
+     * Trace each SAX event. This is fixed when a parse starts so the level
+     * is not checked, and no trace arguments are built, for every event.
+     */
+    private boolean tracing;
+
+    /** Character data collected since the last markup, see {@link #flushText}. */
+    private final StringBuilder text = new StringBuilder();
     
     /**
      * Create a new parser for XCS document parsing.
@@ -126,7 +138,7 @@ public class XCSParser
         resolver = r;
         try
         {
-            reader = new org.apache.xerces.parsers.SAXParser();
+            reader = DTDGrammarPool.createParser(true);
             reader.setFeature("http://xml.org/sax/features/namespaces", true);
             reader.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
             reader.setFeature("http://xml.org/sax/features/validation", true);
@@ -179,6 +191,7 @@ public class XCSParser
                 throw new IllegalStateException("XCSParser is already parsing a document.");
             document = doc;
         }
+        tracing = LOGGER.isLoggable(Level.FINER);
         reader.parse(src);
         document = null;
     }
@@ -189,31 +202,36 @@ public class XCSParser
     /** {@inheritDoc} */
     public void setDocumentLocator(Locator loc)
     {
-        LOGGER.entering("XCSParser", "setDocumentLocator",
-                String.format("Line=%d Col=%d", loc.getLineNumber(),
-                loc.getColumnNumber()));
+        if (tracing)
+            LOGGER.entering("XCSParser", "setDocumentLocator",
+                    String.format("Line=%d Col=%d", loc.getLineNumber(),
+                    loc.getColumnNumber()));
         locator = loc;
     }
     
     /** {@inheritDoc} */
     public void startDocument() throws SAXException
     {
-        LOGGER.entering("XCSParser", "startDocument");
+        if (tracing)
+            LOGGER.entering("XCSParser", "startDocument");
+        text.setLength(0);
         assert stack.isEmpty() : "XCSParser stack is not empty.";
     }
     
     /** {@inheritDoc} */
     public void endDocument() throws SAXException
     {
-        LOGGER.entering("XCSParser", "endDocument");
+        if (tracing)
+            LOGGER.entering("XCSParser", "endDocument");
         assert stack.isEmpty() : "XCSParser stack is not empty.";
     }
     
     /** {@inheritDoc} */
     public void startPrefixMapping(String prefix, String uri) throws SAXException
     {
-        LOGGER.entering("XCSParser", "startPrefixMapping",
-                String.format("prefix='%s' uri='%s'", prefix, uri));
+        if (tracing)
+            LOGGER.entering("XCSParser", "startPrefixMapping",
+                    String.format("prefix='%s' uri='%s'", prefix, uri));
         try
         {
             namespace.put(prefix, new URI(uri));
@@ -227,22 +245,26 @@ public class XCSParser
     /** {@inheritDoc} */
     public void endPrefixMapping(String prefix) throws SAXException
     {
-        LOGGER.entering("XCSParser", "endPrefixMapping",
-                String.format("prefix='%s'", prefix));
+        if (tracing)
+            LOGGER.entering("XCSParser", "endPrefixMapping",
+                    String.format("prefix='%s'", prefix));
     }
     
     /** {@inheritDoc} */
     public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException
     {
-        LOGGER.entering("XCSParser", "startElement",
-                String.format("%d: uri='%s' local='%s' qName='%s'",
-                locator.getLineNumber(), uri, localName, qName));
+        if (tracing)
+            LOGGER.entering("XCSParser", "startElement",
+                    String.format("%d: uri='%s' local='%s' qName='%s'",
+                    locator.getLineNumber(), uri, localName, qName));
+        flushText();
         stack.push(current);
         current = document.createXCSElement(localName, locator);
         for (int i = 0; i < atts.getLength(); i++)
         {
-            LOGGER.finer(String.format("Attribute: qname='%s' local='%s' type='%s' uri='%s' value='%s'",
-                    atts.getQName(i), atts.getLocalName(i), atts.getType(i), atts.getURI(i), atts.getValue(i)));
+            if (tracing)
+                LOGGER.finer(String.format("Attribute: qname='%s' local='%s' type='%s' uri='%s' value='%s'",
+                        atts.getQName(i), atts.getLocalName(i), atts.getType(i), atts.getURI(i), atts.getValue(i)));
             try
             {
                 current.setAttribute(atts.getQName(i), atts.getValue(i));
@@ -259,9 +281,11 @@ public class XCSParser
     /** {@inheritDoc} */
     public void endElement(String uri, String localName, String qName) throws SAXException
     {
-        LOGGER.entering("XCSParser", "endElement",
-                String.format("%d: uri='%s' local='%s' qName='%s'",
-                locator.getLineNumber(), uri, localName, qName));
+        if (tracing)
+            LOGGER.entering("XCSParser", "endElement",
+                    String.format("%d: uri='%s' local='%s' qName='%s'",
+                    locator.getLineNumber(), uri, localName, qName));
+        flushText();
         current.endElement(locator);
         XCSElement child = current;
         current = stack.pop();
@@ -272,39 +296,53 @@ public class XCSParser
     /** {@inheritDoc} */
     public void characters(char[] ch, int start, int length) throws SAXException
     {
-        LOGGER.entering("XCSParser", "characters",
-                String.format("'%s'", new String(ch, start, length)));
-        String data = new String(ch, start, length);
-        if (collapseWhitespace)
-            data = data.replaceAll("\\s+", " ");
-        Text text = document.createTextNode(data);
-        current.appendChild(text);
+        if (tracing)
+            LOGGER.entering("XCSParser", "characters",
+                    String.format("'%s'", new String(ch, start, length)));
+        text.append(ch, start, length);
     }
     
     /** {@inheritDoc} */
     public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
     {
-        LOGGER.entering("XCSParser", "ignorableWhitespace",
-                String.format("'%s'", new String(ch, start, length)));
+        if (tracing)
+            LOGGER.entering("XCSParser", "ignorableWhitespace",
+                    String.format("'%s'", new String(ch, start, length)));
         if (!collapseWhitespace)
-        {
-            String data = new String(ch, start, length);
-            Text text = document.createTextNode(data);
-            current.appendChild(text);
-        }
+            text.append(ch, start, length);
+    }
+    
+    /**
+     * Add the character data collected since the last start or end tag to
+     * the current element as one text node. SAX may deliver a single run of
+     * text in many pieces, so this is done at each tag instead of for each
+     * piece.
+     */
+    private void flushText()
+    {
+        if (text.length() == 0)
+            return;
+        String data = text.toString();
+        text.setLength(0);
+        if (collapseWhitespace)
+            data = WHITESPACE.matcher(data).replaceAll(" ");
+        if (current != null)
+            current.appendChild(document.createTextNode(data));
     }
     
     /** {@inheritDoc} */
     public void processingInstruction(String target, String data) throws SAXException
     {
-        LOGGER.entering("XCSParser", "processingInstruction",
-                String.format("target='%s' data='%s'", target, data));
+        if (tracing)
+            LOGGER.entering("XCSParser", "processingInstruction",
+                    String.format("target='%s' data='%s'", target, data));
     }
     
     /** {@inheritDoc} */
     public void skippedEntity(String name) throws SAXException
     {
-        LOGGER.entering("XCSParser", "skippedEntity", name);
+        if (tracing)
+            LOGGER.entering("XCSParser", "skippedEntity", name);
     }
     
     
@@ -315,18 +353,20 @@ public class XCSParser
     public void notationDecl(String name, String publicId, String systemId)
         throws SAXException
     {
-        LOGGER.entering("XCSParser", "notationDecl",
-                String.format("name='%s' publicId='%s' systemId='%s'",
-                name, publicId, systemId));
+        if (tracing)
+            LOGGER.entering("XCSParser", "notationDecl",
+                    String.format("name='%s' publicId='%s' systemId='%s'",
+                    name, publicId, systemId));
     }
     
     /** {@inheritDoc} */
     public void unparsedEntityDecl(String name, String publicId, String systemId,
         String notationName) throws SAXException
     {
-        LOGGER.entering("XCSParser", "unparsedEntityDecl",
-                String.format("name='%s' publicId='%s' systemId='%s' notationName='%s'",
-                name, publicId, systemId, notationName));
+        if (tracing)
+            LOGGER.entering("XCSParser", "unparsedEntityDecl",
+                    String.format("name='%s' publicId='%s' systemId='%s' notationName='%s'",
+                    name, publicId, systemId, notationName));
     }
     
     /*********************************/
@@ -335,8 +375,9 @@ public class XCSParser
     /** {@inheritDoc} */
     public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException
     {   //TODO: Need to check if I know the publicID
-        LOGGER.entering("XCSParser", "resolvedEntity",
-                String.format("publicId='%s' systemId='%s'", publicId, systemId));
+        if (tracing)
+            LOGGER.entering("XCSParser", "resolvedEntity",
+                    String.format("publicId='%s' systemId='%s'", publicId, systemId));
         return resolver.resolveEntity(publicId, systemId);
     }
         
@@ -22,50 +22,35 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.io.*;
-import java.nio.file.FileSystemException;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.prefs.Preferences;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
 
-import com.helger.commons.io.resource.FileSystemResource;
-import com.helger.commons.io.resource.IReadableResource;
-import com.helger.schematron.ISchematronResource;
-import com.helger.schematron.pure.SchematronResourcePure;
 import com.helger.schematron.svrl.SVRLMarshaller;
 import com.helger.schematron.xslt.SchematronResourceSCH;
-import com.helger.xml.serialize.read.DOMReader;
-import com.thaiopensource.relaxng.jaxp.XMLSyntaxSchemaFactory;
 import org.oclc.purl.dsdl.svrl.FailedAssert;
-import org.oclc.purl.dsdl.svrl.SchematronOutputType;
 import org.ttt.salt.Configuration;
+import org.ttt.salt.DialectRegistry;
+import org.ttt.salt.TBX3File;
+import org.ttt.salt.TBXException;
 import org.ttt.salt.TBXFile;
-import org.w3c.dom.Document;
-import org.xml.sax.ErrorHandler;
+import org.ttt.salt.XCSValidationException;
+import org.ttt.salt.dom.tbx.TBXParser;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
@@ -207,62 +192,15 @@ public class ActionOpen extends TBXAbstractAction implements FilenameFilter
                     Logger.getLogger("org.ttt.salt.dom.tbx").setLevel(level);
                     Logger.getLogger("org.ttt.salt.dom.xcs").setLevel(level);
                     
-                    TBXFile dv = null;
-                    try
+                    if (Singleton.getSingletonInstance().getVersionSelection() == 0)
                     {
-                        if (Singleton.getSingletonInstance().getVersionSelection() == 0) {
-                            Configuration config = new Configuration();
-                            config.setCheckLang(checkXmlLang);
-
-                            dv = new TBXFile(file.toURI().toURL(), config);
-                            dv.parseAndValidate();
-                            if (dv.isValid())
-                            {
-                                JOptionPane.showMessageDialog(null,
-                                    MessageFormat.format(getResourceBundle().getString("FileValid"), args),
-                                    getResourceBundle().getString("FileValidTitle"),
-                                    JOptionPane.INFORMATION_MESSAGE);
-                            }
-                        } else if (Singleton.getSingletonInstance().getVersionSelection() == 1) {
-                            // TODO: Validate with Xerxes for TBX V3
-                            xercesValidation(file);
-                        }
-                    }
-                    catch (IOException err)
-                    {
-                        String msg = MessageFormat.format(
-                                getResourceBundle().getString("IOException"),
-                                err.getLocalizedMessage(), file);
-                        JOptionPane.showMessageDialog(null, msg,
-                            getResourceBundle().getString("IOExceptionTitle"),
-                            JOptionPane.ERROR_MESSAGE);
-                    }
-                    //CHECKSTYLE: IllegalCatch OFF
-                    catch (Throwable err)
-                    {
-                        String msg = MessageFormat.format(
-                                getResourceBundle().getString("UnknownError"),
-                                err.getLocalizedMessage(), file);
-                        JOptionPane.showMessageDialog(null, msg,
-                            getResourceBundle().getString("UnknownErrorTitle"),
-                            JOptionPane.ERROR_MESSAGE);
-                        System.err.format("Unknown error for file %s%n", file);
-                        err.printStackTrace();
+                        Configuration config = new Configuration();
+                        config.setCheckLang(checkXmlLang);
+                        new Validation(file, config).start();
                     }
-                    //CHECKSTYLE: IllegalCatch ON
-                    finally
+                    else if (Singleton.getSingletonInstance().getVersionSelection() == 1)
                     {
-                        try
-                        {
-                            handler.flush();
-                            String log = logbuffer.toString("UTF-8");
-                            Logger.getLogger("org.ttt.salt").removeHandler(handler);
-                            new TBXResults(file, dv, log);
-                        }
-                        catch (java.io.UnsupportedEncodingException err)
-                        {   //Ignore: UTF-8 is always available
-                            err.printStackTrace();
-                        }
+                        new Validation3(file).start();
                     }
                 }
             }
@@ -291,6 +229,432 @@ public class ActionOpen extends TBXAbstractAction implements FilenameFilter
         }
     }
     
+    /**
+     * Stop collecting the log.
+     *
+     * @return The log collected since the file was opened.
+     */
+    private String endLog()
+    {
+        handler.flush();
+        Logger.getLogger("org.ttt.salt").removeHandler(handler);
+        try
+        {
+            return logbuffer.toString("UTF-8");
+        }
+        catch (java.io.UnsupportedEncodingException err)
+        {   //Ignore: UTF-8 is always available
+            err.printStackTrace();
+            return "";
+        }
+    }
+    
+    /**
+     * Tell the user about an exception that stopped the check of a file.
+     *
+     * @param file The file being checked.
+     * @param err The exception.
+     */
+    private void showError(File file, Throwable err)
+    {
+        if (err instanceof IOException)
+        {
+            String msg = MessageFormat.format(
+                    getResourceBundle().getString("IOException"),
+                    err.getLocalizedMessage(), file);
+            JOptionPane.showMessageDialog(null, msg,
+                getResourceBundle().getString("IOExceptionTitle"),
+                JOptionPane.ERROR_MESSAGE);
+        }
+        else
+        {
+            String msg = MessageFormat.format(
+                    getResourceBundle().getString("UnknownError"),
+                    err.getLocalizedMessage(), file);
+            JOptionPane.showMessageDialog(null, msg,
+                getResourceBundle().getString("UnknownErrorTitle"),
+                JOptionPane.ERROR_MESSAGE);
+            System.err.format("Unknown error for file %s%n", file);
+            err.printStackTrace();
+        }
+    }
+    
+    /**
+     * Checks a file on a background thread. A progress monitor shows the
+     * bytes read and cancels the check. This action is disabled until the
+     * check is done since the log is collected for one file at a time.
+     */
+    private abstract class Check extends SwingWorker<Void, TBXException>
+        implements ActionListener
+    {
+        /** Milliseconds between progress updates. */
+        private static final int UPDATE = 250;
+        
+        /** Progress monitor maximum, progress is in tenths of a percent. */
+        private static final int PROGRESS_MAX = 1000;
+        
+        /** Bytes in a KB. */
+        private static final long KB = 1024;
+        
+        /** The file to check. */
+        protected final File file;
+        
+        /** Shows progress and lets the user cancel. */
+        private final ProgressMonitor monitor;
+        
+        /** Updates the progress monitor. */
+        private final Timer timer;
+        
+        /**
+         * @param f The file to check.
+         * @param parent Window the progress monitor is shown over, or null.
+         */
+        Check(File f, Component parent)
+        {
+            file = f;
+            Object[] args = {file.getName()};
+            monitor = new ProgressMonitor(parent,
+                MessageFormat.format(getResourceBundle().getString("Progress"), args),
+                "", 0, PROGRESS_MAX);
+            monitor.setMillisToDecideToPopup(0);
+            monitor.setMillisToPopup(UPDATE);
+            timer = new Timer(UPDATE, this);
+        }
+        
+        /**
+         * Start the check.
+         */
+        void start()
+        {
+            ActionOpen.this.setEnabled(false);
+            timer.start();
+            execute();
+        }
+        
+        /**
+         * @return True if the user has cancelled the check.
+         */
+        protected boolean isCanceled()
+        {
+            return monitor.isCanceled();
+        }
+        
+        /**
+         * @return True once the background thread has opened the file.
+         */
+        protected abstract boolean isOpened();
+        
+        /**
+         * Cancel the opened file.
+         */
+        protected abstract void cancelFile();
+        
+        /**
+         * @return Number of bytes in the opened file, or -1 if unknown.
+         */
+        protected abstract long getLength();
+        
+        /**
+         * @return Number of bytes of the opened file read so far.
+         */
+        protected abstract long getBytesRead();
+        
+        /**
+         * @param read KB of the file read.
+         * @param length KB in the file.
+         * @return The progress monitor note.
+         */
+        protected abstract String getNote(long read, long length);
+        
+        /**
+         * Report a check that ran to the end, on the event thread.
+         */
+        protected abstract void succeeded();
+        
+        /**
+         * Report a check that stopped with an exception, on the event
+         * thread. A cancelled check stops with
+         * {@link InterruptedIOException}.
+         *
+         * @param err Why the check stopped.
+         */
+        protected abstract void failed(Throwable err);
+        
+        /**
+         * Show the results window, on the event thread, after
+         * {@link #succeeded} or {@link #failed}.
+         */
+        protected abstract void finish();
+        
+        /**
+         * Update the progress monitor and pass on a cancel.
+         *
+         * @param evt The timer event.
+         */
+        public void actionPerformed(ActionEvent evt)
+        {
+            if (!isOpened())
+                return;
+            if (monitor.isCanceled())
+            {
+                cancelFile();
+                return;
+            }
+            long length = getLength();
+            long read = getBytesRead();
+            if (length > 0)
+                monitor.setProgress((int) (read * PROGRESS_MAX / length));
+            monitor.setNote(getNote(read / KB, Math.max(length, 0) / KB));
+        }
+        
+        /** {@inheritDoc} */
+        protected void done()
+        {
+            timer.stop();
+            monitor.close();
+            ActionOpen.this.setEnabled(true);
+            try
+            {
+                get();
+                succeeded();
+            }
+            catch (ExecutionException err)
+            {
+                failed(err.getCause());
+            }
+            catch (InterruptedException err)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                finish();
+            }
+        }
+    }
+    
+    /**
+     * Checks a TBX v2 file on a background thread. The results window is
+     * opened at once and termEntry errors are listed as they are found.
+     * The errors come from the parser, which is an Observable.
+     */
+    @SuppressWarnings("deprecation")
+    private final class Validation extends Check implements Observer
+    {
+        /** Configuration for the check. */
+        private final Configuration config;
+        
+        /** Results window. */
+        private final TBXResults results;
+        
+        /** The file once it is opened by the background thread. */
+        private volatile TBXFile tbx;
+        
+        /**
+         * @param f The file to check.
+         * @param c Configuration for the check.
+         */
+        Validation(File f, Configuration c)
+        {
+            this(f, c, new TBXResults(f));
+        }
+        
+        /**
+         * @param f The file to check.
+         * @param c Configuration for the check.
+         * @param r Results window.
+         */
+        private Validation(File f, Configuration c, TBXResults r)
+        {
+            super(f, r);
+            config = c;
+            results = r;
+        }
+        
+        /** {@inheritDoc} */
+        protected Void doInBackground() throws Exception
+        {
+            TBXFile f = new TBXFile(file.toURI().toURL(), config);
+            f.addObserver(this);
+            tbx = f;
+            if (isCanceled())
+                f.cancel();
+            f.parseAndValidate();
+            return null;
+        }
+        
+        /**
+         * Publish the termEntry errors as the parser finds them.
+         *
+         * @param o The parser.
+         * @param arg The parser event.
+         */
+        public void update(Observable o, Object arg)
+        {
+            TBXParser.Event evt = (TBXParser.Event) arg;
+            if (!evt.getTBXElement().getTagName().equals("termEntry"))
+                return;
+            for (XCSValidationException err : evt.getExceptions())
+                publish(new TBXException(TBXException.Priority.XCS, err));
+        }
+        
+        /** {@inheritDoc} */
+        protected void process(List<TBXException> errs)
+        {
+            for (TBXException err : errs)
+                results.addError(err);
+        }
+        
+        /** {@inheritDoc} */
+        protected boolean isOpened()
+        {
+            return tbx != null;
+        }
+        
+        /** {@inheritDoc} */
+        protected void cancelFile()
+        {
+            tbx.cancel();
+        }
+        
+        /** {@inheritDoc} */
+        protected long getLength()
+        {
+            return tbx.getLength();
+        }
+        
+        /** {@inheritDoc} */
+        protected long getBytesRead()
+        {
+            return tbx.getBytesRead();
+        }
+        
+        /** {@inheritDoc} */
+        protected String getNote(long read, long length)
+        {
+            Object[] args = {tbx.getTermEntriesDone(), read, length};
+            return MessageFormat.format(getResourceBundle().getString("ProgressNote"), args);
+        }
+        
+        /** {@inheritDoc} */
+        protected void succeeded()
+        {
+            if (tbx.isValid())
+            {
+                Object[] args = {file};
+                JOptionPane.showMessageDialog(results,
+                    MessageFormat.format(getResourceBundle().getString("FileValid"), args),
+                    getResourceBundle().getString("FileValidTitle"),
+                    JOptionPane.INFORMATION_MESSAGE);
+            }
+        }
+        
+        /** {@inheritDoc} */
+        protected void failed(Throwable err)
+        {
+            if (!(err instanceof InterruptedIOException))
+                showError(file, err);
+        }
+        
+        /** {@inheritDoc} */
+        protected void finish()
+        {
+            results.finish(tbx, endLog());
+        }
+    }
+    
+    /**
+     * Checks a TBX v3 file on a background thread. The RELAX NG and
+     * Schematron results are written to a text file once the check is
+     * done. A cancel stops the parse, but not the Schematron rules once
+     * they have started.
+     */
+    private final class Validation3 extends Check
+    {
+        /** The file once it is opened by the background thread. */
+        private volatile TBX3File tbx;
+        
+        /**
+         * @param f The file to check.
+         */
+        Validation3(File f)
+        {
+            super(f, null);
+        }
+        
+        /** {@inheritDoc} */
+        protected Void doInBackground() throws Exception
+        {
+            // One parse feeds both the RNG validation and the Schematron document
+            TBX3File f = new TBX3File(file.toURI().toURL(), DialectRegistry.getDefault());
+            tbx = f;
+            if (isCanceled())
+                f.cancel();
+            f.parseAndValidate();
+            return null;
+        }
+        
+        /** {@inheritDoc} */
+        protected boolean isOpened()
+        {
+            return tbx != null;
+        }
+        
+        /** {@inheritDoc} */
+        protected void cancelFile()
+        {
+            tbx.cancel();
+        }
+        
+        /** {@inheritDoc} */
+        protected long getLength()
+        {
+            return tbx.getLength();
+        }
+        
+        /** {@inheritDoc} */
+        protected long getBytesRead()
+        {
+            return tbx.getBytesRead();
+        }
+        
+        /** {@inheritDoc} */
+        protected String getNote(long read, long length)
+        {
+            Object[] args = {read, length};
+            return MessageFormat.format(getResourceBundle().getString("ProgressNoteBytes"), args);
+        }
+        
+        /** {@inheritDoc} */
+        protected void succeeded()
+        {
+            xercesValidation(tbx);
+        }
+        
+        /** {@inheritDoc} */
+        protected void failed(Throwable err)
+        {
+            if (err instanceof InterruptedIOException)
+                return;
+            if (err instanceof FileNotFoundException)
+            {
+                LOGGER.info(err.getMessage());
+                // Open error window
+                createFrameForError();
+            }
+            if (err instanceof IOException || err instanceof SAXException)
+                err.printStackTrace();
+            else
+                showError(file, err);
+        }
+        
+        /** {@inheritDoc} */
+        protected void finish()
+        {
+            new TBXResults(file, null, endLog());
+        }
+    }
+    
     /** {@inheritDoc} */
     public boolean accept(File dir, String name)
     {
@@ -299,7 +663,7 @@ public class ActionOpen extends TBXAbstractAction implements FilenameFilter
 
 
 
-    private void xercesValidation(File file) {
+    private void xercesValidation(TBX3File tbx) {
         try {
             // RNG Validation
             Date date = new Date();
@@ -324,139 +688,36 @@ public class ActionOpen extends TBXAbstractAction implements FilenameFilter
             stringBuilder.append("\nFile saved to: " + System.getProperty("user.dir"));
             stringBuilder.append("\n\n");
 
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilderFactory.setNamespaceAware(true);
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document doc = documentBuilder.parse(file);
-
-            System.setProperty(SchemaFactory.class.getName() + ":" + XMLConstants.RELAXNG_NS_URI,
-                    XMLSyntaxSchemaFactory.class.getName());
-
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.RELAXNG_NS_URI);
-
-            // Define the Schema from URL or local file?
-            // Assuming offline use, we will include the file locally
-
-            String rngPath = "";
-            String schPath = "";
-            String dialectMessage = "";
-            String checkRNGPath = "";
-            String checkSCHPath = "";
-            int found_dialect = 0;
-
-            Scanner scanner = new Scanner(file);
-            while (scanner.hasNextLine()) {
-                String lineFromFile = scanner.nextLine();
-                if(lineFromFile.contains("type=\"TBX-Core\"")) {
-                    rngPath = "TBXCheck/src/main/resources/xml/TBX-Core_dialect-master/Schemas/TBXcoreStructV03_TBX-Core_integrated.rng";
-                    schPath = "TBXCheck/src/main/resources/xml/TBX-Core_dialect-master/Schemas/TBX-Core.sch";
-                    dialectMessage = "The dialect of your file was automatically detected to be TBX-Core.";
-                    found_dialect = 1;
-                    break;
-                }
-                else if(lineFromFile.contains("type=\"TBX-Min\"") && lineFromFile.contains("dca")) {
-                    rngPath = "TBXCheck/src/main/resources/xml/TBX-Min_dialect-master/DCA/TBXcoreStructV03_TBX-Min_integrated.rng";
-                    schPath = "TBXCheck/src/main/resources/xml/TBX-Min_dialect-master/DCA/TBX-Min_DCA.sch";
-                    dialectMessage = "The dialect of your file was automatically detected to be TBX-Min.";
-                    found_dialect = 1;
-                    break;
+            DialectRegistry.Dialect dialect = tbx.getDialect();
+            if (dialect != null) {
+                stringBuilder.append("Current rng validation file path:\n");
+                stringBuilder.append(dialect.getSchemaURL());
+                stringBuilder.append("\nCurrent sch validation file path:\n");
+                stringBuilder.append(dialect.getSchematronURL());
+                stringBuilder.append("\n\n\n");
+
+                if (DialectRegistry.isBundled(dialect.getName())) {
+                    stringBuilder.append("The dialect of your file was automatically detected to be "
+                            + dialect.getName() + ".");
                 }
-                else if(lineFromFile.contains("type=\"TBX-Basic\"") && lineFromFile.contains("dca")) {
-                    rngPath = "TBXCheck/src/main/resources/xml/TBX-Basic_dialect-master/DCA/TBXcoreStructV03_TBX-Basic_integrated.rng";
-                    schPath = "TBXCheck/src/main/resources/xml/TBX-Basic_dialect-master/DCA/TBX-Basic_DCA.sch";
-                    dialectMessage = "The dialect of your file was automatically detected to be TBX-Basic.";
-                    found_dialect = 1;
-                    break;
-                }
-                else if (lineFromFile.contains("type=\"TBX-\"")) {
-                    Pattern p = Pattern.compile("TBX-.*\"");   // the pattern to search for
-                    Matcher m = p.matcher(lineFromFile);
-
-                    if (m.find()) {
-                        String detected_dialect = m.group(1);
-                        detected_dialect = detected_dialect.substring(0, detected_dialect.length() - 1);
-                        checkRNGPath = "TBXCheck/src/main/resources/xml/External_Schemas/" + detected_dialect + ".rng";
-                        checkSCHPath = "TBXCheck/src/main/resources/xml/External_Schemas/" + detected_dialect + ".sch";
-
-                        File rng_test = new File(checkRNGPath);
-                        File sch_test = new File(checkSCHPath);
-
-                        if (rng_test.exists() && sch_test.exists()) {
-                            dialectMessage = "The dialect of your file was automatically " +
-                                    "detected to be the custom dialect " + detected_dialect + ".";
-                            found_dialect = 1;
-                            break;
-                        }
-
-                    }
-                    else {
-                        break;
-                    }
+                else {
+                    stringBuilder.append("The dialect of your file was automatically " +
+                            "detected to be the custom dialect " + dialect.getName() + ".");
                 }
+                stringBuilder.append("\n\n\n");
             }
 
-            if (found_dialect == 0) {
-                // Open error window
-                createFrameForError();
-            }
-
-            File rng = new File(rngPath);
-            File sch = new File(schPath);
-
-            StreamSource streamSource = new StreamSource(file);
-
-            stringBuilder.append("Current rng validation file path:\n");
-            stringBuilder.append(rngPath);
-            stringBuilder.append("\nCurrent sch validation file path:\n");
-            stringBuilder.append(schPath);
-            stringBuilder.append("\n\n\n");
-
-            stringBuilder.append(dialectMessage);
-            stringBuilder.append("\n\n\n");
-
-            Schema schema;
-            if (rng.exists() && rng.isFile() && rng.canRead()) {
-                Source schemaFile = new StreamSource(rng);
-                schema = schemaFactory.newSchema(schemaFile);
-            }
-            else {
-                throw new FileNotFoundException();
+            // Well formedness
+            SAXParseException wf = tbx.getWellFormedError();
+            if (wf != null) {
+                stringBuilder.append("Invalid! The file is not well formed. See the error below:\n\n");
+                stringBuilder.append("(Line:Column)\n");
+                stringBuilder.append("\t(" + wf.getLineNumber() + ":" + wf.getColumnNumber() + ") "
+                        + wf.getMessage() + "\n\n\n");
             }
 
             // RNG Validation
-            Validator validator = schema.newValidator();
-            final List<SAXParseException> exceptions = new LinkedList<SAXParseException>();
-            validator.setErrorHandler(new ErrorHandler()
-            {
-                @Override
-                public void warning(SAXParseException exception) throws SAXException
-                {
-                    exceptions.add(exception);
-                }
-
-                @Override
-                public void fatalError(SAXParseException exception) throws SAXException
-                {
-                    exceptions.add(exception);
-                }
-
-                @Override
-                public void error(SAXParseException exception) throws SAXException
-                {
-                    exceptions.add(exception);
-                }
-            });
-
-            try {
-                validator.validate(streamSource);
-            } catch (SAXException e) {
-                // TODO: Print to the Log any exceptions that arise from invalid files
-                System.out.println("Invalid! Unsuccessful validation against the RNG file.");
-                e.printStackTrace();
-                System.out.println(e.getMessage());
-                System.out.println("SAXException not handled!!!!");
-            }
-
+            List<SAXParseException> exceptions = tbx.getSchemaExceptions();
             if (exceptions.isEmpty()) {
                 System.out.println("Valid! Successful validation against the RNG file.");
                 stringBuilder.append("Valid! Successful validation against the RNG file.\n");
@@ -475,12 +736,13 @@ public class ActionOpen extends TBXAbstractAction implements FilenameFilter
             }
 
             //Schematron Validation
-            try {
-                String results = validateXMLViaXLSTSchematron(sch, file);
+            if (tbx.isSchematronChecked()) {
+                String results = schematronResults(tbx.getFailedAsserts());
                 System.out.println(results);
                 stringBuilder.append(results);
-            } catch (Exception e) {
-                e.printStackTrace();
+            }
+            else if (tbx.getSchematronError() != null) {
+                System.err.println(tbx.getSchematronError());
             }
 
             printWriter.printf("%s", stringBuilder.toString());
@@ -491,50 +753,21 @@ public class ActionOpen extends TBXAbstractAction implements FilenameFilter
 
             exit(0);
 
-        } catch (ParserConfigurationException e) {
-            e.printStackTrace();
-        } catch (SAXException e) {
-            e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private static String validateXMLViaXLSTSchematron (@Nonnull final File aSchematronFile, @Nonnull final File aXMLFile) throws Exception
+    private static String schematronResults (@Nonnull final List<FailedAssert> failedAsserts)
     {
         StringBuilder results = new StringBuilder();
 
-        final ISchematronResource aResPure = SchematronResourcePure.fromFile(aSchematronFile);
-        if (!aResPure.isValidSchematron())
-            throw new IllegalArgumentException ("Invalid Schematron!");
-
-        final IReadableResource anXMLSource = new FileSystemResource(aXMLFile);
-
-        Document aXMLNode = DOMReader.readXMLDOM(aXMLFile);
-        if (aXMLNode == null) {
-            throw new FileSystemException("Unable to read from file!");
-        }
-        SchematronOutputType returnedSVRL = aResPure.applySchematronValidationToSVRL(anXMLSource);
-
-        List<Object> resultCollection = returnedSVRL.getActivePatternAndFiredRuleAndFailedAssert();
-
-        boolean failed_flag = false;
-
-        for (Object o : resultCollection) {
-            if (o instanceof FailedAssert) {
-                failed_flag = true;
-            }
-        }
-
-        if (failed_flag) {
+        if (!failedAsserts.isEmpty()) {
             results.append("Invalid! Unsuccessful validation against the SCH file.\n");
-            for (Object o : resultCollection) {
-                if (o instanceof FailedAssert) {
-                    FailedAssert failedAssert = (FailedAssert)o;
-                    String error = failedAssert.getText();
-                    System.out.println(error);
-                    results.append(error);
-                }
+            for (FailedAssert failedAssert : failedAsserts) {
+                String error = failedAssert.getText();
+                System.out.println(error);
+                results.append(error);
             }
         } else {
             results.append("Valid! Successful validation against the SCH file.\n");
@@ -25,6 +25,7 @@ import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import javax.swing.UIManager;
 import org.flyingtitans.util.GetOpt;
+import org.ttt.salt.DialectRegistry;
 
 
 /**
@@ -47,7 +48,7 @@ public final class Main
 
     /** Long options. */
     private static final String[] LONG_OPTIONS = {"help", "version",
-            "environment", "lang=", "country=", "variant="};
+            "environment", "lang=", "country=", "variant=", "schemas="};
 
     /** Single allowed instance of this Class. */
     private static Main instance;
@@ -123,6 +124,8 @@ public final class Main
                     : Locale.getDefault().getVariant();
             Locale def = new Locale(lang, country, variant);
             Locale.setDefault(def);
+            if (options.containsOption("--schemas"))
+                DialectRegistry.setDefault(new DialectRegistry(new File(options.getParameter("--schemas"))));
         }
         catch (IllegalArgumentException e)
         {
@@ -23,6 +23,7 @@ import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.ResourceBundle;
 import java.util.Date;
 import java.awt.Graphics;
@@ -33,6 +34,7 @@ import java.awt.print.PrinterJob;
 import java.awt.print.PrinterException;
 import javax.swing.JScrollPane;
 import javax.swing.BorderFactory;
+import org.ttt.salt.Diagnostic;
 import org.ttt.salt.TBXFile;
 import org.ttt.salt.TBXException;
 
@@ -52,6 +54,9 @@ public class TBXResults extends javax.swing.JFrame implements WindowListener
     /** SCM information. */
     public static final String RCSID = "$Id$";
     
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+    
     /** */
     public static final String TITLE_PROPERTY = "Title";
 
@@ -60,6 +65,12 @@ public class TBXResults extends javax.swing.JFrame implements WindowListener
     
     /* Components */
     private JScrollPane scroll;
+    
+    /** Text of the errors and the log. */
+    private javax.swing.JTextArea text = new javax.swing.JTextArea();
+    
+    /** Where and what the errors already listed are, see {@link #key}. */
+    private final Set<String> shown = new java.util.HashSet<String>();
 
     /**
      * This will display the results of validating the file.
@@ -69,27 +80,23 @@ public class TBXResults extends javax.swing.JFrame implements WindowListener
      * @param log The full log of all that happened in the parse.
      */
     public TBXResults(File file, TBXFile tbx, String log)
+    {
+        this(file);
+        finish(tbx, log);
+    }
+
+    /**
+     * This will display an empty window for the results of a file that is
+     * being validated. Errors are added with {@link #addError} as they are
+     * found and {@link #finish} adds the rest.
+     *
+     * @param file The file that is being checked.
+     */
+    public TBXResults(File file)
     {
         super(String.format("%1s %2$tF %2$tT", file.getName(), new Date()));
-        ResourceBundle bndl = ResourceBundle.getBundle("org.ttt.salt.gui.TBXValidator");
-        javax.swing.JTextArea text = new javax.swing.JTextArea();
         text.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
-        if (tbx != null)
-        {
-            Iterator<TBXException> errs = tbx.getInvalidatingExceptions().iterator();
-            while (errs.hasNext())
-            {
-                TBXException err = errs.next();
-                text.append(err.getLocalizedMessage());
-                text.append("\n");
-            }
-        }
-        text.append("\n");
-        text.append("****************************************\n");
-        text.append("Log messages.\n\n");
-        text.append(log);
         setTextProperties(text);
-
         scroll = new JScrollPane(text,
                     javax.swing.ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
                     javax.swing.ScrollPaneConstants.HORIZONTAL_SCROLLBAR_ALWAYS);
@@ -107,6 +114,63 @@ public class TBXResults extends javax.swing.JFrame implements WindowListener
         setVisible(true);
     }
     
+    /**
+     * List an error found while the file is validated.
+     *
+     * @param err The error, it is listed once even if it is in the
+     *  exceptions given to {@link #finish}.
+     */
+    public void addError(TBXException err)
+    {
+        if (shown.add(key(err.getDiagnostic())))
+        {
+            text.append(err.getLocalizedMessage());
+            text.append("\n");
+        }
+    }
+    
+    /**
+     * The same error found while parsing and read back from the file
+     * afterwards are different objects, so errors are told apart by what
+     * they are and where they are.
+     *
+     * @param d The problem of an error.
+     * @return A key that is the same for both copies of the error.
+     */
+    private static String key(Diagnostic d)
+    {
+        return d.getPriority() + " " + d.getCode() + " " + d.getLine() + ":" + d.getColumn()
+            + " " + d.getTermEntryId() + " " + d.getMessage();
+    }
+    
+    /**
+     * List the errors not yet listed and the log.
+     *
+     * @param tbx The TBX validator that operated on the file, or null if it
+     *  could not be built.
+     * @param log The full log of all that happened in the parse.
+     */
+    public void finish(TBXFile tbx, String log)
+    {
+        if (tbx != null)
+        {
+            Iterator<TBXException> errs = tbx.getInvalidatingExceptions().iterator();
+            while (errs.hasNext())
+                addError(errs.next());
+            if (tbx.isCancelled())
+            {
+                ResourceBundle bndl = ResourceBundle.getBundle("org.ttt.salt.gui.TBXValidator");
+                text.append(bndl.getString("ProgressCancelled"));
+                text.append("\n");
+            }
+        }
+        text.append("\n");
+        text.append("****************************************\n");
+        text.append("Log messages.\n\n");
+        text.append(log);
+        text.setCaretPosition(0);
+    }
+    
     /**
      * Setup the display properties for the text area.
      *
@@ -0,0 +1,384 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.net.URL;
+import java.util.Scanner;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ *
+ * @author  Lance Finn Helsten
+ * @version 1.0
+ */
+public class DialectRegistryTest
+{
+    private static String CORE_EXAMPLE
+            = "/xml/TBX-Core_dialect-master/Schemas/Example_Astronomy_DCA_VALID.tbx";
+
+    DialectRegistry registry;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        registry = new DialectRegistry(new File("External_Schemas"));
+    }
+
+    @Test
+    public void compileOnce() throws Exception
+    {
+        DialectRegistry.Dialect core = registry.getDialect(DialectRegistry.TBX_CORE);
+        assertSame(core, registry.getDialect(DialectRegistry.TBX_CORE));
+        assertEquals(DialectRegistry.TBX_CORE, core.getName());
+        assertNotNull(core.getSchemaURL());
+    }
+
+    @Test(expected=FileNotFoundException.class)
+    public void unknownDialect() throws Exception
+    {
+        registry.getDialect("TBX-FUBAR");
+    }
+
+    @Test(expected=FileNotFoundException.class)
+    public void invalidDialectName() throws Exception
+    {
+        registry.getDialect("../TBX-Core");
+    }
+
+    @Test
+    public void externalDialect() throws Exception
+    {
+        File dir = copyCoreSchemas("TBX-Custom");
+        DialectRegistry external = new DialectRegistry(dir);
+        DialectRegistry.Dialect custom = external.getDialect("TBX-Custom");
+        assertEquals("TBX-Custom", custom.getName());
+        assertEquals(new File(dir, "TBX-Custom.rng").toURI().toURL(), custom.getSchemaURL());
+        assertEquals(new File(dir, "TBX-Custom.sch").toURI().toURL(), custom.getSchematronURL());
+        assertSame(custom, external.getDialect("TBX-Custom"));
+    }
+
+    @Test
+    public void concurrentCompileOnce() throws Exception
+    {
+        final java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(4);
+        java.util.List<java.util.concurrent.Future<DialectRegistry.Dialect>> results
+                = new java.util.ArrayList<java.util.concurrent.Future<DialectRegistry.Dialect>>();
+        for (int i = 0; i < 4; i++)
+        {
+            results.add(pool.submit(new java.util.concurrent.Callable<DialectRegistry.Dialect>()
+                {
+                    public DialectRegistry.Dialect call() throws Exception
+                    {
+                        start.await();
+                        return registry.getDialect(DialectRegistry.TBX_MIN);
+                    }
+                }));
+        }
+        start.countDown();
+        DialectRegistry.Dialect first = results.get(0).get();
+        for (java.util.concurrent.Future<DialectRegistry.Dialect> result : results)
+            assertSame(first, result.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void failedCompileRetried() throws Exception
+    {
+        File dir = copyCoreSchemas("TBX-Custom");
+        new File(dir, "TBX-Later.rng").delete();
+        new File(dir, "TBX-Later.sch").delete();
+        DialectRegistry external = new DialectRegistry(dir);
+        try
+        {
+            external.getDialect("TBX-Later");
+            fail("Dialect schemas do not exist yet.");
+        }
+        catch (FileNotFoundException err)
+        {
+            assertTrue(err.getMessage(), err.getMessage().contains("TBX-Later"));
+        }
+        copyCoreSchemas("TBX-Later");
+        assertEquals("TBX-Later", external.getDialect("TBX-Later").getName());
+    }
+
+    @Test
+    public void defaultExternalSchemas() throws Exception
+    {
+        File dir = DialectRegistry.defaultExternalSchemas();
+        assertEquals(DialectRegistry.EXTERNAL_SCHEMAS, dir.getName());
+        assertTrue(dir.getPath(), dir.isAbsolute());
+
+        System.setProperty(DialectRegistry.SCHEMAS_PROPERTY, "target/schemas");
+        try
+        {
+            assertEquals(new File("target/schemas"), DialectRegistry.defaultExternalSchemas());
+        }
+        finally
+        {
+            System.clearProperty(DialectRegistry.SCHEMAS_PROPERTY);
+        }
+    }
+
+    @Test
+    public void validateCore() throws Exception
+    {
+        URL url = getClass().getResource(CORE_EXAMPLE);
+        DialectRegistry.Dialect core = registry.getDialect(DialectRegistry.TBX_CORE);
+        for (int i = 0; i < 2; i++)
+            core.newValidator().validate(new StreamSource(url.toExternalForm()));
+    }
+
+    @Test
+    public void singlePassValid() throws Exception
+    {
+        TBX3File tbx = new TBX3File(getClass().getResource(CORE_EXAMPLE), registry);
+        tbx.parseAndValidate();
+        assertEquals(DialectRegistry.TBX_CORE, tbx.getDialectName());
+        assertSame(registry.getDialect(DialectRegistry.TBX_CORE), tbx.getDialect());
+        assertTrue(tbx.isWellFormed());
+        assertNull(tbx.getWellFormedError());
+        assertTrue(tbx.getSchemaExceptions().isEmpty());
+        assertTrue(tbx.getFailedAsserts().isEmpty());
+        //Only valid if the Schematron rules could be applied as well
+        assertEquals(tbx.isSchematronChecked(), tbx.isValid());
+        assertEquals("tbx", tbx.getDocument().getDocumentElement().getLocalName());
+        assertEquals("en", tbx.getDocument().getDocumentElement().getAttributeNS(
+                javax.xml.XMLConstants.XML_NS_URI, "lang"));
+    }
+
+    @Test
+    public void singlePassInvalid() throws Exception
+    {
+        URL url = getClass().getResource(CORE_EXAMPLE);
+        Scanner in = new Scanner(url.openStream(), "UTF-8").useDelimiter("\\A");
+        String text = in.next().replace("<tbxHeader>", "<tbxHeader><fubar/>");
+        in.close();
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/InvalidCore.tbx");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write(text);
+        out.close();
+
+        TBX3File tbx = new TBX3File(file.toURI().toURL(), registry);
+        tbx.parseAndValidate();
+        assertFalse(tbx.isValid());
+        assertFalse(tbx.getSchemaExceptions().isEmpty());
+        assertNotNull(tbx.getDocument());
+    }
+
+    @Test
+    public void cachedResult() throws Exception
+    {
+        URL url = getClass().getResource(CORE_EXAMPLE);
+        Scanner in = new Scanner(url.openStream(), "UTF-8").useDelimiter("\\A");
+        String text = in.next().replace("<tbxHeader>", "<tbxHeader><fubar/>");
+        in.close();
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/CachedCore.tbx");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write(text);
+        out.close();
+
+        ValidationCache cache = new ValidationCache(
+                new File(System.getProperty("user.dir"), "target/test-logs/cache3"));
+        cache.prune(1, 0);
+        ValidationCache.Key key = cache.key(file, registry);
+        assertNull(cache.getTBX3(key));
+        TBX3File tbx = new TBX3File(file.toURI().toURL(), registry);
+        tbx.parseAndValidate();
+        cache.putTBX3(key, tbx);
+
+        TBX3File cached = cache.getTBX3(cache.key(file, registry));
+        if (!tbx.isSchematronChecked())
+        {   //The Schematron failure may be fixed without changing the files
+            assertNull("Result without Schematron cached", cached);
+            return;
+        }
+        assertNotNull("Result not cached", cached);
+        assertEquals(1, cache.getHits());
+        assertEquals(tbx.getDialectName(), cached.getDialectName());
+        assertEquals(tbx.isValid(), cached.isValid());
+        assertEquals(tbx.isSchematronChecked(), cached.isSchematronChecked());
+        assertEquals(tbx.isWellFormed(), cached.isWellFormed());
+        assertEquals(tbx.getSchemaExceptions().size(), cached.getSchemaExceptions().size());
+        for (int i = 0; i < tbx.getSchemaExceptions().size(); i++)
+        {
+            org.xml.sax.SAXParseException a = tbx.getSchemaExceptions().get(i);
+            org.xml.sax.SAXParseException b = cached.getSchemaExceptions().get(i);
+            assertEquals(a.getLineNumber(), b.getLineNumber());
+            assertEquals(a.getMessage(), b.getMessage());
+        }
+        assertEquals(tbx.getFailedAsserts().size(), cached.getFailedAsserts().size());
+        assertNull(cached.getDocument());
+    }
+
+    @Test
+    public void singlePassElideWhitespace() throws Exception
+    {
+        TBX3File tbx = new TBX3File(getClass().getResource(CORE_EXAMPLE), registry);
+        tbx.parseAndValidate();
+        int kept = tbx.getDocument().getElementsByTagNameNS("*", "*").getLength();
+        String text = tbx.getDocument().getDocumentElement().getTextContent();
+
+        tbx = new TBX3File(getClass().getResource(CORE_EXAMPLE), registry);
+        tbx.setElideWhitespace(true);
+        tbx.parseAndValidate();
+        assertTrue(tbx.getSchemaExceptions().isEmpty());
+        assertEquals(tbx.isSchematronChecked(), tbx.isValid());
+        assertEquals(kept, tbx.getDocument().getElementsByTagNameNS("*", "*").getLength());
+        String elided = tbx.getDocument().getDocumentElement().getTextContent();
+        assertTrue(elided.length() < text.length());
+        assertEquals(text.replaceAll("\\s+", ""), elided.replaceAll("\\s+", ""));
+    }
+
+    @Test
+    public void singlePassNotWellFormed() throws Exception
+    {
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/NotWellFormed.tbx");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version='1.0'?>\n<tbx type='TBX-Core' style='dca'>\n<tbxHeader>\n</tbx>\n");
+        out.close();
+
+        TBX3File tbx = new TBX3File(file.toURI().toURL(), registry);
+        tbx.parseAndValidate();
+        assertFalse(tbx.isValid());
+        assertFalse(tbx.isWellFormed());
+        assertFalse(tbx.isSchematronChecked());
+        assertEquals(4, tbx.getWellFormedError().getLineNumber());
+        assertNull(tbx.getDocument());
+
+        ValidationCache cache = new ValidationCache(
+                new File(System.getProperty("user.dir"), "target/test-logs/cache3"));
+        cache.putTBX3(cache.key(file, registry), tbx);
+        TBX3File cached = cache.getTBX3(cache.key(file, registry));
+        assertNotNull("Result not cached", cached);
+        assertFalse(cached.isWellFormed());
+        assertEquals(tbx.getWellFormedError().getMessage(), cached.getWellFormedError().getMessage());
+        assertEquals(4, cached.getWellFormedError().getLineNumber());
+    }
+
+    @Test
+    public void singlePassProgressAndCancel() throws Exception
+    {
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/Progress.tbx");
+        TermbaseGenerator gen = new TermbaseGenerator(TermbaseGenerator.Format.TBX_CORE);
+        gen.setEntries(500);
+        OutputStream out = new FileOutputStream(file);
+        gen.write(out);
+        out.close();
+
+        TBX3File tbx = new TBX3File(file.toURI().toURL(), registry);
+        assertEquals(0, tbx.getBytesRead());
+        tbx.parseAndValidate();
+        assertEquals(file.length(), tbx.getLength());
+        assertEquals(file.length(), tbx.getBytesRead());
+
+        tbx = new TBX3File(file.toURI().toURL(), registry);
+        tbx.cancel();
+        try
+        {
+            tbx.parseAndValidate();
+            fail("Cancelled parse completed");
+        }
+        catch (InterruptedIOException err)
+        {
+            assertTrue(tbx.isCancelled());
+            assertTrue(tbx.getBytesRead() < file.length());
+            assertNull(tbx.getDocument());
+            assertFalse(tbx.isSchematronChecked());
+        }
+    }
+
+    @Test(expected=FileNotFoundException.class)
+    public void singlePassUnavailableStyle() throws Exception
+    {
+        URL url = getClass().getResource("/xml/TBX-Min_dialect-master/DCT/Example_Astronomy_DCT_VALID.tbx");
+        new TBX3File(url, registry).parseAndValidate();
+    }
+
+    @Test
+    public void generatedDialects() throws Exception
+    {
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/Generated.tbx");
+        TermbaseGenerator.Format[] formats = {
+            TermbaseGenerator.Format.TBX_CORE,
+            TermbaseGenerator.Format.TBX_MIN,
+            TermbaseGenerator.Format.TBX_BASIC,
+        };
+        for (TermbaseGenerator.Format format : formats)
+        {
+            TermbaseGenerator gen = new TermbaseGenerator(format);
+            gen.setEntries(100);
+            gen.setLanguages(4);
+            gen.setTerms(2);
+            gen.setCategoryRate(1.0);
+            OutputStream out = new FileOutputStream(file);
+            gen.write(out);
+            out.close();
+            TBX3File tbx = new TBX3File(file.toURI().toURL(), registry);
+            tbx.parseAndValidate();
+            assertEquals(format.getName(), tbx.getDialectName());
+            assertTrue(format.getName() + " " + tbx.getSchemaExceptions(),
+                    tbx.getSchemaExceptions().isEmpty());
+
+            gen.setErrorRate(0.2);
+            out = new FileOutputStream(file);
+            gen.write(out);
+            out.close();
+            assertTrue(gen.getViolations(TermbaseGenerator.Violation.RNG) > 0);
+            assertTrue(gen.getViolations(TermbaseGenerator.Violation.SCHEMATRON) > 0);
+            tbx = new TBX3File(file.toURI().toURL(), registry);
+            tbx.parseAndValidate();
+            assertFalse(tbx.isValid());
+            assertFalse(tbx.getSchemaExceptions().isEmpty());
+        }
+    }
+
+    /**
+     * Copy the bundled TBX-Core schemas to an external schema directory.
+     *
+     * @param name The dialect name the copies are given.
+     * @return The external schema directory.
+     */
+    static File copyCoreSchemas(String name) throws IOException
+    {
+        File dir = new File(System.getProperty("user.dir"), "target/test-logs/External_Schemas");
+        dir.mkdirs();
+        String base = "/xml/TBX-Core_dialect-master/Schemas/";
+        copy(base + "TBXcoreStructV03_TBX-Core_integrated.rng", new File(dir, name + ".rng"));
+        copy(base + "TBX-Core.sch", new File(dir, name + ".sch"));
+        return dir;
+    }
+
+    /**
+     * @param resource The resource to copy.
+     * @param file Where to copy it.
+     */
+    private static void copy(String resource, File file) throws IOException
+    {
+        InputStream in = DialectRegistryTest.class.getResourceAsStream(resource);
+        OutputStream out = new FileOutputStream(file);
+        byte[] buf = new byte[8192];
+        for (int len = in.read(buf); len >= 0; len = in.read(buf))
+            out.write(buf, 0, len);
+        out.close();
+        in.close();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Runs the command line in a separate virtual machine, since it ends with
+ * {@link System#exit}, and checks what it prints and its exit status.
+ *
+ * @author  Lance Finn Helsten
+ * @version 1.0
+ */
+public class MainTest
+{
+    private static String CORE_EXAMPLE
+            = "/xml/TBX-Core_dialect-master/Schemas/Example_Astronomy_DCA_VALID.tbx";
+
+    /** Standard output of the last run, one entry per line. */
+    List<String> out;
+
+    /** Exit status of the last run. */
+    int status;
+
+    /**
+     * Run the command line and wait for it to finish.
+     *
+     * @param args The arguments.
+     */
+    void run(String... args) throws Exception
+    {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("org.ttt.salt.Main");
+        cmd.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(cmd);
+        builder.redirectError(new File(System.getProperty("user.dir"), "target/test-logs/MainTest.err"));
+        Process proc = builder.start();
+        out = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(proc.getInputStream(), "UTF-8"));
+        for (String line = in.readLine(); line != null; line = in.readLine())
+            out.add(line);
+        in.close();
+        status = proc.waitFor();
+    }
+
+    /**
+     * Write a TBX v3 file in the test log directory.
+     *
+     * @param name The file name.
+     * @param text The contents.
+     * @return The file.
+     */
+    File write(String name, String text) throws IOException
+    {
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/" + name);
+        Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        w.write(text);
+        w.close();
+        return file;
+    }
+
+    /**
+     * @return The text of the valid TBX-Core example.
+     */
+    String coreExample() throws IOException
+    {
+        Scanner in = new Scanner(getClass().getResourceAsStream(CORE_EXAMPLE), "UTF-8").useDelimiter("\\A");
+        String ret = in.next();
+        in.close();
+        return ret;
+    }
+
+    @Test
+    public void v3JsonLines() throws Exception
+    {
+        File valid = write("MainValid.tbx", coreExample());
+        File invalid = write("MainInvalid.tbx", coreExample().replace("<tbxHeader>", "<tbxHeader><fubar/>"));
+        File broken = write("MainBroken.tbx",
+                "<?xml version='1.0'?>\n<tbx type='TBX-Core' style='dca'>\n<tbxHeader>\n</tbx>\n");
+        File unknown = write("MainUnknown.tbx", coreExample().replace("TBX-Core", "TBX-FUBAR"));
+
+        //A file that is not well formed is invalid
+        run("v3", broken.getPath());
+        assertEquals(1, status);
+        assertEquals(1, out.size());
+        assertTrue(out.get(0), out.get(0).startsWith("{\"file\":"));
+        assertTrue(out.get(0), out.get(0).contains("\"valid\":false"));
+        assertTrue(out.get(0), out.get(0).contains("\"schematron\":false"));
+        assertTrue(out.get(0), out.get(0).contains("\"errors\":[{\"source\":\"xml\",\"line\":4,"));
+
+        //A well formed file is only valid if its Schematron rules were applied
+        run("v3", valid.getPath());
+        assertEquals(1, out.size());
+        boolean schematron = out.get(0).contains("\"schematron\":true");
+        assertEquals(schematron ? 0 : 2, status);
+        assertTrue(out.get(0), out.get(0).contains("\"valid\":" + schematron));
+        assertTrue(out.get(0), out.get(0).contains("\"dialect\":\"TBX-Core\""));
+        if (!schematron)
+            assertTrue(out.get(0), out.get(0).contains("\"schematronError\":"));
+
+        run("v3", invalid.getPath());
+        assertEquals(1, out.size());
+        assertEquals(schematron ? 1 : 2, status);
+        assertTrue(out.get(0), out.get(0).contains("\"valid\":false"));
+        assertTrue(out.get(0), out.get(0).contains("{\"source\":\"rng\",\"line\":"));
+        assertFalse(out.get(0), out.get(0).contains("\"source\":\"xml\""));
+
+        //A file that could not be validated is reported and the rest go on
+        run("v3", broken.getPath(), unknown.getPath(), valid.getPath());
+        assertEquals(2, status);
+        assertEquals(3, out.size());
+        assertTrue(out.get(0), out.get(0).startsWith("{\"file\":\"" + broken.getPath() + "\""));
+        assertTrue(out.get(1), out.get(1).startsWith("{\"file\":\"" + unknown.getPath() + "\",\"error\":"));
+        assertTrue(out.get(2), out.get(2).startsWith("{\"file\":\"" + valid.getPath() + "\""));
+    }
+
+    @Test
+    public void jobsInInputOrder() throws Exception
+    {
+        //The first file is the largest so later files finish before it
+        File[] files = new File[5];
+        for (int i = 0; i < files.length; i++)
+        {
+            TermbaseGenerator gen = new TermbaseGenerator(TermbaseGenerator.Format.TBX_V2);
+            gen.setEntries(i == 0 ? 2000 : 10);
+            gen.setSeed(i);
+            files[i] = new File(System.getProperty("user.dir"), "target/test-logs/MainJobs" + i + ".tbx");
+            OutputStream w = new FileOutputStream(files[i]);
+            gen.write(w);
+            w.close();
+        }
+        files[2] = write("MainJobsBroken.tbx", "<?xml version='1.0'?>\n<martif type='TBX'>\n");
+
+        String[] args = new String[files.length + 1];
+        args[0] = "--jobs=3";
+        for (int i = 0; i < files.length; i++)
+            args[i + 1] = files[i].getPath();
+        run(args);
+        assertEquals(0, status);
+        List<String> results = new ArrayList<String>();
+        for (String line : out)
+        {
+            if (line.startsWith("Valid file: ") || line.startsWith("INVALID FILE: "))
+                results.add(line);
+        }
+        assertEquals(out.toString(), files.length, results.size());
+        for (int i = 0; i < files.length; i++)
+        {
+            String expect = (i == 2 ? "INVALID FILE: " : "Valid file: ") + files[i].getPath();
+            assertEquals(expect, results.get(i));
+        }
+        assertTrue(out.toString(), out.get(out.size() - 1).startsWith("Checked 5 files"));
+    }
+
+    @Test
+    public void v3ExternalSchemas() throws Exception
+    {
+        File schemas = DialectRegistryTest.copyCoreSchemas("TBX-Custom");
+        File custom = write("MainCustom.tbx", coreExample().replace("TBX-Core", "TBX-Custom"));
+
+        run("--schemas=" + new File(schemas, "missing").getPath(), "v3", custom.getPath());
+        assertEquals(2, status);
+        assertEquals(1, out.size());
+        assertTrue(out.get(0), out.get(0).contains("\"error\":"));
+
+        run("--schemas=" + schemas.getPath(), "v3", custom.getPath());
+        assertEquals(1, out.size());
+        assertTrue(out.get(0), out.get(0).contains("\"dialect\":\"TBX-Custom\""));
+        assertFalse(out.get(0), out.get(0).contains("\"error\":"));
+    }
+}
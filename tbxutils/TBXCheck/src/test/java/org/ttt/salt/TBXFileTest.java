@@ -21,6 +21,7 @@ import org.junit.*;
 import static org.junit.Assert.*;
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.logging.Logger;
@@ -37,6 +38,7 @@ import org.ttt.salt.dom.tbx.*;
  * @author  Lance Finn Helsten
  * @version $Id$
  */
+@SuppressWarnings("deprecation")   //TBXFile.addObserver takes an Observer
 public class TBXFileTest
 {
     private static final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -216,20 +218,635 @@ public class TBXFileTest
             throw (Exception) errs.get(0).getCause();
     }
         
+    @Test
+    public void preParseClosesFile() throws Exception
+    {
+        java.lang.management.OperatingSystemMXBean os
+                = java.lang.management.ManagementFactory.getOperatingSystemMXBean();
+        Assume.assumeTrue(os instanceof com.sun.management.UnixOperatingSystemMXBean);
+        com.sun.management.UnixOperatingSystemMXBean unix = (com.sun.management.UnixOperatingSystemMXBean) os;
+        String[] corrupt = {"CorruptStreamIllform.xml", "CorruptStreamNoXml.xml"};
+        long before = unix.getOpenFileDescriptorCount();
+        for (int i = 0; i < 50; i++)
+        {
+            config.setMapThreshold(i % 2 == 0 ? 0 : Long.MAX_VALUE);
+            TBXFile dv = new TBXFile(getFileURL(corrupt[i % corrupt.length]), config);
+            dv.parseAndValidate();
+            assertFalse(dv.isValid());
+        }
+        long leaked = unix.getOpenFileDescriptorCount() - before;
+        assertTrue("Files left open: " + leaked, leaked < 10);
+    }
+
     /**
      * Check that preparse reports invalid files
      */
     @Test
     public void preParseOverflow() throws Exception
     {
-    /*
-        TBXFile dv = new TBXFile(getFileURL("PreParseOverflow.xml"), config);
+        URL sample = getFileURL("ValidDTD.xml");
+        Scanner in = new Scanner(sample.openStream(), "UTF-8").useDelimiter("\\A");
+        String text = in.next();
+        in.close();
+        int decl = text.indexOf("?>") + 2;
+        File file = new File(new File(sample.toURI()).getParentFile(), "PreParseOverflow.xml");
+        file.deleteOnExit();
+
+        char[] comment = new char[4000];
+        Arrays.fill(comment, 'x');
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write(text.substring(0, decl) + "\n<!--" + new String(comment, 2, 3990) + "-->"
+                + text.substring(decl));
+        out.close();
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        assertTrue("Long prolog comment not valid", dv.isValid());
+
+        comment = new char[Prolog.DEFAULT_LIMIT];
+        Arrays.fill(comment, 'x');
+        out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write(text.substring(0, decl) + "\n<!--" + new String(comment, 2, comment.length - 4) + "-->"
+                + text.substring(decl));
+        out.close();
+        dv = new TBXFile(file.toURI().toURL(), config);
         dv.parseAndValidate();
-        assertTrue("preParseCheck overflow not caught", !dv.preParseCheck());
+        assertTrue("preParseCheck overflow not caught", !dv.isValid());
         TBXException err = (TBXException) dv.getInvalidatingExceptions().get(0);
         assertTrue("StreamCorruptedException not thrown",
             err.getCause() instanceof StreamCorruptedException);
-    */
+        assertEquals(Prolog.Problem.OVERFLOW, dv.getProlog().getProblem());
+        assertEquals(TBXFile.Type.CORRUPT, dv.getType());
+    }
+
+    @Test
+    public void mappedInput() throws Exception
+    {
+        config.setMapThreshold(0);
+        config.setReadBufferSize(256);
+        TBXFile dv = new TBXFile(getFileURL("ValidDTD.xml"), config);
+        dv.parseAndValidate();
+        assertTrue("Mapped file not valid", dv.isValid());
+        assertNotNull(dv.getTermEntryMap().get("ID67"));
+
+        dv = new TBXFile(getFileURL("ManyTermEntries.xml"), config);
+        dv.parseAndValidate();
+        assertTrue("Invalid pick in mapped file not reported", !dv.isValid());
+        TBXException err = (TBXException) dv.getInvalidatingExceptions().get(0);
+        assertTrue(err.getCause() instanceof InvalidPickListException);
+    }
+
+    @Test
+    public void progressAndCancel() throws Exception
+    {
+        File file = testLog("Progress.xml");
+        generate(file, 2000, 1, 0.0, 0);
+
+        config.setStreaming(true);
+        config.setReadBufferSize(1024);
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        assertEquals(file.length(), dv.getLength());
+        dv.parseAndValidate();
+        assertTrue("Generated termbase not valid", dv.isValid());
+        assertEquals(file.length(), dv.getBytesRead());
+        assertEquals(2000, dv.getTermEntriesDone());
+
+        final TBXFile cancelled = new TBXFile(file.toURI().toURL(), config);
+        cancelled.addObserver(new Observer()
+            {
+                public void update(Observable o, Object arg)
+                {
+                    if (cancelled.getTermEntriesDone() == 100)
+                        cancelled.cancel();
+                }
+            });
+        try
+        {
+            cancelled.parseAndValidate();
+            fail("Cancelled parse completed");
+        }
+        catch (InterruptedIOException err)
+        {
+            assertTrue(cancelled.isCancelled());
+            assertTrue(cancelled.getTermEntriesDone() < 2000);
+            assertTrue(cancelled.getBytesRead() < file.length());
+            assertTrue(cancelled.getInvalidatingExceptions().isEmpty());
+        }
+    }
+
+    @Test
+    public void termIndex() throws Exception
+    {
+        File file = testLog("Indexed.xml");
+        generate(file, 500, 2, 0.0, 11);
+        TermIndex.getIndexFile(file).delete();
+
+        config.setTermIndex(true);
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        assertTrue("Generated termbase not valid", dv.isValid());
+        TermIndex index = dv.getTermIndex();
+        assertEquals(500, index.size());
+        assertEquals(new HashSet<String>(Arrays.asList("en", "hu")), index.getLanguages());
+
+        Element entry = dv.getTermEntryMap().get(index.getId(42));
+        Element langSet = (Element) entry.getElementsByTagName("langSet").item(0);
+        String lang = langSet.getAttribute("xml:lang");
+        String term = langSet.getElementsByTagName("term").item(0).getTextContent();
+        String id = entry.getAttribute("id");
+        assertTrue(index.findIds(lang, term, TermIndex.Match.EXACT).contains(id));
+        assertTrue(index.findIds(null, "  " + term + " ", TermIndex.Match.EXACT).contains(id));
+        assertFalse(index.findIds(lang, term.toUpperCase(), TermIndex.Match.EXACT).contains(id));
+        assertTrue(index.findIds(lang.toUpperCase(), term.toUpperCase(), TermIndex.Match.FOLDED).contains(id));
+        assertTrue(index.findIds(lang, term.substring(0, 3), TermIndex.Match.PREFIX).contains(id));
+        assertTrue(index.findIds(lang, term.substring(0, 3).toUpperCase(), TermIndex.Match.FOLDED_PREFIX)
+                .contains(id));
+        assertEquals(0, index.find("fr", term, TermIndex.Match.EXACT).length);
+
+        //Every posting of a prefix query really has such a term
+        int[] found = index.find(lang, term.substring(0, 2), TermIndex.Match.PREFIX);
+        for (int i = 0; i < found.length; i++)
+        {
+            if (i > 0)
+                assertTrue("Postings not ascending", found[i - 1] < found[i]);
+            Element e = dv.getTermEntryMap().get(index.getId(found[i]));
+            boolean has = false;
+            NodeList terms = e.getElementsByTagName("term");
+            for (int t = 0; t < terms.getLength(); t++)
+            {
+                Element te = (Element) terms.item(t);
+                if (((Element) te.getParentNode().getParentNode()).getAttribute("xml:lang").equals(lang)
+                        && te.getTextContent().startsWith(term.substring(0, 2)))
+                    has = true;
+            }
+            assertTrue("Prefix match without the prefix", has);
+        }
+
+        TermIndex loaded = TermIndex.load(file);
+        assertNotNull("Saved index not loaded", loaded);
+        assertArrayEquals(found, loaded.find(lang, term.substring(0, 2), TermIndex.Match.PREFIX));
+        assertEquals(index.getId(42), loaded.getId(42));
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertNull("Stale index loaded", TermIndex.load(file));
+
+        //A failed save leaves no temporary file behind
+        File dest = TermIndex.getIndexFile(file);
+        blockSave(dest);
+        try
+        {
+            index.save(file);
+            fail("Index saved over a directory");
+        }
+        catch (IOException err)
+        {
+            assertEquals(0, countTempFiles(dest));
+        }
+        finally
+        {
+            unblockSave(dest);
+        }
+    }
+
+    @Test
+    public void termIndexLongTerm() throws Exception
+    {
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/LongTerm.xml");
+        Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        w.write("<martif/>");
+        w.close();
+        //Longer than writeUTF allows once encoded
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < 40000; i++)
+            term.append('\u00e9');
+        Document d = factory.newDocumentBuilder().newDocument();
+        Element entry = d.createElement("termEntry");
+        entry.setAttribute("id", "ID1");
+        Element langSet = d.createElement("langSet");
+        langSet.setAttribute("xml:lang", "fr");
+        Element te = d.createElement("term");
+        te.setTextContent(term.toString());
+        langSet.appendChild(te);
+        entry.appendChild(langSet);
+        TermIndex.Builder builder = new TermIndex.Builder();
+        builder.add(entry);
+        builder.build(file).save(file);
+
+        TermIndex loaded = TermIndex.load(file);
+        assertNotNull("Saved index not loaded", loaded);
+        assertEquals(Arrays.asList("ID1"), loaded.findIds("fr", term.toString(), TermIndex.Match.EXACT));
+    }
+
+    @Test
+    public void termEntryManifest() throws Exception
+    {
+        File file = testLog("Incremental.xml");
+        TermbaseGenerator gen = generate(file, 300, 1, 0.05, 13);
+        TermEntryManifest.getManifestFile(file).delete();
+
+        config.setTermEntryManifest(true);
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        List<TBXException> errs = dv.getInvalidatingExceptions();
+        assertEquals(gen.getViolations(), errs.size());
+        TermEntryManifest manifest = dv.getTermEntryManifest();
+        assertEquals(0, manifest.getReused());
+        assertEquals(300 - gen.getViolations(), manifest.size());
+
+        //Change one term, only its termEntry is validated again
+        copy(file.toURI().toURL(), file, "</term>", " changed</term>");
+        config.setValidationThreads(2);
+        dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        List<TBXException> again = dv.getInvalidatingExceptions();
+        assertEquals(errs.size(), again.size());
+        for (int i = 0; i < errs.size(); i++)
+            assertEquals(errs.get(i).getLocalizedMessage(), again.get(i).getLocalizedMessage());
+        long reused = dv.getTermEntryManifest().getReused();
+        assertTrue("Unchanged termEntries validated again: " + reused, reused >= manifest.size() - 1);
+        assertTrue("Changed termEntry not validated again: " + reused, reused < 300 - errs.size());
+
+        //Other settings validate everything again
+        config.setCheckLang(false);
+        dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        assertEquals(0, dv.getTermEntryManifest().getReused());
+
+        //A failed save leaves no temporary file behind
+        File dest = TermEntryManifest.getManifestFile(file);
+        dest.delete();
+        blockSave(dest);
+        try
+        {
+            dv.getTermEntryManifest().save(file);
+            fail("Manifest saved over a directory");
+        }
+        catch (IOException err)
+        {
+            assertEquals(0, countTempFiles(dest));
+        }
+        finally
+        {
+            unblockSave(dest);
+        }
+    }
+
+    /**
+     * @param name Name of a file in the test log directory.
+     * @return The file.
+     */
+    private static File testLog(String name)
+    {
+        return new File(System.getProperty("user.dir"), "target/test-logs/" + name);
+    }
+
+    /**
+     * Write a generated TBX v2 termbase.
+     *
+     * @return The generator, which has counted the errors it wrote.
+     */
+    private static TermbaseGenerator generate(File file, int entries, int terms,
+            double errorRate, long seed) throws IOException
+    {
+        TermbaseGenerator gen = new TermbaseGenerator(TermbaseGenerator.Format.TBX_V2);
+        gen.setEntries(entries);
+        gen.setTerms(terms);
+        gen.setErrorRate(errorRate);
+        gen.setSeed(seed);
+        OutputStream out = new FileOutputStream(file);
+        gen.write(out);
+        out.close();
+        return gen;
+    }
+
+    /**
+     * Put a directory that is not empty where a file will be saved so the
+     * save fails when it moves its temporary file into place.
+     *
+     * @param dest The file that will be saved.
+     */
+    private static void blockSave(File dest) throws IOException
+    {
+        dest.delete();
+        assertTrue(dest.mkdir());
+        assertTrue(new File(dest, "block").createNewFile());
+    }
+
+    /**
+     * @param dest The file blocked by {@link #blockSave}.
+     */
+    private static void unblockSave(File dest)
+    {
+        new File(dest, "block").delete();
+        dest.delete();
+    }
+
+    /**
+     * @param dest The saved file.
+     * @return Number of temporary files left next to it by a save.
+     */
+    private static int countTempFiles(File dest)
+    {
+        String name = dest.getName();
+        int dot = name.lastIndexOf('.');
+        int ret = 0;
+        for (String sibling : dest.getAbsoluteFile().getParentFile().list())
+        {
+            if (!sibling.equals(name) && sibling.startsWith(name.substring(0, dot))
+                    && sibling.endsWith(name.substring(dot)))
+                ret++;
+        }
+        return ret;
+    }
+
+    @Test
+    public void diagnostics() throws Exception
+    {
+        File file = testLog("Diagnostics.xml");
+        TermbaseGenerator gen = generate(file, 200, 1, 0.1, 11);
+
+        config.setStreaming(true);
+        config.setValidationThreads(2);
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        final List<Diagnostic> live = new ArrayList<Diagnostic>();
+        dv.addObserver(new Observer()
+            {
+                public void update(Observable o, Object arg)
+                {
+                    for (XCSValidationException err : ((TBXParser.Event) arg).getExceptions())
+                        live.add(new TBXException(TBXException.Priority.XCS, err).getDiagnostic());
+                }
+            });
+        dv.parseAndValidate();
+        List<Diagnostic> diags = dv.getDiagnostics();
+        List<TBXException> errs = dv.getInvalidatingExceptions();
+        assertEquals(gen.getViolations(), diags.size());
+        assertEquals(diags.size(), errs.size());
+        //The errors sent while parsing describe the same problems
+        assertEquals(diags.size(), live.size());
+        for (int i = 0; i < diags.size(); i++)
+        {
+            Diagnostic d = errs.get(i).getDiagnostic();
+            assertEquals(d.getCode(), live.get(i).getCode());
+            assertEquals(d.getLine(), live.get(i).getLine());
+            assertEquals(d.getColumn(), live.get(i).getColumn());
+            assertEquals(d.getTermEntryId(), live.get(i).getTermEntryId());
+            assertEquals(d.getMessage(), live.get(i).getMessage());
+        }
+        int line = 0;
+        for (int i = 0; i < diags.size(); i++)
+        {
+            Diagnostic d = diags.get(i);
+            assertEquals(TBXException.Priority.XCS, d.getPriority());
+            assertTrue(d.getCode(), d.getCode().startsWith(Diagnostic.XCS_PREFIX));
+            assertNotNull(d.getTermEntryId());
+            assertTrue("Not in document order", d.getLine() > line);
+            line = d.getLine();
+            assertEquals(d.getMessage(), errs.get(i).getLocalizedMessage());
+            assertTrue(errs.get(i).getCause() instanceof XCSValidationException);
+            assertTrue(errs.get(i).getCause().getMessage().contains("id=" + d.getTermEntryId()));
+        }
+
+        //Many threads adding keep each thread's order
+        final DiagnosticSink sink = new DiagnosticSink();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int n = t;
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < 1000; i++)
+                        sink.add(TBXException.Priority.XMLVALID_MINOR,
+                                new SAXParseException("Thread " + n, null, null, i + 1, n));
+                }
+            };
+            threads[t].start();
+        }
+        sink.add(TBXException.Priority.PRE_PARSE, new StreamCorruptedException("First"));
+        for (Thread t : threads)
+            t.join();
+        List<Diagnostic> all = sink.getDiagnostics();
+        assertEquals(4001, sink.size());
+        assertEquals(1, sink.count(TBXException.Priority.PRE_PARSE));
+        assertEquals(TBXException.Priority.PRE_PARSE, all.get(0).getPriority());
+        int[] last = new int[threads.length];
+        for (Diagnostic d : all.subList(1, all.size()))
+        {
+            assertEquals(last[d.getColumn()] + 1, d.getLine());
+            last[d.getColumn()] = d.getLine();
+        }
+        assertEquals(all, sink.getDiagnostics());
+    }
+
+    @Test
+    public void errorLimits() throws Exception
+    {
+        File file = testLog("ErrorLimits.xml");
+        TermbaseGenerator gen = generate(file, 2000, 1, 0.1, 13);
+        URL url = file.toURI().toURL();
+
+        config.setStreaming(true);
+        config.setValidationThreads(2);
+        config.setErrorLimit(1);
+        TBXFile dv = new TBXFile(url, config);
+        dv.parseAndValidate();
+        assertTrue(dv.isStopped());
+        assertFalse(dv.isValid());
+        assertEquals(1, dv.getInvalidatingExceptions().size());
+        assertTrue(dv.getTermEntriesDone() < 2000);
+        assertTrue(dv.getBytesRead() < file.length());
+
+        config.setErrorLimit(10);
+        dv = new TBXFile(url, config);
+        dv.parseAndValidate();
+        assertTrue(dv.isStopped());
+        assertEquals(10, dv.getInvalidatingExceptions().size());
+
+        config.setErrorLimit(0);
+        config.setRuleErrorLimit(3);
+        dv = new TBXFile(url, config);
+        dv.parseAndValidate();
+        assertTrue(dv.isStopped());
+        Map<String, Integer> rules = new java.util.HashMap<String, Integer>();
+        for (Diagnostic d : dv.getDiagnostics())
+        {
+            Integer n = rules.get(d.getCode());
+            rules.put(d.getCode(), n == null ? 1 : n + 1);
+        }
+        assertEquals(3, (int) java.util.Collections.max(rules.values()));
+
+        //A limit that is not reached reports every error
+        config.setRuleErrorLimit(0);
+        config.setErrorLimit((int) gen.getViolations() + 1);
+        dv = new TBXFile(url, config);
+        dv.parseAndValidate();
+        assertFalse(dv.isStopped());
+        assertEquals(gen.getViolations(), dv.getInvalidatingExceptions().size());
+        assertEquals(2000, dv.getTermEntriesDone());
+    }
+
+    @Test
+    public void statistics() throws Exception
+    {
+        File file = testLog("Statistics.xml");
+        TermbaseGenerator gen = generate(file, 50, 1, 0.1, 7);
+
+        TBXStatistics stats = TBXStatistics.getDefault();
+        stats.reset();
+        config.setStatistics(true);
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        int errs = dv.getInvalidatingExceptions().size() + dv.getWarningExceptions().size();
+        assertEquals(1, stats.getFiles());
+        assertEquals(file.length(), stats.getBytesRead());
+        assertEquals(50, stats.getTermEntries());
+        assertEquals(Long.valueOf(50), stats.getElementCounts().get("termEntry"));
+        assertTrue(stats.getTextCharacters() > 0);
+        assertEquals(1, stats.getXCSLookups());
+        assertTrue(stats.getWallNanos().get("PARSE") > 0);
+        long diagnostics = 0;
+        for (long n : stats.getDiagnosticCounts().values())
+            diagnostics += n;
+        assertEquals(errs, diagnostics);
+        assertEquals(Long.valueOf(gen.getViolations()), stats.getDiagnosticCounts().get("XCS"));
+
+        javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+        javax.management.ObjectName name = new javax.management.ObjectName(TBXStatistics.OBJECT_NAME);
+        assertEquals(Long.valueOf(1), server.getAttribute(name, "Files"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, stats.getFiles());
+    }
+
+    @Test
+    public void validationCache() throws Exception
+    {
+        File dir = new File(System.getProperty("user.dir"), "target/test-logs/cache");
+        dir.mkdirs();
+        File xcs = new File(dir, "TBXDCSv05.xml");
+        File file = new File(dir, "CachedPickList.xml");
+        copy(getClass().getResource("/xml/TBXDCSv05.xml"), xcs, null, null);
+        copy(getFileURL("InvalidPickList.xml"), file,
+                "<p type='DCSName'>Demo XCS</p>", "<p type='XCSURI'>TBXDCSv05.xml</p>");
+
+        File results = new File(dir, "results");
+        ValidationCache cache = new ValidationCache(results);
+        cache.prune(1, 0);
+        ValidationCache.Key key = cache.key(file, config);
+        assertNull(cache.getTBX(key));
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        assertFalse(dv.isValid());
+        cache.putTBX(key, dv);
+
+        List<TBXException> errs = dv.getInvalidatingExceptions();
+        List<TBXException> cached = cache.getTBX(cache.key(file, config));
+        assertNotNull("Result not cached", cached);
+        assertEquals(errs.size(), cached.size());
+        for (int i = 0; i < errs.size(); i++)
+        {
+            assertEquals(errs.get(i).getPriority(), cached.get(i).getPriority());
+            assertEquals(errs.get(i).getLocalizedMessage(), cached.get(i).getLocalizedMessage());
+        }
+
+        //Only settings that change the result are in the key
+        Configuration fast = (Configuration) config.clone();
+        fast.setReadBufferSize(1024);
+        fast.setValidationThreads(2);
+        assertNotNull(cache.getTBX(cache.key(file, fast)));
+        Configuration nolang = (Configuration) config.clone();
+        nolang.setCheckLang(false);
+        assertNull(cache.getTBX(cache.key(file, nolang)));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        //A changed XCS is noticed by the next run
+        Writer out = new OutputStreamWriter(new FileOutputStream(xcs, true), "UTF-8");
+        out.write("<!-- changed -->\n");
+        out.close();
+        cache = new ValidationCache(results);
+        assertNull("Result used with changed XCS", cache.getTBX(cache.key(file, config)));
+
+        //Another process may still be writing a temporary file
+        File sub = new File(results, key.getDigest().substring(0, 2));
+        File writing = File.createTempFile(key.getDigest(), ".tmp", sub);
+        File abandoned = File.createTempFile(key.getDigest(), ".tmp", sub);
+        assertTrue(abandoned.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000));
+        assertEquals(2, cache.prune(1, 0));
+        assertNull(new ValidationCache(results).getTBX(key));
+        assertTrue("Temporary file being written was removed", writing.delete());
+        assertFalse(abandoned.exists());
+    }
+
+    /**
+     * Copy a test resource to a file, replacing the first occurrence of
+     * some text.
+     */
+    private static void copy(URL src, File dest, String target, String replacement) throws IOException
+    {
+        Scanner in = new Scanner(src.openStream(), "UTF-8").useDelimiter("\\A");
+        String text = in.next();
+        in.close();
+        if (target != null)
+        {
+            int i = text.indexOf(target);
+            text = text.substring(0, i) + replacement + text.substring(i + target.length());
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(dest), "UTF-8");
+        out.write(text);
+        out.close();
+    }
+
+    @Test
+    public void prologSniff() throws Exception
+    {
+        String head = "<?xml version='1.0' encoding='ISO-8859-1'?>\n"
+            + "<?xml-stylesheet href='a.xsl'?>\n"
+            + "<!DOCTYPE martif PUBLIC \"ISO 30042:2008A//DTD TBX core//EN\" \"/xml/TBXcoreStructV02.dtd\""
+            + " [ <!-- ]> --> <!ENTITY gt2 '>'> ]>\n"
+            + "<martif type='TBX' xml:lang='hu' note='\u00e1rv\u00edz'>\n";
+        Prolog p = Prolog.sniff(new BufferedInputStream(new ByteArrayInputStream(
+                head.getBytes("ISO-8859-1"))));
+        assertNull(p.getProblem());
+        assertEquals("ISO-8859-1", p.getEncoding());
+        assertEquals(0, p.getBOMLength());
+        assertEquals("1.0", p.getVersion());
+        assertEquals("martif", p.getDoctypeName());
+        assertEquals("ISO 30042:2008A//DTD TBX core//EN", p.getPublicId());
+        assertEquals("/xml/TBXcoreStructV02.dtd", p.getSystemId());
+        assertEquals("martif", p.getRootName());
+        assertEquals("hu", p.getRootAttribute("xml:lang"));
+        assertEquals("\u00e1rv\u00edz", p.getRootAttribute("note"));
+        assertEquals(2, p.getTBXVersion());
+        assertEquals("TBX", p.getDialect());
+        assertEquals(head.length() - 1, p.getRootEnd());
+
+        String utf16 = head.replace("ISO-8859-1", "UTF-16");
+        p = Prolog.sniff(ByteBuffer.wrap(("\ufeff" + utf16).getBytes("UTF-16LE")));
+        assertEquals("UTF-16LE", p.getEncoding());
+        assertEquals(2, p.getBOMLength());
+        assertEquals("\u00e1rv\u00edz", p.getRootAttribute("note"));
+        ByteBuffer bytes = ByteBuffer.wrap(utf16.getBytes("UTF-16BE"));
+        p = Prolog.sniff(bytes);
+        assertEquals("UTF-16BE", p.getEncoding());
+        assertEquals(0, p.getBOMLength());
+        assertEquals("martif", p.getRootName());
+        assertEquals(0, bytes.position());
+
+        p = Prolog.sniff(ByteBuffer.wrap(("<?xml version=\"1.0\"?>\n"
+            + "<tbx type=\"TBX-Min\" xml:lang=\"en\" xmlns=\"urn:iso:std:iso:30042:ed-2\""
+            + " xmlns:min=\"http://www.tbxinfo.net/ns/min\">").getBytes("UTF-8")));
+        assertEquals(3, p.getTBXVersion());
+        assertEquals("TBX-Min", p.getDialect());
+        assertEquals("dct", p.getStyle());
+
+        p = Prolog.sniff(ByteBuffer.wrap("<?xml version='1.0'?>\n<martif type='TBX'".getBytes("UTF-8")));
+        assertEquals(Prolog.Problem.EOF, p.getProblem());
+        assertNull(p.getRootName());
+        p = Prolog.sniff(ByteBuffer.wrap("<?xml version='1.0'>\n<martif/>".getBytes("UTF-8")));
+        assertEquals(Prolog.Problem.ILLFORMED, p.getProblem());
+        p = Prolog.sniff(ByteBuffer.wrap("<martif/>".getBytes("UTF-8")));
+        assertEquals(Prolog.Problem.NO_XMLDECL, p.getProblem());
+        assertEquals("martif", p.getRootName());
     }
     
     /**
@@ -343,6 +960,289 @@ public class TBXFileTest
         }
     }
     
+    @Test
+    public void streamingValid() throws Exception
+    {
+        final List<Element> seen = new ArrayList<Element>();
+        config.setStreaming(true);
+        TBXFile dv = new TBXFile(getFileURL("ValidDTD.xml"), config);
+        dv.addObserver(new Observer()
+            {
+                public void update(Observable o, Object arg)
+                {
+                    TBXElement elem = ((TBXParser.Event) arg).getTBXElement();
+                    if (elem.getTagName().equals("termEntry"))
+                        seen.add(elem);
+                }
+            });
+        dv.parseAndValidate();
+        assertTrue("Streamed file not valid", dv.isValid());
+        assertEquals(1, seen.size());
+        assertEquals("ID67", seen.get(0).getAttribute("id"));
+        assertNull("termEntry not released", seen.get(0).getParentNode());
+        Element root = dv.getTBXDocument().getDocumentElement();
+        assertTrue(root instanceof TBXElementDocument);
+        assertEquals(1, root.getElementsByTagName("martifHeader").getLength());
+        assertEquals(0, root.getElementsByTagName("termEntry").getLength());
+        assertTrue(dv.getTermEntryMap().isEmpty());
+    }
+
+    @Test
+    public void streamingInvalidPickList() throws Exception
+    {
+        config.setStreaming(true);
+        TBXFile dv = new TBXFile(getFileURL("InvalidPickList.xml"), config);
+        dv.parseAndValidate();
+        assertTrue("Invalid pick in picklist not reported", !dv.isValid());
+        TBXException err = (TBXException) dv.getInvalidatingExceptions().get(0);
+        assertTrue(err.getCause() instanceof InvalidPickListException);
+    }
+
+    @Test
+    public void validationThreads() throws Exception
+    {
+        final List<String> order = new ArrayList<String>();
+        final List<String> invalid = new ArrayList<String>();
+        config.setValidationThreads(3);
+        config.setStreaming(true);
+        TBXFile dv = new TBXFile(getFileURL("ManyTermEntries.xml"), config);
+        dv.addObserver(new Observer()
+            {
+                public void update(Observable o, Object arg)
+                {
+                    TBXParser.Event evt = (TBXParser.Event) arg;
+                    TBXElement elem = evt.getTBXElement();
+                    if (elem.getTagName().equals("termEntry"))
+                    {
+                        order.add(elem.getAttribute("id"));
+                        if (!evt.isXCSValid())
+                            invalid.add(elem.getAttribute("id"));
+                        assertEquals("body", evt.getParentTBXElement().getTagName());
+                    }
+                }
+            });
+        dv.parseAndValidate();
+        assertTrue("Invalid pick in picklist not reported", !dv.isValid());
+        assertEquals(12, order.size());
+        for (int i = 0; i < order.size(); i++)
+            assertEquals("ID" + (i + 1), order.get(i));
+        assertEquals(java.util.Arrays.asList("ID7"), invalid);
+        assertEquals(1, dv.getInvalidatingExceptions().size());
+        TBXException err = (TBXException) dv.getInvalidatingExceptions().get(0);
+        assertTrue(err.getCause() instanceof InvalidPickListException);
+        Element root = dv.getTBXDocument().getDocumentElement();
+        assertEquals(0, root.getElementsByTagName("termEntry").getLength());
+    }
+
+    @Test
+    public void grammarCaching() throws Exception
+    {
+        final URL url = getFileURL("ValidDTD.xml");
+        final TBXResolver resolver = new TBXResolver(url);
+        final List<String> resolved = new ArrayList<String>();
+        config.setCustomEntityResolver(new EntityResolver()
+            {
+                public InputSource resolveEntity(String publicId, String systemId)
+                    throws SAXException, IOException
+                {
+                    if (systemId.endsWith("TBXcoreStructV02.dtd"))
+                        resolved.add(systemId);
+                    return resolver.resolveEntity(publicId, systemId);
+                }
+            });
+        TBXFile dv = new TBXFile(url, config);
+        dv.parseAndValidate();
+        assertTrue("File with pooled grammar not valid", dv.isValid());
+        assertTrue("Bundled DTD was read", resolved.isEmpty());
+
+        resolved.clear();
+        config.setGrammarCaching(false);
+        dv = new TBXFile(url, config);
+        dv.parseAndValidate();
+        assertTrue("File without pooled grammar not valid", dv.isValid());
+        assertEquals("Bundled DTD was not read", 1, resolved.size());
+    }
+
+    @Test
+    public void elideWhitespace() throws Exception
+    {
+        TBXFile dv = new TBXFile(getFileURL("ValidDTD.xml"), config);
+        dv.parseAndValidate();
+        assertTrue("File not valid", dv.isValid());
+        Element root = dv.getTBXDocument().getDocumentElement();
+        String term = root.getElementsByTagName("term").item(0).getTextContent();
+        int kept = countText(root);
+
+        config.setElideWhitespace(true);
+        dv = new TBXFile(getFileURL("ValidDTD.xml"), config);
+        dv.parseAndValidate();
+        assertTrue("File with whitespace elided not valid", dv.isValid());
+        root = dv.getTBXDocument().getDocumentElement();
+        assertEquals(term, root.getElementsByTagName("term").item(0).getTextContent());
+        assertTrue("Whitespace was not elided", countText(root) < kept);
+    }
+
+    @Test
+    public void compactTree() throws Exception
+    {
+        TBXFile dv = new TBXFile(getFileURL("ValidDTD.xml"), config);
+        dv.parseAndValidate();
+        Element entry = dv.getTermEntryMap().get("ID67");
+        assertNull(dv.getTermTree());
+
+        config.setCompactTree(true);
+        dv = new TBXFile(getFileURL("ValidDTD.xml"), config);
+        dv.parseAndValidate();
+        assertTrue("Compact file not valid", dv.isValid());
+        Element root = dv.getTBXDocument().getDocumentElement();
+        assertEquals(0, root.getElementsByTagName("termEntry").getLength());
+        assertTrue(dv.getTermEntryMap().isEmpty());
+
+        TBXTree tree = dv.getTermTree();
+        assertEquals(TBXTree.NONE, tree.findTermEntry("ID68"));
+        int node = tree.findTermEntry("ID67");
+        assertEquals(node, tree.getFirstChild(TBXTree.ROOT));
+        assertEquals("termEntry", tree.getName(node));
+        assertEquals(entry.getTextContent(), tree.getTextContent(node));
+        assertEquals(((TBXElement) entry).getLocationString(), tree.getLocationString(node));
+
+        Element view = tree.getElement(node);
+        assertEquals(view, tree.getElement(node));
+        assertEquals("ID67", view.getAttribute("id"));
+        NamedNodeMap atts = view.getAttributes();
+        assertEquals(entry.getAttributes().getLength(), atts.getLength());
+        for (int i = 0; i < atts.getLength(); i++)
+        {
+            Attr att = (Attr) atts.item(i);
+            assertEquals(entry.getAttribute(att.getName()), att.getValue());
+            assertEquals(att, atts.getNamedItem(att.getName()));
+            assertEquals(view, att.getOwnerElement());
+        }
+        assertNull(atts.item(atts.getLength()));
+        assertNull(atts.getNamedItem("fubar"));
+        assertNull(view.getAttributeNode("fubar"));
+        assertEquals(entry.getElementsByTagName("term").getLength(),
+                view.getElementsByTagName("term").getLength());
+        assertEquals(entry.getElementsByTagName("*").getLength(),
+                view.getElementsByTagName("*").getLength());
+        dv.getXCSDocument().validateTermEntry(view);
+        try
+        {
+            view.setAttribute("id", "ID68");
+            fail("Compact tree changed");
+        }
+        catch (DOMException err)
+        {
+            assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, err.code);
+        }
+    }
+
+    @Test
+    public void compactTreeInvalid() throws Exception
+    {
+        config.setCompactTree(true);
+        TBXFile dv = new TBXFile(getFileURL("ManyTermEntries.xml"), config);
+        dv.parseAndValidate();
+        assertTrue("Invalid pick in picklist not reported", !dv.isValid());
+        TBXTree tree = dv.getTermTree();
+        int count = 0;
+        for (int n = tree.getFirstChild(TBXTree.ROOT); n != TBXTree.NONE; n = tree.getNextSibling(n))
+            assertEquals("ID" + ++count, tree.getAttribute(n, "id"));
+        assertEquals(12, count);
+        try
+        {
+            dv.getXCSDocument().validateTermEntry(tree.getElement(tree.findTermEntry("ID7")));
+            fail("Invalid pick in compact tree not reported");
+        }
+        catch (InvalidPickListException err)
+        {
+            assertTrue(err.getMessage().length() > 0);
+            //The view gives the same location as the element it was copied from
+            Diagnostic d = new TBXException(TBXException.Priority.XCS, err).getDiagnostic();
+            Diagnostic parsed = null;
+            for (Diagnostic p : dv.getDiagnostics())
+            {
+                if ("ID7".equals(p.getTermEntryId()))
+                    parsed = p;
+            }
+            assertNotNull(parsed);
+            assertTrue(d.getLine() > 0);
+            assertEquals(parsed.getLine(), d.getLine());
+            assertEquals(parsed.getColumn(), d.getColumn());
+        }
+    }
+
+    @Test
+    public void generatedTermbase() throws Exception
+    {
+        TermbaseGenerator gen = new TermbaseGenerator(TermbaseGenerator.Format.TBX_V2);
+        gen.setEntries(200);
+        gen.setTerms(2);
+        gen.setCategoryRate(1.0);
+        gen.setSeed(7);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        gen.write(first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        gen.write(second);
+        assertArrayEquals("Same seed wrote a different termbase", first.toByteArray(), second.toByteArray());
+        assertEquals(0, gen.getViolations());
+
+        File file = new File(System.getProperty("user.dir"), "target/test-logs/Generated.xml");
+        OutputStream out = new FileOutputStream(file);
+        out.write(first.toByteArray());
+        out.close();
+        TBXFile dv = new TBXFile(file.toURI().toURL(), config);
+        dv.parseAndValidate();
+        assertTrue("Generated termbase not valid", dv.isValid());
+        assertEquals(200, dv.getTermEntryMap().size());
+
+        final List<String> invalid = new ArrayList<String>();
+        gen.setErrorRate(0.1);
+        out = new FileOutputStream(file);
+        gen.write(out);
+        out.close();
+        assertTrue(gen.getViolations() > 0);
+        assertEquals(gen.getViolations(), gen.getViolations(TermbaseGenerator.Violation.XCS));
+        config.setStreaming(true);
+        dv = new TBXFile(file.toURI().toURL(), config);
+        dv.addObserver(new Observer()
+            {
+                public void update(Observable o, Object arg)
+                {
+                    TBXParser.Event evt = (TBXParser.Event) arg;
+                    if (evt.getTBXElement().getTagName().equals("termEntry") && !evt.isXCSValid())
+                        invalid.add(evt.getTBXElement().getAttribute("id"));
+                }
+            });
+        dv.parseAndValidate();
+        assertFalse("Generated violations not reported", dv.isValid());
+        assertEquals(gen.getViolations(), invalid.size());
+    }
+
+    /**
+     * Count the text nodes under a node and check that each run of
+     * character data became a single text node.
+     */
+    private int countText(Node node)
+    {
+        int ret = 0;
+        Node prev = null;
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+        {
+            if (child.getNodeType() == Node.TEXT_NODE)
+            {
+                assertFalse("Adjacent text nodes", prev != null && prev.getNodeType() == Node.TEXT_NODE);
+                ret++;
+            }
+            else
+            {
+                ret += countText(child);
+            }
+            prev = child;
+        }
+        return ret;
+    }
+
     @Test
     public void termEntryMap() throws Exception
     {
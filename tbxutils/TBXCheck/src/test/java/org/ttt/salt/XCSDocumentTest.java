@@ -172,6 +172,47 @@ public class XCSDocumentTest
     @Test
     public void getLevels() throws Exception
     {
+        XCSDocument.Rule rule = dcsdoc.getRule(new XCSDocument.Key("descrip", "subjectField"));
+        assertNotNull(rule);
+        assertTrue((rule.getLevels() & XCSDocument.Rule.LEVEL_TERM_ENTRY) != 0);
+    }
+
+    @Test
+    public void keyHash() throws Exception
+    {
+        XCSDocument.Key copy = new XCSDocument.Key("termNote", "abbreviatedFormFor");
+        assertEquals(KEY_GOOD, copy);
+        assertEquals(KEY_GOOD.hashCode(), copy.hashCode());
+        assertSame(dcsdoc.getRule(KEY_GOOD), dcsdoc.getRule(copy));
+    }
+
+    @Test
+    public void getRule() throws Exception
+    {
+        XCSDocument.Rule rule = dcsdoc.getRule(KEY_PICKLIST);
+        assertNotNull(rule);
+        assertEquals(XCSDocument.DataType.PICKLIST, rule.getDataType());
+        assertEquals(3, rule.getPicklist().size());
+        assertEquals(XCSDocument.DataType.NOTE_TEXT, dcsdoc.getRule(KEY_GOOD).getDataType());
+        assertNull(dcsdoc.getRule(KEY_BAD_0));
+    }
+
+    @Test
+    public void cache() throws Exception
+    {
+        XCSDocumentCache cache = new XCSDocumentCache(1);
+        XCSDocument first = cache.get(DXLT_XCS, RESOLVER, config);
+        assertSame(first, cache.get(DXLT_XCS, RESOLVER, config));
+        assertSame(first, cache.get("/xml/TBXDCSv05.xml", RESOLVER, config));
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertTrue(first.hasSpec(KEY_GOOD));
+
+        Configuration nolang = new Configuration();
+        nolang.setCheckLang(false);
+        assertNotSame(first, cache.get(DXLT_XCS, RESOLVER, nolang));
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
     }
 }
 
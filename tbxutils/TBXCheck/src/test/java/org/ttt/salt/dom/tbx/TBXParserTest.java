@@ -145,6 +145,28 @@ public class TBXParserTest
         parser.endDocument();
     }
     
+    @Test
+    public void elementFactories() throws SAXException
+    {
+        TBXDocument doc = new TBXDocument(true);
+        assertEquals(Element_martif.class, doc.createTBXElement("martif", locator).getClass());
+        assertEquals(TBXElement.class, doc.createTBXElement("term", locator).getClass());
+        assertEquals(TBXElement.class, doc.createTBXElement("SPAM", locator).getClass());
+        
+        final TBXElement[] made = new TBXElement[1];
+        TBXDocument.registerElementFactory("EGGS", new TBXDocument.ElementFactory()
+            {
+                public TBXElement createElement(TBXDocument d, String tagName, Locator loc)
+                {
+                    made[0] = new TBXElement(d, tagName, loc);
+                    return made[0];
+                }
+            });
+        TBXElement eggs = doc.createTBXElement("EGGS", locator);
+        assertSame(made[0], eggs);
+        assertEquals("EGGS", eggs.getTagName());
+    }
+    
     @Test
     public void checkValidDTD() throws SAXException, IOException
     {   //Make sure we have the TBX file we will test against
@@ -24,9 +24,11 @@ import java.awt.BorderLayout;
 import java.awt.Toolkit;
 import java.awt.event.WindowListener;
 import java.awt.event.WindowEvent;
+import java.text.MessageFormat;
 import javax.swing.DefaultListModel;
 import javax.swing.JFrame;
 import javax.swing.WindowConstants;
+import org.ttt.salt.TBXException;
 import org.ttt.salt.TBXFile;
 import org.ttt.salt.editor.tbxedit.XMLErrorPane;
 
@@ -34,7 +36,7 @@ import org.ttt.salt.editor.tbxedit.XMLErrorPane;
  * @author Lance Finn Helsten
  * @version $Id$
  */
-public class ErrorsWindow extends JFrame implements WindowListener
+public class ErrorsWindow extends JFrame implements WindowListener, Observer
 {
     /*
      */
@@ -50,6 +52,12 @@ public class ErrorsWindow extends JFrame implements WindowListener
     
     /** The erros to list in the window. */
     private DefaultListModel errors = new javax.swing.DefaultListModel();
+    
+    /** The validator of the document being edited, or null. */
+    private TermEntryValidator validator;
+    
+    /** The message listed for each invalid termEntry, by id. */
+    private final Map<String, String> entryErrors = new java.util.HashMap<String, String>();
 
     /**
      * Get the bundle used for localization in this window.
@@ -71,7 +79,6 @@ public class ErrorsWindow extends JFrame implements WindowListener
     public ErrorsWindow(TBXFile file) throws IOException
     {
         super("Unnamed");
-        this.addWindowListener(org.ttt.salt.editor.Main.getInstance());
         Iterator erriter = file.getInvalidatingExceptions().iterator();
         while (erriter.hasNext())
         {
@@ -79,6 +86,32 @@ public class ErrorsWindow extends JFrame implements WindowListener
             if (err != null)
                 errors.addElement(err.toString());
         }
+        init();
+    }
+
+    /**
+     * This will create a window that lists the termEntry errors of a
+     * document as it is edited.
+     *
+     * @param   doc The TBXDocument being edited.
+     * @throws  IOException Any I/O exceptions that occur.
+     */
+    public ErrorsWindow(TBXDocument doc) throws IOException
+    {
+        super("Unnamed");
+        validator = doc.getValidator();
+        for (Map.Entry<String, TBXException> ent : validator.getErrors().entrySet())
+            setEntryError(ent.getKey(), ent.getValue());
+        validator.addObserver(this);
+        init();
+    }
+
+    /**
+     * Build the window contents.
+     */
+    private void init()
+    {
+        this.addWindowListener(org.ttt.salt.editor.Main.getInstance());
         mbar = new ErrorsMenuBar(this);
         setJMenuBar(mbar.getJMenuBar());
         setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
@@ -91,6 +124,36 @@ public class ErrorsWindow extends JFrame implements WindowListener
         positionFrame();
     }
 
+    /**
+     * Replace the message listed for a termEntry.
+     *
+     * @param id The termEntry id.
+     * @param err Why the entry is invalid, or null to remove the message.
+     */
+    private void setEntryError(String id, TBXException err)
+    {
+        String old = entryErrors.remove(id);
+        if (old != null)
+            errors.removeElement(old);
+        if (err != null)
+        {
+            Object[] parms = {id, err};
+            String msg = MessageFormat.format(getBundle().getString("TermEntryError"), parms);
+            entryErrors.put(id, msg);
+            errors.addElement(msg);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void update(Observable o, Object arg)
+    {
+        if (o == validator && arg instanceof TermEntryValidator.Result)
+        {
+            TermEntryValidator.Result res = (TermEntryValidator.Result) arg;
+            setEntryError(res.getId(), res.getError());
+        }
+    }
+
     /**
      * Send a message to close this window.
      */
@@ -119,6 +182,8 @@ public class ErrorsWindow extends JFrame implements WindowListener
     public void windowClosed(WindowEvent evt)
     {
         removeWindowListener(this);
+        if (validator != null)
+            validator.deleteObserver(this);
     }
 
     /** {@inheritDoc} */
@@ -66,6 +66,9 @@ public class TBXDocument extends ObservableDocument
     /** Flag to mark the change status of this document. */
     private boolean dirty;
     
+    /** Re-validates termEntries as they are edited. */
+    private TermEntryValidator validator;
+    
     /**
      *
      * @param file The file to read the XML data from.
@@ -74,7 +77,6 @@ public class TBXDocument extends ObservableDocument
     public TBXDocument(File file) throws IOException
     {
         this(new TBXFile(file));
-        addObserver(this);
     }
     
     /**
@@ -86,7 +88,6 @@ public class TBXDocument extends ObservableDocument
     public TBXDocument(File file, String sysid) throws IOException
     {
         this(new TBXFile(file));
-        addObserver(this);
     }
         
     /**
@@ -100,6 +101,8 @@ public class TBXDocument extends ObservableDocument
         tbxFile = tfile;
         tbxFile.parseAndValidate();
         setDocument(tbxFile.getTBXDocument());
+        validator = new TermEntryValidator(tbxFile.getXCSDocument());
+        addObserver(this);
     }
     
     /**
@@ -112,6 +115,16 @@ public class TBXDocument extends ObservableDocument
         return tbxFile;
     }
     
+    /**
+     * Get the validator that checks termEntries as they are edited.
+     *
+     * @return The validator, observe it for the results.
+     */
+    public TermEntryValidator getValidator()
+    {
+        return validator;
+    }
+    
     /**
      * Find out if the document has been changed.
      *
@@ -156,6 +169,7 @@ public class TBXDocument extends ObservableDocument
             if (elem.getTagName().equals("termEntry"))
             {
                 tbxFile.getTermEntryMap().remove(oldvalue);
+                validator.removed(oldvalue);
                 String id = elem.getAttribute("id");
                 if (id.equals(""))
                 {
@@ -165,12 +179,14 @@ public class TBXDocument extends ObservableDocument
                 tbxFile.getTermEntryMap().put(id, elem);
             }
         }
+        validator.markStale(node);
     }
     
     /** {@inheritDoc} */
     public void valueChange(ObservableDocument doc, Node node)
     {
         dirty = true;
+        validator.markStale(node);
     }
     
     /** {@inheritDoc} */
@@ -198,6 +214,7 @@ public class TBXDocument extends ObservableDocument
                 tbxFile.getTermEntryMap().put(id, elem);
             }
         }
+        validator.markStale(child);
     }
     
     /** {@inheritDoc} */
@@ -212,8 +229,11 @@ public class TBXDocument extends ObservableDocument
             {
                 String id = elem.getAttribute("id");
                 tbxFile.getTermEntryMap().remove(id);
+                validator.removed(id);
+                return;
             }
         }
+        validator.markStale(node);
     }
     
     /** {@inheritDoc} */
@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.SortedSet;
@@ -28,6 +29,9 @@ import java.util.Map;
 import java.util.Iterator;
 import java.util.ResourceBundle;
 import java.util.Observable;
+import java.util.concurrent.ExecutionException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.Graphics;
 import java.awt.print.Printable;
 import java.awt.print.Pageable;
@@ -37,6 +41,9 @@ import java.awt.print.PrinterException;
 import javax.swing.JEditorPane;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.text.EditorKit;
 import org.ttt.salt.TBXFile;
 import org.ttt.salt.editor.tbxedit.TBXWindow;
@@ -69,9 +76,13 @@ public class TBXEditor extends Observable
     /** Suffix for temporary files. */
     private static final String SUFFIX = ".xml";
     
+    /** Localized messages. */
+    private static final ResourceBundle BUNDLE = ResourceBundle.getBundle("org.ttt.salt.editor.TBXEditor");
+    
     /**
      * Open a specific file. If the file is null then this will create a
-     * new TBX file.
+     * new TBX file. A file is read and validated on a background thread and
+     * its window is opened when that is done.
      *
      * @param file The {@link java.io.File} to a TBX file to open.
      * @throws IOException Any I/O exceptions that occur.
@@ -87,20 +98,144 @@ public class TBXEditor extends Observable
         }
         else
         {
-            TBXFile tbxfile = new TBXFile(file);
-            tbxfile.parseAndValidate();
-            if (tbxfile.isValid())
+            new Loader(file).start();
+        }
+    }
+    
+    /**
+     * Opens a TBX file on a background thread while a progress monitor
+     * shows the bytes read and termEntries checked, and lets the user
+     * cancel the open. When the file is done an editor window is opened if
+     * it is valid, otherwise a window with the errors.
+     */
+    private static final class Loader extends SwingWorker<TBXFile, Object>
+        implements ActionListener
+    {
+        /** Milliseconds between progress updates. */
+        private static final int UPDATE = 250;
+        
+        /** Progress monitor maximum, progress is in tenths of a percent. */
+        private static final int PROGRESS_MAX = 1000;
+        
+        /** Bytes in a KB. */
+        private static final long KB = 1024;
+        
+        /** The file to open. */
+        private final File file;
+        
+        /** Shows progress and lets the user cancel. */
+        private final ProgressMonitor monitor;
+        
+        /** Updates the progress monitor. */
+        private final Timer timer;
+        
+        /** The file once it is opened by the background thread. */
+        private volatile TBXFile tbxfile;
+        
+        /**
+         * @param f The file to open.
+         */
+        Loader(File f)
+        {
+            file = f;
+            Object[] args = {file.getName()};
+            monitor = new ProgressMonitor(null,
+                MessageFormat.format(BUNDLE.getString("Progress"), args),
+                "", 0, PROGRESS_MAX);
+            monitor.setMillisToDecideToPopup(0);
+            monitor.setMillisToPopup(UPDATE);
+            timer = new Timer(UPDATE, this);
+        }
+        
+        /**
+         * Start opening the file.
+         */
+        void start()
+        {
+            timer.start();
+            execute();
+        }
+        
+        /** {@inheritDoc} */
+        protected TBXFile doInBackground() throws IOException
+        {
+            TBXFile ret = new TBXFile(file);
+            tbxfile = ret;
+            if (monitor.isCanceled())
+                ret.cancel();
+            ret.parseAndValidate();
+            return ret;
+        }
+        
+        /**
+         * Update the progress monitor and pass on a cancel.
+         *
+         * @param evt The timer event.
+         */
+        public void actionPerformed(ActionEvent evt)
+        {
+            TBXFile f = tbxfile;
+            if (f == null)
+                return;
+            if (monitor.isCanceled())
             {
-                TBXEditor editor = new TBXEditor(file, tbxfile);
-                TBXWindow tbx = new TBXWindow(editor);
-                editor.window = tbx;
-                tbx.setVisible(true);
+                f.cancel();
+                return;
             }
-            else
+            long length = f.getLength();
+            long read = f.getBytesRead();
+            if (length > 0)
+                monitor.setProgress((int) (read * PROGRESS_MAX / length));
+            Object[] args = {f.getTermEntriesDone(), read / KB, Math.max(length, 0) / KB};
+            monitor.setNote(MessageFormat.format(BUNDLE.getString("ProgressNote"), args));
+        }
+        
+        /** {@inheritDoc} */
+        protected void done()
+        {
+            timer.stop();
+            monitor.close();
+            try
+            {
+                TBXFile tbx = get();
+                if (tbx.isValid())
+                {
+                    TBXEditor editor = new TBXEditor(file, tbx);
+                    TBXWindow win = new TBXWindow(editor);
+                    editor.window = win;
+                    win.setVisible(true);
+                }
+                else
+                {
+                    ErrorsWindow errors = new ErrorsWindow(tbx);
+                    errors.setVisible(true);
+                }
+            }
+            catch (ExecutionException err)
             {
-                ErrorsWindow errors = new ErrorsWindow(tbxfile);
-                errors.setVisible(true);
+                if (!(err.getCause() instanceof InterruptedIOException))
+                    showOpenError(err.getCause());
             }
+            catch (IOException err)
+            {
+                showOpenError(err);
+            }
+            catch (InterruptedException err)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        /**
+         * @param err Why the file could not be opened.
+         */
+        private void showOpenError(Throwable err)
+        {
+            Object[] args = {file, err.getLocalizedMessage()};
+            JOptionPane.showMessageDialog(null,
+                MessageFormat.format(BUNDLE.getString("OpenError"), args),
+                BUNDLE.getString("OpenErrorTitle"),
+                JOptionPane.ERROR_MESSAGE);
         }
     }
     
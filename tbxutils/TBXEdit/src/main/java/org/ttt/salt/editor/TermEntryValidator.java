@@ -0,0 +1,332 @@
+/*
+ * $Id$
+ *-----------------------------------------------------------------------------
+ * Copyright 2000 Lance Finn Helsten (helsten@acm.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ttt.salt.editor;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.ttt.salt.TBXException;
+import org.ttt.salt.XCSDocument;
+import org.ttt.salt.XCSValidationException;
+
+/**
+ * Re-validates the termEntries of a {@link TBXDocument} against the XCS as
+ * they are edited. Edits mark the enclosing termEntry stale; once the
+ * document has been quiet for {@link #DELAY} milliseconds the stale entries
+ * are copied and validated on a background thread, so a burst of edits to
+ * one entry is validated once. Results are published on the event dispatch
+ * thread to the observers as a {@link Result}, and a result is dropped if
+ * the entry was edited again while it was being validated.
+ * <p>
+ * All methods other than {@link #getErrors} must be called on the event
+ * dispatch thread, which is where the document is edited.</p>
+ *
+ * @author Lance Finn Helsten
+ * @version $Id$
+ */
+public class TermEntryValidator extends Observable
+{
+    /** SCM information. */
+    public static final String RCSID = "$Id$";
+
+    /** Milliseconds without an edit before stale entries are validated. */
+    public static final int DELAY = 400;
+
+    /** Seconds the validation thread is kept when there is nothing to do. */
+    private static final long KEEP_ALIVE = 30;
+
+    /** */
+    private static final Logger LOGGER = Logger.getLogger("org.ttt.salt.editor");
+
+    /**
+     * The validation of one termEntry.
+     */
+    public static final class Result
+    {
+        /** The termEntry id. */
+        private final String id;
+
+        /** Why the entry is invalid. */
+        private final TBXException error;
+
+        /**
+         * @param i The termEntry id.
+         * @param err Why the entry is invalid, null if it is valid or was
+         *  removed.
+         */
+        Result(String i, TBXException err)
+        {
+            id = i;
+            error = err;
+        }
+
+        /**
+         * @return The termEntry id.
+         */
+        public String getId()
+        {
+            return id;
+        }
+
+        /**
+         * @return Why the entry is invalid, or null if it is valid or was
+         *  removed from the document.
+         */
+        public TBXException getError()
+        {
+            return error;
+        }
+    }
+
+    /** Validates the termEntries. */
+    private final XCSDocument xcs;
+
+    /** Entries edited since they were last sent for validation, by id. */
+    private final Map<String, Element> stale = new java.util.LinkedHashMap<String, Element>();
+
+    /** Edit count of each entry, a result is kept only if it is current. */
+    private final Map<String, Long> versions = new java.util.HashMap<String, Long>();
+
+    /** Current errors by termEntry id, read by any thread. */
+    private final Map<String, TBXException> errors
+            = Collections.synchronizedMap(new java.util.TreeMap<String, TBXException>());
+
+    /** Fires once the edits have stopped. */
+    private final Timer timer;
+
+    /** Runs the validation, the thread ends when it has been idle a while. */
+    private final ExecutorService worker;
+
+    /**
+     * @param x The XCS the entries are validated against, if null edits are
+     *  never validated.
+     */
+    public TermEntryValidator(XCSDocument x)
+    {
+        xcs = x;
+        timer = new Timer(DELAY, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent evt)
+            {
+                submit();
+            }
+        });
+        timer.setRepeats(false);
+        worker = new ThreadPoolExecutor(0, 1, KEEP_ALIVE, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread ret = new Thread(r, "TermEntryValidator");
+                    ret.setDaemon(true);
+                    ret.setPriority(Thread.MIN_PRIORITY);
+                    return ret;
+                }
+            });
+    }
+
+    /**
+     * Get the errors found since the document was opened.
+     *
+     * @return Copy of the current errors by termEntry id.
+     */
+    public Map<String, TBXException> getErrors()
+    {
+        synchronized (errors)
+        {
+            return new java.util.TreeMap<String, TBXException>(errors);
+        }
+    }
+
+    /**
+     * Mark the termEntry that holds a node as stale.
+     *
+     * @param node The edited node, nothing is done if it is not in a
+     *  termEntry.
+     */
+    public void markStale(Node node)
+    {
+        Element entry = findTermEntry(node);
+        if (entry != null)
+            markEntryStale(entry);
+    }
+
+    /**
+     * @param entry The termEntry to validate once the edits stop.
+     */
+    private void markEntryStale(Element entry)
+    {
+        String id = entry.getAttribute("id");
+        if (xcs == null || id.equals(""))
+            return;
+        bump(id);
+        stale.put(id, entry);
+        timer.restart();
+    }
+
+    /**
+     * A termEntry was removed or its id changed, so forget its errors.
+     *
+     * @param id The id the termEntry had.
+     */
+    public void removed(String id)
+    {
+        if (id == null || id.equals(""))
+            return;
+        bump(id);
+        stale.remove(id);
+        if (errors.remove(id) != null)
+            publish(new Result(id, null));
+    }
+
+    /**
+     * @param id Entry id whose in flight results are now out of date.
+     */
+    private void bump(String id)
+    {
+        Long v = versions.get(id);
+        versions.put(id, v == null ? 1L : v + 1);
+    }
+
+    /**
+     * Copy the stale entries, so the document may be edited during
+     * validation, and validate the copies on the worker thread.
+     */
+    private void submit()
+    {
+        if (stale.isEmpty())
+            return;
+        final List<String> ids = new ArrayList<String>(stale.keySet());
+        final List<Long> vers = new ArrayList<Long>(ids.size());
+        final List<Element> copies = new ArrayList<Element>(ids.size());
+        List<Element> entries = new ArrayList<Element>(stale.values());
+        stale.clear();
+        for (int i = ids.size() - 1; i >= 0; i--)
+        {
+            if (entries.get(i).getParentNode() == null)
+            {
+                ids.remove(i);
+                entries.remove(i);
+            }
+        }
+        for (int i = 0; i < ids.size(); i++)
+        {
+            vers.add(versions.get(ids.get(i)));
+            copies.add((Element) entries.get(i).cloneNode(true));
+        }
+        worker.execute(new Runnable()
+        {
+            public void run()
+            {
+                final List<Result> results = new ArrayList<Result>(copies.size());
+                for (int i = 0; i < copies.size(); i++)
+                    results.add(new Result(ids.get(i), validate(copies.get(i))));
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    public void run()
+                    {
+                        for (int i = 0; i < results.size(); i++)
+                        {
+                            if (vers.get(i).equals(versions.get(ids.get(i))))
+                                update(results.get(i));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param entry Copy of the termEntry.
+     * @return Why the entry is invalid or null.
+     */
+    private TBXException validate(Element entry)
+    {
+        //CHECKSTYLE: IllegalCatch OFF
+        try
+        {
+            xcs.validateTermEntry(entry);
+            return null;
+        }
+        catch (XCSValidationException err)
+        {
+            return new TBXException(TBXException.Priority.XCS, err);
+        }
+        catch (RuntimeException err)
+        {
+            LOGGER.log(Level.WARNING, "Could not validate termEntry", err);
+            return null;
+        }
+        //CHECKSTYLE: IllegalCatch ON
+    }
+
+    /**
+     * @param res A current result, observers are only told of changes.
+     */
+    private void update(Result res)
+    {
+        TBXException old = res.getError() == null
+            ? errors.remove(res.getId())
+            : errors.put(res.getId(), res.getError());
+        if (old != null || res.getError() != null)
+            publish(res);
+    }
+
+    /**
+     * @param res The result to send to the observers.
+     */
+    private void publish(Result res)
+    {
+        setChanged();
+        notifyObservers(res);
+    }
+
+    /**
+     * @param node A node in the document.
+     * @return The termEntry the node is in, or null.
+     */
+    private static Element findTermEntry(Node node)
+    {
+        Node n = node;
+        if (node instanceof Attr && ((Attr) node).getOwnerElement() != null)
+            n = ((Attr) node).getOwnerElement();
+        while (n != null)
+        {
+            if (n instanceof Element && ((Element) n).getTagName().equals("termEntry"))
+                return (Element) n;
+            n = n.getParentNode();
+        }
+        return null;
+    }
+}
@@ -29,7 +29,9 @@ import javax.swing.JOptionPane;
 import javax.swing.WindowConstants;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
+import org.ttt.salt.editor.ErrorsWindow;
 import org.ttt.salt.editor.TBXEditor;
+import org.ttt.salt.editor.TermEntryValidator;
 import org.flyingtitans.xml.ObservableElement;
 import org.flyingtitans.xml.TreeViewMenuBar;
 
@@ -95,6 +97,9 @@ public class TBXWindow extends org.flyingtitans.xml.TreeView
     /** */
     private final Collection<JFrame> subWindows = new ArrayList<JFrame>();
     
+    /** Lists the termEntry errors found while editing, or null. */
+    private ErrorsWindow errorsWindow;
+    
     /** */
     private final Map<String, TreeViewMenuBar.Tag> nameToTag
             = new java.util.HashMap<String, TreeViewMenuBar.Tag>();
@@ -112,6 +117,7 @@ public class TBXWindow extends org.flyingtitans.xml.TreeView
         editor = e;
         editor.addObserver(this);
         editor.getTBXDocument().addObserver(this);
+        editor.getTBXDocument().getValidator().addObserver(this);
         addWindowListener(org.ttt.salt.editor.Main.getInstance());
         mbar = new TBXMenuBar(this);
         setJMenuBar(mbar.getJMenuBar());
@@ -236,6 +242,29 @@ public class TBXWindow extends org.flyingtitans.xml.TreeView
                 setTitle((String) editor.getProperty(TBXEditor.TITLE_PROPERTY));
             }
         }
+        else if (o instanceof TermEntryValidator)
+        {
+            TermEntryValidator.Result res = (TermEntryValidator.Result) arg;
+            if (res.getError() != null && (errorsWindow == null || !errorsWindow.isDisplayable()))
+                showErrors();
+        }
+    }
+    
+    /**
+     * Open a window that lists the termEntry errors as they are found.
+     */
+    private void showErrors()
+    {
+        try
+        {
+            errorsWindow = new ErrorsWindow(editor.getTBXDocument());
+            errorsWindow.addWindowListener(this);
+            errorsWindow.setVisible(true);
+        }
+        catch (IOException err)
+        {
+            err.printStackTrace(System.err);
+        }
     }
     
     /** {@inheritDoc} */